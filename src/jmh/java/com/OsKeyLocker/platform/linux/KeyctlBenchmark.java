@@ -0,0 +1,83 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the JNA and FFM native access layers on the keyctl calls a credential read makes: finding the key,
+ * reading its payload and describing it. Each call is a real system call against the user keyring, so the
+ * difference between the layers is their marshalling cost; {@code -prof gc} shows what each allocates.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "--enable-native-access=ALL-UNNAMED"})
+public class KeyctlBenchmark {
+
+    // A full keyring chunk
+    private static final int PAYLOAD_SIZE = 1024;
+
+    @Param({"jna", "ffm"})
+    public String access;
+
+    private LinuxKeyctl keyctl;
+    private String description;
+    private String missing;
+    private int serial;
+    private ByteBuffer target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws KeyLockerException {
+        keyctl = access.equals("ffm") ? new FfmLinuxKeyctl() : new JnaLinuxKeyctl();
+        description = "OsKeyLocker.benchmark." + ProcessHandle.current().pid();
+        missing = description + ".missing";
+
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        new Random(42).nextBytes(payload);
+        serial = keyctl.addKey(description, payload, LinuxKeyctl.KEY_SPEC_USER_KEYRING);
+        target = ByteBuffer.allocateDirect(PAYLOAD_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws KeyLockerException {
+        keyctl.unlink(serial, LinuxKeyctl.KEY_SPEC_USER_KEYRING);
+    }
+
+    @Benchmark
+    public int search() throws KeyLockerException {
+        return keyctl.search(LinuxKeyctl.KEY_SPEC_USER_KEYRING, description);
+    }
+
+    @Benchmark
+    public int searchMissing() throws KeyLockerException {
+        return keyctl.search(LinuxKeyctl.KEY_SPEC_USER_KEYRING, missing);
+    }
+
+    @Benchmark
+    public int read() throws KeyLockerException {
+        return keyctl.read(serial, target);
+    }
+
+    @Benchmark
+    public String describe() throws KeyLockerException {
+        return keyctl.describe(serial);
+    }
+}
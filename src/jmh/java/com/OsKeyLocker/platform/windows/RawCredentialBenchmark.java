@@ -0,0 +1,190 @@
+package com.OsKeyLocker.platform.windows;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.sun.jna.Memory;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.IntByReference;
+import com.sun.jna.ptr.PointerByReference;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the raw credential read and write path allocates, against a simulated Credential Manager that
+ * allocates nothing itself, so it runs on any host. Run it with {@code -prof gc}: gc.alloc.rate.norm is the
+ * number of bytes allocated per call. The structure benchmarks repeat the per-call JNA structures, memory and
+ * strings the path used to allocate, as a baseline.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class RawCredentialBenchmark {
+
+    private static final String NAME = "OsKeyLocker.benchmark.token.chunk0";
+    // A full chunk: the largest value the manager writes in one credential
+    private static final int VALUE_LENGTH = 1024;
+
+    private WindowsCredentialManager manager;
+    private SimulatedCredentials credentials;
+    private String value;
+    private ByteBuffer decoded;
+
+    @Setup
+    public void setUp() throws KeyLockerException {
+        credentials = new SimulatedCredentials();
+        manager = new WindowsCredentialManager(credentials, credentials);
+
+        byte[] payload = new byte[VALUE_LENGTH];
+        new Random(42).nextBytes(payload);
+        value = Base64.getEncoder().encodeToString(payload).substring(0, VALUE_LENGTH);
+        decoded = ByteBuffer.allocateDirect(VALUE_LENGTH);
+        manager.addRawCredential(NAME, value);
+    }
+
+    @Benchmark
+    public void write() throws KeyLockerException {
+        manager.addRawCredential(NAME, value);
+    }
+
+    @Benchmark
+    public String read() throws KeyLockerException {
+        return manager.getRawCredential(NAME);
+    }
+
+    @Benchmark
+    public boolean readDecoded() throws KeyLockerException {
+        return manager.readRawCredential(NAME, decoded.clear());
+    }
+
+    @Benchmark
+    public boolean structureWrite() {
+        // The write path before native memory was reused per thread
+        WindowsCredentialManager.CREDENTIAL credential = new WindowsCredentialManager.CREDENTIAL();
+        byte[] blob = value.getBytes(StandardCharsets.UTF_16LE);
+        Memory memory = new Memory(blob.length);
+        memory.write(0, blob, 0, blob.length);
+        credential.Type = 1;
+        credential.TargetName = NAME;
+        credential.Comment = "Stored by OsKeyLocker";
+        credential.CredentialBlobSize = blob.length;
+        credential.CredentialBlob = memory;
+        credential.Persist = 2;
+        credential.UserName = System.getProperty("user.name");
+        return credentials.CredWriteA(credential, 0);
+    }
+
+    @Benchmark
+    public String structureRead() {
+        // The read path before native memory was reused per thread
+        PointerByReference reference = new PointerByReference();
+        if (!credentials.CredReadA(NAME, 1, 0, reference)) {
+            return null;
+        }
+        WindowsCredentialManager.CREDENTIAL credential = new WindowsCredentialManager.CREDENTIAL(reference.getValue());
+        byte[] blob = credential.CredentialBlob.getByteArray(0, credential.CredentialBlobSize);
+        credentials.CredFree(reference.getValue());
+        return new String(blob, StandardCharsets.UTF_16LE);
+    }
+
+    /**
+     * Credential Manager holding one credential in native memory, whatever its target name. Writes copy the blob
+     * in, and reads copy it to a CREDENTIAL handed to the caller, which wipes it like memory from CredReadA.
+     * Only reused memory and views are involved.
+     */
+    private static final class SimulatedCredentials implements WindowsCredentialManager.Advapi32,
+            WindowsCredentialManager.Kernel32 {
+
+        private static final int ERROR_NOT_FOUND = 1168;
+        private static final WindowsCredentialManager.CREDENTIAL LAYOUT = new WindowsCredentialManager.CREDENTIAL();
+        private static final int BLOB_SIZE_OFFSET = LAYOUT.offsetOf("CredentialBlobSize");
+        private static final int BLOB_OFFSET = LAYOUT.offsetOf("CredentialBlob");
+        private static final int MAX_BLOB_SIZE = 5 * 512;
+
+        private final Memory storedBlob = new Memory(MAX_BLOB_SIZE);
+        private final Memory returned = new Memory(LAYOUT.size());
+        private final Memory returnedBlob = new Memory(MAX_BLOB_SIZE);
+        private final Pointer blobView = new Pointer(0);
+        private final byte[] copy = new byte[MAX_BLOB_SIZE];
+        private int storedSize;
+        private boolean present;
+        private int lastError;
+
+        SimulatedCredentials() {
+            returned.clear();
+            returned.setPointer(BLOB_OFFSET, returnedBlob);
+        }
+
+        @Override
+        public boolean CredWriteA(Pointer credential, int flags) {
+            int blobSize = credential.getInt(BLOB_SIZE_OFFSET);
+            Pointer.nativeValue(blobView, credential.getLong(BLOB_OFFSET));
+            blobView.read(0, copy, 0, blobSize);
+            storedBlob.write(0, copy, 0, blobSize);
+            storedSize = blobSize;
+            present = true;
+            return true;
+        }
+
+        @Override
+        public boolean CredWriteA(WindowsCredentialManager.CREDENTIAL credential, int flags) {
+            credential.write();
+            return CredWriteA(credential.getPointer(), flags);
+        }
+
+        @Override
+        public boolean CredReadA(Pointer targetName, int type, int flags, Pointer credentialPtr) {
+            if (!present) {
+                lastError = ERROR_NOT_FOUND;
+                return false;
+            }
+            storedBlob.read(0, copy, 0, storedSize);
+            returnedBlob.write(0, copy, 0, storedSize);
+            returned.setInt(BLOB_SIZE_OFFSET, storedSize);
+            credentialPtr.setPointer(0, returned);
+            return true;
+        }
+
+        @Override
+        public boolean CredReadA(String targetName, int type, int flags, PointerByReference credentialPtr) {
+            return CredReadA((Pointer) null, type, flags, credentialPtr.getPointer());
+        }
+
+        @Override
+        public boolean CredDeleteA(String targetName, int type, int flags) {
+            present = false;
+            return true;
+        }
+
+        @Override
+        public boolean CredEnumerateA(String filter, int flags, IntByReference count, PointerByReference credentials) {
+            lastError = ERROR_NOT_FOUND;
+            return false;
+        }
+
+        @Override
+        public boolean CredFree(Pointer credential) {
+            return true;
+        }
+
+        @Override
+        public int GetLastError() {
+            return lastError;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cipher suites across payload sizes, on the two paths that encrypt: whole values, as stored
+ * credentials are, and stream segments. Run on hosts with and without AES instructions to see where
+ * ChaCha20-Poly1305 wins; {@code -jvmArgsAppend -XX:-UseAES -XX:-UseAESIntrinsics} simulates the latter.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CipherSuiteBenchmark {
+
+    @Param({"AES_GCM", "CHACHA20_POLY1305"})
+    public CipherSuite suite;
+
+    // Payload size in bytes: a token, a small JSON document, a certificate chain, a large blob
+    @Param({"64", "1024", "16384", "262144"})
+    public int size;
+
+    private EncryptionUtil encryption;
+    private String value;
+    private String encryptedValue;
+    private byte[] segment;
+    private byte[] noncePrefix;
+    private byte[] encryptedSegment;
+
+    @Setup
+    public void setUp() throws KeyLockerException {
+        encryption = EncryptionUtil.forDataKey(EncryptionUtil.generateDataKey(), suite);
+
+        byte[] payload = new byte[size];
+        new Random(42).nextBytes(payload);
+        // Stored values are Base64 JSON text; trim it back to the payload size
+        value = Base64.getEncoder().encodeToString(payload).substring(0, size);
+        encryptedValue = encryption.encrypt(value);
+
+        segment = payload;
+        noncePrefix = EncryptionUtil.generateNoncePrefix();
+        encryptedSegment = encryption.encryptSegment(noncePrefix, 0, true, segment, 0, segment.length);
+    }
+
+    @Benchmark
+    public String encryptValue() throws KeyLockerException {
+        return encryption.encrypt(value);
+    }
+
+    @Benchmark
+    public String decryptValue() throws KeyLockerException {
+        return encryption.decrypt(encryptedValue);
+    }
+
+    @Benchmark
+    public byte[] encryptSegment() throws KeyLockerException {
+        return encryption.encryptSegment(noncePrefix, 0, true, segment, 0, segment.length);
+    }
+
+    @Benchmark
+    public byte[] decryptSegment() throws KeyLockerException {
+        return encryption.decryptSegment(noncePrefix, 0, true, encryptedSegment);
+    }
+}
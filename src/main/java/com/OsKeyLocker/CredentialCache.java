@@ -0,0 +1,84 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.util.GenerationTable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process cache of decrypted credential properties, kept coherent across processes by a shared
+ * generation table. An entry is only served while its identifier's generation still matches the one
+ * read before the entry was loaded, so any store or removal in any process invalidates it.
+ */
+class CredentialCache {
+
+    private record Entry(String encryptionKey, long generation, Map<String, Object> properties) {}
+
+    private final GenerationTable generations;
+    private final String namespace;
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a cache validated against a generation table
+     * @param generations Shared generation table
+     * @param namespace Application namespace prepended to identifiers in the table
+     */
+    CredentialCache(GenerationTable generations, String namespace) {
+        this.generations = generations;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Reads the current generation of an identifier; call before loading data that will be cached
+     * @param storageKey Identifier
+     * @return The identifier's current generation
+     */
+    long generation(String storageKey) {
+        return generations.get(namespace + storageKey);
+    }
+
+    /**
+     * Gets cached properties if they are still current
+     * @param encryptionKey Encryption key of the reader; entries loaded under another key are never served
+     * @param storageKey Identifier
+     * @return A copy of the cached properties, or null on a miss
+     */
+    Map<String, Object> get(String encryptionKey, String storageKey) {
+        Entry entry = entries.get(storageKey);
+        if (entry == null || !entry.encryptionKey().equals(encryptionKey)) {
+            return null;
+        }
+        if (entry.generation() != generation(storageKey)) {
+            entries.remove(storageKey, entry);
+            return null;
+        }
+        return new HashMap<>(entry.properties());
+    }
+
+    /**
+     * Caches properties loaded from storage
+     * @param encryptionKey Encryption key the properties were read with
+     * @param storageKey Identifier
+     * @param generation Generation read before the properties were loaded
+     * @param properties The loaded properties
+     */
+    void put(String encryptionKey, String storageKey, long generation, Map<String, Object> properties) {
+        entries.put(storageKey, new Entry(encryptionKey, generation, new HashMap<>(properties)));
+    }
+
+    /**
+     * Drops the local entry of an identifier
+     * @param storageKey Identifier
+     */
+    void remove(String storageKey) {
+        entries.remove(storageKey);
+    }
+
+    /**
+     * Drops every cached entry
+     */
+    void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,99 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads credentials into the read cache in the background, so the first read of each one after startup is
+ * served from memory. Every load is registered with the read coalescer before it is queued, so readers of an
+ * identifier that is still loading wait for it instead of reading storage themselves. Platform storage serves one
+ * operation at a time, so a single daemon thread loads the identifiers in the order given.
+ */
+@Slf4j
+class CredentialPrefetcher {
+
+    private final ReadCoalescer coalescer;
+    private volatile boolean closed;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a prefetcher whose loads are shared with concurrent readers
+     * @param coalescer Read coalescer the loads are registered with
+     */
+    CredentialPrefetcher(ReadCoalescer coalescer) {
+        this.coalescer = coalescer;
+    }
+
+    /**
+     * Queues identifiers for loading
+     * @param encryptionKey Encryption key to read with
+     * @param storageKeys Identifiers to load
+     * @return Future completed with the number of identifiers found and cached once every load has ended
+     */
+    CompletableFuture<Integer> prefetch(String encryptionKey, Collection<String> storageKeys) {
+        AtomicInteger loaded = new AtomicInteger();
+        List<CompletableFuture<Void>> ended = new ArrayList<>();
+
+        for (String storageKey : storageKeys) {
+            ReadCoalescer.Load load = coalescer.begin(encryptionKey, storageKey);
+            if (load == null) {
+                // Already loading; readers share that load instead of a second one
+                continue;
+            }
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            ended.add(done);
+
+            try {
+                executor.execute(() -> {
+                    try {
+                        if (closed) {
+                            coalescer.cancel(load);
+                        } else if (load(encryptionKey, storageKey, load)) {
+                            loaded.incrementAndGet();
+                        }
+                    } finally {
+                        done.complete(null);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                coalescer.cancel(load);
+                done.complete(null);
+            }
+        }
+
+        return CompletableFuture.allOf(ended.toArray(CompletableFuture[]::new)).thenApply(ignored -> loaded.get());
+    }
+
+    /**
+     * Stops loading; queued identifiers are released without being loaded
+     */
+    void close() {
+        closed = true;
+        for (Runnable queued : executor.shutdownNow()) {
+            // Each queued task releases its own registration, even when it is not loading anything any more
+            queued.run();
+        }
+    }
+
+    private static boolean load(String encryptionKey, String storageKey, ReadCoalescer.Load load) {
+        try {
+            return new KeyLockerStore().setEncryptionKey(encryptionKey).setStorageKey(storageKey).load(load);
+        } catch (KeyLockerException e) {
+            log.error("Failed to prefetch credential {}: {}", storageKey, e.getMessage());
+            return false;
+        }
+    }
+}
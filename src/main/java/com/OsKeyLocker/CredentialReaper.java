@@ -0,0 +1,96 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Periodically deletes credentials whose TTL has passed, together with their chunks. Expiry is read from
+ * the plaintext header of each credential's metadata, so the reaper needs no encryption key. It runs on a
+ * single minimum-priority daemon thread and pauses between batches to stay out of the way of foreground work.
+ */
+@Slf4j
+class CredentialReaper {
+
+    private static final int BATCH_SIZE = 32;
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    private final PlatformKeyLockerStorage storage;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-credential-reaper");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+
+    /**
+     * Starts reaping
+     * @param storage Platform storage
+     * @param intervalMillis Delay between sweeps
+     */
+    CredentialReaper(PlatformKeyLockerStorage storage, long intervalMillis) {
+        this.storage = storage;
+        scheduler.scheduleWithFixedDelay(this::sweep, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops reaping; a sweep in progress ends after its current credential
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void sweep() {
+        List<String> storageKeys;
+        try {
+            storageKeys = storage.listCredentials();
+        } catch (KeyLockerException e) {
+            log.error("Failed to list credentials for expiry: {}", e.getMessage());
+            return;
+        }
+
+        int removed = 0;
+        for (String storageKey : storageKeys) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+
+            try {
+                if (reap(storageKey) && ++removed % BATCH_SIZE == 0) {
+                    Thread.sleep(BATCH_PAUSE_MILLIS);
+                }
+            } catch (KeyLockerException e) {
+                log.error("Failed to remove expired credential {}: {}", storageKey, e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+
+        if (removed > 0) {
+            log.debug("Removed {} expired credential(s)", removed);
+        }
+    }
+
+    private boolean reap(String storageKey) throws KeyLockerException {
+        boolean removed;
+        ReentrantLock lock = KeyLockerStore.identifierLock(storageKey);
+        lock.lock();
+        try {
+            removed = storage.removeExpiredCredential(storageKey);
+        } finally {
+            lock.unlock();
+        }
+        if (removed) {
+            KeyLockerStore.markChanged(storageKey);
+            KeyLockerStore.notifyChanged(storageKey);
+        }
+        return removed;
+    }
+}
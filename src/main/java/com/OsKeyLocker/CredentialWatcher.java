@@ -0,0 +1,176 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.KeyLocker;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Notifies listeners when credentials change. Each watched identifier is checked by comparing its
+ * change stamp, a single small native read with no decryption, and listeners run only when the stamp moves.
+ * Writes made through this process are signalled right away instead of waiting for the next poll. When the
+ * storage keeps its entries as files, the directory is watched too, so writes by other processes are signalled
+ * as soon as the file system reports them; polling then only covers events the file system drops.
+ */
+@Slf4j
+class CredentialWatcher {
+
+    /**
+     * One listener registration. Its stamp is only touched on the watcher thread.
+     */
+    private final class Registration implements KeyLocker.Watch {
+        private final String storageKey;
+        private final KeyLocker.CredentialListener listener;
+        private long stamp;
+        private volatile ScheduledFuture<?> future;
+        private volatile boolean closed = false;
+
+        private Registration(String storageKey, KeyLocker.CredentialListener listener, long stamp) {
+            this.storageKey = storageKey;
+            this.listener = listener;
+            this.stamp = stamp;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+            ScheduledFuture<?> scheduled = future;
+            if (scheduled != null) {
+                scheduled.cancel(false);
+            }
+            Set<Registration> registrations = watches.get(storageKey);
+            if (registrations != null) {
+                registrations.remove(this);
+            }
+        }
+    }
+
+    private final ConcurrentHashMap<String, Set<Registration>> watches = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-credential-watcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Vault directories registered with the file watcher, started with the first watch over a file vault
+    private final Set<Path> watchedDirectories = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock watchServiceLock = new ReentrantLock();
+    private WatchService watchService;
+
+    /**
+     * Starts watching an identifier
+     * @param storageKey Identifier to watch
+     * @param listener Listener to notify on change
+     * @param intervalMillis How often to check for changes made by other processes
+     * @return Handle that stops the watch when closed
+     * @throws KeyLockerException if the initial version cannot be read
+     */
+    KeyLocker.Watch watch(String storageKey, KeyLocker.CredentialListener listener, long intervalMillis)
+            throws KeyLockerException {
+        Registration registration = new Registration(storageKey, listener, KeyLockerStore.changeStamp(storageKey));
+        KeyLockerStore.watchDirectory().ifPresent(this::watchDirectory);
+        // Registered before anything is scheduled, so change signals from now on reach it
+        watches.computeIfAbsent(storageKey, key -> ConcurrentHashMap.newKeySet()).add(registration);
+        registration.future = scheduler.scheduleWithFixedDelay(() -> check(registration),
+                intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        // A change between reading the initial stamp and registering sent no signal
+        scheduler.execute(() -> check(registration));
+        return registration;
+    }
+
+    /**
+     * Signals that this process changed an identifier, so its watchers are checked immediately
+     * @param storageKey Identifier that changed
+     */
+    void changed(String storageKey) {
+        Set<Registration> registrations = watches.get(storageKey);
+        if (registrations != null) {
+            for (Registration registration : registrations) {
+                scheduler.execute(() -> check(registration));
+            }
+        }
+    }
+
+    private void watchDirectory(Path directory) {
+        if (watchedDirectories.contains(directory)) {
+            return;
+        }
+
+        watchServiceLock.lock();
+        try {
+            if (!watchedDirectories.add(directory)) {
+                return;
+            }
+            if (watchService == null) {
+                watchService = directory.getFileSystem().newWatchService();
+                WatchService service = watchService;
+                Thread thread = new Thread(() -> watchFiles(service), "OsKeyLocker-vault-watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | RuntimeException e) {
+            // Polling still picks the changes up
+            log.warn("Failed to watch vault directory {}: {}", directory, e.getMessage());
+        } finally {
+            watchServiceLock.unlock();
+        }
+    }
+
+    private void watchFiles(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                // Entry file names are encoded and a store touches several files, so every watch is checked;
+                // a check is a stamp read and only listeners whose stamp moved are notified
+                key.pollEvents();
+                for (Set<Registration> registrations : watches.values()) {
+                    for (Registration registration : registrations) {
+                        scheduler.execute(() -> check(registration));
+                    }
+                }
+                key.reset();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            log.debug("Vault watcher stopped");
+        }
+    }
+
+    private void check(Registration registration) {
+        if (registration.closed) {
+            return;
+        }
+
+        long stamp;
+        try {
+            stamp = KeyLockerStore.changeStamp(registration.storageKey);
+        } catch (KeyLockerException | RuntimeException e) {
+            log.error("Failed to check {} for changes: {}", registration.storageKey, e.getMessage());
+            return;
+        }
+        if (stamp == registration.stamp) {
+            return;
+        }
+        registration.stamp = stamp;
+
+        try {
+            registration.listener.credentialChanged(registration.storageKey, stamp != 0L);
+        } catch (Throwable e) {
+            // Anything escaping here, errors included, would cancel the periodic check for good
+            log.error("Credential listener for {} failed", registration.storageKey, e);
+        }
+    }
+}
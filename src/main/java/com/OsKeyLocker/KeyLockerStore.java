@@ -1,14 +1,41 @@
 package com.OsKeyLocker;
 
 import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.KeyLocker;
 import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
-import com.OsKeyLocker.platform.windows.WindowsSecureStorage;
+import com.OsKeyLocker.platform.VaultReport;
+import com.OsKeyLocker.platform.tiered.TieredKeyLockerStorage;
+import com.OsKeyLocker.replication.ChangeLog;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.GenerationTable;
+import com.OsKeyLocker.util.JsonFieldScanner;
 import com.OsKeyLocker.util.PackageDetector;
+import com.OsKeyLocker.util.PropertyTypes;
+import com.OsKeyLocker.util.SecretBuffer;
 import org.json.JSONObject;
 
 
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Internal implementation of secure storage operations
@@ -18,20 +45,58 @@ public class KeyLockerStore {
 
     //Till now, we have not seen the necessary to use hardcoded the encryption key
     private static final String DEFAULT_ENCRYPTION_KEY = "OsSecureStore-DefaultKey-DoNotUse";
-    private static String encryptionKey = DEFAULT_ENCRYPTION_KEY;
-    private static String storageKey = "default";
+    private static final long DEFAULT_MAX_READ_WAIT_MILLIS = 2000;
+    private static final int MAX_SNAPSHOT_ATTEMPTS = 8;
+    // Identifiers the library stores for itself (rotation checkpoints, transaction journals) start with this
+    private static final String RESERVED_PREFIX = "__oskeylocker";
+    private String encryptionKey = DEFAULT_ENCRYPTION_KEY;
+    private String storageKey = "default";
     private Map<String, Object> properties;
+    // Keys last set on any instance, read by the static retrieve() kept from when the store held them statically
+    private static volatile String lastEncryptionKey = DEFAULT_ENCRYPTION_KEY;
+    private static volatile String lastStorageKey = "default";
     private static String appPackageName;
     private static PlatformKeyLockerStorage platformStorage;
+    private static volatile WriteCoalescer writeCoalescer;
+    private static final CredentialWatcher credentialWatcher = new CredentialWatcher();
+    private static GenerationTable generationTable;
+    // Rotations in progress, registered under both their old and their new key
+    private static final Map<String, KeyRotation> activeRotations = new ConcurrentHashMap<>();
+    // Striped locks serializing writes to an identifier with its re-encryption
+    private static final ReentrantLock[] IDENTIFIER_LOCKS = new ReentrantLock[64];
+    // Serializes enabling and disabling the optional features below. The locks here are j.u.c locks rather
+    // than monitors, so virtual threads waiting on them unmount instead of pinning a carrier.
+    private static final ReentrantLock CONFIGURATION_LOCK = new ReentrantLock();
+    private static volatile CredentialCache credentialCache;
+    private static ReadCoalescer readCoalescer;
+    private static CredentialPrefetcher credentialPrefetcher;
+    private static volatile LookupFilter lookupFilter;
+    private static CredentialReaper credentialReaper;
+    private static VaultCollector vaultCollector;
+    private static volatile ChangeLog changeLog;
+    // Encryption keys whose interrupted transactions have been replayed by this process
+    private static final Set<String> recoveredKeys = ConcurrentHashMap.newKeySet();
 
     static {
+        for (int i = 0; i < IDENTIFIER_LOCKS.length; i++) {
+            IDENTIFIER_LOCKS[i] = new ReentrantLock();
+        }
+
         try {
             platformStorage = KeyLockerStoreFactory.getSecureStorage();
             appPackageName = PackageDetector.detectCallingPackage();
-            ((WindowsSecureStorage) platformStorage).initialize(appPackageName, DEFAULT_ENCRYPTION_KEY);
+            platformStorage.initialize(appPackageName, DEFAULT_ENCRYPTION_KEY);
         } catch (KeyLockerException e) {
             System.err.println("Error initializing secure storage: " + e.getMessage());
         }
+
+        try {
+            // Every process bumps shared generations on writes, so caches in other processes stay coherent
+            generationTable = GenerationTable.openShared();
+            readCoalescer = new ReadCoalescer(generationTable, appPackageName + "/", DEFAULT_MAX_READ_WAIT_MILLIS);
+        } catch (KeyLockerException e) {
+            System.err.println("Error opening shared generation table, read caching unavailable: " + e.getMessage());
+        }
     }
 
     /**
@@ -49,13 +114,612 @@ public class KeyLockerStore {
         return platformStorage != null && platformStorage.isSupported();
     }
 
+    /**
+     * Enables write-behind mode: property writes to the same identifier within the window are merged
+     * and stored once. Pending writes are visible to reads and are stored by {@link #flush()}, by
+     * {@link #disableWriteCoalescing()} and at JVM shutdown.
+     * @param windowMillis How long the first write to an identifier waits for further writes
+     * @throws KeyLockerException if pending writes of a previous coalescer could not be flushed
+     */
+    public static void enableWriteCoalescing(long windowMillis) throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (windowMillis <= 0) {
+                throw new KeyLockerException("Coalescing window must be positive");
+            }
+
+            WriteCoalescer previous = writeCoalescer;
+            if (previous == null) {
+                Runtime.getRuntime().addShutdownHook(
+                        new Thread(KeyLockerStore::flushOnShutdown, "OsKeyLocker-shutdown-flush"));
+            }
+            writeCoalescer = new WriteCoalescer(windowMillis);
+
+            if (previous != null) {
+                previous.close();
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Flushes pending writes and returns to writing through on every store
+     * @throws KeyLockerException if pending writes could not be stored
+     */
+    public static void disableWriteCoalescing() throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            WriteCoalescer coalescer = writeCoalescer;
+            writeCoalescer = null;
+            if (coalescer != null) {
+                coalescer.close();
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stores every pending coalesced write. A no-op when write coalescing is disabled.
+     * @throws KeyLockerException if a pending write could not be stored
+     */
+    public static void flush() throws KeyLockerException {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            coalescer.flushAll();
+        }
+    }
+
+    /**
+     * Sets the cipher suite used for all subsequent writes of the application. Credentials record the suite
+     * they were written with, so existing ones stay readable.
+     * @param cipherSuite The cipher suite
+     * @throws KeyLockerException if storage is unavailable
+     */
+    public static void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException {
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        CONFIGURATION_LOCK.lock();
+        try {
+            platformStorage.setCipherSuite(cipherSuite);
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Enables the in-process read cache. Cached properties are validated against a generation counter
+     * shared by all processes of the user, so writes from any process invalidate them.
+     * @throws KeyLockerException if the shared generation table is unavailable
+     */
+    public static void enableReadCache() throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (generationTable == null) {
+                throw new KeyLockerException("Read cache unavailable: shared generation table could not be opened");
+            }
+            if (credentialCache == null) {
+                credentialCache = new CredentialCache(generationTable, appPackageName + "/");
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Disables the in-process read cache and drops its entries
+     */
+    public static void disableReadCache() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (credentialPrefetcher != null) {
+                credentialPrefetcher.close();
+                credentialPrefetcher = null;
+            }
+
+            CredentialCache cache = credentialCache;
+            credentialCache = null;
+            if (cache != null) {
+                cache.clear();
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Sets how long a read waits for a concurrent read of the same identifier and key to share its result,
+     * before reading storage itself
+     * @param maxWaitMillis Longest wait; 0 lets every read go to storage
+     * @throws KeyLockerException if the wait is negative or read coalescing is unavailable
+     */
+    public static void setMaxReadWait(long maxWaitMillis) throws KeyLockerException {
+        if (maxWaitMillis < 0) {
+            throw new KeyLockerException("Maximum read wait must not be negative");
+        }
+        if (readCoalescer == null) {
+            throw new KeyLockerException("Read coalescing unavailable: shared generation table could not be opened");
+        }
+        readCoalescer.setMaxWait(maxWaitMillis);
+    }
+
+    /**
+     * Loads credentials into the read cache on a background thread, enabling the cache if needed.
+     * Reads of an identifier that is still loading wait for the load instead of reading storage.
+     * @param encryptionKey Encryption key to read with
+     * @param storageKeys Identifiers to load
+     * @return Future completed with the number of identifiers found and cached
+     * @throws KeyLockerException if the read cache is unavailable
+     */
+    public static CompletableFuture<Integer> prefetch(String encryptionKey, Collection<String> storageKeys)
+            throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (platformStorage == null) {
+                throw new KeyLockerException("Secure storage not initialized");
+            }
+
+            enableReadCache();
+            if (credentialPrefetcher == null) {
+                credentialPrefetcher = new CredentialPrefetcher(readCoalescer);
+            }
+            return credentialPrefetcher.prefetch(encryptionKey != null ? encryptionKey : DEFAULT_ENCRYPTION_KEY,
+                    storageKeys);
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Enables answering lookups of identifiers that are not stored from memory. The filter is built from one
+     * enumeration of the stored identifiers and validated against the shared generation table, so stores from
+     * any process are seen immediately.
+     * @throws KeyLockerException if the shared generation table is unavailable or the identifiers cannot be listed
+     */
+    public static void enableLookupFilter() throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (generationTable == null) {
+                throw new KeyLockerException("Lookup filter unavailable: shared generation table could not be opened");
+            }
+            if (platformStorage == null) {
+                throw new KeyLockerException("Secure storage not initialized");
+            }
+            if (lookupFilter == null) {
+                lookupFilter = new LookupFilter(generationTable, appPackageName + "/", platformStorage);
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Disables the lookup filter; every lookup goes to platform storage again
+     */
+    public static void disableLookupFilter() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            LookupFilter filter = lookupFilter;
+            lookupFilter = null;
+            if (filter != null) {
+                filter.clear();
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Starts a background reaper that deletes expired credentials and their chunks, replacing any running one
+     * @param intervalMillis Delay between sweeps
+     * @throws KeyLockerException if storage is unavailable or the interval is not positive
+     */
+    public static void startReaper(long intervalMillis) throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (platformStorage == null) {
+                throw new KeyLockerException("Secure storage not initialized");
+            }
+            if (intervalMillis <= 0) {
+                throw new KeyLockerException("Reaper interval must be positive");
+            }
+
+            stopReaper();
+            credentialReaper = new CredentialReaper(platformStorage, intervalMillis);
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stops the background reaper, if running
+     */
+    public static void stopReaper() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (credentialReaper != null) {
+                credentialReaper.close();
+                credentialReaper = null;
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Gets the hit counters of each storage tier, when the storage is tiered
+     * @return Metrics of every tier, fastest first, or an empty list if the storage is not tiered
+     */
+    public static List<TieredKeyLockerStorage.TierMetrics> tierMetrics() {
+        if (platformStorage instanceof TieredKeyLockerStorage tiered) {
+            return tiered.getMetrics();
+        }
+        return List.of();
+    }
+
+    /**
+     * Scans the application's raw entries and reports credentials, chunks and orphaned entries, deleting nothing
+     * @param encryptionKey Key used to read chunk counts from metadata; credentials under other keys are kept whole
+     * @return The scan report
+     * @throws KeyLockerException if storage is unavailable or the scan fails
+     */
+    public static VaultReport scanVault(String encryptionKey) throws KeyLockerException {
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+        return platformStorage.scanVault(encryptionKey, 0, Long.MAX_VALUE);
+    }
+
+    /**
+     * Starts a background job deleting orphaned raw entries, replacing any running one
+     * @param encryptionKey Key used to read chunk counts from metadata
+     * @param intervalMillis Delay between sweeps, and how long an entry must stay an orphan before it is deleted
+     * @throws KeyLockerException if storage is unavailable or the interval is not positive
+     */
+    public static void startVaultCollector(String encryptionKey, long intervalMillis)
+            throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (platformStorage == null) {
+                throw new KeyLockerException("Secure storage not initialized");
+            }
+            if (intervalMillis <= 0) {
+                throw new KeyLockerException("Collector interval must be positive");
+            }
+
+            stopVaultCollector();
+            vaultCollector = new VaultCollector(platformStorage, encryptionKey, intervalMillis);
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stops the background orphan collector, if running
+     */
+    public static void stopVaultCollector() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (vaultCollector != null) {
+                vaultCollector.close();
+                vaultCollector = null;
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Gets the report of the orphan collector's last sweep
+     * @return The report, or empty if the collector is not running or has not completed a sweep
+     */
+    public static Optional<VaultReport> lastVaultReport() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            return Optional.ofNullable(vaultCollector == null ? null : vaultCollector.getLastReport());
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Starts recording every store and removal of this application, and every credential re-encrypted by a key
+     * rotation, to a change log, replacing any log already enabled. Several processes may share one log file.
+     * @param logFile Change log file; created if missing
+     * @param logKey Key the records are encrypted with
+     * @throws KeyLockerException if storage is unavailable or the log cannot be opened
+     */
+    public static void enableChangeLog(Path logFile, String logKey) throws KeyLockerException {
+        CONFIGURATION_LOCK.lock();
+        try {
+            if (platformStorage == null) {
+                throw new KeyLockerException("Secure storage not initialized");
+            }
+
+            ChangeLog log = ChangeLog.open(logFile, logKey);
+            disableChangeLog();
+            changeLog = log;
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Stops recording changes, if a change log is enabled
+     */
+    public static void disableChangeLog() {
+        CONFIGURATION_LOCK.lock();
+        try {
+            ChangeLog log = changeLog;
+            if (log != null) {
+                changeLog = null;
+                try {
+                    log.close();
+                } catch (IOException e) {
+                    System.err.println("Failed to close change log: " + e.getMessage());
+                }
+            }
+        } finally {
+            CONFIGURATION_LOCK.unlock();
+        }
+    }
+
+    /**
+     * Re-encrypts every credential of the application from one key to another. While the rotation runs,
+     * operations in this process using either key read with both keys and write with the new key.
+     * If the rotation fails it stays registered, so reads keep working; running it again resumes from its checkpoint.
+     * @param oldKey The key credentials are currently encrypted with
+     * @param newKey The key to re-encrypt them with
+     * @param parallelism Number of worker threads
+     * @return Number of credentials re-encrypted
+     * @throws KeyLockerException if any credential could not be re-encrypted
+     */
+    public static int rotateKey(String oldKey, String newKey, int parallelism) throws KeyLockerException {
+        if (oldKey == null || newKey == null || oldKey.equals(newKey)) {
+            throw new KeyLockerException("Key rotation needs two different keys");
+        }
+        if (parallelism <= 0) {
+            throw new KeyLockerException("Parallelism must be positive");
+        }
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        // Pending writes are stored first so none are written under the old key after their identifier was rotated
+        flush();
+
+        KeyRotation rotation = new KeyRotation(oldKey, newKey);
+        activeRotations.put(oldKey, rotation);
+        activeRotations.put(newKey, rotation);
+
+        int rotated = rotation.run(platformStorage, parallelism);
+
+        activeRotations.remove(oldKey, rotation);
+        activeRotations.remove(newKey, rotation);
+        return rotated;
+    }
+
+    /**
+     * Reads several identifiers as they were stored at one instant. Each identifier's shared generation is read
+     * before its credential and checked again once all are read; identifiers that changed in between, or that a
+     * writer in any process or a transaction of this process is still changing, are read again until a pass finds
+     * none changed.
+     * Writers are not blocked, unless writers of this process keep the identifiers changing through every
+     * attempt; then one last round holds them off. Pending coalesced writes to the identifiers are stored first.
+     * @param encryptionKey Encryption key of the credentials
+     * @param storageKeys Identifiers to read
+     * @return Properties by identifier; identifiers with nothing stored are left out
+     * @throws KeyLockerException if a read fails, generations are unavailable, or the identifiers kept changing
+     */
+    public static Map<String, Map<String, Object>> readSnapshot(String encryptionKey, Collection<String> storageKeys)
+            throws KeyLockerException {
+        if (generationTable == null) {
+            throw new KeyLockerException("Snapshot reads unavailable: shared generation table could not be opened");
+        }
+
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            for (String storageKey : storageKeys) {
+                coalescer.flush(storageKey);
+            }
+        }
+
+        KeyLockerStore reader = new KeyLockerStore().setEncryptionKey(encryptionKey);
+        Map<String, Map<String, Object>> snapshot = readSnapshot(reader, storageKeys);
+        if (snapshot == null) {
+            // Only writers in other processes can change the identifiers now
+            snapshot = withIdentifierLocks(storageKeys, () -> readSnapshot(reader, storageKeys));
+        }
+        if (snapshot == null) {
+            throw new KeyLockerException("No consistent snapshot after " + MAX_SNAPSHOT_ATTEMPTS
+                    + " attempts; identifiers kept changing: " + storageKeys);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Reads identifiers until one pass finds none of them changed
+     * @param reader Store set to the snapshot's encryption key
+     * @param storageKeys Identifiers to read
+     * @return Properties by identifier, or null if the identifiers kept changing
+     * @throws KeyLockerException if a read fails or is interrupted
+     */
+    private static Map<String, Map<String, Object>> readSnapshot(KeyLockerStore reader, Collection<String> storageKeys)
+            throws KeyLockerException {
+        Map<String, Long> generations = new HashMap<>();
+        Map<String, Optional<Map<String, Object>>> values = new LinkedHashMap<>();
+        Set<String> stale = new LinkedHashSet<>(storageKeys);
+
+        for (int attempt = 0; attempt < MAX_SNAPSHOT_ATTEMPTS; attempt++) {
+            for (String storageKey : stale) {
+                // Read before the credential, so a write during the read shows up as a changed generation
+                generations.put(storageKey, generationTable.get(generationName(storageKey)));
+                values.put(storageKey, reader.setStorageKey(storageKey).retrieveDurable());
+            }
+
+            stale.clear();
+            for (String storageKey : storageKeys) {
+                String name = generationName(storageKey);
+                // Writers bump the generation before they stop counting as in progress, so check in this order
+                if (generationTable.isWriting(name)
+                        || generationTable.get(name) != generations.get(storageKey)
+                        || TransactionJournal.isApplying(storageKey)) {
+                    stale.add(storageKey);
+                }
+            }
+            if (stale.isEmpty()) {
+                Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+                for (Map.Entry<String, Optional<Map<String, Object>>> value : values.entrySet()) {
+                    if (value.getValue().isPresent() && !isExpired(value.getValue().get())) {
+                        snapshot.put(value.getKey(), PropertyTypes.decode(value.getValue().get()));
+                    }
+                }
+                return snapshot;
+            }
+
+            // Back off so a transaction being applied can finish: 1, 2, 4 ... 32 ms
+            try {
+                Thread.sleep(1L << Math.min(attempt, 5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KeyLockerException("Snapshot read interrupted");
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Stores and removes credentials of several identifiers atomically. The staged changes are first stored
+     * as one journal credential; once it is stored the transaction is committed, and if the process stops
+     * before every target was written the journal is replayed by {@link #recoverTransactions(String)}.
+     * @param encryptionKey Encryption key to store with
+     * @param writes Properties to store, by identifier
+     * @param deletes Identifiers to remove
+     * @throws KeyLockerException if the transaction is empty, touches an identifier twice, or cannot be committed or applied
+     */
+    public static void commitTransaction(String encryptionKey, Map<String, Map<String, Object>> writes, Set<String> deletes)
+            throws KeyLockerException {
+        if (writes.isEmpty() && deletes.isEmpty()) {
+            throw new KeyLockerException("Transaction has no changes");
+        }
+        for (String storageKey : deletes) {
+            if (writes.containsKey(storageKey)) {
+                throw new KeyLockerException("Transaction both writes and deletes " + storageKey);
+            }
+        }
+        for (Map.Entry<String, Map<String, Object>> write : writes.entrySet()) {
+            if (write.getValue() == null || write.getValue().isEmpty()) {
+                throw new KeyLockerException("No properties to store for " + write.getKey());
+            }
+        }
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        String key = encryptionKey != null ? encryptionKey : DEFAULT_ENCRYPTION_KEY;
+        if (!recoveredKeys.contains(key)) {
+            recoverTransactions(key);
+        }
+
+        // Pending coalesced writes to the targets were made first, so they are stored first
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            for (String storageKey : writes.keySet()) {
+                coalescer.flush(storageKey);
+            }
+            for (String storageKey : deletes) {
+                coalescer.discard(storageKey);
+            }
+        }
+
+        TransactionJournal.commit(key, writes, deletes);
+    }
+
+    /**
+     * Replays transactions under an encryption key that were committed but not completely applied,
+     * e.g. because the process stopped. Runs once per key before the first transaction of the process.
+     * @param encryptionKey Encryption key the transactions were committed with
+     * @return Number of transactions replayed
+     * @throws KeyLockerException if the journals cannot be listed or a replay fails
+     */
+    public static int recoverTransactions(String encryptionKey) throws KeyLockerException {
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        String key = encryptionKey != null ? encryptionKey : DEFAULT_ENCRYPTION_KEY;
+        int replayed = TransactionJournal.recover(key, platformStorage);
+        recoveredKeys.add(key);
+        return replayed;
+    }
+
+    /**
+     * Watches an identifier for changes made by this or any other process
+     * @param storageKey Identifier to watch
+     * @param listener Listener notified when the credential is stored or removed
+     * @param intervalMillis How often to check for changes made by other processes
+     * @return Handle that stops the watch when closed
+     * @throws KeyLockerException if the watch cannot be started
+     */
+    public static KeyLocker.Watch watch(String storageKey, KeyLocker.CredentialListener listener, long intervalMillis)
+            throws KeyLockerException {
+        if (intervalMillis <= 0) {
+            throw new KeyLockerException("Watch interval must be positive");
+        }
+        return credentialWatcher.watch(storageKey, listener, intervalMillis);
+    }
+
+    /**
+     * Lists the identifiers stored by the application, without decrypting anything. Pending coalesced writes
+     * are stored first; identifiers the library keeps for itself are left out.
+     * @return The stored identifiers
+     * @throws KeyLockerException if storage is unavailable or cannot be enumerated
+     */
+    public static List<String> listIdentifiers() throws KeyLockerException {
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        flush();
+        List<String> storageKeys = new ArrayList<>(platformStorage.listCredentials());
+        storageKeys.removeIf(storageKey -> storageKey.startsWith(RESERVED_PREFIX));
+        return storageKeys;
+    }
+
+    /**
+     * Gets the version fingerprint of an identifier, without decrypting it
+     * @param storageKey Identifier to check
+     * @return Version fingerprint, or 0 if nothing is stored
+     * @throws KeyLockerException if the check fails
+     */
+    static long changeStamp(String storageKey) throws KeyLockerException {
+        if (platformStorage == null) {
+            throw new KeyLockerException("Secure storage not initialized");
+        }
+
+        return platformStorage.getChangeStamp(storageKey);
+    }
+
+    /**
+     * Gets the directory whose file changes signal credential changes by other processes
+     * @return Vault directory of the current storage, or empty if it keeps no files or is not initialized
+     */
+    static Optional<Path> watchDirectory() {
+        PlatformKeyLockerStorage storage = platformStorage;
+        return storage == null ? Optional.empty() : storage.getWatchDirectory();
+    }
+
     /**
      * Sets the encryption key
      * @param key The encryption key to use
      * @return This instance for chaining
      */
     public KeyLockerStore setEncryptionKey(String key) {
-        this.encryptionKey = key;
+        this.encryptionKey = key != null ? key : DEFAULT_ENCRYPTION_KEY;
+        lastEncryptionKey = this.encryptionKey;
         return this;
     }
 
@@ -66,6 +730,7 @@ public class KeyLockerStore {
      */
     public KeyLockerStore setStorageKey(String key) {
         this.storageKey = key;
+        lastStorageKey = key;
         return this;
     }
 
@@ -89,68 +754,422 @@ public class KeyLockerStore {
             throw new KeyLockerException("No properties to store");
         }
 
-        if (platformStorage == null) {
-            throw new KeyLockerException("Secure storage not initialized");
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            coalescer.write(encryptionKey, storageKey, properties);
+            return this;
+        }
+
+        persist(encryptionKey, storageKey, properties);
+
+        return this;
+    }
+
+    /**
+     * Writes properties straight to platform storage, bypassing write coalescing
+     * @param encryptionKey Encryption key to store with
+     * @param storageKey Target identifier
+     * @param properties Properties to store
+     * @throws KeyLockerException if storage fails
+     */
+    static void persist(String encryptionKey, String storageKey, Map<String, Object> properties)
+            throws KeyLockerException {
+        ReentrantLock lock = identifierLock(storageKey);
+        lock.lock();
+        try {
+            write(encryptionKey, storageKey, properties);
+        } finally {
+            lock.unlock();
         }
+        credentialWatcher.changed(storageKey);
+    }
 
-        if (platformStorage instanceof WindowsSecureStorage) {
-            // Update encryption key if needed
-            if (!encryptionKey.equals(DEFAULT_ENCRYPTION_KEY)) {
-                ((WindowsSecureStorage) platformStorage).setEncryptionKey(encryptionKey);
+    /**
+     * Writes properties to platform storage; the caller holds the identifier's lock
+     * @param encryptionKey Encryption key to store with
+     * @param storageKey Target identifier
+     * @param properties Properties to store
+     * @throws KeyLockerException if storage fails
+     */
+    static void write(String encryptionKey, String storageKey, Map<String, Object> properties)
+            throws KeyLockerException {
+        // Convert properties to JSONObject
+        JSONObject data = new JSONObject();
+        for (Map.Entry<String, Object> entry : properties.entrySet()) {
+            data.put(entry.getKey(), entry.getValue());
+        }
+        long expiresAt = expiryOf(properties);
+
+        // Store the data
+        recordStore(storageKey);
+        beginChange(storageKey);
+        KeyRotation rotation = activeRotations.get(encryptionKey);
+        try {
+            withStorage(rotation, encryptionKey, storage -> {
+                storage.storeJsonCredential(storageKey, data, expiresAt);
+                return null;
+            });
+
+            ChangeLog log = changeLog;
+            if (log != null) {
+                try {
+                    log.recordStore(appPackageName, storageKey, effectiveKey(rotation, encryptionKey), data, expiresAt);
+                } catch (KeyLockerException e) {
+                    throw new KeyLockerException("Credential " + storageKey
+                            + " was stored but its change log record failed: " + e.getMessage(), e);
+                }
             }
+        } finally {
+            endChange(storageKey);
+        }
+    }
 
-            // Convert properties to JSONObject
-            JSONObject data = new JSONObject();
-            for (Map.Entry<String, Object> entry : properties.entrySet()) {
-                data.put(entry.getKey(), entry.getValue());
+    /**
+     * Removes a credential from platform storage; the caller holds the identifier's lock
+     * @param encryptionKey Encryption key of the caller
+     * @param storageKey Identifier to remove
+     * @throws KeyLockerException if removal fails
+     */
+    static void erase(String encryptionKey, String storageKey) throws KeyLockerException {
+        beginChange(storageKey);
+        KeyRotation rotation = activeRotations.get(encryptionKey);
+        try {
+            withStorage(rotation, encryptionKey, storage -> {
+                storage.removeCredential(storageKey);
+                return null;
+            });
+
+            ChangeLog log = changeLog;
+            if (log != null) {
+                try {
+                    log.recordRemove(appPackageName, storageKey, effectiveKey(rotation, encryptionKey));
+                } catch (KeyLockerException e) {
+                    throw new KeyLockerException("Credential " + storageKey
+                            + " was removed but its change log record failed: " + e.getMessage(), e);
+                }
             }
+        } finally {
+            endChange(storageKey);
+        }
+    }
 
-            // Store the data
-            ((WindowsSecureStorage) platformStorage).storeJsonCredential(storageKey, data);
-        } else {
-            throw new KeyLockerException("Platform not supported");
+    /**
+     * Re-encrypts a credential from one key to another and records it in the change log; the caller holds
+     * the identifier's lock
+     * @param storageKey Identifier to re-encrypt
+     * @param oldKey Key it is under
+     * @param newKey Key to re-encrypt it with
+     * @return true if it was re-encrypted, false if it was not under the old key or is not stored
+     * @throws KeyLockerException if re-encryption fails
+     */
+    static boolean reencrypt(String storageKey, String oldKey, String newKey) throws KeyLockerException {
+        beginChange(storageKey);
+        try {
+            boolean reencrypted = withStorage(null, newKey,
+                    storage -> storage.reencryptCredential(storageKey, oldKey, newKey));
+            if (reencrypted) {
+                logReencrypt(storageKey, oldKey, newKey);
+            }
+            return reencrypted;
+        } finally {
+            endChange(storageKey);
         }
+    }
 
-        return this;
+    /**
+     * Records a credential re-encrypted by a key rotation in the change log, if one is enabled;
+     * the caller holds the identifier's lock
+     * @param storageKey Re-encrypted identifier
+     * @param oldKey Key it was under
+     * @param newKey Key it is under now
+     * @throws KeyLockerException if the record cannot be appended
+     */
+    private static void logReencrypt(String storageKey, String oldKey, String newKey) throws KeyLockerException {
+        ChangeLog log = changeLog;
+        if (log != null) {
+            log.recordReencrypt(appPackageName, storageKey, oldKey, newKey);
+        }
     }
 
     /**
-     * Retrieves stored properties
-     * @return Map of stored properties
+     * Retrieves the properties stored under the encryption and storage keys last set on any instance.
+     * Properties written with a type come back as that type (Long, Boolean, byte[], Instant); others as read from JSON.
+     * @return Map of stored properties, or null if nothing is stored
      * @throws KeyLockerException if retrieval fails
+     * @deprecated The keys are shared by every thread and instance; use {@link #find()} on an instance instead
      */
+    @Deprecated
     public static Map<String, Object> retrieve() throws KeyLockerException {
-        if (platformStorage == null) {
-            throw new KeyLockerException("Secure storage not initialized");
+        KeyLockerStore store = new KeyLockerStore();
+        store.encryptionKey = lastEncryptionKey;
+        store.storageKey = lastStorageKey;
+        return store.find().orElse(null);
+    }
+
+    /**
+     * Retrieves stored properties, telling a missing credential apart from an empty one.
+     * Properties written with a type come back as that type (Long, Boolean, byte[], Instant); others as read from JSON.
+     * @return Map of stored properties, or empty if nothing is stored
+     * @throws KeyLockerException if retrieval fails
+     */
+    public Optional<Map<String, Object>> find() throws KeyLockerException {
+        Optional<Map<String, Object>> stored = retrieveStored();
+        // Cached and pending properties carry their own expiry
+        if (stored.isEmpty() || isExpired(stored.get())) {
+            return Optional.empty();
         }
+        return Optional.of(PropertyTypes.decode(stored.get()));
+    }
 
-        if (platformStorage instanceof WindowsSecureStorage) {
-            // Update encryption key if needed
-            if (!encryptionKey.equals(DEFAULT_ENCRYPTION_KEY)) {
-                ((WindowsSecureStorage) platformStorage).setEncryptionKey(encryptionKey);
+    /**
+     * Retrieves properties as stored, including the recorded types
+     * @return Map of stored properties, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    private Optional<Map<String, Object>> retrieveStored() throws KeyLockerException {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            Map<String, Object> pendingProperties = coalescer.pendingProperties(encryptionKey, storageKey);
+            if (pendingProperties != null) {
+                return Optional.of(pendingProperties);
             }
+        }
+        return retrieveDurable();
+    }
 
-            try {
-                JSONObject data = ((WindowsSecureStorage) platformStorage).retrieveJsonCredential(storageKey);
-                if (data == null) {
-                    return null;
+    /**
+     * Retrieves properties as stored in platform storage, ignoring pending coalesced writes
+     * @return Map of stored properties, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    private Optional<Map<String, Object>> retrieveDurable() throws KeyLockerException {
+        CredentialCache cache = credentialCache;
+        if (cache != null) {
+            Map<String, Object> cached = cache.get(encryptionKey, storageKey);
+            if (cached != null) {
+                return Optional.of(cached);
+            }
+        }
+
+        // Concurrent misses of the same identifier and key share one load
+        ReadCoalescer reads = readCoalescer;
+        if (reads != null) {
+            return reads.read(encryptionKey, storageKey, () -> loadStored(cache));
+        }
+        return loadStored(cache);
+    }
+
+    /**
+     * Runs a load registered with the read coalescer for the current storage key, filling the read cache;
+     * used by background prefetching
+     * @param load The registered load
+     * @return true if the credential was found
+     * @throws KeyLockerException if retrieval fails
+     */
+    boolean load(ReadCoalescer.Load load) throws KeyLockerException {
+        CredentialCache cache = credentialCache;
+        return readCoalescer.finish(load, () -> loadStored(cache)).isPresent();
+    }
+
+    /**
+     * Reads properties from platform storage, caching them when a read cache is given
+     * @param cache Read cache to fill, or null
+     * @return Map of stored properties, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    private Optional<Map<String, Object>> loadStored(CredentialCache cache) throws KeyLockerException {
+        // Read before loading, so a concurrent write leaves the entry stale rather than wrong
+        long generation = cache != null ? cache.generation(storageKey) : 0;
+
+        Optional<JSONObject> data;
+        try {
+            data = readStored(storage -> storage.retrieveJsonCredential(storageKey));
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to retrieve properties", e);
+        }
+        if (data.isEmpty()) {
+            return Optional.empty();
+        }
+
+        // Convert JSONObject to Map
+        Map<String, Object> result = new HashMap<>();
+        for (String key : data.get().keySet()) {
+            result.put(key, data.get().get(key));
+        }
+        if (cache != null) {
+            cache.put(encryptionKey, storageKey, generation, result);
+        }
+        return Optional.of(result);
+    }
+
+    /**
+     * Retrieves a single stored property into an off-heap buffer that the caller wipes after use. The value is
+     * always decrypted from storage, never taken from the read cache or a pending coalesced write, which hold it
+     * as a String on the heap; a pending write of the current storage key is stored first.
+     * @param property The property to retrieve
+     * @return The property value, or null if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    public SecretBuffer retrieveSecret(String property) throws KeyLockerException {
+        flushPending();
+        return retrieveStoredField(property, JsonFieldScanner::secretOf);
+    }
+
+    /**
+     * Decodes a single stored property without building the others. Pending coalesced writes and
+     * cached properties are served from memory; otherwise the decoder reads straight from the decrypted payload.
+     * @param property The property to retrieve
+     * @param decoder Decoder applied to the property's raw JSON value token, or to null if it is absent
+     * @param <T> Decoded value type
+     * @return The decoded value, or null if the property or credential is not found
+     * @throws KeyLockerException if retrieval or decoding fails
+     */
+    public <T> T retrieveField(String property, FieldDecoder<T> decoder) throws KeyLockerException {
+        Optional<Map<String, Object>> local = localProperties();
+        if (local != null) {
+            if (local.isEmpty() || isExpired(local.get())) {
+                return null;
+            }
+            Object value = local.get().get(property);
+            if (value == null) {
+                return decoder.decode(null);
+            }
+            // Same token the stored JSON holds
+            return decoder.decode(ByteBuffer.wrap(JSONObject.valueToString(value).getBytes(StandardCharsets.UTF_8)));
+        }
+        return retrieveStoredField(property, decoder);
+    }
+
+    /**
+     * Decodes a single property straight from the decrypted payload in platform storage
+     * @param property The property to retrieve
+     * @param decoder Decoder applied to the property's raw JSON value token, or to null if it is absent
+     * @param <T> Decoded value type
+     * @return The decoded value, or null if the property or credential is not found
+     * @throws KeyLockerException if retrieval or decoding fails
+     */
+    private <T> T retrieveStoredField(String property, FieldDecoder<T> decoder) throws KeyLockerException {
+        // A missing property also reads as null, so only definite misses are answered here, none recorded
+        LookupFilter filter = lookupFilter;
+        if (filter != null && filter.isKnownAbsent(storageKey)) {
+            return null;
+        }
+        return withStorage(encryptionKey, storage -> storage.retrieveField(storageKey, property, decoder)).orElse(null);
+    }
+
+    /**
+     * Gets the properties of the current storage key that are available without reading storage:
+     * a pending coalesced write, a current read cache entry, or the result of a load already in flight
+     * @return The stored-form properties, empty if the credential is not stored, or null if they must be read from storage
+     * @throws KeyLockerException if the load in flight failed
+     */
+    private Optional<Map<String, Object>> localProperties() throws KeyLockerException {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            Map<String, Object> pendingProperties = coalescer.pendingProperties(encryptionKey, storageKey);
+            if (pendingProperties != null) {
+                return Optional.of(pendingProperties);
+            }
+        }
+
+        CredentialCache cache = credentialCache;
+        Map<String, Object> cached = cache != null ? cache.get(encryptionKey, storageKey) : null;
+        if (cached != null) {
+            return Optional.of(cached);
+        }
+
+        ReadCoalescer reads = readCoalescer;
+        return reads != null ? reads.join(encryptionKey, storageKey) : null;
+    }
+
+    private static long expiryOf(Map<String, Object> properties) {
+        return properties.get(PropertyTypes.EXPIRES_FIELD) instanceof Number expiresAt ? expiresAt.longValue() : 0L;
+    }
+
+    private static boolean isExpired(Map<String, Object> properties) {
+        long expiresAt = expiryOf(properties);
+        return expiresAt != 0 && expiresAt <= System.currentTimeMillis();
+    }
+
+    /**
+     * Opens a stream that stores a large value under the current storage key in constant memory
+     * @return Output stream; closing it commits the value
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    public OutputStream openOutputStream() throws KeyLockerException {
+        return openOutputStream(0L);
+    }
+
+    /**
+     * Opens a stream that stores a large value under the current storage key in constant memory
+     * @param expiresAt Time after which the value reads as absent, in epoch milliseconds, or 0 for none
+     * @return Output stream; closing it commits the value
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    public OutputStream openOutputStream(long expiresAt) throws KeyLockerException {
+        flushPending();
+
+        // The stream keeps writing to this identifier if the storage key is changed while it is open
+        String key = storageKey;
+        recordStore(key);
+        beginChange(key);
+        OutputStream out;
+        try {
+            out = withStorage(encryptionKey, storage -> storage.openOutputStream(key, expiresAt));
+        } catch (KeyLockerException | RuntimeException e) {
+            endChange(key);
+            throw e;
+        }
+        return new FilterOutputStream(out) {
+            private boolean closed;
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                // Keeps the write marked in progress, so collectors in other processes keep its segments
+                if (generationTable != null) {
+                    generationTable.renewWrite(generationName(key));
                 }
+            }
 
-                // Convert JSONObject to Map
-                Map<String, Object> result = new HashMap<>();
-                for (String key : data.keySet()) {
-                    result.put(key, data.get(key));
+            @Override
+            public void close() throws IOException {
+                if (closed) {
+                    return;
                 }
-                return result;
-            } catch (Exception e) {
-                if (e.getMessage().contains("not found")) {
-                    return null;
+                closed = true;
+                try {
+                    super.close();
+                } finally {
+                    endChange(key);
+                    credentialWatcher.changed(key);
                 }
-                throw new KeyLockerException("Failed to retrieve properties", e);
             }
-        } else {
-            throw new KeyLockerException("Platform not supported");
-        }
+        };
+    }
+
+    /**
+     * Opens a stream over a value stored with openOutputStream
+     * @return Input stream over the value, or null if not found
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    public InputStream openInputStream() throws KeyLockerException {
+        flushPending();
+
+        return readStored(storage -> storage.openInputStream(storageKey)).orElse(null);
+    }
+
+    /**
+     * Reads part of the value stored under the current storage key, fetching only the chunks that cover the range
+     * @param offset Offset of the first byte to read
+     * @param length Maximum number of bytes to read
+     * @return The bytes in the range, or null if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    public byte[] readRange(long offset, int length) throws KeyLockerException {
+        flushPending();
+
+        return readStored(storage -> storage.readRange(storageKey, offset, length)).orElse(null);
     }
 
     /**
@@ -159,15 +1178,19 @@ public class KeyLockerStore {
      * @throws KeyLockerException if removal fails
      */
     public KeyLockerStore remove() throws KeyLockerException {
-        if (platformStorage == null) {
-            throw new KeyLockerException("Secure storage not initialized");
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            coalescer.discard(storageKey);
         }
 
-        if (platformStorage instanceof WindowsSecureStorage) {
-            ((WindowsSecureStorage) platformStorage).removeCredential(storageKey);
-        } else {
-            throw new KeyLockerException("Platform not supported");
+        ReentrantLock lock = identifierLock(storageKey);
+        lock.lock();
+        try {
+            erase(encryptionKey, storageKey);
+        } finally {
+            lock.unlock();
         }
+        credentialWatcher.changed(storageKey);
 
         return this;
     }
@@ -178,14 +1201,236 @@ public class KeyLockerStore {
      * @throws KeyLockerException if the check fails
      */
     public boolean exists() throws KeyLockerException {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            Map<String, Object> pendingProperties = coalescer.pendingProperties(encryptionKey, storageKey);
+            if (pendingProperties != null) {
+                return !isExpired(pendingProperties);
+            }
+        }
+
+        return readStored(storage -> storage.credentialExists(storageKey) ? Optional.of(Boolean.TRUE) : Optional.empty())
+                .isPresent();
+    }
+
+    /**
+     * Runs a lookup of the current storage key, answering it from the lookup filter when the identifier is
+     * known not to be stored, and recording it there when storage has nothing
+     * @param operation Lookup returning empty if nothing is stored
+     * @return The lookup result, or empty if nothing is stored
+     * @throws KeyLockerException if the lookup fails
+     */
+    private <T> Optional<T> readStored(StorageOperation<Optional<T>> operation) throws KeyLockerException {
+        LookupFilter filter = lookupFilter;
+        if (filter == null) {
+            return withStorage(encryptionKey, operation);
+        }
+        if (filter.isKnownAbsent(storageKey)) {
+            return Optional.empty();
+        }
+
+        // Read before the lookup, so a concurrent store invalidates the recorded miss
+        long generation = filter.generation(storageKey);
+        Optional<T> result = withStorage(encryptionKey, operation);
+        if (result.isEmpty()) {
+            filter.recordMiss(storageKey, generation);
+        }
+        return result;
+    }
+
+    /**
+     * Stores a pending coalesced write for the current storage key, so operations that bypass
+     * the property map (streams, range reads) see it
+     * @throws KeyLockerException if the pending write could not be stored
+     */
+    private void flushPending() throws KeyLockerException {
+        WriteCoalescer coalescer = writeCoalescer;
+        if (coalescer != null) {
+            coalescer.flush(storageKey);
+        }
+    }
+
+    /**
+     * Platform storage operation run under a specific encryption key
+     * @param <T> Result type
+     */
+    private interface StorageOperation<T> {
+        T apply(PlatformKeyLockerStorage storage) throws KeyLockerException;
+    }
+
+    /**
+     * Runs an operation against platform storage with the given encryption key. Platform storage keeps the key
+     * per thread, so operations under different keys run concurrently.
+     * @param encryptionKey Encryption key for the operation
+     * @param operation Operation to run
+     * @return The operation result
+     * @throws KeyLockerException if storage is unavailable or the operation fails
+     */
+    private static <T> T withStorage(String encryptionKey, StorageOperation<T> operation) throws KeyLockerException {
+        return withStorage(activeRotations.get(encryptionKey), encryptionKey, operation);
+    }
+
+    /**
+     * Runs an operation against platform storage with a rotation already looked up for the key, so the caller
+     * knows which key the operation used
+     * @param rotation Rotation involving the key, or null
+     * @param encryptionKey Encryption key for the operation
+     * @param operation Operation to run
+     * @return The operation result
+     * @throws KeyLockerException if storage is unavailable or the operation fails
+     */
+    private static <T> T withStorage(KeyRotation rotation, String encryptionKey, StorageOperation<T> operation)
+            throws KeyLockerException {
         if (platformStorage == null) {
             throw new KeyLockerException("Secure storage not initialized");
         }
 
-        if (platformStorage instanceof WindowsSecureStorage) {
-            return ((WindowsSecureStorage) platformStorage).credentialExists(storageKey);
+        if (rotation != null) {
+            platformStorage.setEncryptionKey(rotation.getNewKey(), rotation.getOldKey());
+        } else {
+            platformStorage.setEncryptionKey(encryptionKey);
+        }
+        return operation.apply(platformStorage);
+    }
+
+    private static String effectiveKey(KeyRotation rotation, String encryptionKey) {
+        return rotation != null ? rotation.getNewKey() : encryptionKey;
+    }
+
+    /**
+     * Gets the lock serializing changes to an identifier
+     * @param storageKey Identifier
+     * @return The identifier's lock stripe
+     */
+    static ReentrantLock identifierLock(String storageKey) {
+        return IDENTIFIER_LOCKS[identifierStripe(storageKey)];
+    }
+
+    /**
+     * Runs an operation while holding the locks of several identifiers. Stripes are taken in index order,
+     * so two callers locking overlapping identifiers never wait on each other.
+     * @param storageKeys Identifiers to lock
+     * @param operation Operation to run
+     * @return The operation result
+     * @throws KeyLockerException if the operation fails
+     */
+    static <T> T withIdentifierLocks(Collection<String> storageKeys, LockedOperation<T> operation)
+            throws KeyLockerException {
+        TreeSet<Integer> stripes = new TreeSet<>();
+        for (String storageKey : storageKeys) {
+            stripes.add(identifierStripe(storageKey));
+        }
+        return lockStripes(new ArrayList<>(stripes), 0, operation);
+    }
+
+    /**
+     * Operation run while holding identifier locks
+     * @param <T> Result type
+     */
+    interface LockedOperation<T> {
+        T run() throws KeyLockerException;
+    }
+
+    private static <T> T lockStripes(List<Integer> stripes, int index, LockedOperation<T> operation)
+            throws KeyLockerException {
+        if (index == stripes.size()) {
+            return operation.run();
+        }
+        ReentrantLock lock = IDENTIFIER_LOCKS[stripes.get(index)];
+        lock.lock();
+        try {
+            return lockStripes(stripes, index + 1, operation);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static int identifierStripe(String storageKey) {
+        return (storageKey.hashCode() & 0x7fffffff) % IDENTIFIER_LOCKS.length;
+    }
+
+    /**
+     * Notifies watchers of an identifier changed by this process outside the regular write paths
+     * @param storageKey Identifier that changed
+     */
+    static void notifyChanged(String storageKey) {
+        credentialWatcher.changed(storageKey);
+    }
+
+    /**
+     * Bumps the shared generation of an identifier and drops its local cache entry
+     * @param storageKey Identifier that is changing
+     */
+    static void markChanged(String storageKey) {
+        if (generationTable != null) {
+            changed(storageKey, generationTable.bump(generationName(storageKey)));
         } else {
-            throw new KeyLockerException("Platform not supported");
+            changed(storageKey, 0);
+        }
+    }
+
+    /**
+     * Marks an identifier as being changed, so snapshot reads in every process wait for the change to end.
+     * Every call must be followed by {@link #endChange}, also when the change fails.
+     * @param storageKey Identifier that is changing
+     */
+    static void beginChange(String storageKey) {
+        if (generationTable != null) {
+            changed(storageKey, generationTable.beginWrite(generationName(storageKey)));
+        } else {
+            changed(storageKey, 0);
+        }
+    }
+
+    /**
+     * Ends a change begun with {@link #beginChange}
+     * @param storageKey Identifier that changed
+     */
+    static void endChange(String storageKey) {
+        if (generationTable != null) {
+            changed(storageKey, generationTable.endWrite(generationName(storageKey)));
+        } else {
+            changed(storageKey, 0);
+        }
+    }
+
+    /**
+     * Gets the name an identifier of this application has in the shared generation table
+     * @param storageKey Identifier
+     * @return Name of the identifier's generation
+     */
+    static String generationName(String storageKey) {
+        return appPackageName + "/" + storageKey;
+    }
+
+    // Drops the identifier's local cache entry and tells the lookup filter about its new generation
+    private static void changed(String storageKey, long generation) {
+        LookupFilter filter = lookupFilter;
+        if (filter != null && generationTable != null) {
+            filter.changed(storageKey, generation);
+        }
+        CredentialCache cache = credentialCache;
+        if (cache != null) {
+            cache.remove(storageKey);
+        }
+    }
+
+    /**
+     * Adds an identifier about to be stored to the lookup filter; call before its generation is bumped
+     * @param storageKey Identifier being stored
+     */
+    private static void recordStore(String storageKey) {
+        LookupFilter filter = lookupFilter;
+        if (filter != null) {
+            filter.recordStore(storageKey);
+        }
+    }
+
+    private static void flushOnShutdown() {
+        try {
+            flush();
+        } catch (KeyLockerException e) {
+            System.err.println("Error flushing pending secure storage writes: " + e.getMessage());
         }
     }
 }
\ No newline at end of file
@@ -1,22 +1,123 @@
 package com.OsKeyLocker;
 
 
+import com.OsKeyLocker.exceptions.KeyLockerException;
 import com.OsKeyLocker.exceptions.PlatformNotSupportedException;
 import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.platform.agent.AgentKeyLockerStorage;
+import com.OsKeyLocker.platform.file.FileSecureStorage;
+import com.OsKeyLocker.platform.linux.LinuxSecureStorage;
+import com.OsKeyLocker.platform.memory.MemorySecureStorage;
+import com.OsKeyLocker.platform.tiered.TieredKeyLockerStorage;
 import com.OsKeyLocker.platform.windows.WindowsSecureStorage;
 import com.OsKeyLocker.util.PlatformDetector;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
 /**
  * Factory for creating platform-specific secure storage implementations
  */
 public class KeyLockerStoreFactory {
 
+    /**
+     * Creates the secure storage implementation to use: a client of the local agent when the
+     * {@value AgentKeyLockerStorage#AGENT_PROPERTY} system property is true, otherwise the local storage
+     * @return Secure storage implementation
+     * @throws PlatformNotSupportedException if the current platform is not supported
+     */
+    public static PlatformKeyLockerStorage getSecureStorage() throws PlatformNotSupportedException {
+        if (AgentKeyLockerStorage.isRequested()) {
+            return new AgentKeyLockerStorage();
+        }
+        return getLocalStorage();
+    }
+
+    /**
+     * Creates the storage this process keeps credentials in itself: a file vault when the
+     * {@value FileSecureStorage#DIRECTORY_PROPERTY} system property names a directory, otherwise the platform's
+     * storage. When the {@value TieredKeyLockerStorage#TIERS_PROPERTY} system property lists cache tiers, they are
+     * put in front of it.
+     * @return Local secure storage implementation
+     * @throws PlatformNotSupportedException if the current platform or a configured tier is not supported
+     */
+    public static PlatformKeyLockerStorage getLocalStorage() throws PlatformNotSupportedException {
+        PlatformKeyLockerStorage storage;
+        String vault = System.getProperty(FileSecureStorage.DIRECTORY_PROPERTY);
+        if (vault != null && !vault.isEmpty()) {
+            storage = new FileSecureStorage(Path.of(vault));
+        } else {
+            storage = getNativeStorage();
+        }
+
+        String tiers = System.getProperty(TieredKeyLockerStorage.TIERS_PROPERTY);
+        if (tiers != null && !tiers.isEmpty()) {
+            return getTieredStorage(tiers, storage);
+        }
+        return storage;
+    }
+
+    /**
+     * Puts cache tiers in front of a storage
+     * @param specification Comma-separated tiers, fastest first: "memory" or "file", each optionally followed by
+     *                      ":write-through" (the default), ":write-back" or ":write-around". The file tier is kept in
+     *                      the {@value TieredKeyLockerStorage#DIRECTORY_PROPERTY} directory, by default "tier" in the
+     *                      user's private temporary directory.
+     * @param source Storage the tiers cache, which stays the source of truth
+     * @return Tiered storage, with write-back tiers flushed in the background
+     * @throws PlatformNotSupportedException if a tier or write policy is not supported
+     */
+    public static TieredKeyLockerStorage getTieredStorage(String specification, PlatformKeyLockerStorage source)
+            throws PlatformNotSupportedException {
+        List<TieredKeyLockerStorage.Tier> tiers = new ArrayList<>();
+        for (String entry : specification.split(",")) {
+            String[] parts = entry.trim().split(":", 2);
+            TieredKeyLockerStorage.WritePolicy policy = parts.length > 1
+                    ? policyOf(parts[1])
+                    : TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH;
+            switch (parts[0]) {
+                case "memory" -> tiers.add(new TieredKeyLockerStorage.Tier("memory", new MemorySecureStorage(), policy));
+                case "file" -> tiers.add(new TieredKeyLockerStorage.Tier("file", new FileSecureStorage(tierDirectory()),
+                        policy));
+                default -> throw new PlatformNotSupportedException("Unsupported storage tier: " + parts[0]);
+            }
+        }
+        tiers.add(new TieredKeyLockerStorage.Tier("source", source, TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH));
+
+        TieredKeyLockerStorage storage;
+        try {
+            storage = new TieredKeyLockerStorage(tiers, TieredKeyLockerStorage.DEFAULT_FLUSH_INTERVAL);
+        } catch (KeyLockerException e) {
+            throw new PlatformNotSupportedException("Unsupported storage tiers: " + e.getMessage(), e);
+        }
+        storage.start();
+        return storage;
+    }
+
+    private static TieredKeyLockerStorage.WritePolicy policyOf(String name) throws PlatformNotSupportedException {
+        try {
+            return TieredKeyLockerStorage.WritePolicy.valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new PlatformNotSupportedException("Unsupported write policy: " + name);
+        }
+    }
+
+    private static Path tierDirectory() {
+        String configured = System.getProperty(TieredKeyLockerStorage.DIRECTORY_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "oskeylocker-" + System.getProperty("user.name"), "tier");
+    }
+
     /**
      * Creates a secure storage implementation for the current platform
      * @return Platform-specific secure storage implementation
      * @throws PlatformNotSupportedException if the current platform is not supported
      */
-    public static PlatformKeyLockerStorage getSecureStorage() throws PlatformNotSupportedException {
+    public static PlatformKeyLockerStorage getNativeStorage() throws PlatformNotSupportedException {
         String os = PlatformDetector.getOperatingSystem();
 
         switch (os) {
@@ -25,7 +126,7 @@ public class KeyLockerStoreFactory {
             case PlatformDetector.MACOS:
                 throw new PlatformNotSupportedException("macOS support not yet implemented");
             case PlatformDetector.LINUX:
-                throw new PlatformNotSupportedException("Linux support not yet implemented");
+                return new LinuxSecureStorage();
             default:
                 throw new PlatformNotSupportedException("Unsupported platform: " + os);
         }
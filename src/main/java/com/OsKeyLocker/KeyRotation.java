@@ -0,0 +1,187 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import javax.crypto.BadPaddingException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Re-encrypts every credential of the application from one encryption key to another across a worker pool.
+ * Progress is checkpointed in a credential encrypted with the new key, so a run interrupted by a crash resumes
+ * where it stopped. The checkpoint records each finished credential with its change stamp, so entries rewritten
+ * since (for example under the old key again) are rotated anyway. While a rotation is registered, operations
+ * under either key read with both keys.
+ */
+@Slf4j
+class KeyRotation {
+
+    /** Identifier of the checkpoint credential; never rotated itself */
+    static final String CHECKPOINT_KEY = "__oskeylocker_rotation";
+    private static final int CHECKPOINT_INTERVAL = 16;
+
+    private final String oldKey;
+    private final String newKey;
+    private final ConcurrentHashMap<String, Long> completed = new ConcurrentHashMap<>();
+    private final AtomicInteger sinceCheckpoint = new AtomicInteger();
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+
+    /**
+     * Creates a rotation between two keys
+     * @param oldKey The key credentials are currently encrypted with
+     * @param newKey The key to re-encrypt them with
+     */
+    KeyRotation(String oldKey, String newKey) {
+        this.oldKey = oldKey;
+        this.newKey = newKey;
+    }
+
+    String getOldKey() {
+        return oldKey;
+    }
+
+    String getNewKey() {
+        return newKey;
+    }
+
+    /**
+     * Re-encrypts every credential not yet recorded in the checkpoint
+     * @param storage Platform storage
+     * @param parallelism Number of worker threads
+     * @return Number of credentials re-encrypted by this run
+     * @throws KeyLockerException if any credential could not be re-encrypted; the others are kept and checkpointed
+     */
+    int run(PlatformKeyLockerStorage storage, int parallelism) throws KeyLockerException {
+        loadCheckpoint();
+
+        List<Callable<Void>> tasks = new ArrayList<>();
+        AtomicInteger rotated = new AtomicInteger();
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        for (String storageKey : storage.listCredentials()) {
+            if (storageKey.equals(CHECKPOINT_KEY) || isCompleted(storage, storageKey)) {
+                continue;
+            }
+            tasks.add(() -> {
+                try {
+                    if (rotate(storage, storageKey)) {
+                        rotated.incrementAndGet();
+                    }
+                } catch (KeyLockerException e) {
+                    log.error("Failed to re-encrypt {}: {}", storageKey, e.getMessage());
+                    failures.add(storageKey);
+                }
+                return null;
+            });
+        }
+
+        AtomicInteger threadIndex = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "OsKeyLocker-rotation-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            workers.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            saveCheckpoint();
+            throw new KeyLockerException("Key rotation interrupted; run it again to resume");
+        } finally {
+            workers.shutdownNow();
+        }
+
+        if (!failures.isEmpty()) {
+            saveCheckpoint();
+            throw new KeyLockerException("Failed to re-encrypt " + failures.size() + " credential(s): " + failures
+                    + "; run the rotation again to resume");
+        }
+
+        new KeyLockerStore().setEncryptionKey(newKey).setStorageKey(CHECKPOINT_KEY).remove();
+        return rotated.get();
+    }
+
+    private boolean rotate(PlatformKeyLockerStorage storage, String storageKey) throws KeyLockerException {
+        boolean rotated;
+        // Serializes with writes to the same identifier, which would otherwise interleave with the rewrite
+        ReentrantLock lock = KeyLockerStore.identifierLock(storageKey);
+        lock.lock();
+        try {
+            rotated = KeyLockerStore.reencrypt(storageKey, oldKey, newKey);
+            completed.put(storageKey, storage.getChangeStamp(storageKey));
+        } finally {
+            lock.unlock();
+        }
+
+        if (sinceCheckpoint.incrementAndGet() % CHECKPOINT_INTERVAL == 0) {
+            saveCheckpoint();
+        }
+        return rotated;
+    }
+
+    private void loadCheckpoint() throws KeyLockerException {
+        Map<String, Object> checkpoint;
+        try {
+            checkpoint = new KeyLockerStore()
+                    .setEncryptionKey(newKey)
+                    .setStorageKey(CHECKPOINT_KEY)
+                    .find()
+                    .orElse(null);
+        } catch (KeyLockerException e) {
+            if (!isDecryptionFailure(e)) {
+                throw new KeyLockerException("Failed to read the rotation checkpoint: " + e.getMessage(), e);
+            }
+            // Left behind by an interrupted rotation to a different key; start over and replace it
+            log.warn("Discarding a rotation checkpoint written under another key");
+            return;
+        }
+
+        if (checkpoint != null && checkpoint.get("completed") instanceof JSONObject done) {
+            for (String storageKey : done.keySet()) {
+                completed.put(storageKey, done.getLong(storageKey));
+            }
+        }
+    }
+
+    /**
+     * Checks whether a failure comes from a ciphertext that does not authenticate under the key, as opposed to
+     * the credential store being unavailable
+     */
+    private static boolean isDecryptionFailure(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof BadPaddingException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isCompleted(PlatformKeyLockerStorage storage, String storageKey) throws KeyLockerException {
+        Long stamp = completed.get(storageKey);
+        return stamp != null && stamp == storage.getChangeStamp(storageKey);
+    }
+
+    private void saveCheckpoint() throws KeyLockerException {
+        checkpointLock.lock();
+        try {
+            Map<String, Object> checkpoint = new HashMap<>();
+            checkpoint.put("completed", new HashMap<>(completed));
+            KeyLockerStore.persist(newKey, CHECKPOINT_KEY, checkpoint);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+}
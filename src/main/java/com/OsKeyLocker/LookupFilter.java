@@ -0,0 +1,259 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.util.GenerationTable;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Answers lookups of identifiers that are not stored without a call into the credential backend.
+ * A Bloom filter built from one enumeration of the stored identifiers, and extended by every store in this
+ * process, gives definite misses; a short-lived negative cache remembers the misses the filter cannot rule out.
+ * Both are validated against the shared generation table: a miss is only answered from memory while the
+ * identifier's generation slot is unchanged, so a store from any process is seen immediately.
+ * <p>
+ * A filter that is full or has gone stale is rebuilt on a background thread while lookups keep being answered
+ * from it. A failed rebuild is retried after a delay that doubles with every failure.
+ */
+@Slf4j
+class LookupFilter {
+
+    private static final int BITS_PER_IDENTIFIER = 10;
+    private static final int HASHES = 7;
+    private static final int MIN_CAPACITY = 1024;
+    // Misses that had to go to the backend because another process changed the slot; past this the filter is rebuilt
+    private static final int MAX_STALE_LOOKUPS = 256;
+    private static final long NEGATIVE_TTL_NANOS = 2_000_000_000L;
+    private static final int MAX_NEGATIVE_ENTRIES = 4096;
+    private static final long MIN_REBUILD_DELAY_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_REBUILD_DELAY_NANOS = TimeUnit.MINUTES.toNanos(5);
+
+    private record Miss(long generation, long expiresAtNanos) {}
+
+    private final GenerationTable generations;
+    private final String namespace;
+    private final PlatformKeyLockerStorage storage;
+    private final ConcurrentHashMap<String, Miss> misses = new ConcurrentHashMap<>();
+    private volatile Membership membership;
+    // Set while a rebuild runs, so at most one runs at a time
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    // No rebuild starts before this time; pushed back after every failed rebuild
+    private volatile long nextRebuildNanos;
+    private long rebuildDelayNanos = MIN_REBUILD_DELAY_NANOS;
+
+    /**
+     * Creates a filter and builds it from the identifiers currently stored
+     * @param generations Shared generation table
+     * @param namespace Application namespace prepended to identifiers in the table
+     * @param storage Platform storage to enumerate
+     * @throws KeyLockerException if the stored identifiers cannot be listed
+     */
+    LookupFilter(GenerationTable generations, String namespace, PlatformKeyLockerStorage storage)
+            throws KeyLockerException {
+        this.generations = generations;
+        this.namespace = namespace;
+        this.storage = storage;
+        this.membership = build();
+        this.nextRebuildNanos = System.nanoTime();
+    }
+
+    /**
+     * Checks whether an identifier is known not to be stored
+     * @param storageKey Identifier
+     * @return true if the identifier is definitely not stored; false if storage must be asked
+     */
+    boolean isKnownAbsent(String storageKey) {
+        String name = namespace + storageKey;
+        long generation = generations.get(name);
+
+        Membership current = membership;
+        if (current.needsRebuild()) {
+            scheduleRebuild();
+        }
+        if (!current.mightContain(storageKey)) {
+            if (current.unchanged(name, generation)) {
+                return true;
+            }
+            current.staleLookups.incrementAndGet();
+        }
+
+        Miss miss = misses.get(storageKey);
+        if (miss == null) {
+            return false;
+        }
+        if (miss.generation() != generation || miss.expiresAtNanos() - System.nanoTime() <= 0) {
+            misses.remove(storageKey, miss);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the current generation of an identifier; call before a lookup whose miss will be recorded
+     * @param storageKey Identifier
+     * @return The identifier's current generation
+     */
+    long generation(String storageKey) {
+        return generations.get(namespace + storageKey);
+    }
+
+    /**
+     * Remembers that storage had nothing under an identifier
+     * @param storageKey Identifier
+     * @param generation Generation read before the lookup
+     */
+    void recordMiss(String storageKey, long generation) {
+        if (misses.size() >= MAX_NEGATIVE_ENTRIES) {
+            misses.clear();
+        }
+        misses.put(storageKey, new Miss(generation, System.nanoTime() + NEGATIVE_TTL_NANOS));
+    }
+
+    /**
+     * Adds an identifier this process is about to store; call before its generation is bumped
+     * @param storageKey Identifier
+     */
+    void recordStore(String storageKey) {
+        membership.add(storageKey);
+    }
+
+    /**
+     * Takes note of a generation bump made by this process, so the filter keeps answering for the slot
+     * @param storageKey Identifier that changed
+     * @param generation The generation returned by the bump
+     */
+    void changed(String storageKey, long generation) {
+        misses.remove(storageKey);
+        Membership current = membership;
+        // An identifier missing from the filter (e.g. a store racing with a rebuild) leaves its slot stale instead
+        if (current.mightContain(storageKey)) {
+            current.advance(namespace + storageKey, generation);
+        }
+    }
+
+    /**
+     * Drops every remembered miss
+     */
+    void clear() {
+        misses.clear();
+    }
+
+    /**
+     * Starts a rebuild on a background thread, unless one is running or the delay after a failed one has not passed
+     */
+    private void scheduleRebuild() {
+        if (System.nanoTime() - nextRebuildNanos < 0 || !rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+        Thread thread = new Thread(this::rebuild, "OsKeyLocker-lookup-filter");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void rebuild() {
+        try {
+            membership = build();
+            rebuildDelayNanos = MIN_REBUILD_DELAY_NANOS;
+        } catch (KeyLockerException | RuntimeException e) {
+            log.warn("Failed to rebuild lookup filter, retrying in {} ms: {}",
+                    TimeUnit.NANOSECONDS.toMillis(rebuildDelayNanos), e.getMessage());
+            nextRebuildNanos = System.nanoTime() + rebuildDelayNanos;
+            rebuildDelayNanos = Math.min(rebuildDelayNanos * 2, MAX_REBUILD_DELAY_NANOS);
+        } finally {
+            rebuilding.set(false);
+        }
+    }
+
+    private Membership build() throws KeyLockerException {
+        // Snapshot first, so identifiers stored during the enumeration show up as changed slots
+        long[] snapshot = generations.snapshot();
+        List<String> storageKeys = storage.listCredentials();
+
+        Membership built = new Membership(Math.max(storageKeys.size() * 2, MIN_CAPACITY), snapshot);
+        for (String storageKey : storageKeys) {
+            built.add(storageKey);
+        }
+        built.additions.set(storageKeys.size());
+        return built;
+    }
+
+    /**
+     * Bloom filter over identifiers together with the generation slots it is valid for
+     */
+    private static final class Membership {
+        private final AtomicLongArray bits;
+        private final int bitCount;
+        private final int capacity;
+        private final AtomicLongArray snapshot;
+        private final AtomicInteger additions = new AtomicInteger();
+        private final AtomicInteger staleLookups = new AtomicInteger();
+
+        Membership(int capacity, long[] snapshot) {
+            this.capacity = capacity;
+            this.bitCount = capacity * BITS_PER_IDENTIFIER;
+            this.bits = new AtomicLongArray((bitCount + 63) / 64);
+            this.snapshot = new AtomicLongArray(snapshot);
+        }
+
+        void add(String storageKey) {
+            long hash = hash(storageKey);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = index(hash, i);
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = bits.get(bit >>> 6);
+                } while ((word & mask) == 0 && !bits.compareAndSet(bit >>> 6, word, word | mask));
+            }
+            additions.incrementAndGet();
+        }
+
+        boolean mightContain(String storageKey) {
+            long hash = hash(storageKey);
+            for (int i = 0; i < HASHES; i++) {
+                int bit = index(hash, i);
+                if ((bits.get(bit >>> 6) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean unchanged(String name, long generation) {
+            return snapshot.get(GenerationTable.slot(name)) == generation;
+        }
+
+        void advance(String name, long generation) {
+            // Only when the bump was the sole change since the snapshot; otherwise another writer may have
+            // stored an identifier of this slot, and the slot stays unanswerable until the next rebuild
+            snapshot.compareAndSet(GenerationTable.slot(name), generation - 1, generation);
+        }
+
+        boolean needsRebuild() {
+            return additions.get() > capacity || staleLookups.get() > MAX_STALE_LOOKUPS;
+        }
+
+        private int index(long hash, int i) {
+            // Double hashing: the i-th probe is h1 + i * h2
+            int combined = (int) hash + i * (int) (hash >>> 32);
+            return (combined & Integer.MAX_VALUE) % bitCount;
+        }
+
+        private static long hash(String storageKey) {
+            // 64-bit FNV-1a over the UTF-16 code units
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < storageKey.length(); i++) {
+                hash ^= storageKey.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            return hash ^ (hash >>> 29);
+        }
+    }
+}
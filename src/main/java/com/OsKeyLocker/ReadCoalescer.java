@@ -0,0 +1,193 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.GenerationTable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Single-flight loading of credential properties. The first reader of an identifier under an encryption key
+ * loads it from storage; readers arriving while that load is in flight wait for it and share its result instead
+ * of reading and decrypting the same credential again. A reader only joins a load whose identifier generation
+ * is still the one read when the load began, so a read that starts after a write never gets data from before it.
+ * Readers racing to start a load agree on one: a reader that loses the race joins the winner's load. Waits are
+ * bounded: a reader whose wait runs out loads for itself.
+ */
+class ReadCoalescer {
+
+    /**
+     * Loads stored properties
+     */
+    interface Loader {
+        Optional<Map<String, Object>> load() throws KeyLockerException;
+    }
+
+    private record Flight(String storageKey, String encryptionKey) {}
+
+    /**
+     * A registered load; complete it with {@link #finish}
+     */
+    static final class Load {
+        private final Flight flight;
+        private final long generation;
+        private final CompletableFuture<Optional<Map<String, Object>>> result = new CompletableFuture<>();
+
+        private Load(Flight flight, long generation) {
+            this.flight = flight;
+            this.generation = generation;
+        }
+    }
+
+    private final GenerationTable generations;
+    private final String namespace;
+    private final ConcurrentHashMap<Flight, Load> loads = new ConcurrentHashMap<>();
+    private volatile long maxWaitNanos;
+
+    /**
+     * Creates a coalescer validated against a generation table
+     * @param generations Shared generation table
+     * @param namespace Application namespace prepended to identifiers in the table
+     * @param maxWaitMillis Longest a reader waits for another reader's load
+     */
+    ReadCoalescer(GenerationTable generations, String namespace, long maxWaitMillis) {
+        this.generations = generations;
+        this.namespace = namespace;
+        setMaxWait(maxWaitMillis);
+    }
+
+    /**
+     * Sets how long a reader waits for another reader's load before loading for itself
+     * @param maxWaitMillis Longest wait
+     */
+    void setMaxWait(long maxWaitMillis) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+    }
+
+    /**
+     * Reads properties, sharing a load in flight for the same identifier and key or running one others can share
+     * @param encryptionKey Encryption key of the reader
+     * @param storageKey Identifier
+     * @param loader Loads the properties from storage
+     * @return Map of stored properties, or empty if not found
+     * @throws KeyLockerException if the load fails
+     */
+    Optional<Map<String, Object>> read(String encryptionKey, String storageKey, Loader loader) throws KeyLockerException {
+        Flight flight = new Flight(storageKey, encryptionKey);
+        long deadline = System.nanoTime() + maxWaitNanos;
+        while (true) {
+            Load load = new Load(flight, generation(storageKey));
+            Load current = loads.merge(flight, load,
+                    (existing, added) -> existing.generation == added.generation ? existing : added);
+            if (current == load) {
+                return finish(load, loader);
+            }
+
+            // A load of the current generation is in flight, whether it was there first or won the race to register
+            try {
+                Optional<Map<String, Object>> shared = await(current, deadline - System.nanoTime());
+                if (shared != null) {
+                    return shared;
+                }
+                // The load was cancelled; register again
+            } catch (TimeoutException e) {
+                return loader.load();
+            }
+        }
+    }
+
+    /**
+     * Waits for a load of an identifier in flight under the same key, if one is current
+     * @param encryptionKey Encryption key of the reader
+     * @param storageKey Identifier
+     * @return A copy of the shared result, or null if there is no current load or the wait ran out
+     * @throws KeyLockerException if the shared load failed
+     */
+    Optional<Map<String, Object>> join(String encryptionKey, String storageKey) throws KeyLockerException {
+        Load load = loads.get(new Flight(storageKey, encryptionKey));
+        if (load == null || load.generation != generation(storageKey)) {
+            return null;
+        }
+
+        try {
+            return await(load, maxWaitNanos);
+        } catch (TimeoutException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Registers a load of an identifier, replacing one that began before the identifier last changed
+     * @param encryptionKey Encryption key the load reads with
+     * @param storageKey Identifier
+     * @return The registered load, or null if a current load is already in flight
+     */
+    Load begin(String encryptionKey, String storageKey) {
+        Load load = new Load(new Flight(storageKey, encryptionKey), generation(storageKey));
+        Load registered = loads.merge(load.flight, load,
+                (existing, added) -> existing.generation == added.generation ? existing : added);
+        return registered == load ? load : null;
+    }
+
+    /**
+     * Runs a registered load, hands its result to the readers waiting for it and unregisters it
+     * @param load Load returned by {@link #begin}
+     * @param loader Loads the properties from storage
+     * @return Map of stored properties, or empty if not found
+     * @throws KeyLockerException if the load fails
+     */
+    Optional<Map<String, Object>> finish(Load load, Loader loader) throws KeyLockerException {
+        try {
+            Optional<Map<String, Object>> result = loader.load();
+            load.result.complete(result.map(HashMap::new));
+            return result;
+        } catch (KeyLockerException | RuntimeException e) {
+            load.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            loads.remove(load.flight, load);
+        }
+    }
+
+    /**
+     * Releases a registered load without running it; its readers load for themselves
+     * @param load Load returned by {@link #begin}
+     */
+    void cancel(Load load) {
+        loads.remove(load.flight, load);
+        load.result.complete(null);
+    }
+
+    /**
+     * Waits for a load's result
+     * @param load The load
+     * @param waitNanos Longest wait
+     * @return A copy of the result, or null if the load was cancelled
+     * @throws TimeoutException if the wait ran out or was interrupted
+     * @throws KeyLockerException if the load failed
+     */
+    private static Optional<Map<String, Object>> await(Load load, long waitNanos)
+            throws TimeoutException, KeyLockerException {
+        try {
+            Optional<Map<String, Object>> result = load.result.get(waitNanos, TimeUnit.NANOSECONDS);
+            // A cancelled load has no result
+            return result != null ? result.map(HashMap::new) : null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TimeoutException("Interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw new KeyLockerException("Failed to retrieve properties: " + cause.getMessage(), cause);
+        }
+    }
+
+    private long generation(String storageKey) {
+        return generations.get(namespace + storageKey);
+    }
+}
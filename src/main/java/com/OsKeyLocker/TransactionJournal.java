@@ -0,0 +1,396 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes and deletes across several identifiers, committed atomically through a redo journal. The journal is a
+ * credential encrypted with the transaction's key that holds every staged value; storing it is the commit point,
+ * and only that store is serialized between transactions. The targets are then written in parallel and the journal
+ * removed. A transaction interrupted before its journal was stored left nothing behind; one interrupted after it
+ * is replayed from the journal by {@link #recover}, in commit order.
+ * <p>
+ * Each journal names its owning process and carries a heartbeat the owner refreshes while applying it. Recovery
+ * leaves a journal alone while its owner is alive and the heartbeat is recent, so another process never replays a
+ * transaction that is still being applied over the writes that follow it.
+ */
+@Slf4j
+class TransactionJournal {
+
+    /** Identifier prefix of journal credentials */
+    static final String JOURNAL_PREFIX = "__oskeylocker_txn_";
+    private static final int WRITER_THREADS = 4;
+    // How long a journal of a live process is left to its owner after the last heartbeat
+    static final long LEASE_MILLIS = 30_000;
+    private static final long HEARTBEAT_MILLIS = LEASE_MILLIS / 3;
+    private static final Owner CURRENT_OWNER = Owner.current();
+
+    private static final ReentrantLock COMMIT_LOCK = new ReentrantLock();
+    // Identifiers targeted by transactions being applied in this process, with the number of such transactions
+    private static final ConcurrentHashMap<String, Integer> applying = new ConcurrentHashMap<>();
+    private static long lastSequence;
+    private static final AtomicInteger writerIndex = new AtomicInteger();
+    private static final ExecutorService writers = Executors.newFixedThreadPool(WRITER_THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-transaction-" + writerIndex.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-transaction-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String encryptionKey;
+    private final String journalKey;
+    private final long sequence;
+    private final Map<String, Map<String, Object>> writes;
+    private final Set<String> deletes;
+    private final Owner owner;
+    private final long heartbeat;
+    private final ReentrantLock heartbeatLock = new ReentrantLock();
+    private boolean finished;
+
+    private TransactionJournal(String encryptionKey, String journalKey, long sequence,
+                               Map<String, Map<String, Object>> writes, Set<String> deletes,
+                               Owner owner, long heartbeat) {
+        this.encryptionKey = encryptionKey;
+        this.journalKey = journalKey;
+        this.sequence = sequence;
+        this.writes = writes;
+        this.deletes = deletes;
+        this.owner = owner;
+        this.heartbeat = heartbeat;
+    }
+
+    /**
+     * Process that committed a journal
+     * @param pid Process id
+     * @param startMillis Process start time, telling a reused pid apart; 0 if unknown
+     */
+    private record Owner(long pid, long startMillis) {
+
+        static Owner current() {
+            return of(ProcessHandle.current());
+        }
+
+        static Owner of(ProcessHandle process) {
+            long startMillis = process.info().startInstant().map(Instant::toEpochMilli).orElse(0L);
+            return new Owner(process.pid(), startMillis);
+        }
+
+        boolean isAlive() {
+            Optional<ProcessHandle> process = ProcessHandle.of(pid).filter(ProcessHandle::isAlive);
+            if (process.isEmpty()) {
+                return false;
+            }
+            long actualStart = of(process.get()).startMillis;
+            return startMillis == 0 || actualStart == 0 || actualStart == startMillis;
+        }
+    }
+
+    /**
+     * Commits writes and deletes atomically
+     * @param encryptionKey Encryption key to store with
+     * @param writes Properties to store, by identifier
+     * @param deletes Identifiers to remove
+     * @throws KeyLockerException if the journal cannot be stored, in which case nothing changed, or if a write
+     *                            failed after the commit point, in which case the journal is kept for recovery
+     */
+    static void commit(String encryptionKey, Map<String, Map<String, Object>> writes, Set<String> deletes)
+            throws KeyLockerException {
+        Set<String> storageKeys = new LinkedHashSet<>(writes.keySet());
+        storageKeys.addAll(deletes);
+
+        // Overlapping transactions and plain writes wait until the targets are written, so they apply in commit order
+        KeyLockerStore.withIdentifierLocks(storageKeys, () -> {
+            markApplying(storageKeys);
+            try {
+                TransactionJournal journal;
+                COMMIT_LOCK.lock();
+                try {
+                    lastSequence = Math.max(lastSequence + 1, System.currentTimeMillis() * 1000);
+                    journal = new TransactionJournal(encryptionKey, JOURNAL_PREFIX + UUID.randomUUID(), lastSequence,
+                            new LinkedHashMap<>(writes), new LinkedHashSet<>(deletes), CURRENT_OWNER,
+                            System.currentTimeMillis());
+                    KeyLockerStore.write(encryptionKey, journal.journalKey, journal.toProperties(journal.heartbeat));
+                } finally {
+                    COMMIT_LOCK.unlock();
+                }
+                ScheduledFuture<?> heartbeat = heartbeats.scheduleWithFixedDelay(journal::refreshHeartbeat,
+                        HEARTBEAT_MILLIS, HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+                try {
+                    journal.apply(true);
+                } finally {
+                    heartbeat.cancel(false);
+                    journal.finish();
+                }
+                KeyLockerStore.erase(encryptionKey, journal.journalKey);
+            } finally {
+                unmarkApplying(storageKeys);
+            }
+            return null;
+        });
+
+        for (String storageKey : storageKeys) {
+            KeyLockerStore.notifyChanged(storageKey);
+        }
+    }
+
+    /**
+     * Replays every journal left behind by a transaction under the given key, oldest commit first. Journals another
+     * live process is still applying are skipped.
+     * @param encryptionKey Encryption key the transactions were committed with
+     * @param storage Platform storage
+     * @return Number of transactions replayed
+     * @throws KeyLockerException if the journals cannot be listed or a replay fails
+     */
+    static int recover(String encryptionKey, PlatformKeyLockerStorage storage) throws KeyLockerException {
+        List<String> storageKeys = storage.listCredentials();
+
+        List<TransactionJournal> journals = new ArrayList<>();
+        for (String storageKey : storageKeys) {
+            if (storageKey.startsWith(JOURNAL_PREFIX)) {
+                load(encryptionKey, storageKey).ifPresent(journals::add);
+            }
+        }
+        journals.sort(Comparator.comparingLong(journal -> journal.sequence));
+
+        int replayed = 0;
+        for (TransactionJournal listed : journals) {
+            if (listed.isLeased()) {
+                log.debug("Skipping transaction journal {}: still being applied by process {}",
+                        listed.journalKey, listed.owner.pid());
+                continue;
+            }
+            Set<String> targets = new LinkedHashSet<>(listed.writes.keySet());
+            targets.addAll(listed.deletes);
+
+            boolean replay = KeyLockerStore.withIdentifierLocks(targets, () -> {
+                // A transaction of this process holds the same locks until it erased its journal, and a
+                // recovery elsewhere may have finished it meanwhile; only replay what is still there
+                Optional<TransactionJournal> journal = load(encryptionKey, listed.journalKey);
+                if (journal.isEmpty() || journal.get().isLeased()) {
+                    return false;
+                }
+                markApplying(targets);
+                try {
+                    journal.get().apply(false);
+                    KeyLockerStore.erase(encryptionKey, listed.journalKey);
+                } finally {
+                    unmarkApplying(targets);
+                }
+                return true;
+            });
+            if (!replay) {
+                continue;
+            }
+            for (String storageKey : targets) {
+                KeyLockerStore.notifyChanged(storageKey);
+            }
+            replayed++;
+            log.info("Replayed transaction journal {} ({} write(s), {} delete(s))",
+                    listed.journalKey, listed.writes.size(), listed.deletes.size());
+        }
+        return replayed;
+    }
+
+    /**
+     * Checks whether a transaction of this process is writing an identifier; its other targets may
+     * already hold the new values while this one does not
+     * @param storageKey Identifier
+     * @return true while a transaction targeting the identifier is being applied
+     */
+    static boolean isApplying(String storageKey) {
+        return applying.containsKey(storageKey);
+    }
+
+    private static void markApplying(Set<String> storageKeys) {
+        for (String storageKey : storageKeys) {
+            applying.merge(storageKey, 1, Integer::sum);
+        }
+    }
+
+    private static void unmarkApplying(Set<String> storageKeys) {
+        for (String storageKey : storageKeys) {
+            applying.computeIfPresent(storageKey, (key, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+
+    private static Optional<TransactionJournal> load(String encryptionKey, String journalKey) {
+        Map<String, Object> stored;
+        try {
+            Optional<Map<String, Object>> found = new KeyLockerStore()
+                    .setEncryptionKey(encryptionKey)
+                    .setStorageKey(journalKey)
+                    .find();
+            if (found.isEmpty()) {
+                return Optional.empty();
+            }
+            stored = found.get();
+        } catch (KeyLockerException e) {
+            // Written under another key, or torn before the commit point; left to its own key's recovery
+            log.debug("Skipping transaction journal {}: {}", journalKey, e.getMessage());
+            return Optional.empty();
+        }
+
+        Map<String, Map<String, Object>> writes = new LinkedHashMap<>();
+        if (stored.get("writes") instanceof JSONObject staged) {
+            for (String storageKey : staged.keySet()) {
+                writes.put(storageKey, staged.getJSONObject(storageKey).toMap());
+            }
+        }
+        Set<String> deletes = new LinkedHashSet<>();
+        if (stored.get("deletes") instanceof JSONArray removed) {
+            for (int i = 0; i < removed.length(); i++) {
+                deletes.add(removed.getString(i));
+            }
+        }
+        long sequence = stored.get("sequence") instanceof Number number ? number.longValue() : 0L;
+        // Journals without an owner predate leases and are always recoverable
+        Owner owner = stored.get("owner") instanceof Number pid
+                ? new Owner(pid.longValue(), stored.get("ownerStart") instanceof Number start ? start.longValue() : 0L)
+                : null;
+        long heartbeat = stored.get("heartbeat") instanceof Number time ? time.longValue() : 0L;
+        return Optional.of(new TransactionJournal(encryptionKey, journalKey, sequence, writes, deletes,
+                owner, heartbeat));
+    }
+
+    private Map<String, Object> toProperties(long heartbeat) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("sequence", sequence);
+        properties.put("writes", writes);
+        properties.put("deletes", new ArrayList<>(deletes));
+        properties.put("owner", owner.pid());
+        properties.put("ownerStart", owner.startMillis());
+        properties.put("heartbeat", heartbeat);
+        return properties;
+    }
+
+    /**
+     * Checks whether another live process is still applying this journal. Journals of this process are never
+     * leased: while one is being applied its targets stay locked, and once that ended it needs replaying.
+     */
+    private boolean isLeased() {
+        if (owner == null || owner.equals(CURRENT_OWNER)) {
+            return false;
+        }
+        return System.currentTimeMillis() - heartbeat < LEASE_MILLIS && owner.isAlive();
+    }
+
+    private void refreshHeartbeat() {
+        heartbeatLock.lock();
+        try {
+            if (!finished) {
+                KeyLockerStore.write(encryptionKey, journalKey, toProperties(System.currentTimeMillis()));
+            }
+        } catch (KeyLockerException e) {
+            log.warn("Failed to refresh heartbeat of transaction journal {}: {}", journalKey, e.getMessage());
+        } finally {
+            heartbeatLock.unlock();
+        }
+    }
+
+    // Waits for a heartbeat being stored, so none recreates the journal after it was erased
+    private void finish() {
+        heartbeatLock.lock();
+        try {
+            finished = true;
+        } finally {
+            heartbeatLock.unlock();
+        }
+    }
+
+    private void apply(boolean parallel) throws KeyLockerException {
+        // Every target counts as changing until all are written, so snapshots in other processes see none of them
+        // before the whole transaction is applied
+        Set<String> targets = new LinkedHashSet<>(writes.keySet());
+        targets.addAll(deletes);
+        for (String storageKey : targets) {
+            KeyLockerStore.beginChange(storageKey);
+        }
+        try {
+            applyTargets(parallel);
+        } finally {
+            for (String storageKey : targets) {
+                KeyLockerStore.endChange(storageKey);
+            }
+        }
+    }
+
+    private void applyTargets(boolean parallel) throws KeyLockerException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        Queue<String> failures = new ConcurrentLinkedQueue<>();
+
+        for (Map.Entry<String, Map<String, Object>> write : writes.entrySet()) {
+            tasks.add(() -> {
+                try {
+                    KeyLockerStore.write(encryptionKey, write.getKey(), write.getValue());
+                } catch (KeyLockerException e) {
+                    log.error("Failed to write {} in transaction: {}", write.getKey(), e.getMessage());
+                    failures.add(write.getKey());
+                }
+                return null;
+            });
+        }
+        for (String storageKey : deletes) {
+            tasks.add(() -> {
+                try {
+                    KeyLockerStore.erase(encryptionKey, storageKey);
+                } catch (KeyLockerException e) {
+                    log.error("Failed to delete {} in transaction: {}", storageKey, e.getMessage());
+                    failures.add(storageKey);
+                }
+                return null;
+            });
+        }
+
+        if (parallel && tasks.size() > 1) {
+            try {
+                writers.invokeAll(tasks);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KeyLockerException("Transaction interrupted after commit; it is replayed on recovery");
+            }
+        } else {
+            for (Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                } catch (Exception e) {
+                    throw new KeyLockerException("Failed to apply transaction: " + e.getMessage(), e);
+                }
+            }
+        }
+
+        if (!failures.isEmpty()) {
+            throw new KeyLockerException("Transaction committed but failed to apply " + failures.size()
+                    + " change(s): " + failures + "; it is replayed on recovery");
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.platform.VaultReport;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodically scans the application's raw entries and deletes orphans: chunks and values left behind by
+ * interrupted writes and deletions. An entry has to stay an orphan for a whole interval before it is deleted,
+ * so entries of a write in progress are left alone. Orphans are deleted in batches with a pause in between,
+ * on a single minimum-priority daemon thread.
+ */
+@Slf4j
+class VaultCollector {
+
+    private static final int BATCH_SIZE = 64;
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    private final PlatformKeyLockerStorage storage;
+    private final String encryptionKey;
+    private final long intervalMillis;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "OsKeyLocker-vault-collector");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private volatile VaultReport lastReport;
+
+    /**
+     * Starts collecting
+     * @param storage Platform storage
+     * @param encryptionKey Key used to read chunk counts from metadata
+     * @param intervalMillis Delay between sweeps, which is also how long an entry must stay an orphan
+     */
+    VaultCollector(PlatformKeyLockerStorage storage, String encryptionKey, long intervalMillis) {
+        this.storage = storage;
+        this.encryptionKey = encryptionKey;
+        this.intervalMillis = intervalMillis;
+        scheduler.scheduleWithFixedDelay(this::sweep, 0, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Gets the report of the last completed sweep
+     * @return The report, or null before the first sweep completes
+     */
+    VaultReport getLastReport() {
+        return lastReport;
+    }
+
+    /**
+     * Stops collecting; a sweep in progress ends after its current batch
+     */
+    void close() {
+        scheduler.shutdownNow();
+    }
+
+    private void sweep() {
+        int collected = 0;
+        VaultReport report;
+        try {
+            do {
+                report = storage.scanVault(encryptionKey, BATCH_SIZE, intervalMillis);
+                collected += report.collected();
+                if (report.collected() == BATCH_SIZE) {
+                    Thread.sleep(BATCH_PAUSE_MILLIS);
+                }
+            } while (report.collected() == BATCH_SIZE);
+        } catch (KeyLockerException e) {
+            log.error("Failed to scan vault for orphaned entries: {}", e.getMessage());
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        lastReport = report;
+        if (collected > 0) {
+            log.debug("Removed {} orphaned entries; {} entries remain", collected,
+                    report.entries() - report.collected());
+        }
+        if (report.damaged() > 0) {
+            log.warn("{} credential(s) are missing chunks their metadata refers to", report.damaged());
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.PropertyTypes;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind buffer that merges property writes to the same identifier arriving within a coalescing window.
+ * The first write to an identifier schedules a flush after the window; later writes merge into the pending
+ * properties, so a burst of updates becomes a single store of the merged map. A background flush that fails
+ * is retried with growing delays while the write stays pending.
+ */
+@Slf4j
+class WriteCoalescer {
+
+    /**
+     * Pending properties for one identifier. Guarded by its own lock, which a flush holds while storing;
+     * once flushed it is never reused.
+     */
+    private static final class PendingWrite {
+        private final String encryptionKey;
+        private final Map<String, Object> properties = new HashMap<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean flushed = false;
+
+        private PendingWrite(String encryptionKey) {
+            this.encryptionKey = encryptionKey;
+        }
+    }
+
+    /**
+     * Stores merged properties
+     */
+    interface Store {
+        void persist(String encryptionKey, String storageKey, Map<String, Object> properties) throws KeyLockerException;
+    }
+
+    // Longest wait between retries of a failed background flush
+    private static final long MAX_RETRY_DELAY_MILLIS = 30_000;
+
+    private final long windowMillis;
+    private final Store store;
+    private final ConcurrentHashMap<String, PendingWrite> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Creates a coalescer with its own daemon flush thread
+     * @param windowMillis How long the first write to an identifier waits for further writes before it is stored
+     */
+    WriteCoalescer(long windowMillis) {
+        this(windowMillis, KeyLockerStore::persist);
+    }
+
+    /**
+     * Creates a coalescer with its own daemon flush thread, storing through the given store
+     * @param windowMillis How long the first write to an identifier waits for further writes before it is stored
+     * @param store Where merged properties are stored
+     */
+    WriteCoalescer(long windowMillis, Store store) {
+        this.windowMillis = windowMillis;
+        this.store = store;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "OsKeyLocker-write-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queues properties for an identifier, merging them into any pending write for it
+     * @param encryptionKey Encryption key of the write
+     * @param storageKey Target identifier
+     * @param properties Properties to merge
+     * @throws KeyLockerException if a pending write under a different encryption key could not be flushed first
+     */
+    void write(String encryptionKey, String storageKey, Map<String, Object> properties) throws KeyLockerException {
+        while (true) {
+            PendingWrite existing = pending.get(storageKey);
+            if (existing != null && !existing.encryptionKey.equals(encryptionKey)) {
+                // Writes under different keys cannot be merged, keep them in order instead
+                flush(storageKey, existing);
+                continue;
+            }
+
+            if (existing == null) {
+                PendingWrite fresh = new PendingWrite(encryptionKey);
+                fresh.properties.putAll(properties);
+                if (pending.putIfAbsent(storageKey, fresh) == null) {
+                    scheduleFlush(storageKey, fresh, windowMillis, 0);
+                    return;
+                }
+                continue;
+            }
+
+            // Merged outside the map's own locking, since a flush holds the write's lock while it stores
+            existing.lock.lock();
+            try {
+                if (!existing.flushed) {
+                    PropertyTypes.merge(existing.properties, properties);
+                    return;
+                }
+            } finally {
+                existing.lock.unlock();
+            }
+            // Flushed since it was looked up; a new pending write takes its place
+            pending.remove(storageKey, existing);
+        }
+    }
+
+    /**
+     * Gets the pending properties of an identifier, as they will be stored by the next flush
+     * @param encryptionKey Encryption key of the reader
+     * @param storageKey Target identifier
+     * @return A copy of the pending properties, or null if nothing is pending for this identifier and key
+     */
+    Map<String, Object> pendingProperties(String encryptionKey, String storageKey) {
+        PendingWrite write = pending.get(storageKey);
+        if (write == null || !write.encryptionKey.equals(encryptionKey)) {
+            return null;
+        }
+
+        write.lock.lock();
+        try {
+            return write.flushed ? null : new HashMap<>(write.properties);
+        } finally {
+            write.lock.unlock();
+        }
+    }
+
+    /**
+     * Drops any pending write for an identifier without storing it
+     * @param storageKey Target identifier
+     */
+    void discard(String storageKey) {
+        PendingWrite write = pending.remove(storageKey);
+        if (write != null) {
+            write.lock.lock();
+            try {
+                write.flushed = true;
+            } finally {
+                write.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Stores the pending write of one identifier, if any
+     * @param storageKey Target identifier
+     * @throws KeyLockerException if the store fails
+     */
+    void flush(String storageKey) throws KeyLockerException {
+        PendingWrite write = pending.get(storageKey);
+        if (write != null) {
+            flush(storageKey, write);
+        }
+    }
+
+    /**
+     * Stores every pending write. Returns once all writes queued before the call are durable.
+     * @throws KeyLockerException if a store fails, including that of a write whose background flush kept failing
+     */
+    void flushAll() throws KeyLockerException {
+        KeyLockerException failure = null;
+        for (Map.Entry<String, PendingWrite> entry : pending.entrySet()) {
+            try {
+                flush(entry.getKey(), entry.getValue());
+            } catch (KeyLockerException e) {
+                failure = e;
+            }
+        }
+
+        if (failure != null) {
+            throw new KeyLockerException("Failed to flush pending writes: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Flushes every pending write and stops the flush thread
+     * @throws KeyLockerException if a store fails
+     */
+    void close() throws KeyLockerException {
+        scheduler.shutdown();
+        flushAll();
+    }
+
+    private void scheduleFlush(String storageKey, PendingWrite write, long delayMillis, int failures) {
+        try {
+            scheduler.schedule(() -> flushInBackground(storageKey, write, failures), delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closing; close() flushes what is still pending
+        }
+    }
+
+    private void flushInBackground(String storageKey, PendingWrite write, int failures) {
+        try {
+            flush(storageKey, write);
+        } catch (KeyLockerException | RuntimeException e) {
+            // Kept pending, so it is retried here with a doubling delay and by every flush()/close()
+            long delayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, windowMillis << Math.min(failures + 1, 20));
+            log.error("Failed to flush pending write for {}, retrying in {} ms: {}", storageKey, delayMillis,
+                    e.getMessage());
+            scheduleFlush(storageKey, write, delayMillis, failures + 1);
+        }
+    }
+
+    private void flush(String storageKey, PendingWrite write) throws KeyLockerException {
+        write.lock.lock();
+        try {
+            if (write.flushed) {
+                return;
+            }
+            store.persist(write.encryptionKey, storageKey, write.properties);
+            write.flushed = true;
+        } finally {
+            write.lock.unlock();
+        }
+        pending.remove(storageKey, write);
+    }
+}
@@ -0,0 +1,25 @@
+package com.OsKeyLocker.exceptions;
+
+import java.io.Serial;
+
+/**
+ * Exception thrown when a credential, or part of one, is not stored. Storage layers turn it into an empty
+ * result, so it carries no stack trace, and the read paths throw shared preallocated instances.
+ */
+public class CredentialNotFoundException extends KeyLockerException {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** A chunk of a credential is missing, e.g. because the credential was removed while it was being read */
+    public static final CredentialNotFoundException MISSING_CHUNK =
+            new CredentialNotFoundException("Credential chunk not found");
+
+    /** The payload entry of a credential is missing, e.g. because the credential was removed while it was being read */
+    public static final CredentialNotFoundException MISSING_PAYLOAD =
+            new CredentialNotFoundException("Credential payload not found");
+
+    public CredentialNotFoundException(String message) {
+        super(message, null, false, false);
+    }
+}
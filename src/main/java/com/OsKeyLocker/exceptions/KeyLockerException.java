@@ -1,10 +1,15 @@
 package com.OsKeyLocker.exceptions;
 
+import java.io.Serial;
+
 /**
  * Exception thrown when secure storage operations fail
  */
 public class KeyLockerException extends Exception {
 
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     public KeyLockerException(String message) {
         super(message);
     }
@@ -12,4 +17,8 @@ public class KeyLockerException extends Exception {
     public KeyLockerException(String message, Throwable cause) {
         super(message, cause);
     }
+
+    protected KeyLockerException(String message, Throwable cause, boolean enableSuppression, boolean writableStackTrace) {
+        super(message, cause, enableSuppression, writableStackTrace);
+    }
 }
\ No newline at end of file
@@ -1,10 +1,15 @@
 package com.OsKeyLocker.exceptions;
 
+import java.io.Serial;
+
 /**
  * Exception thrown when the current platform is not supported
  */
 public class PlatformNotSupportedException extends KeyLockerException {
 
+    @Serial
+    private static final long serialVersionUID = 1L;
+
     public PlatformNotSupportedException(String message) {
         super(message);
     }
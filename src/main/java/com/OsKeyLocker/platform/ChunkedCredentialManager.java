@@ -0,0 +1,1467 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.CredentialNotFoundException;
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.EncryptionUtil;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.GenerationTable;
+import com.OsKeyLocker.util.JsonFieldScanner;
+import com.OsKeyLocker.util.SecretBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Base class for OS credential stores that hold encrypted JSON credentials as one or more size-limited raw entries.
+ * Handles encryption, chunking and metadata; subclasses only provide the native raw entry operations.
+ */
+@Slf4j
+public abstract class ChunkedCredentialManager {
+
+    protected volatile String appPrefix;
+    // Package name given to setAppPrefix, naming this application's identifiers in the shared generation table
+    private volatile String packageName;
+    protected volatile CipherSuite cipherSuite = CipherSuite.AES_GCM;
+    // Key of threads that have not set their own: the one given to initialize()
+    private volatile EncryptionUtil defaultEncryption;
+    // Key each thread set for its own operations. Threads working under different keys share one manager,
+    // so the key belongs to the calling thread rather than to the manager, and no lock is held across operations.
+    private final ThreadLocal<EncryptionUtil> threadEncryption = new ThreadLocal<>();
+
+    private static final String CHUNK_IDENTIFIER = "CHUNK_";
+    private static final String METADATA_KEY = "metadata";
+    // Chunk names: "<key>.CHUNK_<chunkSet>_<index>", or "<key>.CHUNK_<index>" for credentials without a chunk set
+    private static final Pattern CHUNK_NAME =
+            Pattern.compile("(.+)\\." + CHUNK_IDENTIFIER + "(?:([0-9a-z]{1,13})_)?(\\d{1,9})");
+    // Metadata "format" of credentials stored as independently authenticated segments, one per chunk.
+    // Single-message credentials written before segmenting have no format field.
+    static final String FORMAT_SEGMENTED = "segmented";
+    // Metadata "content" of segmented credentials: JSON properties or an opaque byte stream
+    static final String CONTENT_JSON = "json";
+    static final String CONTENT_BINARY = "binary";
+    // Metadata field holding the credential's own data key. The payload is encrypted with this key and the
+    // metadata with the master key, which wraps it; credentials written before envelope encryption have none.
+    static final String DATA_KEY = "dataKey";
+    // Metadata field holding the cipher suite id of segmented credentials, whose segments carry no header.
+    // Segmented credentials written before cipher suites have none and are AES-GCM.
+    static final String SUITE = "suite";
+    // Metadata field naming the set of chunk entries holding the payload. Every write puts its payload under a
+    // fresh set, so the previous payload stays intact until the metadata write commits the new one. Credentials
+    // written before chunk sets have none, and their chunks are named without one.
+    static final String CHUNK_SET = "chunkSet";
+    // Metadata field holding the expiry of credentials written with a TTL, in epoch milliseconds
+    static final String EXPIRES_AT = "expiresAt";
+    // Such credentials also carry "<expiresAt>:<chunks>[:<chunkSet>]" in plaintext in front of the encrypted
+    // metadata, ended by a character outside the Base64 alphabet. It lets expired entries be skipped before any
+    // decryption and removed without a key; being unauthenticated, it can only hide an entry early, never extend
+    // its lifetime.
+    private static final char EXPIRY_HEADER_END = '!';
+
+    // Largest scratch buffer kept for reuse; reads of larger credentials allocate theirs and drop them afterwards
+    private static final int MAX_RETAINED_SCRATCH = 256 * 1024;
+    // Scratch buffers for the off-heap secret read path, shared by every thread and wiped after each read
+    static final ScratchBufferPool SCRATCH_BUFFERS = new ScratchBufferPool(
+            Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), MAX_RETAINED_SCRATCH);
+    private static final int[] BASE64_VALUES = new int[256];
+    // How often a read starts over when the credential was replaced while it was being read
+    private static final int MAX_READ_ATTEMPTS = 4;
+    private static final AtomicLong LAST_GENERATION = new AtomicLong();
+
+    // Orphans found by the last vault scan, with their credential's metadata fingerprint and when they were first seen
+    private Map<String, Orphan> orphanCandidates = new HashMap<>();
+    // Serializes scans; a lock rather than a monitor, since a scan makes native calls
+    private final ReentrantLock scanLock = new ReentrantLock();
+
+    // Chunk sets that streams of this process are writing, as "<credential name>.CHUNK_<chunkSet>". Their metadata
+    // does not name them until the stream is closed, so vault scans would otherwise take their segments for orphans.
+    private static final Set<String> OPEN_CHUNK_SETS = ConcurrentHashMap.newKeySet();
+
+    private record Orphan(long stamp, long firstSeen) {
+    }
+
+    // Shared generation table, opened on first use by a vault scan; null if it cannot be opened
+    private static final class SharedGenerations {
+        static final GenerationTable TABLE = open();
+
+        private static GenerationTable open() {
+            try {
+                return GenerationTable.openShared();
+            } catch (KeyLockerException e) {
+                log.warn("Shared generation table unavailable, vault scans only see this process's streams: {}",
+                        e.getMessage());
+                return null;
+            }
+        }
+    }
+
+    // Payload layout of a credential: its chunk count, -1 if unknown, and chunk set, null if it has none
+    private record Layout(int chunks, String chunkSet) {
+    }
+
+    /**
+     * Read of a credential given its decrypted metadata
+     * @param <T> Result type
+     */
+    private interface MetadataRead<T> {
+        T apply(JSONObject metadata) throws KeyLockerException;
+    }
+
+    static {
+        Arrays.fill(BASE64_VALUES, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64_VALUES[alphabet.charAt(i)] = i;
+        }
+    }
+
+    /**
+     * Creates a new manager using the default credential prefix
+     */
+    protected ChunkedCredentialManager() {
+        this.appPrefix = "OsKeyLocker";
+    }
+
+    /**
+     * Initializes native access and the encryption key
+     *
+     * @param encryptionKey The encryption key to use (may be null for default)
+     * @throws KeyLockerException if initialization fails
+     */
+    public void initialize(String encryptionKey) throws KeyLockerException {
+        loadNativeAccess();
+
+        if (encryptionKey != null) {
+            this.defaultEncryption = new EncryptionUtil(encryptionKey, cipherSuite);
+        }
+    }
+
+    /**
+     * Sets the encryption key used by the calling thread's operations
+     *
+     * @param encryptionKey The encryption key
+     * @throws KeyLockerException if setting the key fails
+     */
+    public void setEncryptionKey(String encryptionKey) throws KeyLockerException {
+        threadEncryption.set(new EncryptionUtil(encryptionKey, cipherSuite));
+    }
+
+    /**
+     * Sets the encryption key used by the calling thread's operations, plus a second key that reads fall back to.
+     * Used while entries are being re-encrypted, when each entry may still be under either key.
+     *
+     * @param encryptionKey The encryption key used for writes and tried first for reads
+     * @param fallbackKey   The key tried when decryption with encryptionKey fails
+     * @throws KeyLockerException if setting the keys fails
+     */
+    public void setEncryptionKey(String encryptionKey, String fallbackKey) throws KeyLockerException {
+        threadEncryption.set(new EncryptionUtil(encryptionKey, cipherSuite)
+                .withFallback(new EncryptionUtil(fallbackKey, cipherSuite)));
+    }
+
+    /**
+     * Gets the encryption of the calling thread's operations: the key it set, or else the initial key,
+     * with the current cipher suite
+     *
+     * @return The encryption to use
+     * @throws KeyLockerException if no key was set
+     */
+    protected EncryptionUtil encryption() throws KeyLockerException {
+        EncryptionUtil encryption = threadEncryption.get();
+        if (encryption == null) {
+            encryption = defaultEncryption;
+        }
+        if (encryption == null) {
+            throw new KeyLockerException("No encryption key set");
+        }
+        return encryption.withSuite(cipherSuite);
+    }
+
+    /**
+     * Sets the cipher suite used for new writes. Existing credentials stay readable whatever suite they use.
+     *
+     * @param cipherSuite The cipher suite
+     */
+    public void setCipherSuite(CipherSuite cipherSuite) {
+        this.cipherSuite = cipherSuite;
+    }
+
+    /**
+     * Gets the cipher suite used for new writes
+     *
+     * @return The cipher suite
+     */
+    public CipherSuite getCipherSuite() {
+        return cipherSuite;
+    }
+
+    /**
+     * Sets the application prefix for credential names based on package name
+     *
+     * @param packageName Application package name
+     */
+    public void setAppPrefix(String packageName) {
+        this.appPrefix = "OsKeyLocker." + packageName;
+        this.packageName = packageName;
+    }
+
+    /**
+     * Loads the native libraries used by this credential store
+     *
+     * @throws KeyLockerException if the native libraries cannot be loaded
+     */
+    protected abstract void loadNativeAccess() throws KeyLockerException;
+
+    /**
+     * Gets the maximum size of a single raw entry, in Base64 characters.
+     * Must be a multiple of 4 so every chunk decodes independently.
+     *
+     * @return Maximum raw entry size
+     */
+    protected abstract int getMaxCredentialSize();
+
+    /**
+     * Adds or replaces a raw entry in the native store
+     *
+     * @param credName The full credential name
+     * @param value    The string value to store
+     * @throws KeyLockerException if the operation fails
+     */
+    protected abstract void addRawCredential(String credName, String value) throws KeyLockerException;
+
+    /**
+     * Retrieves a raw entry from the native store
+     *
+     * @param credName The full credential name
+     * @return The stored value, or null if not found
+     * @throws KeyLockerException if retrieval fails for technical reasons
+     */
+    protected abstract String getRawCredential(String credName) throws KeyLockerException;
+
+    /**
+     * Reads a raw entry and appends its Base64-decoded bytes to a buffer.
+     * Implementations should decode straight from native memory, without creating a String.
+     *
+     * @param credName The full credential name
+     * @param target   Buffer receiving the decoded bytes
+     * @return true if the entry was found, false otherwise
+     * @throws KeyLockerException if retrieval fails for technical reasons
+     */
+    protected abstract boolean readRawCredential(String credName, ByteBuffer target) throws KeyLockerException;
+
+    /**
+     * Deletes a raw entry from the native store, ignoring entries that do not exist
+     *
+     * @param credName The full credential name
+     * @throws KeyLockerException if deletion fails
+     */
+    protected abstract void deleteRawCredential(String credName) throws KeyLockerException;
+
+    /**
+     * Lists the raw entries in the native store whose name starts with a prefix
+     *
+     * @param prefix Credential name prefix
+     * @return Matching credential names
+     * @throws KeyLockerException if enumeration fails
+     */
+    protected abstract List<String> listRawCredentials(String prefix) throws KeyLockerException;
+
+    /**
+     * Builds the full credential name with prefix
+     *
+     * @param key Base credential key
+     * @return Full credential name
+     */
+    protected String buildCredentialName(String key) {
+        return appPrefix + "." + key;
+    }
+
+    /**
+     * Builds a chunk credential name
+     *
+     * @param key        Base credential key
+     * @param chunkIndex The chunk index
+     * @return Chunk credential name
+     */
+    protected String buildChunkName(String key, int chunkIndex) {
+        return buildCredentialName(key) + "." + CHUNK_IDENTIFIER + chunkIndex;
+    }
+
+    /**
+     * Builds the name of a chunk belonging to a chunk set
+     *
+     * @param key        Base credential key
+     * @param chunkSet   The chunk set, or null for the names used before chunk sets
+     * @param chunkIndex The chunk index
+     * @return Chunk credential name
+     */
+    protected String buildChunkName(String key, String chunkSet, int chunkIndex) {
+        if (chunkSet == null) {
+            return buildChunkName(key, chunkIndex);
+        }
+        return buildCredentialName(key) + "." + CHUNK_IDENTIFIER + chunkSet + "_" + chunkIndex;
+    }
+
+    /**
+     * Builds the name of a chunk of the payload a credential's metadata describes
+     *
+     * @param key        Base credential key
+     * @param metadata   The credential's metadata
+     * @param chunkIndex The chunk index
+     * @return Chunk credential name
+     */
+    protected String buildChunkName(String key, JSONObject metadata, int chunkIndex) {
+        return buildChunkName(key, metadata.optString(CHUNK_SET, null), chunkIndex);
+    }
+
+    /**
+     * Creates the name of a new chunk set
+     *
+     * @return A chunk set name not used by any earlier write
+     */
+    static String newChunkSet() {
+        return Long.toUnsignedString(ThreadLocalRandom.current().nextLong(), 36);
+    }
+
+    /**
+     * Records that a stream is writing to a chunk set, so vault scans keep its segments until the stream is closed
+     *
+     * @param key      Credential key
+     * @param chunkSet The stream's chunk set
+     * @return Name to pass to {@link #closeChunkSet} when the stream is closed
+     */
+    String openChunkSet(String key, String chunkSet) {
+        String name = buildCredentialName(key) + "." + CHUNK_IDENTIFIER + chunkSet;
+        OPEN_CHUNK_SETS.add(name);
+        return name;
+    }
+
+    /**
+     * Records that a stream opened with {@link #openChunkSet} is closed
+     *
+     * @param name Name returned by {@link #openChunkSet}
+     */
+    static void closeChunkSet(String name) {
+        OPEN_CHUNK_SETS.remove(name);
+    }
+
+    // Whether another process is writing the credential, as recorded in the shared generation table
+    private boolean isBeingWritten(String key) {
+        String application = packageName;
+        GenerationTable generations = application == null ? null : SharedGenerations.TABLE;
+        return generations != null && generations.isWriting(application + "/" + key);
+    }
+
+    /**
+     * Builds the metadata credential name
+     *
+     * @param key Base credential key
+     * @return Metadata credential name
+     */
+    protected String buildMetadataName(String key) {
+        return buildCredentialName(key + "." + METADATA_KEY);
+    }
+
+    /**
+     * Reads and decrypts the metadata of a credential
+     *
+     * @param key            Credential key
+     * @param encryptionUtil Encryption the credential was written with
+     * @return The metadata, or null if the credential does not exist
+     * @throws KeyLockerException if the metadata cannot be read or decrypted
+     */
+    protected JSONObject readMetadata(String key, EncryptionUtil encryptionUtil) throws KeyLockerException {
+        return decryptMetadata(getRawCredential(buildMetadataName(key)), encryptionUtil);
+    }
+
+    private static JSONObject decryptMetadata(String rawMetadata, EncryptionUtil encryptionUtil)
+            throws KeyLockerException {
+        if (rawMetadata == null || isExpired(headerExpiry(rawMetadata))) {
+            return null;
+        }
+
+        JSONObject metadata = new JSONObject(encryptionUtil.decrypt(encryptedPart(rawMetadata)));
+        // The encrypted expiry is authoritative, the plaintext header is only a hint
+        return isExpired(metadata.optLong(EXPIRES_AT)) ? null : metadata;
+    }
+
+    /**
+     * Encrypts and writes the metadata of a credential, stamping it with a new generation
+     *
+     * @param key            Credential key
+     * @param metadata       The metadata to write
+     * @param encryptionUtil Encryption to use
+     * @throws KeyLockerException if the metadata cannot be written
+     */
+    protected void writeMetadata(String key, JSONObject metadata, EncryptionUtil encryptionUtil) throws KeyLockerException {
+        metadata.put("generation", nextGeneration());
+        String rawMetadata = encryptionUtil.encrypt(metadata.toString());
+
+        long expiresAt = metadata.optLong(EXPIRES_AT);
+        if (expiresAt != 0) {
+            String chunkSet = metadata.optString(CHUNK_SET, null);
+            rawMetadata = expiresAt + ":" + metadata.getInt("chunks") + (chunkSet != null ? ":" + chunkSet : "")
+                    + EXPIRY_HEADER_END + rawMetadata;
+        }
+        addRawCredential(buildMetadataName(key), rawMetadata);
+    }
+
+    /**
+     * Runs a read against a credential's current metadata. A writer replacing the credential deletes the old
+     * payload once the new metadata is committed, so a chunk missing under metadata that has since changed means
+     * the read raced with a replacement, and it starts over with the new metadata.
+     *
+     * @param key  Credential key
+     * @param read Read of the credential's payload
+     * @return The read's result, or empty if the credential is not stored
+     * @throws KeyLockerException if the credential cannot be read
+     */
+    private <T> Optional<T> readCommitted(String key, MetadataRead<T> read) throws KeyLockerException {
+        String metadataName = buildMetadataName(key);
+        String rawMetadata = getRawCredential(metadataName);
+
+        for (int attempt = 1; ; attempt++) {
+            JSONObject metadata = decryptMetadata(rawMetadata, encryption());
+            if (metadata == null) {
+                return Optional.empty();
+            }
+
+            try {
+                return Optional.ofNullable(read.apply(metadata));
+            } catch (CredentialNotFoundException e) {
+                String current = getRawCredential(metadataName);
+                if (attempt == MAX_READ_ATTEMPTS || current == null || current.equals(rawMetadata)) {
+                    throw e;
+                }
+                rawMetadata = current;
+            }
+        }
+    }
+
+    /**
+     * Deletes the payload of a credential version that newer metadata has replaced. Failures are only logged:
+     * the new version is already committed, and entries left behind are collected as orphans.
+     *
+     * @param key            Credential key
+     * @param rawMetadata    The replaced metadata as stored, or null if there was none
+     * @param encryptionUtil Encryption the replaced metadata may be under
+     * @param keepChunkSet   Chunk set of the new version, never deleted
+     */
+    void deleteReplacedPayload(String key, String rawMetadata, EncryptionUtil encryptionUtil, String keepChunkSet) {
+        if (rawMetadata == null) {
+            return;
+        }
+
+        try {
+            Layout layout = layoutOf(rawMetadata, encryptionUtil);
+            if (layout.chunks() < 0) {
+                // Unknown layout: a previous value of the format before chunk sets is all that can be found by name
+                deleteRawCredential(buildCredentialName(key));
+                deleteChunksFrom(key, 0);
+            } else if (layout.chunks() == 0) {
+                deleteRawCredential(buildCredentialName(key));
+            } else if (!Objects.equals(layout.chunkSet(), keepChunkSet)) {
+                for (int i = 0; i < layout.chunks(); i++) {
+                    deleteRawCredential(buildChunkName(key, layout.chunkSet(), i));
+                }
+            }
+        } catch (KeyLockerException e) {
+            log.debug("Left the replaced payload of {} to the vault collector: {}", key, e.getMessage());
+        }
+    }
+
+    /**
+     * Checks whether an expiry has passed
+     *
+     * @param expiresAt Expiry in epoch milliseconds, or 0 for none
+     * @return true if the expiry is set and has passed
+     */
+    static boolean isExpired(long expiresAt) {
+        return expiresAt != 0 && expiresAt <= System.currentTimeMillis();
+    }
+
+    private static String encryptedPart(String rawMetadata) {
+        int headerEnd = rawMetadata.indexOf(EXPIRY_HEADER_END);
+        return headerEnd < 0 ? rawMetadata : rawMetadata.substring(headerEnd + 1);
+    }
+
+    private static long headerExpiry(String rawMetadata) {
+        int headerEnd = rawMetadata.indexOf(EXPIRY_HEADER_END);
+        if (headerEnd < 0) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(rawMetadata.substring(0, rawMetadata.indexOf(':')));
+        } catch (RuntimeException e) {
+            return 0L;
+        }
+    }
+
+    private static int headerChunks(String rawMetadata) {
+        int headerEnd = rawMetadata.indexOf(EXPIRY_HEADER_END);
+        if (headerEnd < 0) {
+            return -1;
+        }
+        try {
+            String[] fields = rawMetadata.substring(0, headerEnd).split(":");
+            return Integer.parseInt(fields[1]);
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String headerChunkSet(String rawMetadata) {
+        int headerEnd = rawMetadata.indexOf(EXPIRY_HEADER_END);
+        if (headerEnd < 0) {
+            return null;
+        }
+        String[] fields = rawMetadata.substring(0, headerEnd).split(":");
+        return fields.length > 2 ? fields[2] : null;
+    }
+
+    /**
+     * Gets the payload layout of a credential, from the expiry header if it has one and otherwise from the
+     * decrypted metadata
+     *
+     * @param rawMetadata    The metadata as stored
+     * @param encryptionUtil Encryption the metadata may be under
+     * @return The layout, with a chunk count of -1 if the metadata cannot be decrypted
+     */
+    private static Layout layoutOf(String rawMetadata, EncryptionUtil encryptionUtil) {
+        int chunks = headerChunks(rawMetadata);
+        if (chunks >= 0) {
+            return new Layout(chunks, headerChunkSet(rawMetadata));
+        }
+        try {
+            JSONObject metadata = new JSONObject(encryptionUtil.decrypt(encryptedPart(rawMetadata)));
+            return new Layout(metadata.getInt("chunks"), metadata.optString(CHUNK_SET, null));
+        } catch (Exception e) {
+            return new Layout(-1, null);
+        }
+    }
+
+    /**
+     * Gets the encryption of a credential's payload: its own data key if the metadata carries one,
+     * otherwise the master key the metadata was decrypted with, set to the credential's cipher suite
+     *
+     * @param metadata         The credential's metadata
+     * @param masterEncryption Encryption the metadata was decrypted with
+     * @return Encryption for the credential's payload
+     * @throws KeyLockerException if the metadata names an unknown cipher suite
+     */
+    protected static EncryptionUtil payloadEncryption(JSONObject metadata, EncryptionUtil masterEncryption)
+            throws KeyLockerException {
+        CipherSuite suite = CipherSuite.fromId(metadata.optInt(SUITE, CipherSuite.AES_GCM.getId()));
+        if (!metadata.has(DATA_KEY)) {
+            return masterEncryption.withSuite(suite);
+        }
+
+        byte[] dataKey = Base64.getDecoder().decode(metadata.getString(DATA_KEY));
+        try {
+            return EncryptionUtil.forDataKey(dataKey, suite);
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+        }
+    }
+
+    /**
+     * Issues a write generation: the wall-clock time in milliseconds, bumped past the previous
+     * generation so that stamps issued by this process are strictly increasing
+     *
+     * @return A new generation stamp
+     */
+    private static long nextGeneration() {
+        return LAST_GENERATION.updateAndGet(last -> Math.max(last + 1, System.currentTimeMillis()));
+    }
+
+    /**
+     * Gets a cheap fingerprint of a credential's current version. Every write re-encrypts the metadata
+     * with a fresh IV and generation, so the fingerprint of the raw metadata entry changes on each store
+     * or removal without decrypting or parsing anything.
+     *
+     * @param key Credential key
+     * @return Fingerprint of the stored metadata, or 0 if the credential does not exist
+     * @throws KeyLockerException if the metadata cannot be read
+     */
+    public long getChangeStamp(String key) throws KeyLockerException {
+        String rawMetadata = getRawCredential(buildMetadataName(key));
+        return rawMetadata == null ? 0L : fingerprint(rawMetadata);
+    }
+
+    private static long fingerprint(String rawMetadata) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < rawMetadata.length(); i++) {
+            hash ^= rawMetadata.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0L ? 1L : hash;
+    }
+
+    /**
+     * Lists the keys of every credential stored under the current application prefix
+     *
+     * @return Credential keys
+     * @throws KeyLockerException if enumeration fails
+     */
+    public List<String> listCredentialKeys() throws KeyLockerException {
+        String prefix = appPrefix + ".";
+        String suffix = "." + METADATA_KEY;
+        List<String> keys = new ArrayList<>();
+
+        // Every credential, chunked or not, has exactly one metadata entry
+        for (String name : listRawCredentials(prefix)) {
+            if (name.endsWith(suffix) && name.length() > prefix.length() + suffix.length()) {
+                keys.add(name.substring(prefix.length(), name.length() - suffix.length()));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * Re-encrypts a credential in place under a new key. Entries are rewritten one at a time and the
+     * metadata last, and each entry stays decryptable under exactly one of the two keys, so readers holding
+     * both keys never fail and an interrupted run can simply be repeated. Segmented credentials keep their
+     * nonce prefix and layout; only the key changes.
+     *
+     * @param key  Credential key
+     * @param from Encryption the credential is currently under
+     * @param to   Encryption to re-encrypt with
+     * @return true if the credential was re-encrypted, false if its metadata is not under the old key
+     * (already rotated, or encrypted with an unrelated key) or it no longer exists
+     * @throws KeyLockerException if part of the credential cannot be decrypted or written
+     */
+    public boolean reencryptCredential(String key, EncryptionUtil from, EncryptionUtil to) throws KeyLockerException {
+        String encryptedMetadata = getRawCredential(buildMetadataName(key));
+        if (encryptedMetadata == null) {
+            return false;
+        }
+
+        JSONObject metadata;
+        try {
+            metadata = new JSONObject(from.decrypt(encryptedPart(encryptedMetadata)));
+        } catch (KeyLockerException e) {
+            // Either already done (the metadata is written last, so metadata under the new key means the whole
+            // credential is), or stored under an unrelated key and not part of this rotation
+            return false;
+        }
+
+        if (metadata.has(DATA_KEY)) {
+            // Envelope encryption: only the data key, wrapped in the metadata, moves to the new key
+            writeMetadata(key, metadata, to);
+            return true;
+        }
+
+        int chunks = metadata.getInt("chunks");
+
+        if (isSegmented(metadata)) {
+            byte[] noncePrefix = Base64.getDecoder().decode(metadata.getString("nonce"));
+            // Segments keep the suite recorded in the metadata, whichever suite the new key is configured with
+            CipherSuite suite = CipherSuite.fromId(metadata.optInt(SUITE, CipherSuite.AES_GCM.getId()));
+            from = from.withSuite(suite);
+            to = to.withSuite(suite);
+
+            for (int i = 0; i < chunks; i++) {
+                String chunkName = buildChunkName(key, metadata, i);
+                String encryptedChunk = getRawCredential(chunkName);
+                if (encryptedChunk == null) {
+                    throw new CredentialNotFoundException("Credential chunk " + i + " not found for key: " + key);
+                }
+
+                boolean last = i == chunks - 1;
+                byte[] encryptedSegment = Base64.getDecoder().decode(encryptedChunk);
+                byte[] segment;
+                try {
+                    segment = from.decryptSegment(noncePrefix, i, last, encryptedSegment);
+                } catch (KeyLockerException e) {
+                    // Already re-encrypted by an interrupted run
+                    to.decryptSegment(noncePrefix, i, last, encryptedSegment);
+                    continue;
+                }
+
+                addRawCredential(chunkName, Base64.getEncoder().encodeToString(
+                        to.encryptSegment(noncePrefix, i, last, segment, 0, segment.length)));
+                Arrays.fill(segment, (byte) 0);
+            }
+        } else if (chunks == 0) {
+            String credentialName = buildCredentialName(key);
+            String encryptedValue = getRawCredential(credentialName);
+            if (encryptedValue == null) {
+                throw new CredentialNotFoundException("Credential not found for key: " + key);
+            }
+
+            addRawCredential(credentialName, to.encrypt(from.withFallback(to).decrypt(encryptedValue)));
+        } else {
+            // Chunks of the older single-message format cannot be re-encrypted one by one, so the
+            // credential is rewritten in the segmented format
+            String value = decryptSingleMessage(key, metadata, from);
+
+            try (OutputStream out = new CredentialOutputStream(this, key, to.withFallback(from), getSegmentSize(),
+                    CONTENT_JSON, metadata.optLong(EXPIRES_AT))) {
+                out.write(value.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new KeyLockerException("Failed to re-encrypt chunked credential for key: " + key, e);
+            }
+            return true;
+        }
+
+        writeMetadata(key, metadata, to);
+        return true;
+    }
+
+    /**
+     * Checks whether a credential is stored as independently authenticated segments
+     *
+     * @param metadata The credential's metadata
+     * @return true if each chunk can be decrypted on its own
+     */
+    protected static boolean isSegmented(JSONObject metadata) {
+        return FORMAT_SEGMENTED.equals(metadata.optString("format"));
+    }
+
+    /**
+     * Fails if the metadata describes a binary stream, which cannot be read as a JSON credential
+     *
+     * @param key      Credential key
+     * @param metadata The credential's metadata
+     * @throws KeyLockerException if the credential is a binary stream
+     */
+    private void ensureJsonCredential(String key, JSONObject metadata) throws KeyLockerException {
+        if (isSegmented(metadata) && !CONTENT_JSON.equals(metadata.optString("content"))) {
+            throw new KeyLockerException("Credential is a stream, open it as an input stream instead: " + key);
+        }
+    }
+
+    /**
+     * Gets the plaintext capacity of one segment, sized so an encrypted segment fills exactly one raw entry
+     *
+     * @return Plaintext bytes per segment
+     */
+    protected int getSegmentSize() {
+        return EncryptionUtil.segmentPlaintextLength(getMaxCredentialSize() / 4 * 3);
+    }
+
+    /**
+     * Fetches and decrypts one segment of a segmented credential
+     *
+     * @param key            Credential key
+     * @param encryptionUtil Encryption the credential was written with
+     * @param metadata       The credential's metadata
+     * @param index          Segment index
+     * @return The plaintext segment
+     * @throws KeyLockerException if the segment is missing or fails authentication
+     */
+    protected byte[] readSegment(String key, EncryptionUtil encryptionUtil, JSONObject metadata, int index)
+            throws KeyLockerException {
+        String encrypted = getRawCredential(buildChunkName(key, metadata, index));
+        if (encrypted == null) {
+            throw CredentialNotFoundException.MISSING_CHUNK;
+        }
+
+        byte[] noncePrefix = Base64.getDecoder().decode(metadata.getString("nonce"));
+        boolean last = index == metadata.getInt("chunks") - 1;
+        return payloadEncryption(metadata, encryptionUtil)
+                .decryptSegment(noncePrefix, index, last, Base64.getDecoder().decode(encrypted));
+    }
+
+    /**
+     * Adds or updates a credential with JSON value
+     *
+     * @param key       Credential key
+     * @param jsonValue JSON object value to store
+     * @throws KeyLockerException if the operation fails
+     */
+    public void addCredential(String key, JSONObject jsonValue) throws KeyLockerException {
+        addCredential(key, jsonValue, 0L);
+    }
+
+    /**
+     * Adds or updates a credential with JSON value that expires at a given time
+     *
+     * @param key       Credential key
+     * @param jsonValue JSON object value to store
+     * @param expiresAt Expiry in epoch milliseconds, or 0 for none
+     * @throws KeyLockerException if the operation fails
+     */
+    public void addCredential(String key, JSONObject jsonValue, long expiresAt) throws KeyLockerException {
+        byte[] dataKey = EncryptionUtil.generateDataKey();
+        String encryptedValue = EncryptionUtil.forDataKey(dataKey, cipherSuite).encrypt(jsonValue.toString());
+
+        // Check if chunking is needed
+        if (encryptedValue.length() <= getMaxCredentialSize()) {
+            // Store as a single entry under a fresh chunk set, so the previous value stays readable
+            // until the metadata write below commits this one
+            String chunkSet = newChunkSet();
+            String payloadName = buildChunkName(key, chunkSet, 0);
+            log.debug("Storing {} as a single entry", key);
+
+            JSONObject metadata = new JSONObject();
+            metadata.put("chunks", 1);
+            metadata.put("totalLength", encryptedValue.length());
+            metadata.put(CHUNK_SET, chunkSet);
+            metadata.put(DATA_KEY, Base64.getEncoder().encodeToString(dataKey));
+            Arrays.fill(dataKey, (byte) 0);
+            if (expiresAt != 0) {
+                metadata.put(EXPIRES_AT, expiresAt);
+            }
+
+            EncryptionUtil encryption = encryption();
+            String previous = getRawCredential(buildMetadataName(key));
+            boolean committed = false;
+            try {
+                addRawCredential(payloadName, encryptedValue);
+                writeMetadata(key, metadata, encryption);
+                committed = true;
+            } finally {
+                if (!committed) {
+                    try {
+                        deleteRawCredential(payloadName);
+                    } catch (KeyLockerException | RuntimeException e) {
+                        log.debug("Left the uncommitted payload of {} to the vault collector: {}", key,
+                                e.getMessage());
+                    }
+                }
+            }
+
+            deleteReplacedPayload(key, previous, encryption, chunkSet);
+        } else {
+            // Need to chunk the credential: every chunk is encrypted on its own so it can be read independently.
+            // The stream generates its own data key, and commits the chunks with its metadata write, so the previous
+            // value stays readable until then and is left intact if the write fails.
+            Arrays.fill(dataKey, (byte) 0);
+            byte[] plainValue = jsonValue.toString().getBytes(StandardCharsets.UTF_8);
+
+            log.debug("Storing {} as {} chunks", key, plainValue.length / getSegmentSize() + 1);
+
+            try (OutputStream out = new CredentialOutputStream(this, key, encryption(), getSegmentSize(), CONTENT_JSON,
+                    expiresAt)) {
+                out.write(plainValue);
+            } catch (IOException e) {
+                if (e.getCause() instanceof KeyLockerException cause) {
+                    throw new KeyLockerException("Failed to store chunked credential for key " + key + ": "
+                            + cause.getMessage(), cause);
+                }
+                throw new KeyLockerException("Failed to store chunked credential for key: " + key, e);
+            } finally {
+                Arrays.fill(plainValue, (byte) 0);
+            }
+        }
+    }
+
+    /**
+     * Retrieves a JSON credential
+     *
+     * @param key Credential key
+     * @return JSON Object value
+     * @throws KeyLockerException if the credential cannot be found or retrieved
+     */
+    public JSONObject getCredential(String key) throws KeyLockerException {
+        Optional<JSONObject> credential = findCredential(key);
+        if (credential.isEmpty()) {
+            throw new CredentialNotFoundException("Credential metadata not found for key: " + key);
+        }
+        return credential.get();
+    }
+
+    /**
+     * Retrieves a JSON credential if it is stored
+     *
+     * @param key Credential key
+     * @return JSON Object value, or empty if the credential is not stored
+     * @throws KeyLockerException if the credential cannot be retrieved
+     */
+    public Optional<JSONObject> findCredential(String key) throws KeyLockerException {
+        return readCommitted(key, metadata -> {
+            ensureJsonCredential(key, metadata);
+
+            if (isSegmented(metadata)) {
+                return new JSONObject(new String(readSegments(key, metadata), StandardCharsets.UTF_8));
+            }
+            return new JSONObject(decryptSingleMessage(key, metadata, encryption()));
+        });
+    }
+
+    /**
+     * Reads part of a credential's plaintext. For segmented credentials only the chunks covering
+     * the range are fetched and decrypted; older single-message credentials are decrypted as a whole.
+     *
+     * @param key    Credential key
+     * @param offset Offset of the first byte to read
+     * @param length Maximum number of bytes to read
+     * @return The bytes in the range, shorter than length if the range extends past the end,
+     * or empty if the credential is not stored
+     * @throws KeyLockerException if the credential cannot be retrieved
+     */
+    public Optional<byte[]> readRange(String key, long offset, int length) throws KeyLockerException {
+        if (offset < 0 || length < 0) {
+            throw new KeyLockerException("Invalid range: offset " + offset + ", length " + length);
+        }
+
+        return readCommitted(key, metadata -> readRange(key, metadata, offset, length));
+    }
+
+    private byte[] readRange(String key, JSONObject metadata, long offset, int length) throws KeyLockerException {
+
+        if (!isSegmented(metadata)) {
+            byte[] plainValue = decryptSingleMessage(key, metadata, encryption()).getBytes(StandardCharsets.UTF_8);
+            int from = (int) Math.min(offset, plainValue.length);
+            return Arrays.copyOfRange(plainValue, from, (int) Math.min(plainValue.length, from + (long) length));
+        }
+
+        long end = Math.min(metadata.getLong("size"), offset + length);
+        if (offset >= end) {
+            return new byte[0];
+        }
+
+        int segmentSize = metadata.getInt("segmentSize");
+        byte[] result = new byte[(int) (end - offset)];
+
+        for (int i = (int) (offset / segmentSize); i <= (int) ((end - 1) / segmentSize); i++) {
+            byte[] segment = readSegment(key, encryption(), metadata, i);
+            long segmentStart = (long) i * segmentSize;
+            int from = (int) Math.max(0, offset - segmentStart);
+            int to = (int) Math.min(segment.length, end - segmentStart);
+
+            System.arraycopy(segment, from, result, (int) (segmentStart + from - offset), to - from);
+            Arrays.fill(segment, (byte) 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decrypts a credential stored as a single AES/GCM message, either in one entry or split across chunks
+     *
+     * @param key            Credential key
+     * @param metadata       The credential's metadata
+     * @param encryptionUtil Encryption the credential was written with
+     * @return The decrypted value
+     * @throws KeyLockerException if the credential cannot be found or decrypted
+     */
+    private String decryptSingleMessage(String key, JSONObject metadata, EncryptionUtil encryptionUtil)
+            throws KeyLockerException {
+        EncryptionUtil payloadEncryption = payloadEncryption(metadata, encryptionUtil);
+        int chunks = metadata.getInt("chunks");
+
+        if (chunks == 0) {
+            // Not chunked, retrieve the entire credential
+            String encryptedValue = getRawCredential(buildCredentialName(key));
+            if (encryptedValue == null) {
+                throw CredentialNotFoundException.MISSING_PAYLOAD;
+            }
+
+            return payloadEncryption.decrypt(encryptedValue);
+        }
+
+        // Chunked credential, retrieve and combine chunks
+        StringBuilder combinedValue = new StringBuilder();
+
+        for (int i = 0; i < chunks; i++) {
+            String chunkValue = getRawCredential(buildChunkName(key, metadata, i));
+            if (chunkValue == null) {
+                throw CredentialNotFoundException.MISSING_CHUNK;
+            }
+            combinedValue.append(chunkValue);
+        }
+
+        return payloadEncryption.decrypt(combinedValue.toString());
+    }
+
+    /**
+     * Decrypts every segment of a segmented credential
+     *
+     * @param key      Credential key
+     * @param metadata The credential's metadata
+     * @return The complete plaintext
+     * @throws KeyLockerException if a segment is missing or fails authentication
+     */
+    private byte[] readSegments(String key, JSONObject metadata) throws KeyLockerException {
+        byte[] result = new byte[metadata.getInt("size")];
+        int position = 0;
+
+        for (int i = 0; i < metadata.getInt("chunks"); i++) {
+            byte[] segment = readSegment(key, encryption(), metadata, i);
+            System.arraycopy(segment, 0, result, position, segment.length);
+            position += segment.length;
+            Arrays.fill(segment, (byte) 0);
+        }
+
+        return result;
+    }
+
+    /**
+     * Retrieves a single property of a credential into an off-heap buffer.
+     * The raw entries are Base64-decoded and decrypted into reusable direct buffers, so neither
+     * the ciphertext nor the decrypted JSON ever becomes a String.
+     *
+     * @param key      Credential key
+     * @param property Property to extract
+     * @return The property value, or empty if the credential is not stored or has no such property
+     * @throws KeyLockerException if the credential cannot be retrieved
+     */
+    public Optional<SecretBuffer> getSecret(String key, String property) throws KeyLockerException {
+        return getField(key, property, JsonFieldScanner::secretOf);
+    }
+
+    /**
+     * Decodes a single property of a credential straight from its decrypted payload, without building
+     * the other properties. The payload is decrypted into pooled direct buffers that are wiped afterwards.
+     *
+     * @param key      Credential key
+     * @param property Property to extract
+     * @param decoder  Decoder applied to the property's raw value token, or to null if it is absent
+     * @param <T>      Decoded value type
+     * @return The decoded value, or empty if the credential is not stored or the decoder returns null
+     * @throws KeyLockerException if the credential cannot be retrieved, or the decoder rejects the value
+     */
+    public <T> Optional<T> getField(String key, String property, FieldDecoder<T> decoder) throws KeyLockerException {
+        return readCommitted(key, metadata -> {
+            ensureJsonCredential(key, metadata);
+
+            if (isSegmented(metadata)) {
+                return getSegmentedField(key, metadata, property, decoder);
+            }
+            return getSingleMessageField(key, metadata, property, decoder);
+        });
+    }
+
+    private <T> T getSingleMessageField(String key, JSONObject metadata, String property, FieldDecoder<T> decoder)
+            throws KeyLockerException {
+
+        int chunks = metadata.getInt("chunks");
+        int decodedLength = metadata.getInt("totalLength") / 4 * 3;
+
+        ByteBuffer cipherData = SCRATCH_BUFFERS.acquire(decodedLength);
+        ByteBuffer plainData = null;
+        int plainLength = 0;
+
+        try {
+            if (chunks == 0) {
+                if (!readRawCredential(buildCredentialName(key), cipherData)) {
+                    throw CredentialNotFoundException.MISSING_PAYLOAD;
+                }
+            } else {
+                for (int i = 0; i < chunks; i++) {
+                    if (!readRawCredential(buildChunkName(key, metadata, i), cipherData)) {
+                        throw CredentialNotFoundException.MISSING_CHUNK;
+                    }
+                }
+            }
+
+            cipherData.flip();
+            plainLength = EncryptionUtil.maxPlaintextLength(cipherData.remaining());
+            plainData = SCRATCH_BUFFERS.acquire(plainLength);
+            payloadEncryption(metadata, encryption()).decrypt(cipherData, plainData);
+            plainData.flip();
+
+            return decoder.decode(JsonFieldScanner.findValue(plainData, property));
+        } finally {
+            SecretBuffer.zeroize(cipherData, 0, decodedLength);
+            SCRATCH_BUFFERS.release(cipherData);
+            if (plainData != null) {
+                SecretBuffer.zeroize(plainData, 0, plainLength);
+                SCRATCH_BUFFERS.release(plainData);
+            }
+        }
+    }
+
+    /**
+     * Off-heap read path for segmented credentials: each chunk is decoded into a reusable direct buffer
+     * and decrypted on its own, appending to the plaintext scratch buffer
+     *
+     * @param key      Credential key
+     * @param metadata The credential's metadata
+     * @param property Property to extract
+     * @param decoder  Decoder applied to the property's raw value token
+     * @param <T>      Decoded value type
+     * @return The decoded value
+     * @throws KeyLockerException if a chunk is missing or fails authentication
+     */
+    private <T> T getSegmentedField(String key, JSONObject metadata, String property, FieldDecoder<T> decoder)
+            throws KeyLockerException {
+        int chunks = metadata.getInt("chunks");
+        int plainLength = metadata.getInt("size");
+        int encryptedSegmentLength = getMaxCredentialSize() / 4 * 3;
+        byte[] noncePrefix = Base64.getDecoder().decode(metadata.getString("nonce"));
+        EncryptionUtil payloadEncryption = payloadEncryption(metadata, encryption());
+
+        ByteBuffer cipherData = SCRATCH_BUFFERS.acquire(encryptedSegmentLength);
+        ByteBuffer plainData = SCRATCH_BUFFERS.acquire(plainLength);
+
+        try {
+            for (int i = 0; i < chunks; i++) {
+                cipherData.clear();
+                if (!readRawCredential(buildChunkName(key, metadata, i), cipherData)) {
+                    throw CredentialNotFoundException.MISSING_CHUNK;
+                }
+                cipherData.flip();
+                payloadEncryption.decryptSegment(noncePrefix, i, i == chunks - 1, cipherData, plainData);
+            }
+            plainData.flip();
+
+            return decoder.decode(JsonFieldScanner.findValue(plainData, property));
+        } finally {
+            SecretBuffer.zeroize(cipherData, 0, encryptedSegmentLength);
+            SecretBuffer.zeroize(plainData, 0, plainLength);
+            SCRATCH_BUFFERS.release(cipherData);
+            SCRATCH_BUFFERS.release(plainData);
+        }
+    }
+
+    /**
+     * Opens a stream that writes a credential as independently authenticated segments,
+     * so arbitrarily large values can be stored with constant memory. The segments go to a new chunk set and
+     * closing the stream writes the metadata that commits them, so the previous value stays readable until then,
+     * and a stream that fails or is never closed leaves it intact. Vault scans keep the segments of a stream until
+     * it is closed; those of a stream that is never closed are collected as orphans once this process has exited.
+     *
+     * @param key       Credential key
+     * @param expiresAt Expiry in epoch milliseconds, or 0 for none
+     * @return Output stream; closing it commits the credential
+     * @throws KeyLockerException if no encryption key is set
+     */
+    public OutputStream openOutputStream(String key, long expiresAt) throws KeyLockerException {
+        return new CredentialOutputStream(this, key, encryption(), getSegmentSize(), CONTENT_BINARY, expiresAt);
+    }
+
+    /**
+     * Opens a stream over a credential written with {@link #openOutputStream}, reading one segment at a time.
+     * Replacing or deleting the credential while the stream is open makes its further reads fail.
+     *
+     * @param key Credential key
+     * @return Input stream over the credential, or empty if the credential is not stored
+     * @throws KeyLockerException if the credential cannot be read or was not written as a stream
+     */
+    public Optional<InputStream> openInputStream(String key) throws KeyLockerException {
+        JSONObject metadata = readMetadata(key, encryption());
+
+        if (metadata == null) {
+            return Optional.empty();
+        }
+        if (!isSegmented(metadata)) {
+            throw new KeyLockerException("Credential was not written as a stream: " + key);
+        }
+
+        return Optional.of(new CredentialInputStream(this, key, encryption(), metadata));
+    }
+
+    /**
+     * Deletes a credential and all its chunks
+     *
+     * @param key Credential key
+     * @throws KeyLockerException if the credential cannot be deleted
+     */
+    public void deleteCredential(String key) throws KeyLockerException {
+        // First check metadata to see if chunking is used
+        String metadataKey = buildMetadataName(key);
+        String encryptedMetadata;
+
+        try {
+            encryptedMetadata = getRawCredential(metadataKey);
+
+            if (encryptedMetadata != null) {
+                // The expiry header or the decrypted metadata give the chunks; if neither is readable, chunks
+                // named without a chunk set are deleted up to the first missing one
+                Layout layout = layoutOf(encryptedMetadata, encryption());
+                if (layout.chunks() >= 0) {
+                    for (int i = 0; i < layout.chunks(); i++) {
+                        deleteRawCredential(buildChunkName(key, layout.chunkSet(), i));
+                    }
+                } else {
+                    deleteChunksFrom(key, 0);
+                }
+            }
+        } catch (Exception e) {
+            // Continue to delete main credential even if metadata access fails
+        }
+
+        // Always attempt to delete main credential and metadata
+        deleteRawCredential(buildCredentialName(key));
+        deleteRawCredential(metadataKey);
+    }
+
+    /**
+     * Deletes a credential if its TTL has passed. Relies only on the plaintext expiry header, so no key is needed.
+     *
+     * @param key Credential key
+     * @return true if the credential had expired and was deleted
+     * @throws KeyLockerException if deletion fails
+     */
+    public boolean deleteIfExpired(String key) throws KeyLockerException {
+        String metadataKey = buildMetadataName(key);
+        String rawMetadata = getRawCredential(metadataKey);
+        if (rawMetadata == null || !isExpired(headerExpiry(rawMetadata))) {
+            return false;
+        }
+
+        // Metadata first, so a half-finished deletion never leaves a readable credential behind
+        deleteRawCredential(metadataKey);
+        String chunkSet = headerChunkSet(rawMetadata);
+        for (int i = 0; i < headerChunks(rawMetadata); i++) {
+            deleteRawCredential(buildChunkName(key, chunkSet, i));
+        }
+        deleteRawCredential(buildCredentialName(key));
+        return true;
+    }
+
+    /**
+     * Deletes the chunks of a credential named without a chunk set, from an index up to the first one missing.
+     * Chunks are written from index 0 without gaps, so this removes those left past the chunk count by an
+     * earlier, longer value.
+     *
+     * @param key   Credential key
+     * @param first Index of the first chunk to delete
+     * @throws KeyLockerException if a chunk cannot be read or deleted
+     */
+    protected void deleteChunksFrom(String key, int first) throws KeyLockerException {
+        for (int i = first; ; i++) {
+            String chunkName = buildChunkName(key, i);
+            if (getRawCredential(chunkName) == null) {
+                return;
+            }
+            deleteRawCredential(chunkName);
+        }
+    }
+
+    /**
+     * Scans the raw entries under the application prefix and matches chunks and values to the metadata of
+     * live credentials. When collecting, it also deletes orphans that earlier scans found at least a grace period
+     * ago, provided their credential's metadata has not changed since. Segments of streams that are still open are
+     * counted as orphans but never deleted: those of this process's streams until the stream is closed, and those
+     * of credentials another process is writing while its write lease in the shared generation table lasts.
+     *
+     * @param encryption  Encryption used to read the chunk count from metadata that has no expiry header
+     * @param maxCollect  Largest number of orphans to delete, or 0 to only report
+     * @param graceMillis How long an entry must stay an orphan before it is deleted
+     * @return The scan report
+     * @throws KeyLockerException if enumeration or deletion fails
+     */
+    public VaultReport scanVault(EncryptionUtil encryption, int maxCollect, long graceMillis)
+            throws KeyLockerException {
+        scanLock.lock();
+        try {
+            String prefix = appPrefix + ".";
+            String suffix = "." + METADATA_KEY;
+            List<String> names = listRawCredentials(prefix);
+            Set<String> present = new HashSet<>(names);
+
+            // Payload layout and metadata fingerprint of every credential; the chunk count is -1 if the metadata
+            // is unreadable
+            Map<String, Layout> layouts = new HashMap<>();
+            Map<String, Long> stamps = new HashMap<>();
+            int unverified = 0;
+            for (String name : names) {
+                if (name.endsWith(suffix) && name.length() > prefix.length() + suffix.length()) {
+                    String rawMetadata = getRawCredential(name);
+                    if (rawMetadata == null) {
+                        continue;
+                    }
+                    String key = name.substring(prefix.length(), name.length() - suffix.length());
+                    Layout layout = layoutOf(rawMetadata, encryption);
+                    if (layout.chunks() < 0) {
+                        unverified++;
+                    }
+                    layouts.put(key, layout);
+                    stamps.put(key, fingerprint(rawMetadata));
+                }
+            }
+
+            int chunks = 0;
+            Map<String, String> orphans = new LinkedHashMap<>();
+            Set<String> open = new HashSet<>();
+            for (String name : names) {
+                String rest = name.substring(prefix.length());
+                if (rest.endsWith(suffix)) {
+                    continue;
+                }
+
+                // A name can read as a chunk of one key and as the value of another; it is live if either is
+                Matcher chunk = CHUNK_NAME.matcher(rest);
+                String owner = rest;
+                if (chunk.matches()) {
+                    owner = chunk.group(1);
+                    Layout layout = layouts.get(owner);
+                    if (layout != null && (layout.chunks() < 0 || (Objects.equals(chunk.group(2), layout.chunkSet())
+                            && Integer.parseInt(chunk.group(3)) < layout.chunks()))) {
+                        chunks++;
+                        continue;
+                    }
+                    if (chunk.group(2) != null
+                            && OPEN_CHUNK_SETS.contains(prefix + owner + "." + CHUNK_IDENTIFIER + chunk.group(2))) {
+                        open.add(name);
+                    }
+                }
+                Layout layout = layouts.get(rest);
+                if (layout != null && layout.chunks() <= 0) {
+                    continue;
+                }
+                orphans.put(name, layouts.containsKey(rest) ? rest : owner);
+            }
+
+            int damaged = 0;
+            for (Map.Entry<String, Layout> credential : layouts.entrySet()) {
+                String key = credential.getKey();
+                Layout layout = credential.getValue();
+                boolean complete = layout.chunks() != 0 || present.contains(buildCredentialName(key));
+                for (int i = 0; i < layout.chunks() && complete; i++) {
+                    complete = present.contains(buildChunkName(key, layout.chunkSet(), i));
+                }
+                if (!complete) {
+                    damaged++;
+                }
+            }
+
+            int collected = 0;
+            long now = System.currentTimeMillis();
+            Map<String, Orphan> candidates = new HashMap<>();
+            for (Map.Entry<String, String> orphan : orphans.entrySet()) {
+                String key = orphan.getValue();
+                long stamp = stamps.getOrDefault(key, 0L);
+                Orphan previous = orphanCandidates.get(orphan.getKey());
+                if (open.contains(orphan.getKey()) || isBeingWritten(key)) {
+                    // Still being written; the grace period starts over once the write has ended
+                    candidates.put(orphan.getKey(), new Orphan(stamp, now));
+                } else if (previous == null || previous.stamp() != stamp) {
+                    candidates.put(orphan.getKey(), new Orphan(stamp, now));
+                } else if (collected < maxCollect && now - previous.firstSeen() >= graceMillis
+                        && getChangeStamp(key) == stamp) {
+                    deleteRawCredential(orphan.getKey());
+                    collected++;
+                } else {
+                    candidates.put(orphan.getKey(), previous);
+                }
+            }
+            orphanCandidates = candidates;
+
+            return new VaultReport(names.size(), layouts.size(), chunks, orphans.size(), collected, unverified,
+                    damaged);
+        } finally {
+            scanLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if a credential exists
+     *
+     * @param key Credential key
+     * @return true if the credential exists, false otherwise
+     */
+    public boolean credentialExists(String key) {
+        try {
+            // Check for metadata existence; expired credentials are reported absent without decrypting anything
+            String rawMetadata = getRawCredential(buildMetadataName(key));
+
+            return rawMetadata != null && !isExpired(headerExpiry(rawMetadata));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    /**
+     * Updates a specific key in a JSON object credential
+     *
+     * @param key       Main credential key
+     * @param jsonKey   The JSON field key to update
+     * @param jsonValue The new value for the JSON field
+     * @throws KeyLockerException if the operation fails
+     */
+    public void updateCredentialField(String key, String jsonKey, Object jsonValue) throws KeyLockerException {
+        JSONObject existingData;
+
+        try {
+            existingData = getCredential(key);
+        } catch (KeyLockerException e) {
+            // If credential doesn't exist, create a new one
+            existingData = new JSONObject();
+        }
+
+        // Update the field
+        existingData.put(jsonKey, jsonValue);
+
+        // Store the updated credential
+        addCredential(key, existingData);
+    }
+
+    /**
+     * Decodes Base64 text held in native or direct memory without going through a String
+     *
+     * @param source       Encoded Base64 text, ASCII (1 byte per character) or UTF-16LE (2 bytes per character)
+     * @param bytesPerChar Width of each character in the source
+     * @param target       Buffer receiving the decoded bytes
+     * @throws KeyLockerException if the source is not valid Base64
+     */
+    protected static void decodeBase64(ByteBuffer source, int bytesPerChar, ByteBuffer target) throws KeyLockerException {
+        int bits = 0;
+        int bitCount = 0;
+
+        for (int i = 0; i + bytesPerChar <= source.limit(); i += bytesPerChar) {
+            int c = source.get(i) & 0xFF;
+            if (c == '=') {
+                break;
+            }
+
+            int value = BASE64_VALUES[c];
+            if (value < 0 || (bytesPerChar == 2 && source.get(i + 1) != 0)) {
+                throw new KeyLockerException("Malformed credential blob");
+            }
+
+            bits = (bits << 6) | value;
+            bitCount += 6;
+            if (bitCount >= 8) {
+                bitCount -= 8;
+                target.put((byte) (bits >> bitCount));
+                bits &= (1 << bitCount) - 1;
+            }
+        }
+    }
+
+    /**
+     * Gets this thread's scratch buffer, growing it if it is too small
+     *
+     * @param holder   Thread-local holding the buffer
+     * @param capacity Required capacity
+     * @return A cleared direct buffer with at least the required capacity
+     */
+    protected static ByteBuffer scratch(ThreadLocal<ByteBuffer> holder, int capacity) {
+        ByteBuffer buffer = holder.get();
+        if (buffer == null || buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocateDirect(Math.max(capacity, buffer == null ? 4096 : buffer.capacity() * 2));
+            holder.set(buffer);
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Converts an ASCII Base64 value read from native memory into a String
+     *
+     * @param source Buffer holding the ASCII bytes between 0 and its limit
+     * @return The decoded string
+     */
+    protected static String asciiToString(ByteBuffer source) {
+        byte[] bytes = new byte[source.limit()];
+        source.get(0, bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,413 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.CredentialNotFoundException;
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.EncryptionUtil;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.SecretBuffer;
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Base secure storage for platforms whose native store is driven through a {@link ChunkedCredentialManager}
+ */
+public abstract class ChunkedKeyLockerStorage implements PlatformKeyLockerStorage {
+
+    protected final ChunkedCredentialManager credManager;
+    private final String platformName;
+    protected boolean initialized = false;
+
+    /**
+     * Creates a new storage over the given credential manager
+     * @param credManager The platform credential manager
+     * @param platformName Platform name used in error messages (e.g. "Windows")
+     */
+    protected ChunkedKeyLockerStorage(ChunkedCredentialManager credManager, String platformName) {
+        this.credManager = credManager;
+        this.platformName = platformName;
+    }
+
+    @Override
+    public void initialize(String packageName, String encryptionKey) throws KeyLockerException {
+        if (!isSupported()) {
+            throw new KeyLockerException(platformName + " platform is not supported on this system");
+        }
+
+        try {
+            credManager.setAppPrefix(packageName);
+            credManager.initialize(encryptionKey);
+            initialized = true;
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to initialize " + platformName + " credential manager", e);
+        }
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            credManager.setEncryptionKey(encryptionKey);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to set encryption key", e);
+        }
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey, String fallbackKey) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            credManager.setEncryptionKey(encryptionKey, fallbackKey);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to set encryption key", e);
+        }
+    }
+
+    @Override
+    public void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        credManager.setCipherSuite(cipherSuite);
+    }
+
+    @Override
+    public List<String> listCredentials() throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.listCredentialKeys();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to list credentials", e);
+        }
+    }
+
+    @Override
+    public boolean reencryptCredential(String key, String oldKey, String newKey) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.reencryptCredential(key, new EncryptionUtil(oldKey),
+                    new EncryptionUtil(newKey, credManager.getCipherSuite()));
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to re-encrypt credential: " + key, e);
+        }
+    }
+
+    @Override
+    public byte[] encrypt(byte[] data) throws KeyLockerException {
+        // This method is kept for API compatibility but will not be used directly
+        throw new KeyLockerException("Direct encryption not supported; use storeJsonCredential instead");
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedData) throws KeyLockerException {
+        // This method is kept for API compatibility but will not be used directly
+        throw new KeyLockerException("Direct decryption not supported; use retrieveJsonCredential instead");
+    }
+
+    /**
+     * Sets the application prefix for credential names
+     * @param prefix Application name prefix
+     */
+    @Override
+    public void setAppPrefix(String prefix) throws KeyLockerException {
+        if (!initialized) {
+            initialize();
+        }
+        credManager.setAppPrefix(prefix);
+    }
+
+    /**
+     * Stores a JSON credential
+     * @param key The credential key/target name
+     * @param jsonData The JSON data to store
+     * @param expiresAt Time after which the credential reads as absent, in epoch milliseconds, or 0 for none
+     * @throws KeyLockerException if storage fails
+     */
+    @Override
+    public void storeJsonCredential(String key, JSONObject jsonData, long expiresAt) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            credManager.addCredential(key, jsonData, expiresAt);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to store credential", e);
+        }
+    }
+
+    /**
+     * Retrieves a JSON credential
+     * @param key The credential key/target name
+     * @return The JSON data, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    @Override
+    public Optional<JSONObject> retrieveJsonCredential(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.findCredential(key);
+        } catch (CredentialNotFoundException e) {
+            // Removed while it was being read
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to retrieve credential", e);
+        }
+    }
+
+    /**
+     * Retrieves a single property of a credential into an off-heap buffer
+     * @param key The credential key/target name
+     * @param property The property to retrieve
+     * @return The property value, or empty if the credential or property is not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    @Override
+    public Optional<SecretBuffer> retrieveSecret(String key, String property) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.getSecret(key, property);
+        } catch (CredentialNotFoundException e) {
+            // Removed while it was being read
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to retrieve credential", e);
+        }
+    }
+
+    /**
+     * Decodes a single property of a credential straight from its decrypted payload
+     * @param key The credential key/target name
+     * @param property The property to retrieve
+     * @param decoder Decoder applied to the property's raw value token
+     * @return The decoded value, or empty if the credential is not found or the decoder returns null
+     * @throws KeyLockerException if retrieval or decoding fails
+     */
+    @Override
+    public <T> Optional<T> retrieveField(String key, String property, FieldDecoder<T> decoder) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.getField(key, property, decoder);
+        } catch (CredentialNotFoundException e) {
+            // Removed while it was being read
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to retrieve credential: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Opens a stream that writes a credential as independently authenticated segments
+     * @param key The credential key/target name
+     * @param expiresAt Time after which the credential reads as absent, in epoch milliseconds, or 0 for none
+     * @return Output stream; closing it commits the credential
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    @Override
+    public OutputStream openOutputStream(String key, long expiresAt) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        return credManager.openOutputStream(key, expiresAt);
+    }
+
+    /**
+     * Opens a stream over a credential written with openOutputStream
+     * @param key The credential key/target name
+     * @return Input stream over the credential, or empty if not found
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    @Override
+    public Optional<InputStream> openInputStream(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.openInputStream(key);
+        } catch (CredentialNotFoundException e) {
+            // Removed while it was being read
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to open credential stream", e);
+        }
+    }
+
+    /**
+     * Reads part of a credential's plaintext
+     * @param key The credential key/target name
+     * @param offset Offset of the first byte to read
+     * @param length Maximum number of bytes to read
+     * @return The bytes in the range, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    @Override
+    public Optional<byte[]> readRange(String key, long offset, int length) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.readRange(key, offset, length);
+        } catch (CredentialNotFoundException e) {
+            // Removed while it was being read
+            return Optional.empty();
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to read credential range", e);
+        }
+    }
+
+    /**
+     * Updates a specific field in a JSON credential
+     * @param key The credential key/target name
+     * @param jsonKey The JSON field to update
+     * @param jsonValue The new value for the field
+     * @throws KeyLockerException if the operation fails
+     */
+    public void updateCredentialField(String key, String jsonKey, Object jsonValue) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            credManager.updateCredentialField(key, jsonKey, jsonValue);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to update credential field", e);
+        }
+    }
+
+    /**
+     * Removes a credential
+     * @param key The credential key/target name
+     * @throws KeyLockerException if removal fails
+     */
+    @Override
+    public void removeCredential(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            credManager.deleteCredential(key);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to remove credential", e);
+        }
+    }
+
+    /**
+     * Removes a credential if its expiry has passed
+     * @param key The credential key/target name
+     * @return true if the credential had expired and was removed
+     * @throws KeyLockerException if removal fails
+     */
+    @Override
+    public boolean removeExpiredCredential(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.deleteIfExpired(key);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to remove expired credential: " + key, e);
+        }
+    }
+
+    @Override
+    public VaultReport scanVault(String encryptionKey, int maxCollect, long graceMillis) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.scanVault(new EncryptionUtil(encryptionKey), maxCollect, graceMillis);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to scan vault", e);
+        }
+    }
+
+    /**
+     * Checks if a credential exists
+     * @param key The credential key/target name
+     * @return true if the credential exists, false otherwise
+     * @throws KeyLockerException if the check fails
+     */
+    @Override
+    public boolean credentialExists(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.credentialExists(key);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to check if credential exists", e);
+        }
+    }
+
+    /**
+     * Gets a fingerprint of the credential's current version
+     * @param key The credential key/target name
+     * @return Version fingerprint, or 0 if the credential does not exist
+     * @throws KeyLockerException if the check fails
+     */
+    @Override
+    public long getChangeStamp(String key) throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException(platformName + "KeyLocker not initialized");
+        }
+
+        try {
+            return credManager.getChangeStamp(key);
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to read credential version", e);
+        }
+    }
+
+    @Override
+    public Optional<Path> getWatchDirectory() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void initialize() throws KeyLockerException {
+        if (!isSupported()) {
+            throw new KeyLockerException(platformName + " platform is not supported on this system");
+        }
+
+        try {
+            credManager.initialize(null); // Use default encryption key
+            initialized = true;
+        } catch (Exception e) {
+            throw new KeyLockerException("Failed to initialize " + platformName + " credential manager", e);
+        }
+    }
+}
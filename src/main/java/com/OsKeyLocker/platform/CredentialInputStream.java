@@ -0,0 +1,92 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.EncryptionUtil;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads a credential written by {@link CredentialOutputStream}, fetching and authenticating one segment at a time
+ */
+final class CredentialInputStream extends InputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final ChunkedCredentialManager manager;
+    private final String key;
+    private final EncryptionUtil encryptionUtil;
+    private final JSONObject metadata;
+    private final int chunks;
+    private byte[] segment = EMPTY;
+    private int position = 0;
+    private int segmentIndex = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a new stream over a stored segmented credential
+     * @param manager The credential manager owning the raw entries
+     * @param key Credential key
+     * @param encryptionUtil Encryption the stream was written with
+     * @param metadata The credential's decrypted metadata
+     */
+    CredentialInputStream(ChunkedCredentialManager manager, String key, EncryptionUtil encryptionUtil, JSONObject metadata) {
+        this.manager = manager;
+        this.key = key;
+        this.encryptionUtil = encryptionUtil;
+        this.metadata = metadata;
+        this.chunks = metadata.getInt("chunks");
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] single = new byte[1];
+        return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+
+        while (position == segment.length) {
+            if (segmentIndex >= chunks) {
+                return -1;
+            }
+            readSegment();
+        }
+
+        int count = Math.min(length, segment.length - position);
+        System.arraycopy(segment, position, buffer, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return segment.length - position;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Arrays.fill(segment, (byte) 0);
+    }
+
+    private void readSegment() throws IOException {
+        try {
+            Arrays.fill(segment, (byte) 0);
+            segment = manager.readSegment(key, encryptionUtil, metadata, segmentIndex);
+            position = 0;
+            segmentIndex++;
+        } catch (KeyLockerException e) {
+            throw new IOException("Failed to read credential segment " + segmentIndex + ": " + e.getMessage(), e);
+        }
+    }
+}
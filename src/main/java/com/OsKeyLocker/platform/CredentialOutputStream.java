@@ -0,0 +1,169 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.EncryptionUtil;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Base64;
+
+/**
+ * Writes a credential as a sequence of independently authenticated segments, one raw entry per segment.
+ * Only one segment is held in memory at a time. Segments go to a chunk set of the stream's own, so the previous
+ * value stays intact while they are written; the metadata written on close commits the stream, after which the
+ * previous value's entries are deleted. A stream that fails is not committed and deletes the segments it wrote.
+ * Until it is closed, the stream's chunk set is registered with the manager, so vault scans keep its segments.
+ */
+final class CredentialOutputStream extends OutputStream {
+
+    private final ChunkedCredentialManager manager;
+    private final String key;
+    private final EncryptionUtil encryptionUtil;
+    private final byte[] dataKey = EncryptionUtil.generateDataKey();
+    private final EncryptionUtil payloadEncryption;
+    private final byte[] noncePrefix = EncryptionUtil.generateNoncePrefix();
+    private final String chunkSet = ChunkedCredentialManager.newChunkSet();
+    private final String openChunkSet;
+    private final byte[] segment;
+    private final String content;
+    private final long expiresAt;
+    private int segmentLength = 0;
+    private int segmentIndex = 0;
+    private long size = 0;
+    private boolean closed = false;
+    private boolean failed = false;
+
+    /**
+     * Creates a new stream writing to the given credential key
+     * @param manager The credential manager owning the raw entries
+     * @param key Credential key
+     * @param encryptionUtil Master key encryption wrapping the stream's own data key, which encrypts the segments
+     *                       with the same cipher suite
+     * @param segmentSize Plaintext bytes per segment
+     * @param content Metadata content type of the written data
+     * @param expiresAt Expiry in epoch milliseconds, or 0 for none
+     */
+    CredentialOutputStream(ChunkedCredentialManager manager, String key, EncryptionUtil encryptionUtil, int segmentSize,
+                           String content, long expiresAt) {
+        this.manager = manager;
+        this.key = key;
+        this.encryptionUtil = encryptionUtil;
+        this.payloadEncryption = EncryptionUtil.forDataKey(dataKey, encryptionUtil.getCipherSuite());
+        this.segment = new byte[segmentSize];
+        this.content = content;
+        this.expiresAt = expiresAt;
+        this.openChunkSet = manager.openChunkSet(key, chunkSet);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+        if (failed) {
+            throw new IOException("Credential stream failed earlier; close it to discard what was written");
+        }
+
+        while (length > 0) {
+            // A full segment is only flushed once more data arrives, so the final segment is always written by close()
+            if (segmentLength == segment.length) {
+                writeSegment(false);
+            }
+
+            int count = Math.min(length, segment.length - segmentLength);
+            System.arraycopy(data, offset, segment, segmentLength, count);
+            segmentLength += count;
+            size += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        boolean committed = false;
+        try {
+            if (failed) {
+                throw new IOException("Credential stream failed earlier; nothing was committed");
+            }
+            writeSegment(true);
+            commit();
+            committed = true;
+        } finally {
+            Arrays.fill(dataKey, (byte) 0);
+            if (!committed) {
+                discardSegments();
+            }
+            ChunkedCredentialManager.closeChunkSet(openChunkSet);
+        }
+    }
+
+    private void commit() throws IOException {
+        try {
+            JSONObject metadata = new JSONObject();
+            metadata.put("format", ChunkedCredentialManager.FORMAT_SEGMENTED);
+            metadata.put("content", content);
+            metadata.put("chunks", segmentIndex);
+            metadata.put("size", size);
+            metadata.put("segmentSize", segment.length);
+            metadata.put("nonce", Base64.getEncoder().encodeToString(noncePrefix));
+            metadata.put(ChunkedCredentialManager.SUITE, payloadEncryption.getCipherSuite().getId());
+            metadata.put(ChunkedCredentialManager.DATA_KEY, Base64.getEncoder().encodeToString(dataKey));
+            metadata.put(ChunkedCredentialManager.CHUNK_SET, chunkSet);
+            if (expiresAt != 0) {
+                metadata.put(ChunkedCredentialManager.EXPIRES_AT, expiresAt);
+            }
+
+            String previous = manager.getRawCredential(manager.buildMetadataName(key));
+            manager.writeMetadata(key, metadata, encryptionUtil);
+            manager.deleteReplacedPayload(key, previous, encryptionUtil, chunkSet);
+        } catch (KeyLockerException e) {
+            throw new IOException("Failed to commit credential stream: " + e.getMessage(), e);
+        }
+    }
+
+    private void writeSegment(boolean last) throws IOException {
+        // Counted before the write, so a segment that may have been partly stored is discarded too
+        int index = segmentIndex++;
+        // Stays set if the write throws, whatever it throws
+        failed = true;
+        try {
+            byte[] encrypted = payloadEncryption.encryptSegment(noncePrefix, index, last, segment, 0, segmentLength);
+            manager.addRawCredential(manager.buildChunkName(key, chunkSet, index),
+                    Base64.getEncoder().encodeToString(encrypted));
+            failed = false;
+        } catch (KeyLockerException e) {
+            throw new IOException("Failed to write credential segment " + index + ": " + e.getMessage(), e);
+        } finally {
+            Arrays.fill(segment, 0, segmentLength, (byte) 0);
+        }
+
+        segmentLength = 0;
+    }
+
+    /**
+     * Deletes the segments written so far, leaving the previous value as it was. Segments that cannot be
+     * deleted are left to the vault collector, which finds them as orphans.
+     */
+    private void discardSegments() {
+        for (int i = 0; i < segmentIndex; i++) {
+            try {
+                manager.deleteRawCredential(manager.buildChunkName(key, chunkSet, i));
+            } catch (KeyLockerException | RuntimeException e) {
+                return;
+            }
+        }
+    }
+}
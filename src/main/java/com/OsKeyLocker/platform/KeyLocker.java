@@ -4,15 +4,35 @@ package com.OsKeyLocker.platform;
 
 import com.OsKeyLocker.KeyLockerStore;
 import com.OsKeyLocker.exceptions.KeyLockerException;
-
+import com.OsKeyLocker.platform.tiered.TieredKeyLockerStorage;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.PropertyTypes;
+import com.OsKeyLocker.util.SecretBuffer;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * SecureStorage - A cross-platform secure storage solution for sensitive application data
  */
 
 public class KeyLocker {
+    private static final Duration DEFAULT_WATCH_INTERVAL = Duration.ofSeconds(1);
+
     private KeyLocker() {}
 
     /**
@@ -36,6 +56,348 @@ public class KeyLocker {
         return new StorageDeleter();
     }
 
+    /**
+     * Creates a transaction that stores and deletes several identifiers atomically
+     * @return A transaction builder
+     */
+    public static StorageTransaction transaction() {
+        return new StorageTransaction();
+    }
+
+    /**
+     * Creates a reader that reads several identifiers as one consistent snapshot
+     * @return A snapshot builder
+     */
+    public static StorageSnapshot snapshot() {
+        return new StorageSnapshot();
+    }
+
+    /**
+     * Completes transactions under an encryption key that were committed but interrupted before all their
+     * changes were stored, e.g. by a crash. Runs automatically before the first transaction with the key in
+     * each process; call it at startup so reads see completed transactions from the start.
+     * @param encryptionKey Encryption key the transactions were committed with
+     * @return Number of transactions completed
+     * @throws KeyLockerException if the transaction journal cannot be read or replayed
+     */
+    public static int recoverTransactions(String encryptionKey) throws KeyLockerException {
+        try {
+            return KeyLockerStore.recoverTransactions(encryptionKey);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to recover transactions: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Lists the identifiers this application has stored. Only names are read, nothing is decrypted.
+     * @return The stored identifiers
+     * @throws KeyLockerException if the credential store cannot be enumerated
+     */
+    public static List<String> listIdentifiers() throws KeyLockerException {
+        try {
+            return KeyLockerStore.listIdentifiers();
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to list identifiers: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Watches an identifier and calls the listener whenever it is stored or removed, by this or another process.
+     * Changes are detected from a version stamp without decrypting the credential, so consumers only
+     * re-read when something actually changed.
+     * @param identifier Target identifier to watch
+     * @param listener Listener to notify; it runs on a shared background thread and should return quickly
+     * @return Handle that stops watching when closed
+     * @throws KeyLockerException if the watch cannot be started
+     */
+    public static Watch watch(String identifier, CredentialListener listener) throws KeyLockerException {
+        return watch(identifier, listener, DEFAULT_WATCH_INTERVAL);
+    }
+
+    /**
+     * Watches an identifier with a custom interval for detecting changes made by other processes
+     * @param identifier Target identifier to watch
+     * @param listener Listener to notify; it runs on a shared background thread and should return quickly
+     * @param interval How often to check for changes made outside this process
+     * @return Handle that stops watching when closed
+     * @throws KeyLockerException if the watch cannot be started
+     */
+    public static Watch watch(String identifier, CredentialListener listener, Duration interval) throws KeyLockerException {
+        try {
+            return KeyLockerStore.watch(identifier, listener, interval.toMillis());
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to watch secure data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Re-encrypts every credential of this application from one encryption key to another,
+     * using a worker pool sized to the available processors (at most 4)
+     * @param oldKey The key credentials are currently encrypted with
+     * @param newKey The key to re-encrypt them with
+     * @return Number of credentials re-encrypted
+     * @throws KeyLockerException if any credential could not be re-encrypted; run the rotation again to resume
+     */
+    public static int rotateKey(String oldKey, String newKey) throws KeyLockerException {
+        return rotateKey(oldKey, newKey, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Re-encrypts every credential of this application from one encryption key to another.
+     * Progress is checkpointed, so a rotation interrupted by a crash resumes where it stopped when run again.
+     * While it runs, reads in this process using either key keep working and writes use the new key.
+     * @param oldKey The key credentials are currently encrypted with
+     * @param newKey The key to re-encrypt them with
+     * @param parallelism Number of credentials re-encrypted concurrently
+     * @return Number of credentials re-encrypted
+     * @throws KeyLockerException if any credential could not be re-encrypted; run the rotation again to resume
+     */
+    public static int rotateKey(String oldKey, String newKey, int parallelism) throws KeyLockerException {
+        try {
+            return KeyLockerStore.rotateKey(oldKey, newKey, parallelism);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to rotate encryption key: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts deleting expired credentials of this application, with their chunks, on a low-priority
+     * background thread. Expiry is read from each credential's header, so no encryption key is needed.
+     * Replaces a reaper that is already running.
+     * @param interval Delay between sweeps
+     * @throws KeyLockerException if the reaper cannot be started
+     */
+    public static void startReaper(Duration interval) throws KeyLockerException {
+        try {
+            KeyLockerStore.startReaper(interval.toMillis());
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to start credential reaper: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops the background reaper started by {@link #startReaper(Duration)}, if running
+     */
+    public static void stopReaper() {
+        KeyLockerStore.stopReaper();
+    }
+
+    /**
+     * Gets the read counters of each storage tier when the storage is tiered, which it is when the
+     * {@value TieredKeyLockerStorage#TIERS_PROPERTY} system property lists cache tiers
+     * @return Hits, misses, promotions and writes of every tier, fastest first; empty if the storage is not tiered
+     */
+    public static List<TieredKeyLockerStorage.TierMetrics> tierMetrics() {
+        return KeyLockerStore.tierMetrics();
+    }
+
+    /**
+     * Scans the raw entries of this application's credentials and reports how many there are, how many belong
+     * to no credential (chunks and values left behind by interrupted writes and deletions) and how many
+     * credentials are missing entries. Deletes nothing.
+     * @param encryptionKey Key used to read chunk counts; entries of credentials under other keys are never
+     *                      counted as orphans
+     * @return The scan report
+     * @throws KeyLockerException if the scan fails
+     */
+    public static VaultReport scanVault(String encryptionKey) throws KeyLockerException {
+        try {
+            return KeyLockerStore.scanVault(encryptionKey);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to scan vault: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Starts deleting orphaned entries of this application on a low-priority background thread, in batches.
+     * An entry is deleted once it has belonged to no credential for a whole interval, so choose an interval
+     * longer than the longest {@link StorageWriter#stream()} write. Replaces a collector that is already running.
+     * @param encryptionKey Key used to read chunk counts; entries of credentials under other keys are kept
+     * @param interval Delay between sweeps
+     * @throws KeyLockerException if the collector cannot be started
+     */
+    public static void startVaultCollector(String encryptionKey, Duration interval) throws KeyLockerException {
+        try {
+            KeyLockerStore.startVaultCollector(encryptionKey, interval.toMillis());
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to start vault collector: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops the background collector started by {@link #startVaultCollector(String, Duration)}, if running
+     */
+    public static void stopVaultCollector() {
+        KeyLockerStore.stopVaultCollector();
+    }
+
+    /**
+     * Gets the report of the background collector's last sweep
+     * @return The report, or empty if the collector is not running or has not finished a sweep
+     */
+    public static Optional<VaultReport> lastVaultReport() {
+        return KeyLockerStore.lastVaultReport();
+    }
+
+    /**
+     * Starts recording every credential this application stores or removes, and every credential re-encrypted
+     * by {@link #rotateKey(String, String)}, to an append-only change log encrypted with its own key.
+     * A {@link com.OsKeyLocker.replication.LogReplicator} tails the log to keep a standby vault in sync.
+     * Values written through {@link StorageWriter#stream()} and removals by the reaper are not recorded.
+     * @param logFile Change log file; processes sharing it append to one sequence
+     * @param logKey Key the records are encrypted with; the replicator needs the same key
+     * @throws KeyLockerException if the change log cannot be opened
+     */
+    public static void enableChangeLog(Path logFile, String logKey) throws KeyLockerException {
+        try {
+            KeyLockerStore.enableChangeLog(logFile, logKey);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to enable change log: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Stops recording changes started by {@link #enableChangeLog(Path, String)}, if enabled
+     */
+    public static void disableChangeLog() {
+        KeyLockerStore.disableChangeLog();
+    }
+
+    /**
+     * Sets the cipher suite used for every subsequent write of this application. Each credential records
+     * the suite it was written with, so credentials written under another suite stay readable.
+     * Use {@link CipherSuite#preferred()} to pick the faster suite for the current host.
+     * @param cipherSuite The cipher suite
+     * @throws KeyLockerException if the cipher suite cannot be set
+     */
+    public static void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException {
+        try {
+            KeyLockerStore.setCipherSuite(cipherSuite);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to set cipher suite: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Enables the in-process read cache for property reads. Each cached entry is validated with a single read
+     * of a generation counter shared by all processes of the user on this host, and every write from any process
+     * bumps that counter, so cached values are never served after a change.
+     * @throws KeyLockerException if the shared generation table is unavailable
+     */
+    public static void enableReadCache() throws KeyLockerException {
+        KeyLockerStore.enableReadCache();
+    }
+
+    /**
+     * Disables the in-process read cache and drops every cached value
+     */
+    public static void disableReadCache() {
+        KeyLockerStore.disableReadCache();
+    }
+
+    /**
+     * Sets how long a read waits for a concurrent read of the same identifier and encryption key. Reads that miss
+     * the cache while another read of the credential is in flight share its result instead of reading and
+     * decrypting it again; a read whose wait runs out reads the credential store itself. Defaults to 2 seconds.
+     * @param maxWait Longest wait; zero lets every read go to the credential store
+     * @throws KeyLockerException if the wait is negative or the shared generation table is unavailable
+     */
+    public static void setMaxReadWait(Duration maxWait) throws KeyLockerException {
+        try {
+            KeyLockerStore.setMaxReadWait(maxWait.toMillis());
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to set maximum read wait: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Loads, decrypts and caches credentials on a background thread, so their first reads are served from memory.
+     * Enables the read cache if it is not enabled yet. Reads of an identifier that is still loading wait for
+     * the load rather than reading the credential store themselves; failed loads are logged and left to the reader.
+     * @param encryptionKey Encryption key used when storing the credentials
+     * @param identifiers Identifiers to load
+     * @return Future completed with the number of identifiers found and cached, once every load has ended
+     * @throws KeyLockerException if the read cache is unavailable
+     */
+    public static CompletableFuture<Integer> prefetch(String encryptionKey, String... identifiers) throws KeyLockerException {
+        return prefetch(encryptionKey, Arrays.asList(identifiers));
+    }
+
+    /**
+     * Loads, decrypts and caches a list of credentials on a background thread, e.g. the identifiers an application
+     * reads at startup, listed in its configuration
+     * @param encryptionKey Encryption key used when storing the credentials
+     * @param identifiers Identifiers to load
+     * @return Future completed with the number of identifiers found and cached, once every load has ended
+     * @throws KeyLockerException if the read cache is unavailable
+     */
+    public static CompletableFuture<Integer> prefetch(String encryptionKey, Collection<String> identifiers)
+            throws KeyLockerException {
+        try {
+            return KeyLockerStore.prefetch(encryptionKey, identifiers);
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to prefetch credentials: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Enables answering reads and existence checks of identifiers that were never stored without calling into
+     * the credential store. A Bloom filter over the stored identifiers, built from one enumeration and
+     * extended by every store, answers definite misses; recent misses it cannot rule out are remembered
+     * for a short time. Both are validated against the same shared generation counters as the read cache,
+     * so a store from any process is seen immediately.
+     * @throws KeyLockerException if the shared generation table is unavailable or the identifiers cannot be listed
+     */
+    public static void enableLookupFilter() throws KeyLockerException {
+        try {
+            KeyLockerStore.enableLookupFilter();
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to enable lookup filter: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Disables the lookup filter; every lookup calls into the credential store again
+     */
+    public static void disableLookupFilter() {
+        KeyLockerStore.disableLookupFilter();
+    }
+
+    /**
+     * Enables write-behind mode. Writes to the same identifier within the coalescing window are merged
+     * (later values win per property) and stored as a single credential update. Reads see pending values
+     * immediately; use {@link #flush()} or {@link #close()} where the data must be durable.
+     * @param window Coalescing window, measured from the first pending write to an identifier
+     * @throws KeyLockerException if pending writes of a previous window setting could not be flushed
+     */
+    public static void enableWriteCoalescing(Duration window) throws KeyLockerException {
+        KeyLockerStore.enableWriteCoalescing(window.toMillis());
+    }
+
+    /**
+     * Stores every pending coalesced write. Does nothing when write coalescing is not enabled.
+     * @throws KeyLockerException if a pending write could not be stored
+     */
+    public static void flush() throws KeyLockerException {
+        try {
+            KeyLockerStore.flush();
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to write secure data: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Flushes pending writes and disables write coalescing; later writes are stored immediately again
+     * @throws KeyLockerException if a pending write could not be stored
+     */
+    public static void close() throws KeyLockerException {
+        try {
+            KeyLockerStore.disableWriteCoalescing();
+        } catch (KeyLockerException e) {
+            throw new KeyLockerException("Failed to write secure data: " + e.getMessage(), e);
+        }
+    }
+
     // Interfaces for enforcing the build steps
 
     /**
@@ -94,6 +456,8 @@ public class KeyLocker {
     private static class StorageWriterImpl implements EncryptionWriteStep, DestinationWriteStep, StorageWriter {
         private final KeyLockerStore secureStore = new KeyLockerStore();
         private final Map<String, Object> data = new HashMap<>();
+        private final Map<String, Object> types = new HashMap<>();
+        private Duration ttl;
 
         @Override
         public DestinationWriteStep withEncryption(String key) {
@@ -110,19 +474,82 @@ public class KeyLocker {
         @Override
         public StorageWriter property(String key, Object value) {
             data.put(key, value);
+            types.remove(key);
             return this;
         }
 
+        @Override
+        public StorageWriter longProperty(String key, long value) {
+            return typedProperty(key, value, PropertyTypes.LONG);
+        }
+
+        @Override
+        public StorageWriter booleanProperty(String key, boolean value) {
+            return typedProperty(key, value, PropertyTypes.BOOLEAN);
+        }
+
+        @Override
+        public StorageWriter property(String key, byte[] value) {
+            return typedProperty(key, PropertyTypes.encodeBytes(value), PropertyTypes.BYTES);
+        }
+
+        @Override
+        public StorageWriter property(String key, Instant value) {
+            return typedProperty(key, PropertyTypes.encodeInstant(value), PropertyTypes.INSTANT);
+        }
+
         @Override
         public StorageWriter properties(Map<String, Object> properties) {
             data.putAll(properties);
+            types.keySet().removeAll(properties.keySet());
             return this;
         }
 
+        private StorageWriter typedProperty(String key, Object storedValue, String type) {
+            data.put(key, storedValue);
+            types.put(key, type);
+            return this;
+        }
+
+        @Override
+        public StorageWriter ttl(Duration ttl) {
+            this.ttl = ttl;
+            return this;
+        }
+
+        private long expiresAt() throws KeyLockerException {
+            if (ttl == null) {
+                return 0L;
+            }
+            if (ttl.isNegative() || ttl.isZero()) {
+                throw new KeyLockerException("TTL must be positive");
+            }
+            return System.currentTimeMillis() + ttl.toMillis();
+        }
+
+        @Override
+        public OutputStream stream() throws KeyLockerException {
+            try {
+                return secureStore.openOutputStream(expiresAt());
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to open secure stream: " + e.getMessage(), e);
+            }
+        }
+
         @Override
         public boolean execute() throws KeyLockerException {
             try {
-                secureStore.setProperties(data).store();
+                PropertyTypes.checkNames(data.keySet());
+
+                Map<String, Object> stored = new HashMap<>(data);
+                if (!types.isEmpty()) {
+                    stored.put(PropertyTypes.TYPES_FIELD, new HashMap<>(types));
+                }
+                long expiresAt = expiresAt();
+                if (expiresAt != 0) {
+                    stored.put(PropertyTypes.EXPIRES_FIELD, expiresAt);
+                }
+                secureStore.setProperties(stored).store();
                 return true;
             } catch (KeyLockerException e) {
                 throw new KeyLockerException("Failed to write secure data: " + e.getMessage(), e);
@@ -150,9 +577,13 @@ public class KeyLocker {
 
         @Override
         public Map<String, Object> getAllProperties() throws KeyLockerException {
+            return find().orElseGet(HashMap::new);
+        }
+
+        @Override
+        public Optional<Map<String, Object>> find() throws KeyLockerException {
             try {
-                Map<String, Object> result = secureStore.retrieve();
-                return result != null ? result : new HashMap<>();
+                return secureStore.find();
             } catch (KeyLockerException e) {
                 throw new KeyLockerException("Failed to read secure data: " + e.getMessage(), e);
             }
@@ -161,13 +592,80 @@ public class KeyLocker {
         @Override
         public Object getProperty(String key) throws KeyLockerException {
             try {
-                Map<String, Object> result = secureStore.retrieve();
+                Map<String, Object> result = secureStore.find().orElse(null);
                 return result != null ? result.get(key) : null;
             } catch (KeyLockerException e) {
                 throw new KeyLockerException("Failed to read secure data: " + e.getMessage(), e);
             }
         }
 
+        @Override
+        public SecretBuffer getSecret(String key) throws KeyLockerException {
+            try {
+                return secureStore.retrieveSecret(key);
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to read secure data: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public String getString(String key) throws KeyLockerException {
+            return getField(key, PropertyTypes.STRING_DECODER);
+        }
+
+        @Override
+        public long getLong(String key) throws KeyLockerException {
+            return require(key, getField(key, PropertyTypes.LONG_DECODER));
+        }
+
+        @Override
+        public boolean getBoolean(String key) throws KeyLockerException {
+            return require(key, getField(key, PropertyTypes.BOOLEAN_DECODER));
+        }
+
+        @Override
+        public byte[] getBytes(String key) throws KeyLockerException {
+            return getField(key, PropertyTypes.BYTES_DECODER);
+        }
+
+        @Override
+        public Instant getInstant(String key) throws KeyLockerException {
+            return getField(key, PropertyTypes.INSTANT_DECODER);
+        }
+
+        private <T> T getField(String key, FieldDecoder<T> decoder) throws KeyLockerException {
+            try {
+                return secureStore.retrieveField(key, decoder);
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to read secure data: " + e.getMessage(), e);
+            }
+        }
+
+        private static <T> T require(String key, T value) throws KeyLockerException {
+            if (value == null) {
+                throw new KeyLockerException("Failed to read secure data: property not found: " + key);
+            }
+            return value;
+        }
+
+        @Override
+        public InputStream stream() throws KeyLockerException {
+            try {
+                return secureStore.openInputStream();
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to open secure stream: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public byte[] readRange(long offset, int length) throws KeyLockerException {
+            try {
+                return secureStore.readRange(offset, length);
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to read secure data: " + e.getMessage(), e);
+            }
+        }
+
         @Override
         public boolean exists() throws KeyLockerException {
             try {
@@ -192,6 +690,40 @@ public class KeyLocker {
          */
         StorageWriter property(String key, Object value);
 
+        /**
+         * Adds an integer property, stored as a 64-bit integer and read back as a Long by {@link StorageReader#getAllProperties()}.
+         * A separate name rather than an overload of {@link #property(String, Object)}, so existing calls passing an
+         * int keep reading back as they did.
+         * @param key Property key
+         * @param value Property value
+         * @return This builder instance
+         */
+        StorageWriter longProperty(String key, long value);
+
+        /**
+         * Adds a boolean property, read back as a Boolean by {@link StorageReader#getAllProperties()}
+         * @param key Property key
+         * @param value Property value
+         * @return This builder instance
+         */
+        StorageWriter booleanProperty(String key, boolean value);
+
+        /**
+         * Adds a binary property, stored as Base64 and read back as a byte[]
+         * @param key Property key
+         * @param value Property value
+         * @return This builder instance
+         */
+        StorageWriter property(String key, byte[] value);
+
+        /**
+         * Adds a timestamp property, stored as ISO-8601 text and read back as an Instant
+         * @param key Property key
+         * @param value Property value
+         * @return This builder instance
+         */
+        StorageWriter property(String key, Instant value);
+
         /**
          * Adds multiple properties to be stored
          * @param properties Map of properties
@@ -199,6 +731,24 @@ public class KeyLocker {
          */
         StorageWriter properties(Map<String, Object> properties);
 
+        /**
+         * Sets a time to live, after which the credential reads as absent. The expiry is kept in the
+         * credential's header, so expired credentials are recognized without decrypting them, and
+         * {@link KeyLocker#startReaper(Duration)} deletes them in the background. A later write without a TTL
+         * makes the credential permanent again.
+         * @param ttl Time to live, measured from the write; must be positive
+         * @return This builder instance
+         */
+        StorageWriter ttl(Duration ttl);
+
+        /**
+         * Opens a stream for storing a large value (certificate bundle, keystore file...) in constant memory.
+         * The data is encrypted as independently authenticated segments; properties added to this builder are ignored.
+         * @return Output stream; closing it commits the value
+         * @throws KeyLockerException if operation fails
+         */
+        OutputStream stream() throws KeyLockerException;
+
         /**
          * Executes the write operation
          * @return Operation result status
@@ -218,6 +768,14 @@ public class KeyLocker {
          */
         Map<String, Object> getAllProperties() throws KeyLockerException;
 
+        /**
+         * Retrieves all properties stored under the specified identifier, telling a missing credential
+         * apart from one without properties. A missing credential is not an error and costs no exception.
+         * @return Map of retrieved properties, or empty if nothing is stored under the identifier
+         * @throws KeyLockerException if operation fails
+         */
+        Optional<Map<String, Object>> find() throws KeyLockerException;
+
         /**
          * Retrieves a specific property from storage
          * @param key Property key to retrieve
@@ -226,6 +784,72 @@ public class KeyLocker {
          */
         Object getProperty(String key) throws KeyLockerException;
 
+        /**
+         * Retrieves a specific property into an off-heap buffer, without creating intermediate Strings.
+         * Close the returned buffer to wipe the secret as soon as it is no longer needed.
+         * @param key Property key to retrieve
+         * @return The property value, or null if not found
+         * @throws KeyLockerException if operation fails
+         */
+        SecretBuffer getSecret(String key) throws KeyLockerException;
+
+        /**
+         * Retrieves a property as a String. Only this property is decoded from the stored data.
+         * @param key Property key to retrieve
+         * @return The property value (numbers and booleans as their literal text), or null if not found
+         * @throws KeyLockerException if operation fails
+         */
+        String getString(String key) throws KeyLockerException;
+
+        /**
+         * Retrieves an integer property, whatever its magnitude, without boxing or casting
+         * @param key Property key to retrieve
+         * @return The property value
+         * @throws KeyLockerException if the property is missing, not an integer or out of range
+         */
+        long getLong(String key) throws KeyLockerException;
+
+        /**
+         * Retrieves a boolean property
+         * @param key Property key to retrieve
+         * @return The property value
+         * @throws KeyLockerException if the property is missing or not a boolean
+         */
+        boolean getBoolean(String key) throws KeyLockerException;
+
+        /**
+         * Retrieves a binary property written with {@link StorageWriter#property(String, byte[])}
+         * @param key Property key to retrieve
+         * @return The property value, or null if not found
+         * @throws KeyLockerException if the property is not valid Base64
+         */
+        byte[] getBytes(String key) throws KeyLockerException;
+
+        /**
+         * Retrieves a timestamp property, stored as ISO-8601 text or as epoch milliseconds
+         * @param key Property key to retrieve
+         * @return The property value, or null if not found
+         * @throws KeyLockerException if the property is not a timestamp
+         */
+        Instant getInstant(String key) throws KeyLockerException;
+
+        /**
+         * Opens a stream over a value stored with {@link StorageWriter#stream()}, decrypting one segment at a time
+         * @return Input stream over the value, or null if not found
+         * @throws KeyLockerException if operation fails
+         */
+        InputStream stream() throws KeyLockerException;
+
+        /**
+         * Reads a byte range of a stored value without decrypting the rest of it.
+         * Only the chunks overlapping the range are fetched, so reading a slice of a large value stays cheap.
+         * @param offset Offset of the first byte to read
+         * @param length Maximum number of bytes to read
+         * @return The bytes in the range, shorter than length at the end of the value, or null if not found
+         * @throws KeyLockerException if operation fails
+         */
+        byte[] readRange(long offset, int length) throws KeyLockerException;
+
         /**
          * Checks if the specified identifier exists in secure storage
          * @return true if exists, false otherwise
@@ -234,6 +858,30 @@ public class KeyLocker {
         boolean exists() throws KeyLockerException;
     }
 
+    /**
+     * Listener for credential changes registered with {@link KeyLocker#watch}
+     */
+    @FunctionalInterface
+    public interface CredentialListener {
+        /**
+         * Called after the watched credential was stored or removed
+         * @param identifier The watched identifier
+         * @param exists true if the credential now exists, false if it was removed
+         */
+        void credentialChanged(String identifier, boolean exists);
+    }
+
+    /**
+     * Handle for an active watch
+     */
+    public interface Watch extends AutoCloseable {
+        /**
+         * Stops watching; the listener is not called afterwards
+         */
+        @Override
+        void close();
+    }
+
     /**
      * Builder for delete operations
      */
@@ -266,4 +914,110 @@ public class KeyLocker {
             }
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Builder for transactions over several identifiers. Changes are staged in memory and committed together:
+     * either all of them are stored or, if committing fails before the commit point, none.
+     */
+    public static class StorageTransaction {
+        private String encryptionKey;
+        private final Map<String, Map<String, Object>> writes = new LinkedHashMap<>();
+        private final Set<String> deletes = new LinkedHashSet<>();
+
+        private StorageTransaction() {}
+
+        /**
+         * Sets the encryption key for every write of the transaction
+         * @param key Encryption key
+         * @return This builder instance
+         */
+        public StorageTransaction withEncryption(String key) {
+            this.encryptionKey = key;
+            return this;
+        }
+
+        /**
+         * Stages properties to store under an identifier, replacing a change staged for it earlier
+         * @param identifier Target identifier
+         * @param properties Properties to store
+         * @return This builder instance
+         */
+        public StorageTransaction write(String identifier, Map<String, Object> properties) {
+            deletes.remove(identifier);
+            writes.put(identifier, new HashMap<>(properties));
+            return this;
+        }
+
+        /**
+         * Stages the removal of an identifier, replacing a change staged for it earlier
+         * @param identifier Identifier to delete
+         * @return This builder instance
+         */
+        public StorageTransaction delete(String identifier) {
+            writes.remove(identifier);
+            deletes.add(identifier);
+            return this;
+        }
+
+        /**
+         * Commits the staged changes. The changes are recorded in an encrypted journal first; once it is stored
+         * the transaction counts as committed, and changes not yet stored when the process stops are completed
+         * by {@link KeyLocker#recoverTransactions(String)}.
+         * @return Operation result status
+         * @throws KeyLockerException if the transaction cannot be committed, or was committed but not fully applied
+         */
+        public boolean commit() throws KeyLockerException {
+            try {
+                KeyLockerStore.commitTransaction(encryptionKey, writes, deletes);
+                return true;
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to commit transaction: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Builder for snapshot reads of several identifiers. The values returned were all stored at the same instant,
+     * even while other threads or processes write the identifiers; writers are never blocked.
+     */
+    public static class StorageSnapshot {
+        private String encryptionKey;
+
+        private StorageSnapshot() {}
+
+        /**
+         * Sets the encryption key the identifiers were stored with
+         * @param key Encryption key
+         * @return This builder instance
+         */
+        public StorageSnapshot withEncryption(String key) {
+            this.encryptionKey = key;
+            return this;
+        }
+
+        /**
+         * Reads the identifiers as one snapshot. Identifiers changed while they were being read are read again
+         * until all values belong to the same instant.
+         * @param identifiers Identifiers to read
+         * @return Properties by identifier; identifiers with nothing stored are left out
+         * @throws KeyLockerException if a read fails or the identifiers kept changing
+         */
+        public Map<String, Map<String, Object>> read(String... identifiers) throws KeyLockerException {
+            return read(Arrays.asList(identifiers));
+        }
+
+        /**
+         * Reads the identifiers as one snapshot
+         * @param identifiers Identifiers to read
+         * @return Properties by identifier; identifiers with nothing stored are left out
+         * @throws KeyLockerException if a read fails or the identifiers kept changing
+         */
+        public Map<String, Map<String, Object>> read(Collection<String> identifiers) throws KeyLockerException {
+            try {
+                return KeyLockerStore.readSnapshot(encryptionKey, identifiers);
+            } catch (KeyLockerException e) {
+                throw new KeyLockerException("Failed to read snapshot: " + e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the native calls of credential stores on a bounded pool of platform threads when the caller is a virtual
+ * thread. A virtual thread inside a native call pins its carrier until the call returns, so enough concurrent
+ * calls would starve the virtual thread scheduler. Instead the virtual thread queues the call and parks until a
+ * pool thread has run it, leaving its carrier free. When every pool thread is busy and the queue is full, further
+ * callers park until a slot frees up. Platform threads, the pool's own included, make their calls directly, so a
+ * whole storage operation can be handed to the pool and the native calls inside it run on the same thread.
+ */
+public final class NativeCallPool {
+
+    /** System property setting the number of pool threads; defaults to the number of processors */
+    public static final String THREADS_PROPERTY = "oskeylocker.native.threads";
+    /** System property setting how many calls may wait for a pool thread before callers are held back */
+    public static final String QUEUE_PROPERTY = "oskeylocker.native.queue";
+
+    private static final int DEFAULT_QUEUE_SIZE = 1024;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    /**
+     * Native call returning a result
+     * @param <T> Result type
+     */
+    @FunctionalInterface
+    public interface NativeCall<T> {
+        T call() throws KeyLockerException;
+    }
+
+    private NativeCallPool() {
+    }
+
+    /**
+     * Runs a native call, on a pool thread if the caller is a virtual thread. The call may use buffers owned by
+     * the caller: the caller does not return, even when interrupted, until the call has finished.
+     * @param call The call
+     * @return The call's result
+     * @throws KeyLockerException if the call fails, or the caller is interrupted while waiting for a slot
+     */
+    public static <T> T call(NativeCall<T> call) throws KeyLockerException {
+        if (!Thread.currentThread().isVirtual()) {
+            return call.call();
+        }
+        return Pool.INSTANCE.run(call);
+    }
+
+    /**
+     * Pool created on the first call from a virtual thread
+     */
+    private static final class Pool {
+
+        private static final Pool INSTANCE = new Pool(
+                positive(Integer.getInteger(THREADS_PROPERTY, 0), Runtime.getRuntime().availableProcessors()),
+                positive(Integer.getInteger(QUEUE_PROPERTY, 0), DEFAULT_QUEUE_SIZE));
+
+        private final ThreadPoolExecutor executor;
+        // One permit per pool thread and queue slot, so a full pool holds callers back instead of rejecting them
+        private final Semaphore slots;
+
+        private Pool(int threads, int queueSize) {
+            AtomicInteger threadIndex = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "OsKeyLocker-native-" + threadIndex.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+            this.slots = new Semaphore(threads + queueSize);
+        }
+
+        private <T> T run(NativeCall<T> call) throws KeyLockerException {
+            try {
+                slots.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new KeyLockerException("Interrupted while waiting to call the credential store", e);
+            }
+
+            FutureTask<T> task = new FutureTask<>(() -> {
+                try {
+                    return call.call();
+                } finally {
+                    slots.release();
+                }
+            });
+            executor.execute(task);
+
+            boolean interrupted = false;
+            try {
+                while (true) {
+                    try {
+                        return task.get();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof KeyLockerException keyLockerException) {
+                    throw keyLockerException;
+                }
+                if (cause instanceof RuntimeException runtimeException) {
+                    throw runtimeException;
+                }
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                throw new KeyLockerException("Native call failed: " + cause.getMessage(), cause);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        private static int positive(int configured, int fallback) {
+            return configured > 0 ? configured : fallback;
+        }
+    }
+}
@@ -1,6 +1,16 @@
 package com.OsKeyLocker.platform;
 
 import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.SecretBuffer;
+import org.json.JSONObject;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Platform-specific secure storage interface
@@ -30,6 +40,14 @@ public interface PlatformKeyLockerStorage {
      */
     void initialize() throws KeyLockerException;
 
+    /**
+     * Initialize with app package name and encryption key
+     * @param packageName The application package name
+     * @param encryptionKey The encryption key to use
+     * @throws KeyLockerException if initialization fails
+     */
+    void initialize(String packageName, String encryptionKey) throws KeyLockerException;
+
     /**
      * Checks if this platform implementation is supported on the current system
      * @return true if supported, false otherwise
@@ -42,4 +60,160 @@ public interface PlatformKeyLockerStorage {
      * @throws KeyLockerException if the operation fails
      */
     void setAppPrefix(String prefix) throws KeyLockerException;
-}
\ No newline at end of file
+
+    /**
+     * Sets the encryption key used for subsequent operations of the calling thread. Threads that never set one
+     * use the key given to initialize, so threads working under different keys can share the storage.
+     * @param encryptionKey The encryption key to use
+     * @throws KeyLockerException if the operation fails
+     */
+    void setEncryptionKey(String encryptionKey) throws KeyLockerException;
+
+    /**
+     * Sets the encryption key used for subsequent operations of the calling thread, with a second key that reads
+     * fall back to
+     * @param encryptionKey The encryption key used for writes and tried first for reads
+     * @param fallbackKey The key tried when decryption with encryptionKey fails
+     * @throws KeyLockerException if the operation fails
+     */
+    void setEncryptionKey(String encryptionKey, String fallbackKey) throws KeyLockerException;
+
+    /**
+     * Sets the cipher suite used for subsequent writes; credentials stay readable whatever suite they were written with
+     * @param cipherSuite The cipher suite to use
+     * @throws KeyLockerException if the operation fails
+     */
+    void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException;
+
+    /**
+     * Lists the keys of every credential stored for this application
+     * @return Credential keys
+     * @throws KeyLockerException if enumeration fails
+     */
+    List<String> listCredentials() throws KeyLockerException;
+
+    /**
+     * Re-encrypts a credential in place under a new encryption key.
+     * Safe to repeat after an interruption; readers using both keys can read the credential throughout.
+     * @param key The credential key/target name
+     * @param oldKey The encryption key the credential is under
+     * @param newKey The encryption key to re-encrypt with
+     * @return true if re-encrypted, false if not under the old key (already rotated or unrelated) or no longer present
+     * @throws KeyLockerException if re-encryption fails
+     */
+    boolean reencryptCredential(String key, String oldKey, String newKey) throws KeyLockerException;
+
+    /**
+     * Stores a JSON credential
+     * @param key The credential key/target name
+     * @param jsonData The JSON data to store
+     * @param expiresAt Time after which the credential reads as absent, in epoch milliseconds, or 0 for none
+     * @throws KeyLockerException if storage fails
+     */
+    void storeJsonCredential(String key, JSONObject jsonData, long expiresAt) throws KeyLockerException;
+
+    /**
+     * Retrieves a JSON credential
+     * @param key The credential key/target name
+     * @return The JSON data, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    Optional<JSONObject> retrieveJsonCredential(String key) throws KeyLockerException;
+
+    /**
+     * Retrieves a single property of a credential into an off-heap buffer
+     * @param key The credential key/target name
+     * @param property The property to retrieve
+     * @return The property value, or empty if the credential or property is not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    Optional<SecretBuffer> retrieveSecret(String key, String property) throws KeyLockerException;
+
+    /**
+     * Decodes a single property of a credential straight from its decrypted payload
+     * @param key The credential key/target name
+     * @param property The property to retrieve
+     * @param decoder Decoder applied to the property's raw value token, or to null if the property is absent
+     * @param <T> Decoded value type
+     * @return The decoded value, or empty if the credential is not found or the decoder returns null
+     * @throws KeyLockerException if retrieval or decoding fails
+     */
+    <T> Optional<T> retrieveField(String key, String property, FieldDecoder<T> decoder) throws KeyLockerException;
+
+    /**
+     * Reads part of a credential's plaintext, decrypting only the chunks that cover the range
+     * @param key The credential key/target name
+     * @param offset Offset of the first byte to read
+     * @param length Maximum number of bytes to read
+     * @return The bytes in the range, or empty if not found
+     * @throws KeyLockerException if retrieval fails
+     */
+    Optional<byte[]> readRange(String key, long offset, int length) throws KeyLockerException;
+
+    /**
+     * Opens a stream that writes a credential as independently authenticated segments
+     * @param key The credential key/target name
+     * @param expiresAt Time after which the credential reads as absent, in epoch milliseconds, or 0 for none
+     * @return Output stream; closing it commits the credential
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    OutputStream openOutputStream(String key, long expiresAt) throws KeyLockerException;
+
+    /**
+     * Opens a stream over a credential written with openOutputStream
+     * @param key The credential key/target name
+     * @return Input stream over the credential, or empty if not found
+     * @throws KeyLockerException if the stream cannot be opened
+     */
+    Optional<InputStream> openInputStream(String key) throws KeyLockerException;
+
+    /**
+     * Gets a fingerprint of the credential's current version, readable without the encryption key.
+     * The value changes whenever the credential is stored or removed.
+     * @param key The credential key/target name
+     * @return Version fingerprint, or 0 if the credential does not exist
+     * @throws KeyLockerException if the check fails
+     */
+    long getChangeStamp(String key) throws KeyLockerException;
+
+    /**
+     * Gets the directory holding this storage's entries as files, so changes can be watched instead of polled
+     * @return The directory, or empty if entries are not kept in files
+     */
+    Optional<Path> getWatchDirectory();
+
+    /**
+     * Removes a credential
+     * @param key The credential key/target name
+     * @throws KeyLockerException if removal fails
+     */
+    void removeCredential(String key) throws KeyLockerException;
+
+    /**
+     * Removes a credential, including all of its chunks, if its expiry has passed. Needs no encryption key.
+     * @param key The credential key/target name
+     * @return true if the credential had expired and was removed
+     * @throws KeyLockerException if removal fails
+     */
+    boolean removeExpiredCredential(String key) throws KeyLockerException;
+
+    /**
+     * Scans the raw entries of the application's credentials for orphans: chunks and values that belong to no
+     * credential. When collecting, deletes orphans that earlier scans already found at least a grace period ago,
+     * as long as their credential has not changed since, so entries of a write in progress are not taken for orphans.
+     * @param encryptionKey Key used to read chunk counts from metadata; credentials under other keys are kept whole
+     * @param maxCollect Largest number of orphans to delete, or 0 to only report
+     * @param graceMillis How long an entry must stay an orphan before it is deleted
+     * @return The scan report
+     * @throws KeyLockerException if the scan fails
+     */
+    VaultReport scanVault(String encryptionKey, int maxCollect, long graceMillis) throws KeyLockerException;
+
+    /**
+     * Checks if a credential exists
+     * @param key The credential key/target name
+     * @return true if the credential exists, false otherwise
+     * @throws KeyLockerException if the check fails
+     */
+    boolean credentialExists(String key) throws KeyLockerException;
+}
@@ -0,0 +1,61 @@
+package com.OsKeyLocker.platform;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of direct scratch buffers for the off-heap read path. Buffers are borrowed for one read and
+ * returned, so they are reused across threads instead of being tied to one: a virtual thread per read would
+ * otherwise allocate a fresh buffer every time. The pool holds at most a fixed number of idle buffers, and
+ * buffers grown past the retained size are dropped on return instead of being kept for later reads.
+ * Callers wipe what they wrote before returning a buffer.
+ */
+final class ScratchBufferPool {
+
+    private static final int MIN_CAPACITY = 4096;
+
+    private final ArrayBlockingQueue<ByteBuffer> idle;
+    private final int maxRetainedCapacity;
+
+    /**
+     * Creates an empty pool
+     * @param maxIdle Most idle buffers kept
+     * @param maxRetainedCapacity Largest buffer kept for reuse, in bytes
+     */
+    ScratchBufferPool(int maxIdle, int maxRetainedCapacity) {
+        this.idle = new ArrayBlockingQueue<>(maxIdle);
+        this.maxRetainedCapacity = maxRetainedCapacity;
+    }
+
+    /**
+     * Borrows a buffer; return it with {@link #release}
+     * @param capacity Required capacity
+     * @return A cleared direct buffer with at least the required capacity
+     */
+    ByteBuffer acquire(int capacity) {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null || buffer.capacity() < capacity) {
+            // A pooled buffer that is too small is dropped; the new one replaces it on release
+            buffer = ByteBuffer.allocateDirect(Math.max(capacity, MIN_CAPACITY));
+        }
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a borrowed buffer, keeping it for reuse if it is not too large and the pool is not full
+     * @param buffer Buffer returned by {@link #acquire}, already wiped
+     */
+    void release(ByteBuffer buffer) {
+        if (buffer.capacity() <= maxRetainedCapacity) {
+            idle.offer(buffer);
+        }
+    }
+
+    /**
+     * Gets the number of idle buffers
+     * @return Buffers waiting to be reused
+     */
+    int idle() {
+        return idle.size();
+    }
+}
@@ -0,0 +1,26 @@
+package com.OsKeyLocker.platform;
+
+/**
+ * Result of scanning the raw entries of an application's credentials
+ * @param entries Raw entries under the application prefix, orphans included
+ * @param credentials Credentials, counted by their metadata entries
+ * @param chunks Chunk entries belonging to a credential
+ * @param orphans Entries belonging to no credential: chunks past a credential's chunk count or of a chunk set its
+ *                metadata does not name (a replaced value, or a stream never committed), chunks and single-entry
+ *                values without metadata, and single-entry values left behind by a chunked rewrite
+ * @param collected Orphans deleted by this scan
+ * @param unverified Credentials whose metadata could not be decrypted with the scan's key and carries no chunk
+ *                   count in its header; entries that may belong to them are kept and not counted as orphans
+ * @param damaged Credentials missing a chunk or value their metadata refers to
+ */
+public record VaultReport(int entries, int credentials, int chunks, int orphans, int collected, int unverified,
+                          int damaged) {
+
+    /**
+     * Gets the share of entries that belong to no credential
+     * @return Orphans per entry, from 0 to 1
+     */
+    public double fragmentation() {
+        return entries == 0 ? 0 : (double) orphans / entries;
+    }
+}
@@ -0,0 +1,82 @@
+package com.OsKeyLocker.platform.agent;
+
+import com.OsKeyLocker.util.GenerationTable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The agent's cache of decrypted credentials, shared by all of its clients and kept coherent with writers that
+ * bypass the agent by the shared generation table, like the in-process read cache. Entries are serialized JSON,
+ * or null for a credential that was not found, and are only served to a client holding the same keys they were
+ * read with. The least recently used entries are evicted past a fixed size.
+ */
+class AgentCache {
+
+    record Entry(String encryptionKey, String fallbackKey, long generation, byte[] json) {}
+
+    private final GenerationTable generations;
+    private final Map<String, Entry> entries;
+
+    /**
+     * Creates a cache validated against a generation table
+     * @param generations Shared generation table
+     * @param maxEntries Number of credentials kept
+     */
+    AgentCache(GenerationTable generations, int maxEntries) {
+        this.generations = generations;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Reads the current generation of a credential; call before loading data that will be cached
+     * @param name Application package and identifier, as {@code package + "/" + identifier}
+     * @return The credential's current generation
+     */
+    long generation(String name) {
+        return generations.get(name);
+    }
+
+    /**
+     * Gets a cached credential if it is still current
+     * @param name Application package and identifier
+     * @param encryptionKey Encryption key of the reader
+     * @param fallbackKey Fallback key of the reader, or null
+     * @return The entry, whose json is null for a credential that was not found, or null on a miss
+     */
+    synchronized Entry get(String name, String encryptionKey, String fallbackKey) {
+        Entry entry = entries.get(name);
+        if (entry == null || !entry.encryptionKey().equals(encryptionKey)
+                || !Objects.equals(entry.fallbackKey(), fallbackKey)) {
+            return null;
+        }
+        if (entry.generation() != generation(name)) {
+            entries.remove(name);
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Caches a credential loaded from storage
+     * @param name Application package and identifier
+     * @param entry Loaded credential, with the generation read before it was loaded
+     */
+    synchronized void put(String name, Entry entry) {
+        entries.put(name, entry);
+    }
+
+    /**
+     * Drops the entry of a credential
+     * @param name Application package and identifier
+     */
+    synchronized void remove(String name) {
+        entries.remove(name);
+    }
+}
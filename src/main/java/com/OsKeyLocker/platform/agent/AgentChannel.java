@@ -0,0 +1,181 @@
+package com.OsKeyLocker.platform.agent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * One end of an agent connection. Messages are framed as a 4-byte length followed by a one-byte code (the
+ * operation in requests, the status in responses) and the code's arguments: strings and byte arrays as a 4-byte
+ * length (-1 for null) and their UTF-8 or raw bytes, numbers in big-endian order. Frames carry decrypted
+ * credentials, so both the outgoing and the incoming buffer are wiped once an exchange is done.
+ */
+final class AgentChannel implements Closeable {
+
+    /** Protocol version exchanged when a connection opens */
+    static final int VERSION = 1;
+    /** Largest frame either end accepts */
+    static final int MAX_FRAME = 64 * 1024 * 1024;
+
+    // Requests
+    static final byte HELLO = 1;
+    static final byte CONTEXT = 2;
+    static final byte GET = 3;
+    static final byte FIELD = 4;
+    static final byte PUT = 5;
+    static final byte DELETE = 6;
+    static final byte DELETE_EXPIRED = 7;
+    static final byte EXISTS = 8;
+    static final byte LIST = 9;
+    static final byte STAMP = 10;
+    static final byte REENCRYPT = 11;
+    static final byte RANGE = 12;
+    static final byte OPEN_OUTPUT = 13;
+    static final byte WRITE_OUTPUT = 14;
+    static final byte CLOSE_OUTPUT = 15;
+    static final byte OPEN_INPUT = 16;
+    static final byte READ_INPUT = 17;
+    static final byte CLOSE_INPUT = 18;
+    static final byte SCAN = 19;
+
+    // Responses
+    static final byte OK = 0;
+    static final byte ABSENT = 1;
+    static final byte ERROR = 2;
+
+    private final SocketChannel channel;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final Buffer outgoing = new Buffer();
+    private final DataOutputStream message = new DataOutputStream(outgoing);
+    private byte[] incoming = new byte[256];
+    private int incomingLength;
+
+    /**
+     * Wraps a connected channel
+     * @param channel Connected Unix domain socket channel, in blocking mode
+     */
+    AgentChannel(SocketChannel channel) {
+        this.channel = channel;
+        this.in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+    }
+
+    /**
+     * Starts a new outgoing message, discarding one that was not sent. The last received message stays readable.
+     * @param code Operation or status code
+     * @return Stream the message's arguments are written to
+     * @throws IOException never in practice; the message is buffered in memory
+     */
+    DataOutputStream begin(byte code) throws IOException {
+        outgoing.wipe();
+        message.writeByte(code);
+        return message;
+    }
+
+    /**
+     * Sends the message started with {@link #begin}
+     * @throws IOException if the connection fails
+     */
+    void send() throws IOException {
+        out.writeInt(outgoing.size());
+        outgoing.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Receives the next message
+     * @return Stream positioned after the message's code, which is read with {@link DataInputStream#readByte}
+     * @throws IOException if the connection fails or closes, or the frame is malformed
+     */
+    DataInputStream receive() throws IOException {
+        int length = in.readInt();
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IOException("Invalid agent frame length: " + length);
+        }
+        if (incoming.length < length) {
+            Arrays.fill(incoming, 0, incomingLength, (byte) 0);
+            incoming = new byte[Math.max(length, incoming.length * 2)];
+        }
+        incomingLength = length;
+        in.readFully(incoming, 0, length);
+        return new DataInputStream(new ByteArrayInputStream(incoming, 0, length));
+    }
+
+    /**
+     * Wipes the buffered outgoing and incoming messages
+     */
+    void clear() {
+        outgoing.wipe();
+        Arrays.fill(incoming, 0, incomingLength, (byte) 0);
+        incomingLength = 0;
+    }
+
+    /**
+     * Closes the connection without touching the buffers; safe to call from another thread
+     * @throws IOException if closing fails
+     */
+    void disconnect() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public void close() throws IOException {
+        clear();
+        channel.close();
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value != null ? value.getBytes(StandardCharsets.UTF_8) : null);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes != null ? new String(bytes, StandardCharsets.UTF_8) : null;
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        writeBytes(out, value, 0, value.length);
+    }
+
+    static void writeBytes(DataOutputStream out, byte[] value, int offset, int length) throws IOException {
+        out.writeInt(length);
+        out.write(value, offset, length);
+    }
+
+    static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Truncated agent frame");
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return value;
+    }
+
+    /**
+     * Byte buffer whose contents can be wiped
+     */
+    private static final class Buffer extends ByteArrayOutputStream {
+        void wipe() {
+            Arrays.fill(buf, 0, count, (byte) 0);
+            reset();
+        }
+    }
+}
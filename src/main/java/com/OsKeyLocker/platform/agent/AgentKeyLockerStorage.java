@@ -0,0 +1,590 @@
+package com.OsKeyLocker.platform.agent;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.platform.VaultReport;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.JsonFieldScanner;
+import com.OsKeyLocker.util.SecretBuffer;
+import org.json.JSONObject;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Secure storage served by a {@link KeyLockerAgent} over a Unix domain socket. The agent does the native and
+ * cryptographic work and caches decrypted credentials for every JVM on the host; this client only forwards
+ * requests. It connects on first use and reconnects after the agent restarts, repeating the interrupted request
+ * once; open credential streams do not survive a reconnect.
+ */
+public class AgentKeyLockerStorage implements PlatformKeyLockerStorage {
+
+    /** System property that, set to {@code true}, makes the storage factory select this client */
+    public static final String AGENT_PROPERTY = "oskeylocker.agent";
+    /** System property overriding the agent socket path */
+    public static final String SOCKET_PROPERTY = "oskeylocker.agent.socket";
+    private static final int STREAM_CHUNK_SIZE = 64 * 1024;
+
+    private final Path socket;
+    // Guards the connection and context; not a monitor, so virtual threads waiting on the agent unmount
+    private final ReentrantLock lock = new ReentrantLock();
+    private AgentChannel channel;
+    // Incremented on every connection; streams are only valid on the connection they were opened on
+    private int connection;
+    private volatile boolean initialized = false;
+    private String appPrefix;
+    private CipherSuite cipherSuite = CipherSuite.AES_GCM;
+    // Keys of threads that have not set their own, and the keys each thread set; a request sends the keys of
+    // the thread making it when they differ from the ones the agent holds
+    private volatile Keys defaultKeys = new Keys(null, null);
+    private final ThreadLocal<Keys> threadKeys = new ThreadLocal<>();
+    private Keys sentKeys;
+    // Whether the agent holds the current prefix and cipher suite of this client
+    private boolean contextSent = false;
+
+    // Encryption keys of a thread's operations; fallbackKey is null outside rotations
+    private record Keys(String encryptionKey, String fallbackKey) {
+    }
+
+    /**
+     * Creates a client for the agent on the default socket
+     */
+    public AgentKeyLockerStorage() {
+        this(KeyLockerAgent.defaultSocket());
+    }
+
+    /**
+     * Creates a client for the agent on the given socket
+     * @param socket Agent socket path
+     */
+    public AgentKeyLockerStorage(Path socket) {
+        this.socket = socket;
+    }
+
+    /**
+     * Checks whether the {@value #AGENT_PROPERTY} system property asks for the agent
+     * @return true if storage should go through the agent
+     */
+    public static boolean isRequested() {
+        return Boolean.getBoolean(AGENT_PROPERTY);
+    }
+
+    @Override
+    public void initialize(String packageName, String encryptionKey) throws KeyLockerException {
+        lock.lock();
+        try {
+            this.appPrefix = packageName;
+            this.defaultKeys = new Keys(encryptionKey, null);
+            this.contextSent = false;
+            this.initialized = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void initialize() throws KeyLockerException {
+        lock.lock();
+        try {
+            initialize(null, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks that the agent socket exists; the agent itself is only contacted on first use
+     * @return true if an agent socket is present
+     */
+    @Override
+    public boolean isSupported() {
+        return Files.exists(socket);
+    }
+
+    @Override
+    public void setAppPrefix(String prefix) throws KeyLockerException {
+        lock.lock();
+        try {
+            if (!initialized) {
+                initialize();
+            }
+            if (!Objects.equals(prefix, appPrefix)) {
+                appPrefix = prefix;
+                contextSent = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey) throws KeyLockerException {
+        setEncryptionKey(encryptionKey, null);
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey, String fallbackKey) throws KeyLockerException {
+        checkInitialized();
+        threadKeys.set(new Keys(encryptionKey, fallbackKey));
+    }
+
+    @Override
+    public void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException {
+        lock.lock();
+        try {
+            checkInitialized();
+
+            if (cipherSuite != this.cipherSuite) {
+                this.cipherSuite = cipherSuite;
+                contextSent = false;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public byte[] encrypt(byte[] data) throws KeyLockerException {
+        throw new KeyLockerException("Direct encryption not supported; use storeJsonCredential instead");
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedData) throws KeyLockerException {
+        throw new KeyLockerException("Direct decryption not supported; use retrieveJsonCredential instead");
+    }
+
+    @Override
+    public List<String> listCredentials() throws KeyLockerException {
+        return call(AgentChannel.LIST, out -> {}, (status, in) -> {
+            int count = in.readInt();
+            List<String> storageKeys = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                storageKeys.add(AgentChannel.readString(in));
+            }
+            return storageKeys;
+        });
+    }
+
+    @Override
+    public boolean reencryptCredential(String key, String oldKey, String newKey) throws KeyLockerException {
+        return call(AgentChannel.REENCRYPT, out -> {
+            AgentChannel.writeString(out, key);
+            AgentChannel.writeString(out, oldKey);
+            AgentChannel.writeString(out, newKey);
+        }, (status, in) -> in.readBoolean());
+    }
+
+    @Override
+    public void storeJsonCredential(String key, JSONObject jsonData, long expiresAt) throws KeyLockerException {
+        byte[] json = jsonData.toString().getBytes(StandardCharsets.UTF_8);
+        try {
+            call(AgentChannel.PUT, out -> {
+                AgentChannel.writeString(out, key);
+                out.writeLong(expiresAt);
+                AgentChannel.writeBytes(out, json);
+            }, (status, in) -> null);
+        } finally {
+            Arrays.fill(json, (byte) 0);
+        }
+    }
+
+    @Override
+    public Optional<JSONObject> retrieveJsonCredential(String key) throws KeyLockerException {
+        return call(AgentChannel.GET, out -> AgentChannel.writeString(out, key), (status, in) -> {
+            if (status == AgentChannel.ABSENT) {
+                return Optional.empty();
+            }
+            byte[] json = AgentChannel.readBytes(in);
+            try {
+                return Optional.of(new JSONObject(new String(json, StandardCharsets.UTF_8)));
+            } finally {
+                Arrays.fill(json, (byte) 0);
+            }
+        });
+    }
+
+    @Override
+    public Optional<SecretBuffer> retrieveSecret(String key, String property) throws KeyLockerException {
+        return retrieveField(key, property, JsonFieldScanner::secretOf);
+    }
+
+    @Override
+    public <T> Optional<T> retrieveField(String key, String property, FieldDecoder<T> decoder) throws KeyLockerException {
+        return call(AgentChannel.FIELD, out -> {
+            AgentChannel.writeString(out, key);
+            AgentChannel.writeString(out, property);
+        }, (status, in) -> {
+            if (status == AgentChannel.ABSENT) {
+                return Optional.empty();
+            }
+            if (!in.readBoolean()) {
+                return Optional.ofNullable(decoder.decode(null));
+            }
+            byte[] token = AgentChannel.readBytes(in);
+            try {
+                return Optional.ofNullable(decoder.decode(ByteBuffer.wrap(token)));
+            } finally {
+                Arrays.fill(token, (byte) 0);
+            }
+        });
+    }
+
+    @Override
+    public Optional<byte[]> readRange(String key, long offset, int length) throws KeyLockerException {
+        return call(AgentChannel.RANGE, out -> {
+            AgentChannel.writeString(out, key);
+            out.writeLong(offset);
+            out.writeInt(length);
+        }, (status, in) -> status == AgentChannel.ABSENT ? Optional.empty() : Optional.of(AgentChannel.readBytes(in)));
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key, long expiresAt) throws KeyLockerException {
+        lock.lock();
+        try {
+            int id = call(AgentChannel.OPEN_OUTPUT, out -> {
+                AgentChannel.writeString(out, key);
+                out.writeLong(expiresAt);
+            }, (status, in) -> in.readInt());
+            return new AgentOutputStream(id, connection);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Optional<InputStream> openInputStream(String key) throws KeyLockerException {
+        lock.lock();
+        try {
+            Integer id = call(AgentChannel.OPEN_INPUT, out -> AgentChannel.writeString(out, key),
+                    (status, in) -> status == AgentChannel.ABSENT ? null : in.readInt());
+            return id == null ? Optional.empty() : Optional.of(new AgentInputStream(id, connection));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getChangeStamp(String key) throws KeyLockerException {
+        return call(AgentChannel.STAMP, out -> AgentChannel.writeString(out, key), (status, in) -> in.readLong());
+    }
+
+    /**
+     * The agent's vault is not visible to this process, so changes are polled
+     * @return Always empty
+     */
+    @Override
+    public Optional<Path> getWatchDirectory() {
+        return Optional.empty();
+    }
+
+    @Override
+    public void removeCredential(String key) throws KeyLockerException {
+        call(AgentChannel.DELETE, out -> AgentChannel.writeString(out, key), (status, in) -> null);
+    }
+
+    @Override
+    public boolean removeExpiredCredential(String key) throws KeyLockerException {
+        return call(AgentChannel.DELETE_EXPIRED, out -> AgentChannel.writeString(out, key),
+                (status, in) -> in.readBoolean());
+    }
+
+    @Override
+    public VaultReport scanVault(String encryptionKey, int maxCollect, long graceMillis) throws KeyLockerException {
+        return call(AgentChannel.SCAN, out -> {
+            AgentChannel.writeString(out, encryptionKey);
+            out.writeInt(maxCollect);
+            out.writeLong(graceMillis);
+        }, (status, in) -> new VaultReport(in.readInt(), in.readInt(), in.readInt(), in.readInt(), in.readInt(),
+                in.readInt(), in.readInt()));
+    }
+
+    @Override
+    public boolean credentialExists(String key) throws KeyLockerException {
+        return call(AgentChannel.EXISTS, out -> AgentChannel.writeString(out, key), (status, in) -> in.readBoolean());
+    }
+
+    private void checkInitialized() throws KeyLockerException {
+        if (!initialized) {
+            throw new KeyLockerException("Agent KeyLocker not initialized");
+        }
+    }
+
+    /**
+     * Sends a request and reads its response, reconnecting and repeating it once if the connection fails.
+     * Every single-message request is safe to repeat.
+     */
+    private <T> T call(byte operation, Request request, Response<T> response) throws KeyLockerException {
+        lock.lock();
+        try {
+            checkInitialized();
+
+            try {
+                return exchange(connect(), operation, request, response);
+            } catch (IOException e) {
+                disconnect();
+            }
+            try {
+                return exchange(connect(), operation, request, response);
+            } catch (IOException e) {
+                disconnect();
+                throw new KeyLockerException("Failed to reach KeyLocker agent on " + socket + ": " + e.getMessage(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sends a request over the current connection without repeating it
+     */
+    private <T> T callOnce(int streamConnection, byte operation, Request request, Response<T> response)
+            throws IOException {
+        lock.lock();
+        try {
+            if (channel == null || streamConnection != connection) {
+                throw new IOException("Connection to KeyLocker agent was lost");
+            }
+
+            try {
+                return exchange(channel, operation, request, response);
+            } catch (IOException e) {
+                disconnect();
+                throw e;
+            } catch (KeyLockerException e) {
+                throw new IOException(e.getMessage(), e);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private AgentChannel connect() throws IOException, KeyLockerException {
+        if (channel == null) {
+            SocketChannel socketChannel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            try {
+                socketChannel.connect(UnixDomainSocketAddress.of(socket));
+            } catch (IOException e) {
+                socketChannel.close();
+                throw e;
+            }
+
+            AgentChannel connected = new AgentChannel(socketChannel);
+            try {
+                exchange(connected, AgentChannel.HELLO, out -> out.writeInt(AgentChannel.VERSION), (status, in) -> null);
+            } catch (IOException | KeyLockerException e) {
+                connected.close();
+                throw e;
+            }
+            channel = connected;
+            connection++;
+            contextSent = false;
+        }
+
+        Keys keys = threadKeys.get();
+        if (keys == null) {
+            keys = defaultKeys;
+        }
+        if (!contextSent || !keys.equals(sentKeys)) {
+            Keys sending = keys;
+            exchange(channel, AgentChannel.CONTEXT, out -> {
+                AgentChannel.writeString(out, appPrefix);
+                AgentChannel.writeString(out, sending.encryptionKey());
+                AgentChannel.writeString(out, sending.fallbackKey());
+                AgentChannel.writeString(out, cipherSuite.name());
+            }, (status, in) -> null);
+            sentKeys = keys;
+            contextSent = true;
+        }
+        return channel;
+    }
+
+    private void disconnect() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Already broken
+            }
+            channel = null;
+        }
+    }
+
+    private static <T> T exchange(AgentChannel channel, byte operation, Request request, Response<T> response)
+            throws IOException, KeyLockerException {
+        try {
+            request.write(channel.begin(operation));
+            channel.send();
+
+            DataInputStream in = channel.receive();
+            byte status = in.readByte();
+            if (status == AgentChannel.ERROR) {
+                throw new KeyLockerException(AgentChannel.readString(in));
+            }
+            return response.read(status, in);
+        } finally {
+            channel.clear();
+        }
+    }
+
+    private interface Request {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Response<T> {
+        T read(byte status, DataInputStream in) throws IOException, KeyLockerException;
+    }
+
+    /**
+     * Sends a credential stream to the agent in chunks; closing it commits the credential
+     */
+    private final class AgentOutputStream extends OutputStream {
+        private final int id;
+        private final int streamConnection;
+        private final byte[] buffer = new byte[STREAM_CHUNK_SIZE];
+        private int count = 0;
+        private boolean closed = false;
+
+        AgentOutputStream(int id, int streamConnection) {
+            this.id = id;
+            this.streamConnection = streamConnection;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] data, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, data.length);
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+
+            while (length > 0) {
+                int copied = Math.min(length, buffer.length - count);
+                System.arraycopy(data, offset, buffer, count, copied);
+                count += copied;
+                offset += copied;
+                length -= copied;
+                if (count == buffer.length) {
+                    sendBuffer();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+
+            try {
+                if (count > 0) {
+                    sendBuffer();
+                }
+                callOnce(streamConnection, AgentChannel.CLOSE_OUTPUT, out -> out.writeInt(id), (status, in) -> null);
+            } finally {
+                Arrays.fill(buffer, (byte) 0);
+            }
+        }
+
+        private void sendBuffer() throws IOException {
+            callOnce(streamConnection, AgentChannel.WRITE_OUTPUT, out -> {
+                out.writeInt(id);
+                AgentChannel.writeBytes(out, buffer, 0, count);
+            }, (status, in) -> null);
+            Arrays.fill(buffer, 0, count, (byte) 0);
+            count = 0;
+        }
+    }
+
+    /**
+     * Reads a credential stream from the agent in chunks
+     */
+    private final class AgentInputStream extends InputStream {
+        private final int id;
+        private final int streamConnection;
+        private byte[] chunk = new byte[0];
+        private int position = 0;
+        private boolean ended = false;
+        private boolean closed = false;
+
+        AgentInputStream(int id, int streamConnection) {
+            this.id = id;
+            this.streamConnection = streamConnection;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] target, int offset, int length) throws IOException {
+            Objects.checkFromIndexSize(offset, length, target.length);
+            if (closed) {
+                throw new IOException("Stream closed");
+            }
+            if (length == 0) {
+                return 0;
+            }
+
+            if (position == chunk.length) {
+                if (ended || !fetch()) {
+                    return -1;
+                }
+            }
+            int copied = Math.min(length, chunk.length - position);
+            System.arraycopy(chunk, position, target, offset, copied);
+            position += copied;
+            return copied;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            Arrays.fill(chunk, (byte) 0);
+
+            try {
+                callOnce(streamConnection, AgentChannel.CLOSE_INPUT, out -> out.writeInt(id), (status, in) -> null);
+            } catch (IOException ignored) {
+                // The agent drops the streams of a lost connection itself
+            }
+        }
+
+        private boolean fetch() throws IOException {
+            Arrays.fill(chunk, (byte) 0);
+            chunk = callOnce(streamConnection, AgentChannel.READ_INPUT, out -> {
+                out.writeInt(id);
+                out.writeInt(STREAM_CHUNK_SIZE);
+            }, (status, in) -> AgentChannel.readBytes(in));
+            position = 0;
+            ended = chunk.length == 0;
+            return !ended;
+        }
+    }
+}
@@ -0,0 +1,723 @@
+package com.OsKeyLocker.platform.agent;
+
+import com.OsKeyLocker.KeyLockerStoreFactory;
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.platform.VaultReport;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.GenerationTable;
+import com.OsKeyLocker.util.JsonFieldScanner;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Local secrets agent shared by the JVMs of one user on a host. The agent owns the local storage and a cache of
+ * decrypted credentials, and serves them over a Unix domain socket to {@link AgentKeyLockerStorage} clients, so
+ * native access, key derivation and decryption happen once per host instead of once per JVM. The socket lives in
+ * the user's private temporary directory, and connections from other users are refused.
+ * <p>
+ * Run it with {@code java -cp ... com.OsKeyLocker.platform.agent.KeyLockerAgent [socket]}, or embed it with
+ * {@link #start}.
+ */
+@Slf4j
+public final class KeyLockerAgent implements Closeable {
+
+    private static final int CACHE_ENTRIES = 4096;
+    private static final int MAX_STREAM_READ = 1024 * 1024;
+
+    private final Path socket;
+    private final ServerSocketChannel server;
+    private final AgentCache cache;
+    private final StorageFactory storageFactory;
+    private final String user;
+    // Platform storages by application package, shared by the connections of that application. Each connection
+    // is served on its own thread and storages keep encryption keys per thread, so connections run concurrently.
+    private final Map<String, Application> storages = new HashMap<>();
+    private final ReentrantLock storagesLock = new ReentrantLock();
+    private final Set<AgentChannel> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger connectionIndex = new AtomicInteger();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    private KeyLockerAgent(Path socket, ServerSocketChannel server, AgentCache cache, StorageFactory storageFactory,
+                           String user) {
+        this.socket = socket;
+        this.server = server;
+        this.cache = cache;
+        this.storageFactory = storageFactory;
+        this.user = user;
+        this.acceptor = new Thread(this::accept, "OsKeyLocker-agent");
+    }
+
+    /**
+     * Runs an agent until the process is stopped
+     * @param args Optional socket path; defaults to {@link #defaultSocket()}
+     */
+    public static void main(String[] args) {
+        Path socket = args.length > 0 ? Path.of(args[0]) : defaultSocket();
+        KeyLockerAgent agent;
+        try {
+            agent = start(socket, false, KeyLockerStoreFactory::getLocalStorage, System.getProperty("user.name"));
+        } catch (KeyLockerException e) {
+            System.err.println("Failed to start agent: " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(agent::close, "OsKeyLocker-agent-shutdown"));
+        try {
+            agent.acceptor.join();
+        } catch (InterruptedException e) {
+            agent.close();
+        }
+    }
+
+    /**
+     * Gets the socket path clients and agents use unless told otherwise: the {@value AgentKeyLockerStorage#SOCKET_PROPERTY}
+     * system property, or {@code agent.sock} in the user's private temporary directory
+     * @return Socket path
+     */
+    public static Path defaultSocket() {
+        String configured = System.getProperty(AgentKeyLockerStorage.SOCKET_PROPERTY);
+        if (configured != null && !configured.isEmpty()) {
+            return Path.of(configured);
+        }
+        return Path.of(System.getProperty("java.io.tmpdir"), "oskeylocker-" + System.getProperty("user.name"), "agent.sock");
+    }
+
+    /**
+     * Starts an agent in this process, serving on daemon threads
+     * @param socket Socket path
+     * @return The running agent; close it to stop serving
+     * @throws KeyLockerException if another agent is listening on the socket or it cannot be bound
+     */
+    public static KeyLockerAgent start(Path socket) throws KeyLockerException {
+        return start(socket, KeyLockerStoreFactory::getLocalStorage, System.getProperty("user.name"));
+    }
+
+    /**
+     * Starts an agent in this process over storages from the given factory, serving only the given user
+     * @param socket Socket path
+     * @param storageFactory Creates the storage of each application
+     * @param user Name of the user whose connections are accepted
+     * @return The running agent
+     * @throws KeyLockerException if another agent is listening on the socket or it cannot be bound
+     */
+    static KeyLockerAgent start(Path socket, StorageFactory storageFactory, String user) throws KeyLockerException {
+        return start(socket, true, storageFactory, user);
+    }
+
+    private static KeyLockerAgent start(Path socket, boolean daemon, StorageFactory storageFactory, String user)
+            throws KeyLockerException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        ServerSocketChannel server;
+        try {
+            Path directory = socket.toAbsolutePath().getParent();
+            if (!Files.isDirectory(directory)) {
+                if (posix) {
+                    Files.createDirectories(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            }
+
+            if (Files.exists(socket)) {
+                if (isListening(socket)) {
+                    throw new KeyLockerException("An agent is already listening on " + socket);
+                }
+                // Left behind by an agent that did not shut down cleanly
+                Files.delete(socket);
+            }
+
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            server.bind(UnixDomainSocketAddress.of(socket));
+            if (posix) {
+                Files.setPosixFilePermissions(socket, PosixFilePermissions.fromString("rw-------"));
+            }
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to bind agent socket " + socket + ": " + e.getMessage(), e);
+        }
+
+        AgentCache cache = null;
+        try {
+            cache = new AgentCache(GenerationTable.openShared(), CACHE_ENTRIES);
+        } catch (KeyLockerException e) {
+            log.warn("Shared generation table unavailable, agent cache disabled: {}", e.getMessage());
+        }
+
+        KeyLockerAgent agent = new KeyLockerAgent(socket, server, cache, storageFactory, user);
+        agent.acceptor.setDaemon(daemon);
+        agent.acceptor.start();
+        log.info("KeyLocker agent listening on {}", socket);
+        return agent;
+    }
+
+    /**
+     * Gets the socket the agent listens on
+     * @return Socket path
+     */
+    public Path getSocket() {
+        return socket;
+    }
+
+    /**
+     * Stops serving, disconnects every client and removes the socket
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+
+        try {
+            server.close();
+        } catch (IOException e) {
+            log.debug("Failed to close agent socket: {}", e.getMessage());
+        }
+        for (AgentChannel connection : connections) {
+            try {
+                connection.disconnect();
+            } catch (IOException e) {
+                log.debug("Failed to close agent connection: {}", e.getMessage());
+            }
+        }
+        try {
+            Files.deleteIfExists(socket);
+        } catch (IOException e) {
+            log.debug("Failed to remove agent socket: {}", e.getMessage());
+        }
+    }
+
+    private static boolean isListening(Path socket) {
+        try (SocketChannel probe = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            return probe.isConnected();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void accept() {
+        while (!closed) {
+            SocketChannel client;
+            try {
+                client = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!closed) {
+                    log.error("Failed to accept agent connection: {}", e.getMessage());
+                }
+                continue;
+            }
+
+            if (!isOwner(client)) {
+                try {
+                    client.close();
+                } catch (IOException ignored) {
+                    // Nothing was exchanged
+                }
+                continue;
+            }
+
+            Thread thread = new Thread(() -> serve(client), "OsKeyLocker-agent-" + connectionIndex.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private boolean isOwner(SocketChannel client) {
+        try {
+            UnixDomainPrincipal peer = client.getOption(ExtendedSocketOptions.SO_PEERCRED);
+            if (peer.user().getName().equals(user)) {
+                return true;
+            }
+            log.warn("Refused agent connection from user {}", peer.user().getName());
+            return false;
+        } catch (UnsupportedOperationException e) {
+            // No peer credentials on this platform; the socket's permissions keep other users out
+            return true;
+        } catch (IOException e) {
+            log.warn("Refused agent connection without peer credentials: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    private void serve(SocketChannel client) {
+        Session session = new Session();
+        AgentChannel channel = new AgentChannel(client);
+        connections.add(channel);
+        try (channel) {
+            if (closed) {
+                return;
+            }
+
+            while (true) {
+                DataInputStream request;
+                try {
+                    request = channel.receive();
+                } catch (EOFException e) {
+                    return;
+                }
+
+                try {
+                    handle(request.readByte(), request, channel, session);
+                } catch (KeyLockerException | RuntimeException e) {
+                    AgentChannel.writeString(channel.begin(AgentChannel.ERROR), describe(e));
+                }
+                channel.send();
+                channel.clear();
+            }
+        } catch (IOException e) {
+            if (!closed) {
+                log.debug("Agent connection ended: {}", e.getMessage());
+            }
+        } finally {
+            connections.remove(channel);
+            session.abandonStreams();
+        }
+    }
+
+    private void handle(byte operation, DataInputStream request, AgentChannel channel, Session session)
+            throws IOException, KeyLockerException {
+
+        if (operation == AgentChannel.HELLO) {
+            int version = request.readInt();
+            if (version != AgentChannel.VERSION) {
+                throw new KeyLockerException("Unsupported agent protocol version " + version
+                        + "; this agent speaks version " + AgentChannel.VERSION);
+            }
+            session.greeted = true;
+            channel.begin(AgentChannel.OK);
+            return;
+        }
+        if (!session.greeted) {
+            throw new IOException("Agent client did not say hello");
+        }
+        if (operation == AgentChannel.CONTEXT) {
+            String prefix = AgentChannel.readString(request);
+            String encryptionKey = AgentChannel.readString(request);
+            String fallbackKey = AgentChannel.readString(request);
+            CipherSuite cipherSuite = CipherSuite.valueOf(AgentChannel.readString(request));
+            session.application = storageFor(prefix, encryptionKey);
+            session.prefix = prefix;
+            session.encryptionKey = encryptionKey;
+            session.fallbackKey = fallbackKey;
+            session.cipherSuite = cipherSuite;
+            channel.begin(AgentChannel.OK);
+            return;
+        }
+        if (session.application == null) {
+            throw new KeyLockerException("Agent client has not set its application and key");
+        }
+
+        switch (operation) {
+            case AgentChannel.GET -> {
+                AgentCache.Entry entry = load(session, AgentChannel.readString(request));
+                if (entry.json() == null) {
+                    channel.begin(AgentChannel.ABSENT);
+                } else {
+                    AgentChannel.writeBytes(channel.begin(AgentChannel.OK), entry.json());
+                }
+            }
+            case AgentChannel.FIELD -> {
+                String storageKey = AgentChannel.readString(request);
+                String property = AgentChannel.readString(request);
+                AgentCache.Entry entry = load(session, storageKey);
+                if (entry.json() == null) {
+                    channel.begin(AgentChannel.ABSENT);
+                    return;
+                }
+                ByteBuffer token = JsonFieldScanner.findValue(ByteBuffer.wrap(entry.json()), property);
+                DataOutputStream response = channel.begin(AgentChannel.OK);
+                response.writeBoolean(token != null);
+                if (token != null) {
+                    AgentChannel.writeBytes(response, entry.json(), token.arrayOffset() + token.position(),
+                            token.remaining());
+                }
+            }
+            case AgentChannel.PUT -> {
+                String storageKey = AgentChannel.readString(request);
+                long expiresAt = request.readLong();
+                byte[] json = AgentChannel.readBytes(request);
+                try {
+                    JSONObject credential = new JSONObject(new String(json, StandardCharsets.UTF_8));
+                    modify(session, storageKey, storage -> {
+                        storage.storeJsonCredential(storageKey, credential, expiresAt);
+                        return null;
+                    });
+                } finally {
+                    Arrays.fill(json, (byte) 0);
+                }
+                channel.begin(AgentChannel.OK);
+            }
+            case AgentChannel.DELETE -> {
+                String storageKey = AgentChannel.readString(request);
+                modify(session, storageKey, storage -> {
+                    storage.removeCredential(storageKey);
+                    return null;
+                });
+                channel.begin(AgentChannel.OK);
+            }
+            case AgentChannel.DELETE_EXPIRED -> {
+                String storageKey = AgentChannel.readString(request);
+                boolean removed = modify(session, storageKey, storage -> storage.removeExpiredCredential(storageKey));
+                channel.begin(AgentChannel.OK).writeBoolean(removed);
+            }
+            case AgentChannel.EXISTS -> {
+                String storageKey = AgentChannel.readString(request);
+                boolean exists = withStorage(session, storage -> storage.credentialExists(storageKey));
+                channel.begin(AgentChannel.OK).writeBoolean(exists);
+            }
+            case AgentChannel.LIST -> {
+                List<String> storageKeys = withStorage(session, PlatformKeyLockerStorage::listCredentials);
+                DataOutputStream response = channel.begin(AgentChannel.OK);
+                response.writeInt(storageKeys.size());
+                for (String storageKey : storageKeys) {
+                    AgentChannel.writeString(response, storageKey);
+                }
+            }
+            case AgentChannel.STAMP -> {
+                String storageKey = AgentChannel.readString(request);
+                long stamp = withStorage(session, storage -> storage.getChangeStamp(storageKey));
+                channel.begin(AgentChannel.OK).writeLong(stamp);
+            }
+            case AgentChannel.SCAN -> {
+                String encryptionKey = AgentChannel.readString(request);
+                int maxCollect = request.readInt();
+                long graceMillis = request.readLong();
+                // Only orphans are deleted, so no cached credential changes
+                VaultReport report = withStorage(session,
+                        storage -> storage.scanVault(encryptionKey, maxCollect, graceMillis));
+                DataOutputStream response = channel.begin(AgentChannel.OK);
+                response.writeInt(report.entries());
+                response.writeInt(report.credentials());
+                response.writeInt(report.chunks());
+                response.writeInt(report.orphans());
+                response.writeInt(report.collected());
+                response.writeInt(report.unverified());
+                response.writeInt(report.damaged());
+            }
+            case AgentChannel.REENCRYPT -> {
+                String storageKey = AgentChannel.readString(request);
+                String oldKey = AgentChannel.readString(request);
+                String newKey = AgentChannel.readString(request);
+                boolean reencrypted = modify(session, storageKey,
+                        storage -> storage.reencryptCredential(storageKey, oldKey, newKey));
+                channel.begin(AgentChannel.OK).writeBoolean(reencrypted);
+            }
+            case AgentChannel.RANGE -> {
+                String storageKey = AgentChannel.readString(request);
+                long offset = request.readLong();
+                int length = request.readInt();
+                Optional<byte[]> range = withStorage(session, storage -> storage.readRange(storageKey, offset,
+                        Math.min(length, MAX_STREAM_READ)));
+                if (range.isEmpty()) {
+                    channel.begin(AgentChannel.ABSENT);
+                } else {
+                    AgentChannel.writeBytes(channel.begin(AgentChannel.OK), range.get());
+                    Arrays.fill(range.get(), (byte) 0);
+                }
+            }
+            case AgentChannel.OPEN_OUTPUT -> {
+                String storageKey = AgentChannel.readString(request);
+                long expiresAt = request.readLong();
+                OutputStream out = modify(session, storageKey, storage -> storage.openOutputStream(storageKey, expiresAt));
+                int id = session.open(new OpenStream(session.name(storageKey), out));
+                channel.begin(AgentChannel.OK).writeInt(id);
+            }
+            case AgentChannel.WRITE_OUTPUT -> {
+                OpenStream stream = session.stream(request.readInt());
+                byte[] data = AgentChannel.readBytes(request);
+                try {
+                    ((OutputStream) stream.stream()).write(data);
+                } catch (IOException e) {
+                    throw new KeyLockerException("Failed to write credential stream: " + e.getMessage(), e);
+                } finally {
+                    Arrays.fill(data, (byte) 0);
+                }
+                channel.begin(AgentChannel.OK);
+            }
+            case AgentChannel.CLOSE_OUTPUT, AgentChannel.CLOSE_INPUT -> {
+                OpenStream stream = session.close(request.readInt());
+                try {
+                    stream.stream().close();
+                } catch (IOException e) {
+                    throw new KeyLockerException("Failed to close credential stream: " + e.getMessage(), e);
+                } finally {
+                    if (operation == AgentChannel.CLOSE_OUTPUT && cache != null) {
+                        cache.remove(stream.name());
+                    }
+                }
+                channel.begin(AgentChannel.OK);
+            }
+            case AgentChannel.OPEN_INPUT -> {
+                String storageKey = AgentChannel.readString(request);
+                Optional<InputStream> in = withStorage(session, storage -> storage.openInputStream(storageKey));
+                if (in.isEmpty()) {
+                    channel.begin(AgentChannel.ABSENT);
+                } else {
+                    int id = session.open(new OpenStream(session.name(storageKey), in.get()));
+                    channel.begin(AgentChannel.OK).writeInt(id);
+                }
+            }
+            case AgentChannel.READ_INPUT -> {
+                OpenStream stream = session.stream(request.readInt());
+                int length = Math.min(request.readInt(), MAX_STREAM_READ);
+                byte[] data;
+                try {
+                    data = ((InputStream) stream.stream()).readNBytes(length);
+                } catch (IOException e) {
+                    throw new KeyLockerException("Failed to read credential stream: " + e.getMessage(), e);
+                }
+                AgentChannel.writeBytes(channel.begin(AgentChannel.OK), data);
+                Arrays.fill(data, (byte) 0);
+            }
+            default -> throw new IOException("Unknown agent operation " + operation);
+        }
+    }
+
+    /**
+     * Reads a credential through the cache
+     */
+    private AgentCache.Entry load(Session session, String storageKey) throws KeyLockerException {
+        String name = session.name(storageKey);
+        if (cache != null) {
+            AgentCache.Entry entry = cache.get(name, session.encryptionKey, session.fallbackKey);
+            if (entry != null) {
+                return entry;
+            }
+        }
+
+        return withStorage(session, storage -> {
+            long generation = cache != null ? cache.generation(name) : 0;
+            byte[] json = storage.retrieveJsonCredential(storageKey)
+                    .map(credential -> credential.toString().getBytes(StandardCharsets.UTF_8))
+                    .orElse(null);
+            AgentCache.Entry entry = new AgentCache.Entry(session.encryptionKey, session.fallbackKey, generation, json);
+            if (cache != null) {
+                cache.put(name, entry);
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Runs an operation that changes a credential under the session's cipher suite, dropping its cache entry
+     * afterwards. Streams opened this way keep the suite they were opened with.
+     */
+    private <T> T modify(Session session, String storageKey, StorageOperation<T> operation) throws KeyLockerException {
+        Application application = session.application;
+        application.enter(session.cipherSuite);
+        try {
+            return withStorage(session, storage -> {
+                try {
+                    return operation.apply(storage);
+                } finally {
+                    if (cache != null) {
+                        cache.remove(session.name(storageKey));
+                    }
+                }
+            });
+        } finally {
+            application.exit();
+        }
+    }
+
+    /**
+     * Runs an operation with the session's keys. Reads take the cipher suite from the stored credential, so only
+     * {@link #modify} needs the session's suite.
+     */
+    private <T> T withStorage(Session session, StorageOperation<T> operation) throws KeyLockerException {
+        PlatformKeyLockerStorage storage = session.application.storage();
+        if (session.fallbackKey != null) {
+            storage.setEncryptionKey(session.encryptionKey, session.fallbackKey);
+        } else if (session.encryptionKey != null) {
+            storage.setEncryptionKey(session.encryptionKey);
+        }
+        return operation.apply(storage);
+    }
+
+    private Application storageFor(String prefix, String encryptionKey) throws KeyLockerException {
+        storagesLock.lock();
+        try {
+            Application application = storages.get(prefix);
+            if (application == null) {
+                PlatformKeyLockerStorage storage = storageFactory.create();
+                if (prefix != null) {
+                    storage.initialize(prefix, encryptionKey);
+                } else {
+                    storage.initialize();
+                }
+                application = new Application(storage);
+                storages.put(prefix, application);
+            }
+            return application;
+        } finally {
+            storagesLock.unlock();
+        }
+    }
+
+    private static String describe(Exception e) {
+        String message = e.getMessage() != null ? e.getMessage() : e.toString();
+        Throwable cause = e.getCause();
+        while (cause != null && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        if (cause != null && cause.getMessage() != null && !message.contains(cause.getMessage())) {
+            message += ": " + cause.getMessage();
+        }
+        return message;
+    }
+
+    private interface StorageOperation<T> {
+        T apply(PlatformKeyLockerStorage storage) throws KeyLockerException;
+    }
+
+    /**
+     * Creates the storage of an application
+     */
+    interface StorageFactory {
+        PlatformKeyLockerStorage create() throws KeyLockerException;
+    }
+
+    /**
+     * The storage of one application, shared by its connections. The cipher suite new credentials are encrypted
+     * with is a setting of the whole storage, so writes under the same suite run together and a write under
+     * another suite waits until they are done.
+     */
+    private static final class Application {
+        private final PlatformKeyLockerStorage storage;
+        // Not a monitor: switching the suite may initialize the storage, a native call
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition released = lock.newCondition();
+        private CipherSuite suite;
+        private int writers;
+
+        private Application(PlatformKeyLockerStorage storage) {
+            this.storage = storage;
+        }
+
+        PlatformKeyLockerStorage storage() {
+            return storage;
+        }
+
+        /**
+         * Waits until the storage can encrypt with a suite and holds it there until {@link #exit}
+         */
+        void enter(CipherSuite cipherSuite) throws KeyLockerException {
+            lock.lock();
+            try {
+                while (writers > 0 && suite != cipherSuite) {
+                    released.awaitUninterruptibly();
+                }
+                if (suite != cipherSuite) {
+                    storage.setCipherSuite(cipherSuite);
+                    suite = cipherSuite;
+                }
+                writers++;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void exit() {
+            lock.lock();
+            try {
+                if (--writers == 0) {
+                    released.signalAll();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private record OpenStream(String name, Closeable stream) {}
+
+    /**
+     * State of one client connection: the application and keys it works under, and its open streams
+     */
+    private static final class Session {
+        private boolean greeted;
+        private Application application;
+        private String prefix;
+        private String encryptionKey;
+        private String fallbackKey;
+        private CipherSuite cipherSuite;
+        private final Map<Integer, OpenStream> streams = new HashMap<>();
+        private int nextStream;
+
+        String name(String storageKey) {
+            return prefix + "/" + storageKey;
+        }
+
+        int open(OpenStream stream) {
+            int id = ++nextStream;
+            streams.put(id, stream);
+            return id;
+        }
+
+        OpenStream stream(int id) throws KeyLockerException {
+            OpenStream stream = streams.get(id);
+            if (stream == null) {
+                throw new KeyLockerException("Unknown credential stream " + id);
+            }
+            return stream;
+        }
+
+        OpenStream close(int id) throws KeyLockerException {
+            OpenStream stream = stream(id);
+            streams.remove(id);
+            return stream;
+        }
+
+        /**
+         * Drops the streams of a client that went away; output streams are not closed, so nothing is committed
+         */
+        void abandonStreams() {
+            for (OpenStream stream : streams.values()) {
+                if (stream.stream() instanceof InputStream in) {
+                    try {
+                        in.close();
+                    } catch (IOException ignored) {
+                        // Reading only
+                    }
+                }
+            }
+            streams.clear();
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.OsKeyLocker.platform.file;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.ChunkedCredentialManager;
+
+import java.io.IOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Stores raw entries as files in a directory, one file per entry. Entries are encrypted before they get here,
+ * like in the platform stores, and the directory and files are readable only by their owner. Each entry is
+ * replaced atomically by writing a temporary file and renaming it over the old one.
+ */
+public class FileCredentialManager extends ChunkedCredentialManager {
+
+    // Raw entries are not bounded by a native limit; this only sets the chunk size
+    private static final int MAX_CREDENTIAL_SIZE = 64 * 1024;
+    // Marks files being written; encoded entry names never contain it
+    private static final String TEMPORARY_PREFIX = "~";
+
+    private final Path directory;
+    private final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /**
+     * Creates a manager storing entries in the given directory
+     * @param directory Vault directory; created on initialization if missing
+     */
+    public FileCredentialManager(Path directory) {
+        super();
+        this.directory = directory;
+    }
+
+    /**
+     * Creates the vault directory if it does not exist
+     */
+    @Override
+    protected void loadNativeAccess() throws KeyLockerException {
+        try {
+            if (!Files.isDirectory(directory)) {
+                if (posix) {
+                    Files.createDirectories(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            }
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to create vault directory: " + directory, e);
+        }
+    }
+
+    @Override
+    protected int getMaxCredentialSize() {
+        return MAX_CREDENTIAL_SIZE;
+    }
+
+    @Override
+    protected void addRawCredential(String credName, String value) throws KeyLockerException {
+        Path temporary = directory.resolve(TEMPORARY_PREFIX + UUID.randomUUID());
+        try {
+            try (FileChannel channel = FileChannel.open(temporary,
+                    Set.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), fileAttributes())) {
+                ByteBuffer data = ByteBuffer.wrap(value.getBytes(StandardCharsets.US_ASCII));
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+            }
+            Files.move(temporary, fileOf(credName), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // Already failing
+            }
+            throw new KeyLockerException("Failed to write vault entry " + credName + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected String getRawCredential(String credName) throws KeyLockerException {
+        byte[] data = readFile(credName);
+        return data == null ? null : new String(data, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    protected boolean readRawCredential(String credName, ByteBuffer target) throws KeyLockerException {
+        byte[] data = readFile(credName);
+        if (data == null) {
+            return false;
+        }
+
+        try {
+            decodeBase64(ByteBuffer.wrap(data), 1, target);
+        } finally {
+            Arrays.fill(data, (byte) 0);
+        }
+        return true;
+    }
+
+    @Override
+    protected void deleteRawCredential(String credName) throws KeyLockerException {
+        try {
+            Files.deleteIfExists(fileOf(credName));
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to delete vault entry " + credName + ": " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    protected List<String> listRawCredentials(String prefix) throws KeyLockerException {
+        List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return names;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                if (fileName.startsWith(TEMPORARY_PREFIX)) {
+                    continue;
+                }
+                String credName = URLDecoder.decode(fileName, StandardCharsets.UTF_8);
+                if (credName.startsWith(prefix)) {
+                    names.add(credName);
+                }
+            }
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to list vault directory: " + directory, e);
+        }
+        return names;
+    }
+
+    /**
+     * Gets the vault directory
+     * @return Directory holding the entries
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    private byte[] readFile(String credName) throws KeyLockerException {
+        Path file = fileOf(credName);
+        // Checked first so a miss creates no exception; a file deleted in between is still caught below
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to read vault entry " + credName + ": " + e.getMessage(), e);
+        }
+    }
+
+    private Path fileOf(String credName) {
+        // Encodes every character that could be a path separator or otherwise special in a file name
+        return directory.resolve(URLEncoder.encode(credName, StandardCharsets.UTF_8).replace("*", "%2A"));
+    }
+
+    private FileAttribute<?>[] fileAttributes() {
+        if (!posix) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+    }
+}
@@ -0,0 +1,37 @@
+package com.OsKeyLocker.platform.file;
+
+import com.OsKeyLocker.platform.ChunkedKeyLockerStorage;
+
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Secure storage kept in a local directory instead of the OS credential store. Useful on hosts without a
+ * credential store, for standby vaults fed by replication, and for tests.
+ */
+public class FileSecureStorage extends ChunkedKeyLockerStorage {
+
+    /** System property naming a vault directory; when set, the storage factory selects this storage */
+    public static final String DIRECTORY_PROPERTY = "oskeylocker.vault";
+
+    private final Path directory;
+
+    /**
+     * Creates a new FileSecureStorage over a vault directory
+     * @param directory Vault directory; created on initialization if missing
+     */
+    public FileSecureStorage(Path directory) {
+        super(new FileCredentialManager(directory), "File");
+        this.directory = directory;
+    }
+
+    @Override
+    public Optional<Path> getWatchDirectory() {
+        return Optional.of(directory);
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+}
@@ -0,0 +1,147 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * java.lang.foreign implementation of keyctl access, using one cached downcall handle to libc's syscall()
+ * and confined arenas for the per-call strings and buffers.
+ * On Java 21 this API is a preview feature: the class only loads when the JVM runs with --enable-preview,
+ * otherwise {@link LinuxKeyringManager} falls back to {@link JnaLinuxKeyctl}.
+ */
+public class FfmLinuxKeyctl implements LinuxKeyctl {
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final StructLayout CALL_STATE = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = CALL_STATE.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+
+    // long syscall(long number, ...) with five 64-bit variadic arguments; unused trailing arguments are ignored by the kernel
+    private static final MethodHandle SYSCALL = LINKER.downcallHandle(
+            LINKER.defaultLookup().find("syscall").orElseThrow(),
+            FunctionDescriptor.of(JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG),
+            Linker.Option.firstVariadicArg(1),
+            Linker.Option.captureCallState("errno"));
+
+    @Override
+    public int addKey(String description, byte[] payload, int keyring) throws KeyLockerException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CALL_STATE);
+            MemorySegment payloadSegment = arena.allocate(Math.max(1, payload.length));
+            MemorySegment.copy(payload, 0, payloadSegment, JAVA_BYTE, 0, payload.length);
+
+            long result = syscall(state, KeyctlSyscalls.ADD_KEY,
+                    arena.allocateUtf8String(KeyctlSyscalls.KEY_TYPE_USER).address(),
+                    arena.allocateUtf8String(description).address(),
+                    payloadSegment.address(), payload.length, keyring);
+            payloadSegment.fill((byte) 0);
+
+            if (result < 0) {
+                throw new KeyLockerException("Failed to add key, errno: " + errno(state));
+            }
+            return (int) result;
+        }
+    }
+
+    @Override
+    public int search(int keyring, String description) throws KeyLockerException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CALL_STATE);
+            long result = syscall(state, KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_SEARCH, keyring,
+                    arena.allocateUtf8String(KeyctlSyscalls.KEY_TYPE_USER).address(),
+                    arena.allocateUtf8String(description).address(), 0);
+
+            if (result < 0) {
+                int errno = errno(state);
+                if (KeyctlSyscalls.isMissingKey(errno)) {
+                    return -1;
+                }
+                throw new KeyLockerException("Failed to search key, errno: " + errno);
+            }
+            return (int) result;
+        }
+    }
+
+    @Override
+    public int read(int serial, ByteBuffer target) throws KeyLockerException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CALL_STATE);
+            MemorySegment buffer = MemorySegment.ofBuffer(target.duplicate().clear());
+            long result = syscall(state, KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_READ, serial,
+                    buffer.address(), buffer.byteSize(), 0);
+
+            if (result < 0) {
+                int errno = errno(state);
+                if (KeyctlSyscalls.isMissingKey(errno)) {
+                    return -1;
+                }
+                throw new KeyLockerException("Failed to read key, errno: " + errno);
+            }
+            return (int) result;
+        }
+    }
+
+    @Override
+    public String describe(int serial) throws KeyLockerException {
+        long size = 256;
+        while (true) {
+            try (Arena arena = Arena.ofConfined()) {
+                MemorySegment state = arena.allocate(CALL_STATE);
+                MemorySegment buffer = arena.allocate(size);
+                long result = syscall(state, KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_DESCRIBE, serial,
+                        buffer.address(), size, 0);
+
+                if (result < 0) {
+                    int errno = errno(state);
+                    if (KeyctlSyscalls.isMissingKey(errno)) {
+                        return null;
+                    }
+                    throw new KeyLockerException("Failed to describe key, errno: " + errno);
+                }
+                if (result <= size) {
+                    return buffer.getUtf8String(0);
+                }
+                size = result;
+            }
+        }
+    }
+
+    @Override
+    public void unlink(int serial, int keyring) throws KeyLockerException {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment state = arena.allocate(CALL_STATE);
+            long result = syscall(state, KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_UNLINK, serial, keyring, 0, 0);
+
+            if (result < 0) {
+                int errno = errno(state);
+                if (!KeyctlSyscalls.isMissingKey(errno)) {
+                    throw new KeyLockerException("Failed to unlink key, errno: " + errno);
+                }
+            }
+        }
+    }
+
+    private static long syscall(MemorySegment state, long number, long a1, long a2, long a3, long a4, long a5)
+            throws KeyLockerException {
+        try {
+            return (long) SYSCALL.invokeExact(state, number, a1, a2, a3, a4, a5);
+        } catch (Throwable e) {
+            throw new KeyLockerException("Native keyctl call failed", e);
+        }
+    }
+
+    private static int errno(MemorySegment state) {
+        return (int) ERRNO.get(state);
+    }
+}
@@ -0,0 +1,99 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.sun.jna.LastErrorException;
+import com.sun.jna.Library;
+import com.sun.jna.Native;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JNA implementation of keyctl access, calling libc's syscall() through a proxy interface
+ */
+public class JnaLinuxKeyctl implements LinuxKeyctl {
+
+    // Interface definition for libc
+    public interface CLibrary extends Library {
+        long syscall(long number, Object... args) throws LastErrorException;
+    }
+
+    private final CLibrary libc;
+
+    /**
+     * Creates a new JnaLinuxKeyctl instance and loads libc
+     */
+    public JnaLinuxKeyctl() {
+        this.libc = Native.load("c", CLibrary.class);
+    }
+
+    @Override
+    public int addKey(String description, byte[] payload, int keyring) throws KeyLockerException {
+        try {
+            return (int) libc.syscall(KeyctlSyscalls.ADD_KEY, KeyctlSyscalls.KEY_TYPE_USER, description,
+                    payload, (long) payload.length, (long) keyring);
+        } catch (LastErrorException e) {
+            throw new KeyLockerException("Failed to add key, errno: " + e.getErrorCode());
+        }
+    }
+
+    @Override
+    public int search(int keyring, String description) throws KeyLockerException {
+        try {
+            return (int) libc.syscall(KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_SEARCH, (long) keyring,
+                    KeyctlSyscalls.KEY_TYPE_USER, description, 0L);
+        } catch (LastErrorException e) {
+            if (KeyctlSyscalls.isMissingKey(e.getErrorCode())) {
+                return -1;
+            }
+            throw new KeyLockerException("Failed to search key, errno: " + e.getErrorCode());
+        }
+    }
+
+    @Override
+    public int read(int serial, ByteBuffer target) throws KeyLockerException {
+        try {
+            return (int) libc.syscall(KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_READ, (long) serial,
+                    Native.getDirectBufferPointer(target), (long) target.capacity());
+        } catch (LastErrorException e) {
+            if (KeyctlSyscalls.isMissingKey(e.getErrorCode())) {
+                return -1;
+            }
+            throw new KeyLockerException("Failed to read key, errno: " + e.getErrorCode());
+        }
+    }
+
+    @Override
+    public String describe(int serial) throws KeyLockerException {
+        byte[] buffer = new byte[256];
+        while (true) {
+            long length;
+            try {
+                length = libc.syscall(KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_DESCRIBE, (long) serial,
+                        buffer, (long) buffer.length);
+            } catch (LastErrorException e) {
+                if (KeyctlSyscalls.isMissingKey(e.getErrorCode())) {
+                    return null;
+                }
+                throw new KeyLockerException("Failed to describe key, errno: " + e.getErrorCode());
+            }
+
+            if (length <= buffer.length) {
+                // The returned length includes the terminating NUL
+                return new String(buffer, 0, (int) Math.max(0, length - 1), StandardCharsets.UTF_8);
+            }
+            buffer = new byte[(int) length];
+        }
+    }
+
+    @Override
+    public void unlink(int serial, int keyring) throws KeyLockerException {
+        try {
+            libc.syscall(KeyctlSyscalls.KEYCTL, KeyctlSyscalls.KEYCTL_UNLINK, (long) serial, (long) keyring);
+        } catch (LastErrorException e) {
+            if (!KeyctlSyscalls.isMissingKey(e.getErrorCode())) {
+                throw new KeyLockerException("Failed to unlink key, errno: " + e.getErrorCode());
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.OsKeyLocker.platform.linux;
+
+/**
+ * Syscall numbers and constants for the kernel key retention service.
+ * The syscalls are invoked through libc's syscall() so libkeyutils does not need to be installed.
+ */
+final class KeyctlSyscalls {
+
+    static final long KEYCTL_DESCRIBE = 6;
+    static final long KEYCTL_UNLINK = 9;
+    static final long KEYCTL_SEARCH = 10;
+    static final long KEYCTL_READ = 11;
+
+    static final int ENOKEY = 126;
+    static final int EKEYEXPIRED = 127;
+    static final int EKEYREVOKED = 128;
+
+    static final String KEY_TYPE_USER = "user";
+
+    /** add_key syscall number for the running architecture, or -1 if unsupported */
+    static final long ADD_KEY;
+    /** keyctl syscall number for the running architecture, or -1 if unsupported */
+    static final long KEYCTL;
+
+    static {
+        String arch = System.getProperty("os.arch");
+        switch (arch) {
+            case "amd64", "x86_64" -> {
+                ADD_KEY = 248;
+                KEYCTL = 250;
+            }
+            case "aarch64" -> {
+                ADD_KEY = 217;
+                KEYCTL = 219;
+            }
+            default -> {
+                ADD_KEY = -1;
+                KEYCTL = -1;
+            }
+        }
+    }
+
+    private KeyctlSyscalls() {}
+
+    /**
+     * Checks if the syscall numbers are known for the running architecture
+     * @return true if supported, false otherwise
+     */
+    static boolean isSupportedArchitecture() {
+        return ADD_KEY > 0;
+    }
+
+    /**
+     * Checks if an errno means the key does not exist (anymore)
+     * @param errno Error number reported by the kernel
+     * @return true if the key is missing, expired or revoked
+     */
+    static boolean isMissingKey(int errno) {
+        return errno == ENOKEY || errno == EKEYEXPIRED || errno == EKEYREVOKED;
+    }
+}
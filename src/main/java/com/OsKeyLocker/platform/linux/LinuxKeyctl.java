@@ -0,0 +1,60 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Native access to the Linux kernel key retention service (add_key/keyctl).
+ * Implemented over JNA and over the java.lang.foreign API, so both paths can be selected and compared at runtime.
+ */
+public interface LinuxKeyctl {
+
+    /** Special keyring id for the calling user's keyring */
+    int KEY_SPEC_USER_KEYRING = -4;
+
+    /**
+     * Adds a "user" key to a keyring, replacing any key with the same description
+     * @param description Key description (the credential name)
+     * @param payload Key payload
+     * @param keyring Destination keyring
+     * @return Serial number of the key
+     * @throws KeyLockerException if the key cannot be added
+     */
+    int addKey(String description, byte[] payload, int keyring) throws KeyLockerException;
+
+    /**
+     * Searches a keyring for a "user" key
+     * @param keyring Keyring to search
+     * @param description Key description
+     * @return Serial number of the key, or -1 if not found
+     * @throws KeyLockerException if the search fails for technical reasons
+     */
+    int search(int keyring, String description) throws KeyLockerException;
+
+    /**
+     * Reads a key payload into a direct buffer, starting at index 0.
+     * For a keyring the payload is the array of its members' serial numbers, in native byte order.
+     * @param serial Serial number of the key
+     * @param target Direct buffer receiving at most its capacity in bytes
+     * @return Full payload length (may exceed the buffer capacity), or -1 if the key no longer exists
+     * @throws KeyLockerException if the read fails for technical reasons
+     */
+    int read(int serial, ByteBuffer target) throws KeyLockerException;
+
+    /**
+     * Describes a key as "type;uid;gid;perm;description"
+     * @param serial Serial number of the key
+     * @return The key description, or null if the key no longer exists
+     * @throws KeyLockerException if the key cannot be described
+     */
+    String describe(int serial) throws KeyLockerException;
+
+    /**
+     * Unlinks a key from a keyring, ignoring keys that no longer exist
+     * @param serial Serial number of the key
+     * @param keyring Keyring to unlink from
+     * @throws KeyLockerException if the key cannot be unlinked
+     */
+    void unlink(int serial, int keyring) throws KeyLockerException;
+}
@@ -0,0 +1,227 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.ChunkedCredentialManager;
+import com.OsKeyLocker.platform.NativeCallPool;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Provides access to the Linux kernel user keyring with chunking support.
+ * Keys live in the user keyring, so they last for as long as the user has a login session or running processes.
+ */
+@Slf4j
+public class LinuxKeyringManager extends ChunkedCredentialManager {
+
+    /** System property selecting the native access layer: "jna" (default) or "ffm" */
+    public static final String NATIVE_ACCESS_PROPERTY = "oskeylocker.native";
+    public static final String NATIVE_ACCESS_JNA = "jna";
+    public static final String NATIVE_ACCESS_FFM = "ffm";
+
+    private static final String KEY_TYPE_USER = "user";
+    private static final String FFM_KEYCTL_CLASS = "com.OsKeyLocker.platform.linux.FfmLinuxKeyctl";
+
+    // Maximum size for a key payload (in characters); the kernel allows up to 32767 bytes per "user" key
+    private static final int MAX_CREDENTIAL_SIZE = 4096;
+
+    // Per-thread buffer receiving raw key payloads
+    private static final ThreadLocal<ByteBuffer> PAYLOAD_SCRATCH = new ThreadLocal<>();
+
+    private LinuxKeyctl keyctl;
+    // Whether the native access layer was given to the constructor rather than selected on initialization
+    private final boolean keyctlGiven;
+
+    /**
+     * Creates a new LinuxKeyringManager instance
+     */
+    public LinuxKeyringManager() {
+        super();
+        this.keyctlGiven = false;
+    }
+
+    /**
+     * Creates a manager over a given native access layer instead of the one the system property selects
+     * @param keyctl Native access layer
+     */
+    LinuxKeyringManager(LinuxKeyctl keyctl) {
+        super();
+        this.keyctl = keyctl;
+        this.keyctlGiven = true;
+    }
+
+    /**
+     * Selects the native access layer from the {@value #NATIVE_ACCESS_PROPERTY} system property.
+     * The FFM layer needs --enable-preview on Java 21; without it this falls back to JNA.
+     */
+    @Override
+    protected void loadNativeAccess() {
+        if (keyctlGiven) {
+            return;
+        }
+
+        String requested = System.getProperty(NATIVE_ACCESS_PROPERTY, NATIVE_ACCESS_JNA);
+
+        if (NATIVE_ACCESS_FFM.equalsIgnoreCase(requested)) {
+            try {
+                this.keyctl = (LinuxKeyctl) Class.forName(FFM_KEYCTL_CLASS).getDeclaredConstructor().newInstance();
+                return;
+            } catch (ReflectiveOperationException | LinkageError e) {
+                log.warn("FFM native access is not available ({}), falling back to JNA", e.toString());
+            }
+        }
+
+        this.keyctl = new JnaLinuxKeyctl();
+    }
+
+    /**
+     * Gets the native access layer in use
+     * @return The keyctl implementation
+     */
+    public LinuxKeyctl getKeyctl() {
+        return keyctl;
+    }
+
+    @Override
+    protected int getMaxCredentialSize() {
+        return MAX_CREDENTIAL_SIZE;
+    }
+
+    /**
+     * Adds a raw credential string to the user keyring
+     *
+     * @param credName The full credential name
+     * @param value    The string value to store
+     * @throws KeyLockerException if the operation fails
+     */
+    @Override
+    protected void addRawCredential(String credName, String value) throws KeyLockerException {
+        NativeCallPool.call(() ->
+                keyctl.addKey(credName, value.getBytes(StandardCharsets.US_ASCII), LinuxKeyctl.KEY_SPEC_USER_KEYRING));
+    }
+
+    /**
+     * Retrieves a raw credential string from the user keyring
+     *
+     * @param credName The full credential name
+     * @return The credential value as a string, or null if not found
+     * @throws KeyLockerException if retrieval fails for technical reasons
+     */
+    @Override
+    protected String getRawCredential(String credName) throws KeyLockerException {
+        return NativeCallPool.call(() -> {
+            ByteBuffer payload = readPayload(credName);
+            return payload == null ? null : asciiToString(payload);
+        });
+    }
+
+    /**
+     * Reads a raw credential payload and appends its Base64-decoded bytes to a buffer,
+     * decoding straight from the direct buffer the kernel copied the payload into
+     *
+     * @param credName The full credential name
+     * @param target   Buffer receiving the decoded bytes
+     * @return true if the credential was found, false otherwise
+     * @throws KeyLockerException if retrieval fails for technical reasons
+     */
+    @Override
+    protected boolean readRawCredential(String credName, ByteBuffer target) throws KeyLockerException {
+        // The payload lands in the scratch buffer of the thread making the call, so it is decoded there too
+        return NativeCallPool.call(() -> {
+            ByteBuffer payload = readPayload(credName);
+            if (payload == null) {
+                return false;
+            }
+
+            decodeBase64(payload, 1, target);
+            return true;
+        });
+    }
+
+    /**
+     * Deletes a raw credential from the user keyring
+     *
+     * @param credName The full credential name
+     * @throws KeyLockerException if deletion fails
+     */
+    @Override
+    protected void deleteRawCredential(String credName) throws KeyLockerException {
+        NativeCallPool.call(() -> {
+            int serial = keyctl.search(LinuxKeyctl.KEY_SPEC_USER_KEYRING, credName);
+            if (serial > 0) {
+                keyctl.unlink(serial, LinuxKeyctl.KEY_SPEC_USER_KEYRING);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Lists the user keys in the user keyring whose description starts with a prefix
+     *
+     * @param prefix Credential name prefix
+     * @return Matching credential names
+     * @throws KeyLockerException if the keyring cannot be read
+     */
+    @Override
+    protected List<String> listRawCredentials(String prefix) throws KeyLockerException {
+        return NativeCallPool.call(() -> listKeys(prefix));
+    }
+
+    private List<String> listKeys(String prefix) throws KeyLockerException {
+        ByteBuffer serials = ByteBuffer.allocateDirect(1024);
+        int length = keyctl.read(LinuxKeyctl.KEY_SPEC_USER_KEYRING, serials);
+        while (length > serials.capacity()) {
+            serials = ByteBuffer.allocateDirect(length);
+            length = keyctl.read(LinuxKeyctl.KEY_SPEC_USER_KEYRING, serials);
+        }
+
+        List<String> names = new ArrayList<>();
+        serials.order(ByteOrder.nativeOrder());
+        for (int offset = 0; offset + Integer.BYTES <= length; offset += Integer.BYTES) {
+            String description = keyctl.describe(serials.getInt(offset));
+            if (description == null) {
+                continue;
+            }
+
+            // "type;uid;gid;perm;description", where only the description may contain ';'
+            String[] fields = description.split(";", 5);
+            if (fields.length == 5 && KEY_TYPE_USER.equals(fields[0]) && fields[4].startsWith(prefix)) {
+                names.add(fields[4]);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Looks up a key and reads its payload into this thread's scratch buffer
+     *
+     * @param credName The full credential name
+     * @return The scratch buffer with the payload between 0 and its limit, or null if not found
+     * @throws KeyLockerException if retrieval fails for technical reasons
+     */
+    private ByteBuffer readPayload(String credName) throws KeyLockerException {
+        int serial = keyctl.search(LinuxKeyctl.KEY_SPEC_USER_KEYRING, credName);
+        if (serial < 0) {
+            return null;
+        }
+
+        ByteBuffer payload = scratch(PAYLOAD_SCRATCH, MAX_CREDENTIAL_SIZE);
+        int length = keyctl.read(serial, payload);
+        if (length < 0) {
+            return null;
+        }
+        if (length > payload.capacity()) {
+            payload = scratch(PAYLOAD_SCRATCH, length);
+            length = keyctl.read(serial, payload);
+            if (length < 0) {
+                return null;
+            }
+        }
+
+        return payload.limit(length);
+    }
+}
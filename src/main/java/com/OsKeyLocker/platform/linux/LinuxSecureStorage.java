@@ -0,0 +1,22 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.platform.ChunkedKeyLockerStorage;
+import com.OsKeyLocker.util.PlatformDetector;
+
+/**
+ * Linux implementation of secure storage using the kernel user keyring
+ */
+public class LinuxSecureStorage extends ChunkedKeyLockerStorage {
+
+    /**
+     * Creates a new LinuxSecureStorage instance
+     */
+    public LinuxSecureStorage() {
+        super(new LinuxKeyringManager(), "Linux");
+    }
+
+    @Override
+    public boolean isSupported() {
+        return PlatformDetector.isLinux() && KeyctlSyscalls.isSupportedArchitecture();
+    }
+}
@@ -0,0 +1,92 @@
+package com.OsKeyLocker.platform.memory;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.ChunkedCredentialManager;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps raw entries in a map on the heap. Entries are encrypted before they get here, like in the platform
+ * stores, so the heap never holds a credential in plaintext; everything is lost when the process exits.
+ */
+public class MemoryCredentialManager extends ChunkedCredentialManager {
+
+    // Large enough that ordinary credentials take a single entry
+    private static final int MAX_CREDENTIAL_SIZE = 1024 * 1024;
+
+    private final Map<String, String> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty manager
+     */
+    public MemoryCredentialManager() {
+        super();
+    }
+
+    /**
+     * Nothing to load; the map is ready on construction
+     */
+    @Override
+    protected void loadNativeAccess() {
+    }
+
+    @Override
+    protected int getMaxCredentialSize() {
+        return MAX_CREDENTIAL_SIZE;
+    }
+
+    @Override
+    protected void addRawCredential(String credName, String value) {
+        entries.put(credName, value);
+    }
+
+    @Override
+    protected String getRawCredential(String credName) {
+        return entries.get(credName);
+    }
+
+    @Override
+    protected boolean readRawCredential(String credName, ByteBuffer target) throws KeyLockerException {
+        String value = entries.get(credName);
+        if (value == null) {
+            return false;
+        }
+
+        byte[] data = value.getBytes(StandardCharsets.US_ASCII);
+        try {
+            decodeBase64(ByteBuffer.wrap(data), 1, target);
+        } finally {
+            Arrays.fill(data, (byte) 0);
+        }
+        return true;
+    }
+
+    @Override
+    protected void deleteRawCredential(String credName) {
+        entries.remove(credName);
+    }
+
+    @Override
+    protected List<String> listRawCredentials(String prefix) {
+        List<String> names = new ArrayList<>();
+        for (String credName : entries.keySet()) {
+            if (credName.startsWith(prefix)) {
+                names.add(credName);
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Removes every entry, of every application prefix
+     */
+    public void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,29 @@
+package com.OsKeyLocker.platform.memory;
+
+import com.OsKeyLocker.platform.ChunkedKeyLockerStorage;
+
+/**
+ * Secure storage kept on the heap of this process. Used as the fast upper tier of a
+ * {@link com.OsKeyLocker.platform.tiered.TieredKeyLockerStorage}, and for tests.
+ */
+public class MemorySecureStorage extends ChunkedKeyLockerStorage {
+
+    /**
+     * Creates a new, empty MemorySecureStorage
+     */
+    public MemorySecureStorage() {
+        super(new MemoryCredentialManager(), "Memory");
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    /**
+     * Removes every stored credential
+     */
+    public void clear() {
+        ((MemoryCredentialManager) credManager).clear();
+    }
+}
@@ -0,0 +1,719 @@
+package com.OsKeyLocker.platform.tiered;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import com.OsKeyLocker.platform.VaultReport;
+import com.OsKeyLocker.util.CipherSuite;
+import com.OsKeyLocker.util.FieldDecoder;
+import com.OsKeyLocker.util.PropertyTypes;
+import com.OsKeyLocker.util.SecretBuffer;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Storage composed of tiers, fastest first, such as memory, then a local file vault, then the OS credential store.
+ * The last tier is the source of truth and every write reaches it before returning. The tiers above it are caches:
+ * reads try the tiers in order, and a credential found in a lower tier is copied into every tier above it.
+ * How a write reaches each cache tier is set by its {@link WritePolicy}.
+ * Operations run concurrently: only changes to the same identifier wait for each other, so a cache hit never
+ * waits for a call to the source of truth.
+ * <p>
+ * Cache tiers only see changes made through this storage. Values written by another process straight to the
+ * source of truth are not noticed while a cache tier still holds the old value; to share tiers between
+ * processes, run this storage in the agent. Streamed credentials are read and written in the source of truth only.
+ * <p>
+ * Write-back tiers are only flushed by {@link #flush()} until {@link #start()} schedules the background flush;
+ * storages built by the factory are started.
+ */
+@Slf4j
+public class TieredKeyLockerStorage implements PlatformKeyLockerStorage, Closeable {
+
+    /**
+     * System property listing cache tiers to put in front of the local storage, fastest first, such as
+     * "memory,file:write-back"; when set, the storage factory builds a tiered storage
+     */
+    public static final String TIERS_PROPERTY = "oskeylocker.tiers";
+    /** System property naming the directory of the file tier */
+    public static final String DIRECTORY_PROPERTY = "oskeylocker.tiers.directory";
+    /** Delay between flushes to write-back tiers of storages built by the factory */
+    public static final Duration DEFAULT_FLUSH_INTERVAL = Duration.ofSeconds(1);
+
+    private static final int STRIPES = 64;
+
+    /**
+     * How writes reach a cache tier
+     */
+    public enum WritePolicy {
+        /** Written before the write returns */
+        WRITE_THROUGH,
+        /** Invalidated before the write returns, and written by the background flush */
+        WRITE_BACK,
+        /** Invalidated before the write returns; filled only when a read promotes the credential */
+        WRITE_AROUND
+    }
+
+    /**
+     * One tier of the storage
+     * @param name Name reported in metrics and logs
+     * @param storage The tier's storage
+     * @param policy How writes reach the tier; the source of truth is always written through
+     */
+    public record Tier(String name, PlatformKeyLockerStorage storage, WritePolicy policy) {
+    }
+
+    /**
+     * Counters of one tier since the storage was created
+     * @param name Tier name
+     * @param hits Reads the tier answered
+     * @param misses Reads that found nothing in the tier and went on to the next one
+     * @param promotions Credentials copied into the tier by reads
+     * @param writes Credentials written to the tier by writes and flushes
+     */
+    public record TierMetrics(String name, long hits, long misses, long promotions, long writes) {
+
+        /**
+         * Gets the share of reads reaching this tier that it answered
+         * @return Hit ratio from 0 to 1
+         */
+        public double hitRatio() {
+            long reads = hits + misses;
+            return reads == 0 ? 0 : (double) hits / reads;
+        }
+    }
+
+    // version is the identifier's stripe version after the write; a later change to the stripe supersedes it
+    private record PendingWrite(String prefix, String encryptionKey, String storageKey, JSONObject data,
+                                long expiresAt, long version) {
+    }
+
+    // Encryption keys of a thread's operations; fallbackKey is null outside rotations
+    private record Keys(String encryptionKey, String fallbackKey) {
+    }
+
+    private interface TierRead<T> {
+        Optional<T> apply(PlatformKeyLockerStorage storage) throws KeyLockerException;
+    }
+
+    private final List<Tier> tiers;
+    private final int truth;
+    private final LongAdder[] hits;
+    private final LongAdder[] misses;
+    private final LongAdder[] promotions;
+    private final LongAdder[] writes;
+    // Writes not yet flushed to write-back tiers, by prefix and identifier; only the latest per identifier is kept
+    private final Map<String, PendingWrite> pending = new LinkedHashMap<>();
+    private final boolean writeBack;
+    private final Duration flushInterval;
+    // Set by start(), under the lock
+    private ScheduledExecutorService flusher;
+    // Guards the pending writes, the deferred invalidations and prefix switches; never held across a tier call
+    // that reads or writes a credential, and not a monitor, so virtual threads can park while holding it
+    private final ReentrantLock lock = new ReentrantLock();
+    // Identifiers whose cached copies must be dropped once the tiers are switched back to their prefix, by prefix
+    private final Map<String, Set<String>> staleByPrefix = new HashMap<>();
+    // Prefix the tiers are set to
+    private volatile String prefix;
+    // Writes, removals and promotions of an identifier take its stripe, and writes and removals bump the stripe's
+    // version at start and end. A promotion or write-back only lands if the version is still the one it started
+    // from, so a cache tier never ends up holding a value older than the source of truth
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    private final AtomicLongArray versions = new AtomicLongArray(STRIPES);
+    // Keys of threads that have not set their own, and the keys each thread set; the tiers keep keys per thread
+    // too, so a flush restores only the keys of the thread it ran on
+    private volatile Keys defaultKeys = new Keys(null, null);
+    private final ThreadLocal<Keys> threadKeys = new ThreadLocal<>();
+
+    /**
+     * Creates a tiered storage
+     * @param tiers Tiers from fastest to the source of truth, which is last
+     * @param flushInterval Delay between flushes to write-back tiers
+     * @throws KeyLockerException if there are no tiers or the source of truth is not written through
+     */
+    public TieredKeyLockerStorage(List<Tier> tiers, Duration flushInterval) throws KeyLockerException {
+        if (tiers.isEmpty()) {
+            throw new KeyLockerException("Tiered storage needs at least one tier");
+        }
+        if (tiers.get(tiers.size() - 1).policy() != WritePolicy.WRITE_THROUGH) {
+            throw new KeyLockerException("The source of truth, the last tier, must be written through");
+        }
+
+        this.tiers = List.copyOf(tiers);
+        this.truth = tiers.size() - 1;
+        this.hits = counters();
+        this.misses = counters();
+        this.promotions = counters();
+        this.writes = counters();
+        this.writeBack = tiers.stream().anyMatch(tier -> tier.policy() == WritePolicy.WRITE_BACK);
+        this.flushInterval = flushInterval;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Starts flushing write-back tiers on a background daemon thread every flush interval, and once more at JVM
+     * shutdown. Does nothing if no tier is written back or the flush is already running.
+     */
+    public void start() {
+        lock.lock();
+        try {
+            if (!writeBack || flusher != null) {
+                return;
+            }
+            flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "OsKeyLocker-tier-flusher");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(() -> {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    log.error("Failed to flush write-back tiers: {}", e.getMessage());
+                }
+            }, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+            // Pending writes warm the persistent tiers for the next start
+            Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "OsKeyLocker-tier-shutdown-flush"));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the counters of every tier, in tier order
+     * @return Tier metrics
+     */
+    public List<TierMetrics> getMetrics() {
+        List<TierMetrics> metrics = new ArrayList<>();
+        for (int i = 0; i < tiers.size(); i++) {
+            metrics.add(new TierMetrics(tiers.get(i).name(), hits[i].sum(), misses[i].sum(), promotions[i].sum(),
+                    writes[i].sum()));
+        }
+        return metrics;
+    }
+
+    /**
+     * Writes pending credentials to the write-back tiers. A tier that fails keeps the credential invalidated,
+     * so it is read from a lower tier instead.
+     */
+    /**
+     * Writes pending credentials to the write-back tiers. A tier that fails keeps the credential invalidated,
+     * so it is read from a lower tier instead. Pending writes made under another prefix than the current one,
+     * and writes a later change superseded, are dropped; their cached copies were already invalidated.
+     */
+    public void flush() {
+        List<PendingWrite> flushing = new ArrayList<>();
+        String current;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            current = prefix;
+            for (PendingWrite write : pending.values()) {
+                if (Objects.equals(write.prefix(), current)) {
+                    flushing.add(write);
+                } else {
+                    log.debug("Dropping write-back of {} made under prefix {}", write.storageKey(), write.prefix());
+                }
+            }
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+
+        try {
+            for (PendingWrite write : flushing) {
+                int stripe = stripe(current, write.storageKey());
+                stripes[stripe].lock();
+                try {
+                    if (versions.get(stripe) != write.version()) {
+                        continue;
+                    }
+                    for (int i = 0; i < truth; i++) {
+                        Tier tier = tiers.get(i);
+                        if (tier.policy() != WritePolicy.WRITE_BACK) {
+                            continue;
+                        }
+                        try {
+                            // Keys are per thread in the tiers, so this only affects the flushing thread
+                            applyKeys(tier.storage(), write.encryptionKey(), null);
+                            tier.storage().storeJsonCredential(write.storageKey(), write.data(), write.expiresAt());
+                            writes[i].increment();
+                        } catch (KeyLockerException e) {
+                            log.warn("Failed to write {} back to tier {}: {}", write.storageKey(), tier.name(),
+                                    e.getMessage());
+                        }
+                    }
+                } finally {
+                    stripes[stripe].unlock();
+                }
+            }
+        } finally {
+            Keys keys = keys();
+            for (int i = 0; i < truth; i++) {
+                Tier tier = tiers.get(i);
+                if (tier.policy() == WritePolicy.WRITE_BACK) {
+                    try {
+                        applyKeys(tier.storage(), keys.encryptionKey(), keys.fallbackKey());
+                    } catch (KeyLockerException e) {
+                        log.warn("Failed to restore keys of tier {}: {}", tier.name(), e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes pending writes and stops the background flush
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (flusher != null) {
+                flusher.shutdown();
+            }
+        } finally {
+            lock.unlock();
+        }
+        flush();
+    }
+
+    @Override
+    public byte[] encrypt(byte[] data) throws KeyLockerException {
+        return tiers.get(truth).storage().encrypt(data);
+    }
+
+    @Override
+    public byte[] decrypt(byte[] encryptedData) throws KeyLockerException {
+        return tiers.get(truth).storage().decrypt(encryptedData);
+    }
+
+    @Override
+    public void initialize() throws KeyLockerException {
+        lock.lock();
+        try {
+            for (Tier tier : tiers) {
+                tier.storage().initialize();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void initialize(String packageName, String encryptionKey) throws KeyLockerException {
+        lock.lock();
+        try {
+            for (Tier tier : tiers) {
+                tier.storage().initialize(packageName, encryptionKey);
+            }
+            this.prefix = packageName;
+            this.defaultKeys = new Keys(encryptionKey, null);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean isSupported() {
+        return tiers.stream().allMatch(tier -> tier.storage().isSupported());
+    }
+
+    @Override
+    public void setAppPrefix(String prefix) throws KeyLockerException {
+        lock.lock();
+        try {
+            for (Tier tier : tiers) {
+                tier.storage().setAppPrefix(prefix);
+            }
+            this.prefix = prefix;
+
+            Set<String> stale = staleByPrefix.remove(prefix);
+            if (stale != null) {
+                for (String key : stale) {
+                    invalidate(key);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey) throws KeyLockerException {
+        for (Tier tier : tiers) {
+            tier.storage().setEncryptionKey(encryptionKey);
+        }
+        threadKeys.set(new Keys(encryptionKey, null));
+    }
+
+    @Override
+    public void setEncryptionKey(String encryptionKey, String fallbackKey) throws KeyLockerException {
+        for (Tier tier : tiers) {
+            tier.storage().setEncryptionKey(encryptionKey, fallbackKey);
+        }
+        threadKeys.set(new Keys(encryptionKey, fallbackKey));
+    }
+
+    @Override
+    public void setCipherSuite(CipherSuite cipherSuite) throws KeyLockerException {
+        lock.lock();
+        try {
+            for (Tier tier : tiers) {
+                tier.storage().setCipherSuite(cipherSuite);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<String> listCredentials() throws KeyLockerException {
+        return tiers.get(truth).storage().listCredentials();
+    }
+
+    @Override
+    public boolean reencryptCredential(String key, String oldKey, String newKey) throws KeyLockerException {
+        return change(key, () -> {
+            boolean reencrypted = tiers.get(truth).storage().reencryptCredential(key, oldKey, newKey);
+            if (reencrypted) {
+                // Cached copies are still under the old key; the next read promotes the re-encrypted credential
+                invalidate(key);
+            }
+            return reencrypted;
+        });
+    }
+
+    @Override
+    public void storeJsonCredential(String key, JSONObject jsonData, long expiresAt)
+            throws KeyLockerException {
+        String current = prefix;
+        int stripe = stripe(current, key);
+        stripes[stripe].lock();
+        try {
+            long version;
+            versions.incrementAndGet(stripe);
+            try {
+                tiers.get(truth).storage().storeJsonCredential(key, jsonData, expiresAt);
+                writes[truth].increment();
+
+                for (int i = 0; i < truth; i++) {
+                    Tier tier = tiers.get(i);
+                    try {
+                        if (tier.policy() == WritePolicy.WRITE_THROUGH) {
+                            tier.storage().storeJsonCredential(key, jsonData, expiresAt);
+                            writes[i].increment();
+                        } else {
+                            tier.storage().removeCredential(key);
+                        }
+                    } catch (KeyLockerException e) {
+                        dropFromTier(i, key, e);
+                    }
+                }
+            } finally {
+                version = versions.incrementAndGet(stripe);
+            }
+
+            if (writeBack) {
+                lock.lock();
+                try {
+                    pending.put(current + "/" + key,
+                            new PendingWrite(current, keys().encryptionKey(), key, jsonData, expiresAt, version));
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            stripes[stripe].unlock();
+        }
+    }
+
+    @Override
+    public Optional<JSONObject> retrieveJsonCredential(String key) throws KeyLockerException {
+        return read(key, storage -> storage.retrieveJsonCredential(key));
+    }
+
+    @Override
+    public Optional<SecretBuffer> retrieveSecret(String key, String property) throws KeyLockerException {
+        return read(key, storage -> storage.retrieveSecret(key, property));
+    }
+
+    @Override
+    public <T> Optional<T> retrieveField(String key, String property, FieldDecoder<T> decoder)
+            throws KeyLockerException {
+        return read(key, storage -> storage.retrieveField(key, property, decoder));
+    }
+
+    @Override
+    public Optional<byte[]> readRange(String key, long offset, int length) throws KeyLockerException {
+        return tiers.get(truth).storage().readRange(key, offset, length);
+    }
+
+    @Override
+    public OutputStream openOutputStream(String key, long expiresAt) throws KeyLockerException {
+        String streamPrefix = prefix;
+        OutputStream out = change(key, () -> {
+            invalidate(key);
+            return tiers.get(truth).storage().openOutputStream(key, expiresAt);
+        });
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] data, int offset, int length) throws IOException {
+                out.write(data, offset, length);
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    // A read while the stream was open may have promoted the previous value
+                    invalidate(streamPrefix, key);
+                }
+            }
+        };
+    }
+
+    @Override
+    public Optional<InputStream> openInputStream(String key) throws KeyLockerException {
+        return tiers.get(truth).storage().openInputStream(key);
+    }
+
+    @Override
+    public long getChangeStamp(String key) throws KeyLockerException {
+        return tiers.get(truth).storage().getChangeStamp(key);
+    }
+
+    @Override
+    public Optional<Path> getWatchDirectory() {
+        return tiers.get(truth).storage().getWatchDirectory();
+    }
+
+    @Override
+    public void removeCredential(String key) throws KeyLockerException {
+        change(key, () -> {
+            tiers.get(truth).storage().removeCredential(key);
+            invalidate(key);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean removeExpiredCredential(String key) throws KeyLockerException {
+        return change(key, () -> {
+            boolean removed = tiers.get(truth).storage().removeExpiredCredential(key);
+            if (removed) {
+                invalidate(key);
+            }
+            return removed;
+        });
+    }
+
+    @Override
+    public VaultReport scanVault(String encryptionKey, int maxCollect, long graceMillis)
+            throws KeyLockerException {
+        return tiers.get(truth).storage().scanVault(encryptionKey, maxCollect, graceMillis);
+    }
+
+    @Override
+    public boolean credentialExists(String key) throws KeyLockerException {
+        for (int i = 0; i < truth; i++) {
+            try {
+                if (tiers.get(i).storage().credentialExists(key)) {
+                    hits[i].increment();
+                    return true;
+                }
+            } catch (KeyLockerException e) {
+                log.debug("Tier {} failed to check {}: {}", tiers.get(i).name(), key, e.getMessage());
+            }
+            misses[i].increment();
+        }
+
+        boolean exists = tiers.get(truth).storage().credentialExists(key);
+        (exists ? hits : misses)[truth].increment();
+        return exists;
+    }
+
+    /**
+     * Reads from the first tier holding the credential and promotes it into the tiers above. Cache tiers that
+     * fail count as misses; the source of truth decides.
+     */
+    private <T> Optional<T> read(String key, TierRead<T> read) throws KeyLockerException {
+        int stripe = stripe(prefix, key);
+        long version = versions.get(stripe);
+        for (int i = 0; i <= truth; i++) {
+            Optional<T> result;
+            if (i == truth) {
+                result = read.apply(tiers.get(i).storage());
+            } else {
+                try {
+                    result = read.apply(tiers.get(i).storage());
+                } catch (KeyLockerException e) {
+                    log.debug("Tier {} failed to read {}: {}", tiers.get(i).name(), key, e.getMessage());
+                    result = Optional.empty();
+                }
+            }
+
+            if (result.isPresent()) {
+                hits[i].increment();
+                if (i > 0) {
+                    promote(key, i, result.get() instanceof JSONObject json ? json : null, stripe, version);
+                }
+                return result;
+            }
+            misses[i].increment();
+        }
+        return Optional.empty();
+    }
+
+    private void promote(String key, int found, JSONObject json, int stripe, long version) {
+        try {
+            if (json == null) {
+                Optional<JSONObject> credential = tiers.get(found).storage().retrieveJsonCredential(key);
+                if (credential.isEmpty()) {
+                    return;
+                }
+                json = credential.get();
+            }
+        } catch (KeyLockerException e) {
+            // Not a JSON credential, such as a streamed one; it stays in the tier it was found in
+            return;
+        }
+
+        long expiresAt = json.opt(PropertyTypes.EXPIRES_FIELD) instanceof Number expiry ? expiry.longValue() : 0L;
+        stripes[stripe].lock();
+        try {
+            // Changed since it was read: the value may already be outdated, and the change invalidated the tiers
+            if (versions.get(stripe) != version) {
+                return;
+            }
+            for (int i = 0; i < found; i++) {
+                try {
+                    tiers.get(i).storage().storeJsonCredential(key, json, expiresAt);
+                    promotions[i].increment();
+                } catch (KeyLockerException e) {
+                    dropFromTier(i, key, e);
+                }
+            }
+        } finally {
+            stripes[stripe].unlock();
+        }
+    }
+
+    private void invalidate(String streamPrefix, String key) throws IOException {
+        lock.lock();
+        try {
+            if (!Objects.equals(streamPrefix, prefix)) {
+                // Dropped when the tiers are switched back to the stream's prefix
+                staleByPrefix.computeIfAbsent(streamPrefix, ignored -> new HashSet<>()).add(key);
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+        try {
+            change(key, () -> {
+                invalidate(key);
+                return null;
+            });
+        } catch (KeyLockerException e) {
+            throw new IOException("Failed to invalidate cached copies of " + key + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void invalidate(String key) {
+        lock.lock();
+        try {
+            pending.remove(prefix + "/" + key);
+        } finally {
+            lock.unlock();
+        }
+        for (int i = 0; i < truth; i++) {
+            try {
+                tiers.get(i).storage().removeCredential(key);
+            } catch (KeyLockerException e) {
+                log.warn("Failed to invalidate {} in tier {}: {}", key, tiers.get(i).name(), e.getMessage());
+            }
+        }
+    }
+
+    private interface Change<T> {
+        T apply() throws KeyLockerException;
+    }
+
+    // Runs a change to an identifier holding its stripe, bumping the stripe's version before and after
+    private <T> T change(String key, Change<T> change) throws KeyLockerException {
+        int stripe = stripe(prefix, key);
+        stripes[stripe].lock();
+        try {
+            versions.incrementAndGet(stripe);
+            try {
+                return change.apply();
+            } finally {
+                versions.incrementAndGet(stripe);
+            }
+        } finally {
+            stripes[stripe].unlock();
+        }
+    }
+
+    private static int stripe(String prefix, String key) {
+        return ((prefix + "/" + key).hashCode() & 0x7fffffff) % STRIPES;
+    }
+
+    private void dropFromTier(int tier, String key, KeyLockerException cause) {
+        log.warn("Failed to update {} in tier {}: {}", key, tiers.get(tier).name(), cause.getMessage());
+        try {
+            tiers.get(tier).storage().removeCredential(key);
+        } catch (KeyLockerException e) {
+            log.warn("Failed to invalidate {} in tier {}: {}", key, tiers.get(tier).name(), e.getMessage());
+        }
+    }
+
+    private Keys keys() {
+        Keys keys = threadKeys.get();
+        return keys != null ? keys : defaultKeys;
+    }
+
+    private static void applyKeys(PlatformKeyLockerStorage storage, String encryptionKey, String fallbackKey)
+            throws KeyLockerException {
+        if (fallbackKey != null) {
+            storage.setEncryptionKey(encryptionKey, fallbackKey);
+        } else if (encryptionKey != null) {
+            storage.setEncryptionKey(encryptionKey);
+        }
+    }
+
+    private LongAdder[] counters() {
+        LongAdder[] counters = new LongAdder[tiers.size()];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+}
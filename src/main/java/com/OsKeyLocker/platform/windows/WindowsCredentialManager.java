@@ -2,52 +2,78 @@ package com.OsKeyLocker.platform.windows;
 
 
 import com.OsKeyLocker.exceptions.KeyLockerException;
-import com.OsKeyLocker.util.EncryptionUtil;
+import com.OsKeyLocker.platform.ChunkedCredentialManager;
+import com.OsKeyLocker.platform.NativeCallPool;
 import com.sun.jna.Memory;
 import com.sun.jna.Native;
 import com.sun.jna.Pointer;
-import com.sun.jna.platform.win32.WinDef.DWORD;
+import com.sun.jna.ptr.IntByReference;
 import com.sun.jna.ptr.PointerByReference;
 import com.sun.jna.win32.StdCallLibrary;
 import lombok.extern.slf4j.Slf4j;
-import org.json.JSONObject;
 
-import java.nio.charset.Charset;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static java.rmi.server.LogStream.log;
-
 /**
  * Provides access to Windows Credential Manager API with chunking support
  */
 @Slf4j
-public class WindowsCredentialManager {
+public class WindowsCredentialManager extends ChunkedCredentialManager {
 
     private Advapi32 advapi32;
     private Kernel32 kernel32;
-    private String appPrefix;
-    private EncryptionUtil encryptionUtil;
+    // Whether the native libraries were given to the constructor rather than loaded on initialization
+    private final boolean librariesGiven;
 
     // Maximum size for credential blob (in characters)
     private static final int MAX_CREDENTIAL_SIZE = 1024 ;
-    private static final String CHUNK_IDENTIFIER = "CHUNK_";
-    private static final String METADATA_KEY = "metadata";
+
+    // Largest credential blob Windows accepts (CRED_MAX_CREDENTIAL_BLOB_SIZE), in bytes
+    private static final int MAX_BLOB_SIZE = 5 * 512;
 
     // Windows Credential type
     private static final int CRED_TYPE_GENERIC = 1;
     // Credential persistence
     private static final int CRED_PERSIST_LOCAL_MACHINE = 2;
+    private static final int ERROR_NOT_FOUND = 1168;
+
+    // CREDENTIAL layout, so the raw read/write path can fill and read reused native memory directly
+    private static final CREDENTIAL LAYOUT = new CREDENTIAL();
+    private static final int CREDENTIAL_SIZE = LAYOUT.size();
+    private static final int TYPE_OFFSET = LAYOUT.offsetOf("Type");
+    private static final int TARGET_NAME_OFFSET = LAYOUT.offsetOf("TargetName");
+    private static final int COMMENT_OFFSET = LAYOUT.offsetOf("Comment");
+    private static final int BLOB_SIZE_OFFSET = LAYOUT.offsetOf("CredentialBlobSize");
+    private static final int BLOB_OFFSET = LAYOUT.offsetOf("CredentialBlob");
+    private static final int PERSIST_OFFSET = LAYOUT.offsetOf("Persist");
+    private static final int USER_NAME_OFFSET = LAYOUT.offsetOf("UserName");
+
+    // Strings every write shares, converted to native memory once
+    private static final Memory COMMENT = nativeString("Stored by OsKeyLocker");
+    private static final Memory USER_NAME = nativeString(System.getProperty("user.name"));
+
+    // Per-thread native memory for the raw read/write path
+    private static final ThreadLocal<NativeScratch> NATIVE_SCRATCH = ThreadLocal.withInitial(NativeScratch::new);
 
     // Interface definitions for Windows APIs
     public interface Advapi32 extends StdCallLibrary {
         boolean CredReadA(String targetName, int type, int flags, PointerByReference credentialPtr);
 
+        boolean CredReadA(Pointer targetName, int type, int flags, Pointer credentialPtr);
+
         boolean CredWriteA(CREDENTIAL credential, int flags);
 
+        boolean CredWriteA(Pointer credential, int flags);
+
         boolean CredDeleteA(String targetName, int type, int flags);
 
+        boolean CredEnumerateA(String filter, int flags, IntByReference count, PointerByReference credentials);
+
         boolean CredFree(Pointer credential);
     }
 
@@ -55,7 +81,8 @@ public class WindowsCredentialManager {
         int GetLastError();
     }
 
-    public static class CREDENTIAL extends com.sun.jna.Structure {
+    // Final, so the constructor reading a credential from native memory never runs before a subclass is initialized
+    public static final class CREDENTIAL extends com.sun.jna.Structure {
         public int Flags;
         public int Type;
         public String TargetName;
@@ -84,118 +111,88 @@ public class WindowsCredentialManager {
             super(p);
             read();
         }
-    }
 
-    /**
-     * Creates a new WindowsCredentialManager instance
-     */
-    public WindowsCredentialManager() {
-        this.appPrefix = "OsKeyLocker";
+        int offsetOf(String field) {
+            return fieldOffset(field);
+        }
     }
 
     /**
-     * Initializes the Windows Credential Manager with encryption key
-     *
-     * @param encryptionKey The encryption key to use (may be null for default)
-     * @throws KeyLockerException if initialization fails
+     * Native memory one thread reuses for every raw credential call: the CREDENTIAL passed to CredWriteA with the
+     * blob and target name it points to, the pointer CredReadA returns, and views re-pointed at what it returns.
+     * Blobs are wiped after each call.
      */
-    public void initialize(String encryptionKey) throws KeyLockerException {
-        this.advapi32 = Native.load("Advapi32", Advapi32.class);
-        this.kernel32 = Native.load("Kernel32", Kernel32.class);
+    private static final class NativeScratch {
+        final Memory credential = new Memory(CREDENTIAL_SIZE);
+        final Memory blob = new Memory(MAX_BLOB_SIZE);
+        final ByteBuffer blobBuffer = blob.getByteBuffer(0, MAX_BLOB_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        final byte[] blobBytes = new byte[MAX_BLOB_SIZE];
+        final ByteBuffer blobBytesBuffer = ByteBuffer.wrap(blobBytes);
+        final Memory credentialOut = new Memory(Native.POINTER_SIZE);
+        final Pointer credentialView = new Pointer(0);
+        final Pointer blobView = new Pointer(0);
+        Memory targetName = new Memory(256);
+        ByteBuffer targetNameBuffer = targetName.getByteBuffer(0, targetName.size());
+
+        /**
+         * Converts a target name to a NUL-terminated ANSI string in reused memory
+         *
+         * @param credName The full credential name
+         * @return Native target name
+         */
+        Pointer targetName(String credName) {
+            int length = credName.length();
+            if (length >= targetName.size()) {
+                targetName = new Memory(Math.max(length + 1, targetName.size() * 2));
+                targetNameBuffer = targetName.getByteBuffer(0, targetName.size());
+            }
 
-        if (encryptionKey != null) {
-            this.encryptionUtil = new EncryptionUtil(encryptionKey);
+            for (int i = 0; i < length; i++) {
+                char c = credName.charAt(i);
+                if (c >= 0x80) {
+                    // Outside ASCII the ANSI code page matters; let JNA convert it as it does for String arguments
+                    return nativeString(credName);
+                }
+                targetNameBuffer.put(i, (byte) c);
+            }
+            targetNameBuffer.put(length, (byte) 0);
+            return targetName;
         }
     }
 
     /**
-     * Sets the encryption key to use
-     *
-     * @param encryptionKey The encryption key
-     * @throws KeyLockerException if setting the key fails
+     * Creates a new WindowsCredentialManager instance
      */
-    public void setEncryptionKey(String encryptionKey) throws KeyLockerException {
-        this.encryptionUtil = new EncryptionUtil(encryptionKey);
+    public WindowsCredentialManager() {
+        super();
+        this.librariesGiven = false;
     }
 
     /**
-     * Sets the application prefix for credential names based on package name
-     *
-     * @param packageName Application package name
-     * @param packageName Application package name
-     * @throws KeyLockerException if setting the prefix fails
-     *                                Sets the application prefix for credential names based on package name
+     * Creates a manager over given libraries instead of the system's, such as a simulated backend
+     * @param advapi32 Credential API
+     * @param kernel32 Error reporting API
      */
-    public void setAppPrefix(String packageName) {
-        this.appPrefix = "OsKeyLocker." + packageName;
+    WindowsCredentialManager(Advapi32 advapi32, Kernel32 kernel32) {
+        super();
+        this.advapi32 = advapi32;
+        this.kernel32 = kernel32;
+        this.librariesGiven = true;
     }
 
-    /**
-     * Builds the full credential name with prefix
-     *
-     * @param key Base credential key
-     * @return Full credential name
-     */
-    private String buildCredentialName(String key) {
-        return appPrefix + "." + key;
-    }
+    @Override
+    protected void loadNativeAccess() {
+        if (librariesGiven) {
+            return;
+        }
 
-    /**
-     * Builds a chunk credential name
-     *
-     * @param key        Base credential key
-     * @param chunkIndex The chunk index
-     * @return Chunk credential name
-     */
-    private String buildChunkName(String key, int chunkIndex) {
-        return buildCredentialName(key) + "." + CHUNK_IDENTIFIER + chunkIndex;
+        this.advapi32 = Native.load("Advapi32", Advapi32.class);
+        this.kernel32 = Native.load("Kernel32", Kernel32.class);
     }
 
-    /**
-     * Adds or updates a credential with JSON value in Windows Credential Manager
-     *
-     * @param key       Credential key
-     * @param jsonValue JSON object value to store
-     * @throws KeyLockerException if the operation fails
-     */
-    public void addCredential(String key, JSONObject jsonValue) throws KeyLockerException {
-        String encryptedValue = encryptionUtil.encrypt(jsonValue.toString());
-
-        //Todo: lets print encrypted value
-        //System.out.println("🚨Encrypted value: " + encryptedValue);
-        //System.out.println("🚨 Encrypted value size: " + encryptedValue.length() + " bytes for key: " + key);
-
-
-        // Check if chunking is needed
-        if (encryptedValue.length() <= MAX_CREDENTIAL_SIZE) {
-
-            // Store as a single credential
-            addRawCredential(buildCredentialName(key), encryptedValue);
-
-            System.out.println("------ Using single credential (no chunking needed) -------");
-
-            // Add metadata (no chunks)
-            JSONObject metadata = new JSONObject();
-            metadata.put("chunks", 0);
-            metadata.put("totalLength", encryptedValue.length());
-            addRawCredential(buildCredentialName(key + "." + METADATA_KEY), encryptionUtil.encrypt(metadata.toString()));
-        } else {
-            // Need to chunk the credential
-            List<String> chunks = chunkString(encryptedValue, MAX_CREDENTIAL_SIZE);
-
-            System.out.println("----- Large value detected! Splitting into " + chunks.size() + " chunks -------");
-
-            // Store metadata first
-            JSONObject metadata = new JSONObject();
-            metadata.put("chunks", chunks.size());
-            metadata.put("totalLength", encryptedValue.length());
-            addRawCredential(buildCredentialName(key + "." + METADATA_KEY), encryptionUtil.encrypt(metadata.toString()));
-
-            // Store each chunk
-            for (int i = 0; i < chunks.size(); i++) {
-                addRawCredential(buildChunkName(key, i), chunks.get(i));
-            }
-        }
+    @Override
+    protected int getMaxCredentialSize() {
+        return MAX_CREDENTIAL_SIZE;
     }
 
     /**
@@ -205,251 +202,223 @@ public class WindowsCredentialManager {
      * @param value    The string value to store
      * @throws KeyLockerException if the operation fails
      */
-    private void addRawCredential(String credName, String value) throws KeyLockerException {
-
-        //Todo: lets print these credName and value
-//        System.out.println("🚨??Credential Name: " + credName);
-//        System.out.println("🚨??Credential Value: " + value);
+    @Override
+    protected void addRawCredential(String credName, String value) throws KeyLockerException {
+        NativeCallPool.call(() -> {
+            writeCredential(credName, value);
+            return null;
+        });
+    }
 
-        CREDENTIAL credential = new CREDENTIAL();
-        credential.Type = CRED_TYPE_GENERIC;
-        credential.TargetName = credName;
-        credential.Comment = "Stored by OsKeyLocker";
-        credential.Persist = CRED_PERSIST_LOCAL_MACHINE;
-        credential.UserName = System.getProperty("user.name");
+    private void writeCredential(String credName, String value) throws KeyLockerException {
+        NativeScratch scratch = NATIVE_SCRATCH.get();
+        int blobSize = value.length() * 2;
+        if (blobSize > MAX_BLOB_SIZE) {
+            throw new KeyLockerException("Credential value too large: " + blobSize + " bytes");
+        }
 
-        byte[] passwordBytes = value.getBytes(Charset.forName("UTF-16LE"));
+        // UTF-16LE straight into the reused blob
+        for (int i = 0; i < value.length(); i++) {
+            scratch.blobBuffer.putChar(i * 2, value.charAt(i));
+        }
 
-        try (Memory passwordMemory = new Memory(passwordBytes.length)) {
-            passwordMemory.write(0, passwordBytes, 0, passwordBytes.length);
-            credential.CredentialBlob = passwordMemory;
-            credential.CredentialBlobSize = passwordBytes.length;
+        Memory credential = scratch.credential;
+        credential.clear();
+        credential.setInt(TYPE_OFFSET, CRED_TYPE_GENERIC);
+        credential.setPointer(TARGET_NAME_OFFSET, scratch.targetName(credName));
+        credential.setPointer(COMMENT_OFFSET, COMMENT);
+        credential.setInt(BLOB_SIZE_OFFSET, blobSize);
+        credential.setPointer(BLOB_OFFSET, scratch.blob);
+        credential.setInt(PERSIST_OFFSET, CRED_PERSIST_LOCAL_MACHINE);
+        credential.setPointer(USER_NAME_OFFSET, USER_NAME);
 
+        try {
             boolean success = advapi32.CredWriteA(credential, 0);
 
             if (!success) {
                 int errorCode = kernel32.GetLastError();
                 throw new KeyLockerException("Failed to write credential, error code: " + errorCode);
             }
+        } finally {
+            scratch.blob.setMemory(0, blobSize, (byte) 0);
         }
     }
 
     /**
-     * Retrieves a JSON credential from Windows Credential Manager
+     * Retrieves a raw credential string from Windows Credential Manager
      *
-     * @param key Credential key
-     * @return JSON Object value
-     * @throws KeyLockerException if the credential cannot be found or retrieved
+     * @param credName The full credential name
+     * @return The credential value as a string, or null if not found
+     * @throws KeyLockerException if retrieval fails for technical reasons
      */
-    public JSONObject getCredential(String key) throws KeyLockerException {
-        // First check metadata to see if chunking is used
-        String metadataKey = buildCredentialName(key + "." + METADATA_KEY);
-        String encryptedMetadata = getRawCredential(metadataKey);
+    @Override
+    protected String getRawCredential(String credName) throws KeyLockerException {
+        return NativeCallPool.call(() -> readCredential(credName));
+    }
 
-        if (encryptedMetadata == null) {
-            throw new KeyLockerException("Credential metadata not found for key: " + key);
+    private String readCredential(String credName) throws KeyLockerException {
+        NativeScratch scratch = NATIVE_SCRATCH.get();
+        if (!readNative(credName, scratch)) {
+            return null;
         }
 
-        String decryptedMetadata = encryptionUtil.decrypt(encryptedMetadata);
-        JSONObject metadata = new JSONObject(decryptedMetadata);
-
-        int chunks = metadata.getInt("chunks");
-
-        if (chunks == 0) {
-            // Not chunked, retrieve the entire credential
-            String encryptedValue = getRawCredential(buildCredentialName(key));
-            if (encryptedValue == null) {
-                throw new KeyLockerException("Credential not found for key: " + key);
-            }
-
-            String decryptedValue = encryptionUtil.decrypt(encryptedValue);
-            return new JSONObject(decryptedValue);
-        } else {
-            // Chunked credential, retrieve and combine chunks
-            StringBuilder combinedValue = new StringBuilder();
+        int blobSize = scratch.credentialView.getInt(BLOB_SIZE_OFFSET);
+        byte[] passwordBytes = blobSize <= MAX_BLOB_SIZE ? scratch.blobBytes : new byte[blobSize];
+        try {
+            scratch.blobView.read(0, passwordBytes, 0, blobSize);
 
-            for (int i = 0; i < chunks; i++) {
-                String chunkValue = getRawCredential(buildChunkName(key, i));
-                if (chunkValue == null) {
-                    throw new KeyLockerException("Credential chunk " + i + " not found for key: " + key);
+            // Stored values are Base64, so narrow UTF-16LE to Latin-1 in place and only allocate the String itself
+            int length = blobSize / 2;
+            for (int i = 0; i < length; i++) {
+                if (passwordBytes[2 * i + 1] != 0) {
+                    return new String(passwordBytes, 0, blobSize, StandardCharsets.UTF_16LE);
                 }
-                combinedValue.append(chunkValue);
             }
-
-            String decryptedValue = encryptionUtil.decrypt(combinedValue.toString());
-            return new JSONObject(decryptedValue);
+            for (int i = 0; i < length; i++) {
+                passwordBytes[i] = passwordBytes[2 * i];
+            }
+            return new String(passwordBytes, 0, length, StandardCharsets.ISO_8859_1);
+        } finally {
+            Arrays.fill(passwordBytes, 0, blobSize, (byte) 0);
+            advapi32.CredFree(scratch.credentialView);
         }
     }
 
     /**
-     * Retrieves a raw credential string from Windows Credential Manager
+     * Reads a raw credential blob and appends its Base64-decoded bytes to a buffer,
+     * decoding straight from the native blob memory
      *
      * @param credName The full credential name
-     * @return The credential value as a string, or null if not found
+     * @param target   Buffer receiving the decoded bytes
+     * @return true if the credential was found, false otherwise
      * @throws KeyLockerException if retrieval fails for technical reasons
      */
-    private String getRawCredential(String credName) throws KeyLockerException {
-        PointerByReference credentialPtr = new PointerByReference();
-
-        boolean success = advapi32.CredReadA(credName, CRED_TYPE_GENERIC, 0, credentialPtr);
+    @Override
+    protected boolean readRawCredential(String credName, ByteBuffer target) throws KeyLockerException {
+        // The blob is read into the scratch of the thread making the call, so it is decoded there too
+        return NativeCallPool.call(() -> readCredential(credName, target));
+    }
 
-        if (!success) {
-            int errorCode = kernel32.GetLastError();
-            if (errorCode == 1168) { // ERROR_NOT_FOUND
-                return null;
-            }
-            throw new KeyLockerException("Failed to read credential, error code: " + errorCode);
+    private boolean readCredential(String credName, ByteBuffer target) throws KeyLockerException {
+        NativeScratch scratch = NATIVE_SCRATCH.get();
+        if (!readNative(credName, scratch)) {
+            return false;
         }
 
-        CREDENTIAL credential = new CREDENTIAL(credentialPtr.getValue());
-
+        int blobSize = scratch.credentialView.getInt(BLOB_SIZE_OFFSET);
         try {
-            byte[] passwordBytes = credential.CredentialBlob.getByteArray(0, credential.CredentialBlobSize);
-            return new String(passwordBytes, Charset.forName("UTF-16LE"));
+            if (blobSize <= MAX_BLOB_SIZE) {
+                scratch.blobView.read(0, scratch.blobBytes, 0, blobSize);
+                decodeBase64(scratch.blobBytesBuffer.clear().limit(blobSize), 2, target);
+            } else {
+                decodeBase64(scratch.blobView.getByteBuffer(0, blobSize), 2, target);
+            }
+            return true;
         } finally {
-            advapi32.CredFree(credentialPtr.getValue());
+            Arrays.fill(scratch.blobBytes, 0, Math.min(blobSize, MAX_BLOB_SIZE), (byte) 0);
+            scratch.blobView.setMemory(0, blobSize, (byte) 0);
+            advapi32.CredFree(scratch.credentialView);
         }
     }
 
-
     /**
-     * Deletes a credential and all its chunks from Windows Credential Manager
+     * Reads a credential into Windows-allocated memory and points this thread's views at it.
+     * On success the caller must release it with CredFree(scratch.credentialView).
      *
-     * @param key Credential key
-     * @throws KeyLockerException if the credential cannot be deleted
+     * @param credName The full credential name
+     * @param scratch  This thread's native scratch
+     * @return true if the credential was found, false otherwise
+     * @throws KeyLockerException if retrieval fails for technical reasons
      */
-    public void deleteCredential(String key) throws KeyLockerException {
-       // System.out.println("🔄 Attempting to delete credential: " + key);
+    private boolean readNative(String credName, NativeScratch scratch) throws KeyLockerException {
+        boolean success = advapi32.CredReadA(scratch.targetName(credName), CRED_TYPE_GENERIC, 0, scratch.credentialOut);
 
-        // First check metadata to see if chunking is used
-        String metadataKey = buildCredentialName(key + "." + METADATA_KEY);
-        String encryptedMetadata;
-
-        try {
-            encryptedMetadata = getRawCredential(metadataKey);
-           // System.out.println("📋 Found metadata for: " + key);
-
-            if (encryptedMetadata != null) {
-                try {
-                    String decryptedMetadata = encryptionUtil.decrypt(encryptedMetadata);
-                    JSONObject metadata = new JSONObject(decryptedMetadata);
-
-                    int chunks = metadata.getInt("chunks");
-
-                    //System.out.println("📦 Credential has " + chunks + " chunks to delete");
-
-                    if (chunks > 0) {
-                        // Delete all chunks
-                        for (int i = 0; i < chunks; i++) {
-                            //System.out.println("🗑️ Deleting chunk " + (i+1) + " of " + chunks);
-                            deleteRawCredential(buildChunkName(key, i));
-                        }
-                    }
-                } catch (Exception e) {
-                    //System.out.println("⚠️ Failed to decrypt metadata: " + e.getMessage());
-                    // Continue with deletion even if decryption fails
-                    // Try to delete potential chunks using a reasonable upper limit
-                   // System.out.println("🔄 Falling back to brute force chunk deletion");
-                    for (int i = 0; i < 20; i++) { // Assume no more than 20 chunks
-                        try {
-                            deleteRawCredential(buildChunkName(key, i));
-                        } catch (Exception ex) {
-                            // Ignore errors for chunks that don't exist
-                        }
-                    }
-                }
+        if (!success) {
+            int errorCode = kernel32.GetLastError();
+            if (errorCode == ERROR_NOT_FOUND) {
+                return false;
             }
-        } catch (Exception e) {
-            //System.out.println("⚠️ Error accessing metadata: " + e.getMessage());
-            // Continue to delete main credential even if metadata access fails
+            throw new KeyLockerException("Failed to read credential, error code: " + errorCode);
         }
 
-        // Always attempt to delete main credential and metadata
-        //System.out.println("🗑️ Deleting main credential");
-        deleteRawCredential(buildCredentialName(key));
-
-        //System.out.println("🗑️ Deleting metadata");
-        deleteRawCredential(metadataKey);
+        Pointer.nativeValue(scratch.credentialView, readAddress(scratch.credentialOut, 0));
+        Pointer.nativeValue(scratch.blobView, readAddress(scratch.credentialView, BLOB_OFFSET));
+        return true;
+    }
 
-       // System.out.println("✅ Credential deletion completed");
+    private static long readAddress(Pointer pointer, long offset) {
+        return Native.POINTER_SIZE == 8 ? pointer.getLong(offset) : pointer.getInt(offset) & 0xFFFFFFFFL;
     }
 
+    private static Memory nativeString(String value) {
+        byte[] bytes = Native.toByteArray(value);
+        Memory memory = new Memory(bytes.length);
+        memory.write(0, bytes, 0, bytes.length);
+        return memory;
+    }
 
     /**
-     * Deletes a raw credential from Windows Credential Manager
+     * Lists the credentials in Windows Credential Manager whose target name starts with a prefix
      *
-     * @param credName The full credential name
-     * @throws KeyLockerException if deletion fails
+     * @param prefix Credential name prefix
+     * @return Matching credential names
+     * @throws KeyLockerException if enumeration fails
      */
-    private void deleteRawCredential(String credName) throws KeyLockerException {
-        boolean success = advapi32.CredDeleteA(credName, CRED_TYPE_GENERIC, 0);
+    @Override
+    protected List<String> listRawCredentials(String prefix) throws KeyLockerException {
+        return NativeCallPool.call(() -> enumerateCredentials(prefix));
+    }
+
+    private List<String> enumerateCredentials(String prefix) throws KeyLockerException {
+        IntByReference count = new IntByReference();
+        PointerByReference credentialsPtr = new PointerByReference();
+
+        boolean success = advapi32.CredEnumerateA(prefix + "*", 0, count, credentialsPtr);
 
         if (!success) {
             int errorCode = kernel32.GetLastError();
-            if (errorCode != 1168) { // Ignore ERROR_NOT_FOUND
-                throw new KeyLockerException("Failed to delete credential, error code: " + errorCode);
+            if (errorCode == 1168) { // ERROR_NOT_FOUND
+                return new ArrayList<>();
             }
+            throw new KeyLockerException("Failed to enumerate credentials, error code: " + errorCode);
         }
-    }
 
-    /**
-     * Checks if a credential exists in Windows Credential Manager
-     *
-     * @param key Credential key
-     * @return true if the credential exists, false otherwise
-     */
-    public boolean credentialExists(String key) {
         try {
-            // Check for metadata existence
-            String metadataKey = buildCredentialName(key + "." + METADATA_KEY);
-            String encryptedMetadata = getRawCredential(metadataKey);
-
-            return encryptedMetadata != null;
-        } catch (Exception e) {
-            return false;
+            List<String> names = new ArrayList<>();
+            for (Pointer credentialPointer : credentialsPtr.getValue().getPointerArray(0, count.getValue())) {
+                CREDENTIAL credential = new CREDENTIAL(credentialPointer);
+                if (credential.TargetName.startsWith(prefix)) {
+                    names.add(credential.TargetName);
+                }
+            }
+            return names;
+        } finally {
+            advapi32.CredFree(credentialsPtr.getValue());
         }
     }
 
     /**
-     * Updates a specific key in a JSON object credential
+     * Deletes a raw credential from Windows Credential Manager
      *
-     * @param key       Main credential key
-     * @param jsonKey   The JSON field key to update
-     * @param jsonValue The new value for the JSON field
-     * @throws KeyLockerException if the operation fails
+     * @param credName The full credential name
+     * @throws KeyLockerException if deletion fails
      */
-    public void updateCredentialField(String key, String jsonKey, Object jsonValue) throws KeyLockerException {
-        JSONObject existingData;
-
-        try {
-            existingData = getCredential(key);
-        } catch (KeyLockerException e) {
-            // If credential doesn't exist, create a new one
-            existingData = new JSONObject();
-        }
-
-        // Update the field
-        existingData.put(jsonKey, jsonValue);
-
-        // Store the updated credential
-        addCredential(key, existingData);
+    @Override
+    protected void deleteRawCredential(String credName) throws KeyLockerException {
+        NativeCallPool.call(() -> {
+            eraseCredential(credName);
+            return null;
+        });
     }
 
-    /**
-     * Helper method to split a string into chunks of maximum size
-     *
-     * @param input     The string to chunk
-     * @param chunkSize Maximum chunk size
-     * @return List of string chunks
-     */
-    private List<String> chunkString(String input, int chunkSize) {
-        List<String> chunks = new ArrayList<>();
-        int length = input.length();
+    private void eraseCredential(String credName) throws KeyLockerException {
+        boolean success = advapi32.CredDeleteA(credName, CRED_TYPE_GENERIC, 0);
 
-        for (int i = 0; i < length; i += chunkSize) {
-            chunks.add(input.substring(i, Math.min(length, i + chunkSize)));
+        if (!success) {
+            int errorCode = kernel32.GetLastError();
+            if (errorCode != 1168) { // Ignore ERROR_NOT_FOUND
+                throw new KeyLockerException("Failed to delete credential, error code: " + errorCode);
+            }
         }
-
-        return chunks;
     }
 }
@@ -0,0 +1,380 @@
+package com.OsKeyLocker.provider;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.KeyLocker;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyStore;
+import java.security.KeyStoreException;
+import java.security.KeyStoreSpi;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.UnrecoverableKeyException;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * KeyStore over KeyLocker credentials. Each entry is a credential under {@code namespace + "." + alias} holding
+ * the entry type, the encoded key and its algorithm, the DER certificate chain and the creation date. Loading the
+ * key store reads nothing: entries are read and decoded the first time one of their parts is requested, and the
+ * decoded objects are kept for the life of the key store or until it is loaded again. Aliases are enumerated from
+ * the stored identifiers without decrypting anything. Entries are written through when they are set, so
+ * {@code store} only accepts a null stream. Entry passwords are ignored; every entry is protected by the key
+ * store's encryption key.
+ */
+public class KeyLockerKeyStoreSpi extends KeyStoreSpi {
+
+    private static final String PRIVATE_KEY = "privateKey";
+    private static final String SECRET_KEY = "secretKey";
+    private static final String TRUSTED_CERTIFICATE = "trustedCertificate";
+
+    private static final String TYPE_FIELD = "entryType";
+    private static final String ALGORITHM_FIELD = "algorithm";
+    private static final String KEY_FIELD = "key";
+    private static final String CERTIFICATES_FIELD = "certificates";
+    private static final String CREATED_FIELD = "created";
+
+    /**
+     * Decoded key store entry
+     */
+    private record Entry(String type, Key key, Certificate[] chain, Date created) {}
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile String encryptionKey;
+    private volatile String namespace;
+
+    /**
+     * Creates an unloaded key store
+     */
+    public KeyLockerKeyStoreSpi() {
+        // Instantiated by the JCA framework
+    }
+
+    @Override
+    public void engineLoad(InputStream stream, char[] password) throws IOException {
+        if (stream != null) {
+            throw new IOException("KeyLocker key stores are not loaded from a stream; pass null");
+        }
+        load(password != null ? new String(password) : null, KeyLockerLoadParameter.DEFAULT_NAMESPACE);
+    }
+
+    @Override
+    public void engineLoad(KeyStore.LoadStoreParameter param) throws IOException {
+        if (param == null) {
+            load(null, KeyLockerLoadParameter.DEFAULT_NAMESPACE);
+        } else if (param instanceof KeyLockerLoadParameter parameters) {
+            load(parameters.getEncryptionKey(), parameters.getNamespace());
+        } else {
+            throw new IllegalArgumentException("Unsupported load parameter: " + param.getClass().getName());
+        }
+    }
+
+    private void load(String encryptionKey, String namespace) {
+        this.encryptionKey = encryptionKey;
+        this.namespace = namespace;
+        entries.clear();
+    }
+
+    @Override
+    public void engineStore(OutputStream stream, char[] password) throws IOException {
+        if (stream != null) {
+            throw new IOException("KeyLocker key store entries are stored as they are set; pass a null stream");
+        }
+        try {
+            KeyLocker.flush();
+        } catch (KeyLockerException e) {
+            throw new IOException("Failed to store key store entries: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Key engineGetKey(String alias, char[] password) throws NoSuchAlgorithmException, UnrecoverableKeyException {
+        try {
+            Entry entry = entry(alias);
+            return entry != null ? entry.key() : null;
+        } catch (KeyStoreException e) {
+            UnrecoverableKeyException failure = new UnrecoverableKeyException(e.getMessage());
+            failure.initCause(e);
+            throw failure;
+        }
+    }
+
+    @Override
+    public Certificate[] engineGetCertificateChain(String alias) {
+        Entry entry = entryOrNull(alias);
+        if (entry == null || !PRIVATE_KEY.equals(entry.type()) || entry.chain().length == 0) {
+            return null;
+        }
+        return entry.chain().clone();
+    }
+
+    @Override
+    public Certificate engineGetCertificate(String alias) {
+        Entry entry = entryOrNull(alias);
+        return entry != null && entry.chain().length > 0 ? entry.chain()[0] : null;
+    }
+
+    @Override
+    public Date engineGetCreationDate(String alias) {
+        Entry entry = entryOrNull(alias);
+        return entry != null ? new Date(entry.created().getTime()) : null;
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, Key key, char[] password, Certificate[] chain) throws KeyStoreException {
+        String type;
+        if (key instanceof PrivateKey) {
+            if (chain == null || chain.length == 0) {
+                throw new KeyStoreException("A private key entry needs a certificate chain");
+            }
+            type = PRIVATE_KEY;
+        } else if (key instanceof SecretKey) {
+            type = SECRET_KEY;
+        } else {
+            throw new KeyStoreException("Unsupported key type: " + (key != null ? key.getClass().getName() : null));
+        }
+
+        byte[] encoded = key.getEncoded();
+        if (encoded == null) {
+            throw new KeyStoreException("Key cannot be exported for storage; is it held by a hardware token?");
+        }
+        try {
+            write(alias, new Entry(type, key, chain != null ? chain.clone() : new Certificate[0], new Date()), encoded);
+        } finally {
+            Arrays.fill(encoded, (byte) 0);
+        }
+    }
+
+    @Override
+    public void engineSetKeyEntry(String alias, byte[] key, Certificate[] chain) throws KeyStoreException {
+        throw new KeyStoreException("Protected key bytes are not supported; set the key object instead");
+    }
+
+    @Override
+    public void engineSetCertificateEntry(String alias, Certificate cert) throws KeyStoreException {
+        Entry existing = entry(alias);
+        if (existing != null && !TRUSTED_CERTIFICATE.equals(existing.type())) {
+            throw new KeyStoreException("Alias " + alias + " holds a key entry");
+        }
+        write(alias, new Entry(TRUSTED_CERTIFICATE, null, new Certificate[] {cert}, new Date()), null);
+    }
+
+    @Override
+    public void engineDeleteEntry(String alias) throws KeyStoreException {
+        try {
+            KeyLocker.delete().identifier(identifier(alias)).execute();
+        } catch (KeyLockerException e) {
+            throw new KeyStoreException("Failed to delete entry " + alias + ": " + e.getMessage(), e);
+        } finally {
+            entries.remove(alias);
+        }
+    }
+
+    @Override
+    public Enumeration<String> engineAliases() {
+        return Collections.enumeration(aliases());
+    }
+
+    @Override
+    public boolean engineContainsAlias(String alias) {
+        if (entries.containsKey(alias)) {
+            return true;
+        }
+        try {
+            return KeyLocker.read().withEncryption(encryptionKey).from(identifier(alias)).exists();
+        } catch (KeyLockerException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public int engineSize() {
+        return aliases().size();
+    }
+
+    @Override
+    public boolean engineIsKeyEntry(String alias) {
+        Entry entry = entryOrNull(alias);
+        return entry != null && !TRUSTED_CERTIFICATE.equals(entry.type());
+    }
+
+    @Override
+    public boolean engineIsCertificateEntry(String alias) {
+        Entry entry = entryOrNull(alias);
+        return entry != null && TRUSTED_CERTIFICATE.equals(entry.type());
+    }
+
+    @Override
+    public String engineGetCertificateAlias(Certificate cert) {
+        // Has to decode every entry that is not decoded yet
+        for (String alias : aliases()) {
+            Entry entry = entryOrNull(alias);
+            if (entry != null && entry.chain().length > 0 && entry.chain()[0].equals(cert)) {
+                return alias;
+            }
+        }
+        return null;
+    }
+
+    private List<String> aliases() {
+        String prefix = namespace + ".";
+        List<String> aliases = new ArrayList<>();
+        try {
+            for (String identifier : KeyLocker.listIdentifiers()) {
+                if (identifier.startsWith(prefix)) {
+                    aliases.add(identifier.substring(prefix.length()));
+                }
+            }
+        } catch (KeyLockerException e) {
+            // Enumeration methods cannot throw; fall back to the entries known to this key store
+            aliases.addAll(entries.keySet());
+        }
+        return aliases;
+    }
+
+    private String identifier(String alias) {
+        if (namespace == null) {
+            throw new IllegalStateException("Key store not loaded");
+        }
+        return namespace + "." + alias;
+    }
+
+    private Entry entryOrNull(String alias) {
+        try {
+            return entry(alias);
+        } catch (KeyStoreException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Gets a decoded entry, reading and decoding it on first use
+     * @param alias Entry alias
+     * @return The entry, or null if nothing is stored under the alias
+     * @throws KeyStoreException if the entry cannot be read or decoded
+     */
+    private Entry entry(String alias) throws KeyStoreException {
+        Entry entry = entries.get(alias);
+        if (entry != null) {
+            return entry;
+        }
+
+        Optional<Map<String, Object>> stored;
+        try {
+            stored = KeyLocker.read().withEncryption(encryptionKey).from(identifier(alias)).find();
+        } catch (KeyLockerException e) {
+            throw new KeyStoreException("Failed to read entry " + alias + ": " + e.getMessage(), e);
+        }
+        if (stored.isEmpty()) {
+            return null;
+        }
+
+        entry = decode(alias, stored.get());
+        Entry raced = entries.putIfAbsent(alias, entry);
+        return raced != null ? raced : entry;
+    }
+
+    private static Entry decode(String alias, Map<String, Object> properties) throws KeyStoreException {
+        String type = String.valueOf(properties.get(TYPE_FIELD));
+        String algorithm = String.valueOf(properties.get(ALGORITHM_FIELD));
+        Date created = properties.get(CREATED_FIELD) instanceof Instant instant ? Date.from(instant) : new Date(0);
+
+        Certificate[] chain = new Certificate[0];
+        if (properties.get(CERTIFICATES_FIELD) instanceof byte[] encodedChain) {
+            try {
+                Collection<? extends Certificate> certificates = CertificateFactory.getInstance("X.509")
+                        .generateCertificates(new ByteArrayInputStream(encodedChain));
+                chain = certificates.toArray(new Certificate[0]);
+            } catch (CertificateException e) {
+                throw new KeyStoreException("Entry " + alias + " holds an invalid certificate chain", e);
+            }
+        }
+
+        Key key = null;
+        if (properties.get(KEY_FIELD) instanceof byte[] encodedKey) {
+            try {
+                key = switch (type) {
+                    case PRIVATE_KEY -> KeyFactory.getInstance(algorithm)
+                            .generatePrivate(new PKCS8EncodedKeySpec(encodedKey));
+                    case SECRET_KEY -> new SecretKeySpec(encodedKey, algorithm);
+                    default -> null;
+                };
+            } catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
+                throw new KeyStoreException("Entry " + alias + " holds an invalid " + algorithm + " key", e);
+            } finally {
+                Arrays.fill(encodedKey, (byte) 0);
+            }
+        }
+
+        switch (type) {
+            case PRIVATE_KEY, SECRET_KEY -> {
+                if (key == null) {
+                    throw new KeyStoreException("Entry " + alias + " holds no key");
+                }
+            }
+            case TRUSTED_CERTIFICATE -> {
+                if (chain.length == 0) {
+                    throw new KeyStoreException("Entry " + alias + " holds no certificate");
+                }
+            }
+            default -> throw new KeyStoreException("Identifier of " + alias + " does not hold a key store entry");
+        }
+        return new Entry(type, key, chain, created);
+    }
+
+    private void write(String alias, Entry entry, byte[] encodedKey) throws KeyStoreException {
+        KeyLocker.StorageWriter writer = KeyLocker.write()
+                .withEncryption(encryptionKey)
+                .to(identifier(alias))
+                .property(TYPE_FIELD, entry.type())
+                .property(CERTIFICATES_FIELD, encodeChain(entry.chain()))
+                .property(CREATED_FIELD, entry.created().toInstant());
+        if (encodedKey != null) {
+            writer.property(ALGORITHM_FIELD, entry.key().getAlgorithm())
+                    .property(KEY_FIELD, encodedKey);
+        }
+
+        try {
+            writer.execute();
+        } catch (KeyLockerException e) {
+            entries.remove(alias);
+            throw new KeyStoreException("Failed to store entry " + alias + ": " + e.getMessage(), e);
+        }
+        entries.put(alias, entry);
+    }
+
+    private static byte[] encodeChain(Certificate[] chain) throws KeyStoreException {
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+        try {
+            for (Certificate certificate : chain) {
+                encoded.write(certificate.getEncoded());
+            }
+        } catch (CertificateEncodingException | IOException e) {
+            throw new KeyStoreException("Failed to encode certificate chain", e);
+        }
+        return encoded.toByteArray();
+    }
+}
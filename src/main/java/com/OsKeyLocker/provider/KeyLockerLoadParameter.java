@@ -0,0 +1,55 @@
+package com.OsKeyLocker.provider;
+
+import java.security.KeyStore;
+
+/**
+ * Parameters for loading a KeyLocker key store: the encryption key its entries are stored with, and the
+ * namespace that keeps its entries apart from other credentials and other key stores of the application.
+ * Entries are stored under the identifier {@code namespace + "." + alias}.
+ */
+public final class KeyLockerLoadParameter implements KeyStore.LoadStoreParameter {
+
+    /** Namespace used when a key store is loaded with a password only */
+    public static final String DEFAULT_NAMESPACE = "keystore";
+
+    private final String encryptionKey;
+    private final String namespace;
+
+    /**
+     * Creates load parameters
+     * @param encryptionKey Encryption key the entries are stored with
+     * @param namespace Identifier prefix of the key store's entries
+     */
+    public KeyLockerLoadParameter(String encryptionKey, String namespace) {
+        if (namespace == null || namespace.isEmpty()) {
+            throw new IllegalArgumentException("Key store namespace must not be empty");
+        }
+        this.encryptionKey = encryptionKey;
+        this.namespace = namespace;
+    }
+
+    /**
+     * Creates load parameters for the default namespace
+     * @param encryptionKey Encryption key the entries are stored with
+     */
+    public KeyLockerLoadParameter(String encryptionKey) {
+        this(encryptionKey, DEFAULT_NAMESPACE);
+    }
+
+    public String getEncryptionKey() {
+        return encryptionKey;
+    }
+
+    public String getNamespace() {
+        return namespace;
+    }
+
+    /**
+     * Entries are protected by the key store's encryption key, not by per-entry passwords
+     * @return null
+     */
+    @Override
+    public KeyStore.ProtectionParameter getProtectionParameter() {
+        return null;
+    }
+}
@@ -0,0 +1,28 @@
+package com.OsKeyLocker.provider;
+
+import java.io.Serial;
+import java.security.Provider;
+
+/**
+ * JCA provider exposing KeyLocker credentials as a {@link java.security.KeyStore} of type {@value #KEYSTORE_TYPE}.
+ * Register it with {@code Security.addProvider(new KeyLockerProvider())}, or pass it to
+ * {@code KeyStore.getInstance(KeyLockerProvider.KEYSTORE_TYPE, provider)}.
+ */
+public final class KeyLockerProvider extends Provider {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    /** Provider name */
+    public static final String NAME = "KeyLocker";
+    /** KeyStore type served by this provider */
+    public static final String KEYSTORE_TYPE = "KeyLocker";
+
+    /**
+     * Creates the provider
+     */
+    public KeyLockerProvider() {
+        super(NAME, "1.0", "KeyStore backed by OS credential storage through KeyLocker");
+        putService(new Service(this, "KeyStore", KEYSTORE_TYPE, KeyLockerKeyStoreSpi.class.getName(), null, null));
+    }
+}
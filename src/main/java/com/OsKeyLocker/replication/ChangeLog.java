@@ -0,0 +1,292 @@
+package com.OsKeyLocker.replication;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.EncryptionUtil;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only log of credential mutations, shared by every process writing the same file. Each record is one line
+ * holding its sequence number in plaintext and the mutation, including the stored properties and the key they are
+ * stored with, encrypted with the log's own key. Appends are serialized across processes by a file lock, which
+ * also hands out the sequence numbers, and each append is forced to disk before the writer moves on. A record cut
+ * short by a crash is never read and is overwritten by the next append.
+ */
+public final class ChangeLog implements Closeable {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final EncryptionUtil encryption;
+    // Serializes this instance's appends; a lock rather than a monitor, as appends run on application threads
+    private final ReentrantLock appendLock = new ReentrantLock();
+    // Size and last sequence as of this instance's last append, so appends only rescan after other writers
+    private long knownSize = -1;
+    private long lastSequence;
+
+    private ChangeLog(Path file, FileChannel channel, EncryptionUtil encryption) {
+        this.file = file;
+        this.channel = channel;
+        this.encryption = encryption;
+    }
+
+    /**
+     * Opens (creating if needed) a change log
+     * @param file Log file
+     * @param logKey Key the records are encrypted with
+     * @return The change log
+     * @throws KeyLockerException if the file cannot be opened
+     */
+    public static ChangeLog open(Path file, String logKey) throws KeyLockerException {
+        if (logKey == null || logKey.isEmpty()) {
+            throw new KeyLockerException("Change log key must not be empty");
+        }
+
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        FileAttribute<?>[] attributes = posix
+                ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))}
+                : new FileAttribute<?>[0];
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (!Files.isDirectory(directory)) {
+                Files.createDirectories(directory);
+            }
+            FileChannel channel = FileChannel.open(file,
+                    Set.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE), attributes);
+            return new ChangeLog(file, channel, new EncryptionUtil(logKey));
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to open change log " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Records that a credential was stored
+     * @param packageName Application package
+     * @param storageKey Identifier
+     * @param encryptionKey Key the credential was stored with
+     * @param data Stored properties
+     * @param expiresAt Expiry in epoch milliseconds, or 0 for none
+     * @return Sequence number of the record
+     * @throws KeyLockerException if the record cannot be appended
+     */
+    public long recordStore(String packageName, String storageKey, String encryptionKey, JSONObject data,
+                            long expiresAt) throws KeyLockerException {
+        return append(ChangeRecord.Operation.STORE, packageName, storageKey, encryptionKey, null, data, expiresAt);
+    }
+
+    /**
+     * Records that a credential was removed
+     * @param packageName Application package
+     * @param storageKey Identifier
+     * @param encryptionKey Key the credential was removed with
+     * @return Sequence number of the record
+     * @throws KeyLockerException if the record cannot be appended
+     */
+    public long recordRemove(String packageName, String storageKey, String encryptionKey) throws KeyLockerException {
+        return append(ChangeRecord.Operation.REMOVE, packageName, storageKey, encryptionKey, null, null, 0);
+    }
+
+    /**
+     * Records that a credential was re-encrypted under a new key
+     * @param packageName Application package
+     * @param storageKey Identifier
+     * @param oldKey Key the credential was under
+     * @param newKey Key the credential is under now
+     * @return Sequence number of the record
+     * @throws KeyLockerException if the record cannot be appended
+     */
+    public long recordReencrypt(String packageName, String storageKey, String oldKey, String newKey)
+            throws KeyLockerException {
+        return append(ChangeRecord.Operation.REENCRYPT, packageName, storageKey, newKey, oldKey, null, 0);
+    }
+
+    /**
+     * Reads complete records starting at a byte offset
+     * @param offset Offset of the first record: 0, or the {@link ChangeRecord#offset} of the last record read
+     * @param maxRecords Largest number of records to return
+     * @return Records in log order; empty if there are no complete records past the offset
+     * @throws KeyLockerException if the log cannot be read or decrypted, or is shorter than the offset
+     */
+    public List<ChangeRecord> read(long offset, int maxRecords) throws KeyLockerException {
+        List<ChangeRecord> records = new ArrayList<>();
+        try {
+            long size = channel.size();
+            if (offset > size) {
+                throw new KeyLockerException("Change log " + file + " is shorter than offset " + offset
+                        + "; it was truncated or replaced");
+            }
+
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+            long position = offset;
+            while (records.size() < maxRecords && position < size) {
+                block.clear();
+                int read = channel.read(block, position);
+                if (read <= 0) {
+                    break;
+                }
+                for (int i = 0; i < read && records.size() < maxRecords; i++) {
+                    byte b = block.get(i);
+                    if (b == '\n') {
+                        records.add(parse(line.toString(StandardCharsets.US_ASCII), position + i + 1));
+                        line.reset();
+                    } else {
+                        line.write(b);
+                    }
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to read change log " + file + ": " + e.getMessage(), e);
+        }
+        return records;
+    }
+
+    /**
+     * Gets the log file
+     * @return Log file path
+     */
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long append(ChangeRecord.Operation operation, String packageName, String storageKey,
+                        String encryptionKey, String previousKey, JSONObject data, long expiresAt)
+            throws KeyLockerException {
+        appendLock.lock();
+        try {
+            FileLock lock = channel.lock();
+            try {
+                long size = channel.size();
+                if (size != knownSize) {
+                    recoverTail(size);
+                }
+
+                long sequence = lastSequence + 1;
+                JSONObject record = new JSONObject();
+                record.put("sequence", sequence);
+                record.put("operation", operation.name());
+                record.put("package", packageName);
+                record.put("id", storageKey);
+                record.put("key", encryptionKey);
+                record.put("previousKey", previousKey);
+                record.put("data", data);
+                record.put("expiresAt", expiresAt);
+                record.put("timestamp", System.currentTimeMillis());
+
+                ByteBuffer line = ByteBuffer.wrap((sequence + " " + encryption.encrypt(record.toString()) + "\n")
+                        .getBytes(StandardCharsets.US_ASCII));
+                long position = knownSize;
+                while (line.hasRemaining()) {
+                    position += channel.write(line, position);
+                }
+                channel.force(false);
+
+                knownSize = position;
+                lastSequence = sequence;
+                return sequence;
+            } finally {
+                lock.release();
+            }
+        } catch (IOException e) {
+            knownSize = -1;
+            throw new KeyLockerException("Failed to append to change log " + file + ": " + e.getMessage(), e);
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    /**
+     * Finds the end of the last complete record and its sequence, dropping a record cut short by a crash;
+     * the caller holds the file lock
+     */
+    private void recoverTail(long size) throws IOException {
+        long end = lastNewline(size);
+        if (end + 1 < size) {
+            channel.truncate(end + 1);
+        }
+        knownSize = end + 1;
+        lastSequence = end < 0 ? 0 : sequenceAt(lastNewline(end) + 1);
+    }
+
+    private long lastNewline(long before) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+        long end = before;
+        while (end > 0) {
+            long start = Math.max(0, end - BLOCK_SIZE);
+            block.clear().limit((int) (end - start));
+            while (block.hasRemaining() && channel.read(block, start + block.position()) > 0) {
+                // Fill the block
+            }
+            for (int i = block.position() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return start + i;
+                }
+            }
+            end = start;
+        }
+        return -1;
+    }
+
+    private long sequenceAt(long lineStart) throws IOException {
+        ByteBuffer digits = ByteBuffer.allocate(24);
+        channel.read(digits, lineStart);
+        long sequence = 0;
+        for (int i = 0; i < digits.position() && digits.get(i) != ' '; i++) {
+            sequence = sequence * 10 + (digits.get(i) - '0');
+        }
+        return sequence;
+    }
+
+    private ChangeRecord parse(String line, long nextOffset) throws KeyLockerException {
+        int separator = line.indexOf(' ');
+        if (separator <= 0) {
+            throw new KeyLockerException("Malformed change log record before offset " + nextOffset);
+        }
+
+        try {
+            long sequence = Long.parseLong(line.substring(0, separator));
+            JSONObject record = new JSONObject(encryption.decrypt(line.substring(separator + 1)));
+            if (record.getLong("sequence") != sequence) {
+                throw new KeyLockerException("Change log record " + sequence + " does not match its sequence number");
+            }
+
+            return new ChangeRecord(sequence,
+                    ChangeRecord.Operation.valueOf(record.getString("operation")),
+                    record.optString("package", null),
+                    record.getString("id"),
+                    record.optString("key", null),
+                    record.optString("previousKey", null),
+                    record.optJSONObject("data"),
+                    record.optLong("expiresAt"),
+                    record.optLong("timestamp"),
+                    nextOffset);
+        } catch (NumberFormatException | JSONException e) {
+            throw new KeyLockerException("Malformed change log record before offset " + nextOffset, e);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.OsKeyLocker.replication;
+
+import org.json.JSONObject;
+
+/**
+ * One mutation read from a {@link ChangeLog}
+ * @param sequence Position of the mutation in the log, starting at 1 and increasing by one per record
+ * @param operation What changed
+ * @param packageName Application package the credential belongs to
+ * @param storageKey Identifier of the credential
+ * @param encryptionKey Key the credential was stored or removed with, or re-encrypted under
+ * @param previousKey Key the credential was re-encrypted from, or null
+ * @param data Stored properties, or null unless the operation is {@link Operation#STORE}
+ * @param expiresAt Expiry of a stored credential in epoch milliseconds, or 0 for none
+ * @param timestamp Time the mutation was logged, in epoch milliseconds
+ * @param offset Byte offset just past this record; reading resumes from here
+ */
+public record ChangeRecord(long sequence, Operation operation, String packageName, String storageKey,
+                           String encryptionKey, String previousKey, JSONObject data, long expiresAt,
+                           long timestamp, long offset) {
+
+    /**
+     * Kinds of mutation
+     */
+    public enum Operation {
+        /** The credential was stored with new properties */
+        STORE,
+        /** The credential was removed */
+        REMOVE,
+        /** The credential was re-encrypted under a new key */
+        REENCRYPT
+    }
+}
@@ -0,0 +1,219 @@
+package com.OsKeyLocker.replication;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.PlatformKeyLockerStorage;
+import lombok.extern.slf4j.Slf4j;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Tails a {@link ChangeLog} and applies its records, in order, to another storage, such as a standby vault.
+ * Progress is saved to an offset file after every batch, so a replicator stopped at any point resumes after
+ * the last record it saved; records applied after that are applied again, which leaves the target unchanged.
+ * The target storage belongs to the replicator: each record switches it to the record's application prefix.
+ */
+@Slf4j
+public class LogReplicator implements Closeable {
+
+    private static final int BATCH_SIZE = 256;
+
+    private final ChangeLog changeLog;
+    private final PlatformKeyLockerStorage target;
+    private final Path offsetFile;
+    private long offset;
+    private long sequence;
+    private ScheduledExecutorService scheduler;
+    // Guards the fields above; a lock rather than a monitor, since a pass makes native calls on the target
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Creates a replicator, resuming from the offset file if it exists
+     * @param logFile Change log file written by {@link com.OsKeyLocker.platform.KeyLocker#enableChangeLog}
+     * @param logKey Key the log records are encrypted with
+     * @param target Storage the changes are applied to, used by nothing else. The replicator sets its application
+     *               prefix to each record's package and leaves it on the last one, so another user of the same
+     *               instance would read and write under the wrong application.
+     * @param offsetFile File recording how far the log has been applied
+     * @throws KeyLockerException if the log or offset file cannot be read
+     */
+    public LogReplicator(Path logFile, String logKey, PlatformKeyLockerStorage target, Path offsetFile)
+            throws KeyLockerException {
+        this.changeLog = ChangeLog.open(logFile, logKey);
+        this.target = target;
+        this.offsetFile = offsetFile;
+        loadOffset();
+    }
+
+    /**
+     * Applies every complete record past the saved offset
+     * @return Number of records applied
+     * @throws KeyLockerException if a record cannot be read or applied; records before it stay applied
+     */
+    public int replicate() throws KeyLockerException {
+        lock.lock();
+        try {
+            int applied = 0;
+            while (true) {
+                List<ChangeRecord> records = changeLog.read(offset, BATCH_SIZE);
+                if (records.isEmpty()) {
+                    return applied;
+                }
+
+                try {
+                    for (ChangeRecord record : records) {
+                        if (sequence != 0 && record.sequence() != sequence + 1) {
+                            log.warn("Change log skips from sequence {} to {}", sequence, record.sequence());
+                        }
+                        apply(record);
+                        offset = record.offset();
+                        sequence = record.sequence();
+                        applied++;
+                    }
+                } finally {
+                    saveOffset();
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replicates on a background daemon thread, replacing a schedule already running
+     * @param interval Delay between passes
+     */
+    public void start(Duration interval) {
+        lock.lock();
+        try {
+            stop();
+            scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "OsKeyLocker-log-replicator");
+                thread.setDaemon(true);
+                return thread;
+            });
+            scheduler.scheduleWithFixedDelay(() -> {
+                try {
+                    int applied = replicate();
+                    if (applied > 0) {
+                        log.debug("Replicated {} change(s) up to sequence {}", applied, getSequence());
+                    }
+                } catch (KeyLockerException e) {
+                    log.error("Failed to replicate change log: {}", e.getMessage());
+                }
+            }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops background replication, if running; a pass in progress finishes its current batch
+     */
+    public void stop() {
+        lock.lock();
+        try {
+            if (scheduler != null) {
+                scheduler.shutdown();
+                scheduler = null;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the sequence number of the last record applied
+     * @return Sequence number, or 0 if none
+     */
+    public long getSequence() {
+        lock.lock();
+        try {
+            return sequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Gets the log offset replication resumes from
+     * @return Byte offset in the change log
+     */
+    public long getOffset() {
+        lock.lock();
+        try {
+            return offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        stop();
+        lock.lock();
+        try {
+            changeLog.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void apply(ChangeRecord record) throws KeyLockerException {
+        // Runs under the replicator's lock, so records are applied one at a time and in order
+        target.setAppPrefix(record.packageName());
+        switch (record.operation()) {
+            case STORE -> {
+                target.setEncryptionKey(record.encryptionKey());
+                target.storeJsonCredential(record.storageKey(), record.data(), record.expiresAt());
+            }
+            case REMOVE -> {
+                // Removal reads the credential's metadata to find its chunks
+                target.setEncryptionKey(record.encryptionKey());
+                target.removeCredential(record.storageKey());
+            }
+            case REENCRYPT -> target.reencryptCredential(record.storageKey(), record.previousKey(),
+                    record.encryptionKey());
+        }
+    }
+
+    private void loadOffset() throws KeyLockerException {
+        try {
+            JSONObject saved = new JSONObject(Files.readString(offsetFile, StandardCharsets.UTF_8));
+            offset = saved.getLong("offset");
+            sequence = saved.getLong("sequence");
+        } catch (NoSuchFileException e) {
+            offset = 0;
+            sequence = 0;
+        } catch (IOException | JSONException e) {
+            throw new KeyLockerException("Failed to read replication offset " + offsetFile + ": " + e.getMessage(), e);
+        }
+    }
+
+    private void saveOffset() throws KeyLockerException {
+        JSONObject saved = new JSONObject();
+        saved.put("offset", offset);
+        saved.put("sequence", sequence);
+
+        Path temporary = offsetFile.resolveSibling(offsetFile.getFileName() + ".tmp");
+        try {
+            Files.writeString(temporary, saved.toString(), StandardCharsets.UTF_8);
+            Files.move(temporary, offsetFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new KeyLockerException("Failed to save replication offset " + offsetFile + ": " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import java.lang.management.ManagementFactory;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+
+/**
+ * Authenticated ciphers available for credential encryption. Both use a 256-bit key, a 12-byte nonce and a
+ * 16-byte tag, so they share every storage layout; the suite id recorded with the ciphertext selects the cipher
+ * when reading, and the configured suite only affects new writes.
+ */
+public enum CipherSuite {
+
+    /** AES-256 in Galois/Counter Mode; fastest on CPUs with AES instructions */
+    AES_GCM(1, "AES/GCM/NoPadding"),
+
+    /** ChaCha20-Poly1305; constant-time in software and faster than AES-GCM on CPUs without AES instructions */
+    CHACHA20_POLY1305(2, "ChaCha20-Poly1305");
+
+    static final int NONCE_LENGTH = 12;
+    static final int TAG_LENGTH = 16;
+
+    private final int id;
+    private final String transformation;
+
+    CipherSuite(int id, String transformation) {
+        this.id = id;
+        this.transformation = transformation;
+    }
+
+    /**
+     * Gets the id stored with ciphertexts of this suite
+     * @return Suite id
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the suite with the given id
+     * @param id Suite id, as stored with a ciphertext
+     * @return The cipher suite
+     * @throws KeyLockerException if no suite has this id, e.g. data written by a newer version
+     */
+    public static CipherSuite fromId(int id) throws KeyLockerException {
+        CipherSuite suite = lookup(id);
+        if (suite == null) {
+            throw new KeyLockerException("Unknown cipher suite id: " + id);
+        }
+        return suite;
+    }
+
+    /**
+     * Gets the faster suite for this host: AES-GCM when the JVM uses hardware AES instructions,
+     * ChaCha20-Poly1305 otherwise
+     * @return The preferred cipher suite
+     */
+    public static CipherSuite preferred() {
+        try {
+            HotSpotDiagnosticMXBean diagnostics = ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+            boolean hardwareAes = Boolean.parseBoolean(diagnostics.getVMOption("UseAESIntrinsics").getValue());
+            return hardwareAes ? AES_GCM : CHACHA20_POLY1305;
+        } catch (RuntimeException e) {
+            // Not a HotSpot JVM; AES-GCM is the safe default
+            return AES_GCM;
+        }
+    }
+
+    static CipherSuite lookup(int id) {
+        for (CipherSuite suite : values()) {
+            if (suite.id == id) {
+                return suite;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates a cipher of this suite initialized for one message
+     * @param mode Cipher.ENCRYPT_MODE or Cipher.DECRYPT_MODE
+     * @param key 256-bit key
+     * @param nonce 12-byte nonce
+     * @return The initialized cipher
+     * @throws GeneralSecurityException if the cipher is unavailable or rejects the key
+     */
+    Cipher newCipher(int mode, Key key, byte[] nonce) throws GeneralSecurityException {
+        Cipher cipher = Cipher.getInstance(transformation);
+        if (this == AES_GCM) {
+            cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+        } else {
+            cipher.init(mode, key, new IvParameterSpec(nonce));
+        }
+        return cipher;
+    }
+}
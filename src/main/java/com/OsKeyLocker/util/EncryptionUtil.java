@@ -5,10 +5,10 @@ import com.OsKeyLocker.exceptions.KeyLockerException;
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
-import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
@@ -16,21 +16,45 @@ import java.util.Arrays;
 import java.util.Base64;
 
 /**
- * Utility class for AES encryption and decryption with initialization vectors
+ * Utility class for authenticated encryption and decryption with initialization vectors.
+ * Messages start with a small header naming the {@link CipherSuite} they were encrypted with, so
+ * they decrypt regardless of the suite currently configured; messages written before the header
+ * existed are plain AES-GCM and are still recognized.
  */
 public class EncryptionUtil {
 
-    private static final String ALGORITHM = "AES/GCM/NoPadding";
-    private static final int GCM_IV_LENGTH = 12;
-    private static final int GCM_TAG_LENGTH = 16;
+    private static final int IV_LENGTH = CipherSuite.NONCE_LENGTH;
+    private static final int TAG_LENGTH = CipherSuite.TAG_LENGTH;
+    // Message header: magic byte, format version, suite id. Authenticated as associated data.
+    private static final byte HEADER_MAGIC = (byte) 0xC5;
+    private static final byte HEADER_VERSION = 1;
+    private static final int HEADER_LENGTH = 3;
+    // Segmented streams: 7-byte random prefix + 4-byte segment index + 1-byte final flag = 12-byte nonce
+    private static final int STREAM_NONCE_PREFIX_LENGTH = 7;
+    private static final int DATA_KEY_LENGTH = 32;
     private SecretKeySpec secretKey;
+    // Suite used for new messages and for segments, which carry no header of their own
+    private CipherSuite suite = CipherSuite.AES_GCM;
+    // Key tried when decryption with secretKey fails, e.g. while entries are being re-encrypted under a new key
+    private EncryptionUtil fallback;
 
     /**
-     * Creates a new EncryptionUtil instance with a provided encryption key
+     * Creates a new EncryptionUtil instance with a provided encryption key, encrypting with AES-GCM
      * @param encryptionKey The key to use for encryption/decryption
      * @throws KeyLockerException if initialization fails
      */
     public EncryptionUtil(String encryptionKey) throws KeyLockerException {
+        this(encryptionKey, CipherSuite.AES_GCM);
+    }
+
+    /**
+     * Creates a new EncryptionUtil instance with a provided encryption key and cipher suite
+     * @param encryptionKey The key to use for encryption/decryption
+     * @param suite The cipher suite for new messages and segments
+     * @throws KeyLockerException if initialization fails
+     */
+    public EncryptionUtil(String encryptionKey, CipherSuite suite) throws KeyLockerException {
+        this.suite = suite;
         try {
             // Generate a fixed-length key using the provided encryption key as seed
             byte[] keyBytes = encryptionKey.getBytes(StandardCharsets.UTF_8);
@@ -43,29 +67,86 @@ public class EncryptionUtil {
         }
     }
 
+    private EncryptionUtil(SecretKeySpec secretKey, CipherSuite suite, EncryptionUtil fallback) {
+        this.secretKey = secretKey;
+        this.suite = suite;
+        this.fallback = fallback;
+    }
+
+    /**
+     * Creates an instance over a raw data key, as generated by {@link #generateDataKey()}
+     * @param dataKey 256-bit key; copied, so the caller may wipe it afterwards
+     * @param suite The cipher suite for new messages and segments
+     * @return A new EncryptionUtil instance
+     */
+    public static EncryptionUtil forDataKey(byte[] dataKey, CipherSuite suite) {
+        return new EncryptionUtil(new SecretKeySpec(dataKey, "AES"), suite, null);
+    }
+
+    /**
+     * Generates a random per-entry data key for envelope encryption
+     * @return 256-bit AES key bytes
+     */
+    public static byte[] generateDataKey() {
+        byte[] dataKey = new byte[DATA_KEY_LENGTH];
+        new SecureRandom().nextBytes(dataKey);
+        return dataKey;
+    }
+
+    /**
+     * Creates an instance that encrypts with this key and decrypts with this key or, failing that, the fallback key
+     * @param fallback Key to try when decryption with this key fails
+     * @return A new EncryptionUtil instance
+     */
+    public EncryptionUtil withFallback(EncryptionUtil fallback) {
+        return new EncryptionUtil(secretKey, suite, fallback);
+    }
+
     /**
-     * Encrypts a string using AES/GCM
+     * Creates an instance with the same keys that encrypts with another cipher suite.
+     * Used for segments, whose suite is recorded in the credential's metadata rather than in each segment.
+     * @param suite The cipher suite for new messages and segments
+     * @return A new EncryptionUtil instance, or this one if the suite is unchanged
+     */
+    public EncryptionUtil withSuite(CipherSuite suite) {
+        if (suite == this.suite) {
+            return this;
+        }
+        return new EncryptionUtil(secretKey, suite, fallback == null ? null : fallback.withSuite(suite));
+    }
+
+    /**
+     * Gets the cipher suite used for new messages and segments
+     * @return The cipher suite
+     */
+    public CipherSuite getCipherSuite() {
+        return suite;
+    }
+
+    /**
+     * Encrypts a string with this instance's cipher suite
      * @param plainText The string to encrypt
-     * @return Base64-encoded encrypted string with embedded IV
+     * @return Base64-encoded encrypted string with embedded header and IV
      * @throws KeyLockerException if encryption fails
      */
     public String encrypt(String plainText) throws KeyLockerException {
         try {
             // Generate a random IV
-            byte[] iv = new byte[GCM_IV_LENGTH];
+            byte[] iv = new byte[IV_LENGTH];
             SecureRandom random = new SecureRandom();
             random.nextBytes(iv);
 
-            // Initialize cipher with key and IV
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            cipher.init(Cipher.ENCRYPT_MODE, secretKey, parameterSpec);
+            // Initialize cipher with key and IV, authenticating the header
+            byte[] header = {HEADER_MAGIC, HEADER_VERSION, (byte) suite.getId()};
+            Cipher cipher = suite.newCipher(Cipher.ENCRYPT_MODE, secretKey, iv);
+            cipher.updateAAD(header);
 
             // Encrypt the data
             byte[] encryptedData = cipher.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
 
-            // Combine IV and encrypted data
-            ByteBuffer byteBuffer = ByteBuffer.allocate(iv.length + encryptedData.length);
+            // Combine header, IV and encrypted data
+            ByteBuffer byteBuffer = ByteBuffer.allocate(header.length + iv.length + encryptedData.length);
+            byteBuffer.put(header);
             byteBuffer.put(iv);
             byteBuffer.put(encryptedData);
 
@@ -78,35 +159,193 @@ public class EncryptionUtil {
 
     /**
      * Decrypts a string that was encrypted using the encrypt method
-     * @param encryptedText Base64-encoded encrypted string with embedded IV
+     * @param encryptedText Base64-encoded encrypted string with embedded header and IV
      * @return The decrypted string
      * @throws KeyLockerException if decryption fails
      */
     public String decrypt(String encryptedText) throws KeyLockerException {
+        byte[] decoded;
         try {
-            byte[] decoded = Base64.getDecoder().decode(encryptedText);
+            decoded = Base64.getDecoder().decode(encryptedText);
+        } catch (IllegalArgumentException e) {
+            throw new KeyLockerException("Decryption failed", e);
+        }
+
+        byte[] plainText = new byte[maxPlaintextLength(decoded.length)];
+        try {
+            int length = decrypt(ByteBuffer.wrap(decoded), ByteBuffer.wrap(plainText));
+            return new String(plainText, 0, length, StandardCharsets.UTF_8);
+        } finally {
+            Arrays.fill(plainText, (byte) 0);
+        }
+    }
 
-            // Extract IV and ciphertext
-            ByteBuffer byteBuffer = ByteBuffer.wrap(decoded);
-            byte[] iv = new byte[GCM_IV_LENGTH];
-            byteBuffer.get(iv);
+    /**
+     * Decrypts binary data produced by the encrypt method (after Base64 decoding) straight into a caller-supplied buffer,
+     * so the plaintext never becomes a String
+     * @param encryptedData Buffer holding the header, IV and ciphertext between its position and limit
+     * @param plainOut Buffer receiving the plaintext at its current position
+     * @return Number of plaintext bytes written
+     * @throws KeyLockerException if decryption fails
+     */
+    public int decrypt(ByteBuffer encryptedData, ByteBuffer plainOut) throws KeyLockerException {
+        int encryptedPosition = encryptedData.position();
+        int plainPosition = plainOut.position();
+        try {
+            CipherSuite headerSuite = headerSuite(encryptedData);
+            if (headerSuite != null) {
+                try {
+                    byte[] header = new byte[HEADER_LENGTH];
+                    encryptedData.get(header);
+                    byte[] iv = new byte[IV_LENGTH];
+                    encryptedData.get(iv);
 
-            byte[] cipherText = new byte[byteBuffer.remaining()];
-            byteBuffer.get(cipherText);
+                    Cipher cipher = headerSuite.newCipher(Cipher.DECRYPT_MODE, secretKey, iv);
+                    cipher.updateAAD(header);
+                    return cipher.doFinal(encryptedData, plainOut);
+                } catch (GeneralSecurityException e) {
+                    // May be a headerless message whose random IV happens to start like a header
+                    encryptedData.position(encryptedPosition);
+                    plainOut.position(plainPosition);
+                }
+            }
 
-            // Initialize cipher for decryption
-            Cipher cipher = Cipher.getInstance(ALGORITHM);
-            GCMParameterSpec parameterSpec = new GCMParameterSpec(GCM_TAG_LENGTH * 8, iv);
-            cipher.init(Cipher.DECRYPT_MODE, secretKey, parameterSpec);
+            // Headerless messages predate cipher suites and are always AES-GCM
+            byte[] iv = new byte[IV_LENGTH];
+            encryptedData.get(iv);
 
-            // Decrypt and return as string
-            byte[] plainText = cipher.doFinal(cipherText);
-            return new String(plainText, StandardCharsets.UTF_8);
+            Cipher cipher = CipherSuite.AES_GCM.newCipher(Cipher.DECRYPT_MODE, secretKey, iv);
+            return cipher.doFinal(encryptedData, plainOut);
         } catch (Exception e) {
+            if (fallback != null) {
+                encryptedData.position(encryptedPosition);
+                plainOut.position(plainPosition);
+                return fallback.decrypt(encryptedData, plainOut);
+            }
             throw new KeyLockerException("Decryption failed", e);
         }
     }
 
+    private static CipherSuite headerSuite(ByteBuffer encryptedData) {
+        int position = encryptedData.position();
+        if (encryptedData.remaining() < HEADER_LENGTH + IV_LENGTH + TAG_LENGTH
+                || encryptedData.get(position) != HEADER_MAGIC
+                || encryptedData.get(position + 1) != HEADER_VERSION) {
+            return null;
+        }
+        return CipherSuite.lookup(encryptedData.get(position + 2));
+    }
+
+    /**
+     * Generates a random nonce prefix identifying one segmented stream
+     * @return A new nonce prefix
+     */
+    public static byte[] generateNoncePrefix() {
+        byte[] prefix = new byte[STREAM_NONCE_PREFIX_LENGTH];
+        new SecureRandom().nextBytes(prefix);
+        return prefix;
+    }
+
+    /**
+     * Encrypts one segment of a segmented stream. Each segment is an independent message of this instance's
+     * cipher suite whose
+     * nonce is built STREAM-style from the stream's nonce prefix, the segment index and a final-segment flag,
+     * so segments cannot be reordered, dropped or truncated without failing authentication.
+     * @param noncePrefix The stream's nonce prefix
+     * @param index Segment index
+     * @param last Whether this is the final segment of the stream
+     * @param data Plaintext array
+     * @param offset Offset of the segment in the array
+     * @param length Length of the segment
+     * @return The ciphertext followed by the authentication tag
+     * @throws KeyLockerException if encryption fails
+     */
+    public byte[] encryptSegment(byte[] noncePrefix, int index, boolean last, byte[] data, int offset, int length)
+            throws KeyLockerException {
+        try {
+            Cipher cipher = suite.newCipher(Cipher.ENCRYPT_MODE, secretKey, segmentNonce(noncePrefix, index, last));
+            return cipher.doFinal(data, offset, length);
+        } catch (Exception e) {
+            throw new KeyLockerException("Segment encryption failed", e);
+        }
+    }
+
+    /**
+     * Decrypts one segment produced by encryptSegment
+     * @param noncePrefix The stream's nonce prefix
+     * @param index Segment index
+     * @param last Whether this is the final segment of the stream
+     * @param encryptedData The ciphertext followed by the authentication tag
+     * @return The plaintext segment
+     * @throws KeyLockerException if decryption or authentication fails
+     */
+    public byte[] decryptSegment(byte[] noncePrefix, int index, boolean last, byte[] encryptedData)
+            throws KeyLockerException {
+        try {
+            Cipher cipher = suite.newCipher(Cipher.DECRYPT_MODE, secretKey, segmentNonce(noncePrefix, index, last));
+            return cipher.doFinal(encryptedData);
+        } catch (Exception e) {
+            if (fallback != null) {
+                return fallback.decryptSegment(noncePrefix, index, last, encryptedData);
+            }
+            throw new KeyLockerException("Segment decryption failed", e);
+        }
+    }
+
+    /**
+     * Decrypts one segment produced by encryptSegment straight into a caller-supplied buffer
+     * @param noncePrefix The stream's nonce prefix
+     * @param index Segment index
+     * @param last Whether this is the final segment of the stream
+     * @param encryptedData Buffer holding the ciphertext and tag between its position and limit
+     * @param plainOut Buffer receiving the plaintext at its current position
+     * @return Number of plaintext bytes written
+     * @throws KeyLockerException if decryption or authentication fails
+     */
+    public int decryptSegment(byte[] noncePrefix, int index, boolean last, ByteBuffer encryptedData, ByteBuffer plainOut)
+            throws KeyLockerException {
+        int encryptedPosition = encryptedData.position();
+        int plainPosition = plainOut.position();
+        try {
+            Cipher cipher = suite.newCipher(Cipher.DECRYPT_MODE, secretKey, segmentNonce(noncePrefix, index, last));
+            return cipher.doFinal(encryptedData, plainOut);
+        } catch (Exception e) {
+            if (fallback != null) {
+                encryptedData.position(encryptedPosition);
+                plainOut.position(plainPosition);
+                return fallback.decryptSegment(noncePrefix, index, last, encryptedData, plainOut);
+            }
+            throw new KeyLockerException("Segment decryption failed", e);
+        }
+    }
+
+    /**
+     * Gets the plaintext capacity of a segment whose encrypted form must fit in a given number of bytes
+     * @param encryptedSegmentLength Maximum encrypted segment length
+     * @return Maximum plaintext bytes per segment
+     */
+    public static int segmentPlaintextLength(int encryptedSegmentLength) {
+        return encryptedSegmentLength - TAG_LENGTH;
+    }
+
+    private static byte[] segmentNonce(byte[] noncePrefix, int index, boolean last) {
+        ByteBuffer nonce = ByteBuffer.allocate(IV_LENGTH);
+        nonce.put(noncePrefix, 0, STREAM_NONCE_PREFIX_LENGTH);
+        nonce.putInt(index);
+        nonce.put((byte) (last ? 1 : 0));
+        return nonce.array();
+    }
+
+    /**
+     * Gets the maximum plaintext size for a given amount of encrypted data
+     * @param encryptedLength Length of the header, IV and ciphertext
+     * @return Upper bound of the decrypted size
+     */
+    public static int maxPlaintextLength(int encryptedLength) {
+        // Headerless messages have the least overhead, so they bound both formats
+        return Math.max(0, encryptedLength - IV_LENGTH - TAG_LENGTH);
+    }
+
     /**
      * Generates a random encryption key
      * @return A Base64-encoded random AES key
@@ -0,0 +1,23 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decodes one property straight from its raw JSON value token, as located by {@link JsonFieldScanner#findValue}.
+ * The token usually points into a scratch buffer holding the decrypted payload, which is wiped once the decoder
+ * returns, so decoders must copy out whatever they keep.
+ * @param <T> Decoded value type
+ */
+@FunctionalInterface
+public interface FieldDecoder<T> {
+
+    /**
+     * Decodes a value token
+     * @param token The raw value token (strings keep their quotes and escapes), or null if the property is absent
+     * @return The decoded value, or null if the property is absent or JSON null
+     * @throws KeyLockerException if the token does not hold a value of the expected type
+     */
+    T decode(ByteBuffer token) throws KeyLockerException;
+}
@@ -0,0 +1,281 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Set;
+
+/**
+ * Generation counters shared by every process of the same user on this host, kept in a small memory-mapped file.
+ * Each identifier hashes to one slot; writers bump the slot on every store or removal, and readers validate
+ * cached data with a single volatile read of the slot instead of a round-trip to the credential backend.
+ * Distinct identifiers may share a slot, which only causes extra cache misses.
+ * <p>
+ * Changes are bracketed by {@link #beginWrite} and {@link #endWrite}, which bump the generation and also count the
+ * writers in progress on the slot, so readers can tell a change that is still underway from a settled slot, seqlock
+ * style. A writer that died mid-change stops counting once its lease of {@value #WRITE_LEASE_MILLIS} ms runs out:
+ * the next write on the slot after that resets the count instead of adding to it.
+ * <p>
+ * Any process able to write the file could keep stale cache entries alive, so on POSIX systems the table is only
+ * opened inside a directory that is not a link, is owned by the current user and is accessible to nobody else.
+ */
+public final class GenerationTable implements AutoCloseable {
+
+    private static final int SLOTS = 4096;
+    /** How long a begun write marks its slot as in progress if it never ends */
+    public static final long WRITE_LEASE_MILLIS = 30_000;
+    // The file holds three regions of SLOTS longs: generations, writers in progress, and last write start times
+    private static final int WRITERS = SLOTS * Long.BYTES;
+    private static final int STARTED = 2 * SLOTS * Long.BYTES;
+    private static final Set<OpenOption> OPEN_OPTIONS = Set.of(StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE, LinkOption.NOFOLLOW_LINKS);
+    private static final Set<PosixFilePermission> SHARED_WRITE = Set.of(PosixFilePermission.GROUP_WRITE,
+            PosixFilePermission.OTHERS_WRITE);
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer table;
+
+    private final long writeLeaseMillis;
+
+    private GenerationTable(FileChannel channel, MappedByteBuffer table, long writeLeaseMillis) {
+        this.channel = channel;
+        this.table = table;
+        this.writeLeaseMillis = writeLeaseMillis;
+    }
+
+    /**
+     * Opens (creating if needed) the table shared by all processes of the current user
+     * @return The shared generation table
+     * @throws KeyLockerException if the table file cannot be created or mapped
+     */
+    public static GenerationTable openShared() throws KeyLockerException {
+        Path directory = Path.of(System.getProperty("java.io.tmpdir"), "oskeylocker-" + System.getProperty("user.name"));
+        return open(directory.resolve("generations"));
+    }
+
+    /**
+     * Opens (creating if needed) a generation table backed by the given file
+     * @param file Table file
+     * @return The generation table
+     * @throws KeyLockerException if the file cannot be created or mapped, or its directory or the file itself
+     * is a link, belongs to another user or is open to other users
+     */
+    public static GenerationTable open(Path file) throws KeyLockerException {
+        return open(file, WRITE_LEASE_MILLIS);
+    }
+
+    /**
+     * Opens (creating if needed) a generation table backed by the given file, with a custom write lease
+     * @param file Table file
+     * @param writeLeaseMillis How long a begun write counts as in progress if it never ends
+     * @return The generation table
+     * @throws KeyLockerException if the table cannot be opened, as for {@link #open(Path)}
+     */
+    static GenerationTable open(Path file, long writeLeaseMillis) throws KeyLockerException {
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        FileChannel channel = null;
+        try {
+            Path directory = file.toAbsolutePath().getParent();
+            if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+                if (posix) {
+                    Files.createDirectories(directory,
+                            PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+                } else {
+                    Files.createDirectories(directory);
+                }
+            }
+
+            if (posix) {
+                UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+                        .lookupPrincipalByName(System.getProperty("user.name"));
+                checkDirectory(directory, user);
+                channel = FileChannel.open(file, OPEN_OPTIONS,
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+                checkFile(file, user);
+            } else {
+                channel = FileChannel.open(file, OPEN_OPTIONS);
+            }
+
+            // Mapping past the end grows the file with zeros, so concurrent creators agree on the initial state
+            MappedByteBuffer table = channel.map(FileChannel.MapMode.READ_WRITE, 0, 3L * SLOTS * Long.BYTES);
+            return new GenerationTable(channel, table, writeLeaseMillis);
+        } catch (IOException | UnsupportedOperationException | KeyLockerException e) {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // Failing anyway
+                }
+            }
+            if (e instanceof KeyLockerException keyLockerException) {
+                throw keyLockerException;
+            }
+            throw new KeyLockerException("Failed to open generation table: " + file, e);
+        }
+    }
+
+    private static void checkDirectory(Path directory, UserPrincipal user) throws IOException, KeyLockerException {
+        PosixFileAttributes attributes = Files.readAttributes(directory, PosixFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory()) {
+            throw new KeyLockerException("Generation table directory is not a directory: " + directory);
+        }
+        if (!attributes.owner().equals(user)) {
+            throw new KeyLockerException("Generation table directory " + directory + " belongs to "
+                    + attributes.owner().getName() + ", not " + user.getName());
+        }
+        if (!attributes.permissions().equals(PosixFilePermissions.fromString("rwx------"))) {
+            throw new KeyLockerException("Generation table directory " + directory + " has mode "
+                    + PosixFilePermissions.toString(attributes.permissions()) + ", expected rwx------");
+        }
+    }
+
+    private static void checkFile(Path file, UserPrincipal user) throws IOException, KeyLockerException {
+        PosixFileAttributes attributes = Files.readAttributes(file, PosixFileAttributes.class,
+                LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isRegularFile()) {
+            throw new KeyLockerException("Generation table is not a regular file: " + file);
+        }
+        if (!attributes.owner().equals(user)) {
+            throw new KeyLockerException("Generation table " + file + " belongs to " + attributes.owner().getName()
+                    + ", not " + user.getName());
+        }
+        if (attributes.permissions().stream().anyMatch(SHARED_WRITE::contains)) {
+            throw new KeyLockerException("Generation table " + file + " is writable by other users");
+        }
+    }
+
+    /**
+     * Reads the current generation of an identifier
+     * @param name Identifier, including any application prefix
+     * @return The generation of the identifier's slot
+     */
+    public long get(String name) {
+        return (long) LONGS.getVolatile(table, offset(name));
+    }
+
+    /**
+     * Bumps the generation of an identifier, invalidating data cached under earlier generations in every process
+     * @param name Identifier, including any application prefix
+     * @return The new generation
+     */
+    public long bump(String name) {
+        return (long) LONGS.getAndAdd(table, offset(name), 1L) + 1L;
+    }
+
+    /**
+     * Marks an identifier as being changed and bumps its generation. Every call must be followed by
+     * {@link #endWrite}, also when the change fails.
+     * @param name Identifier, including any application prefix
+     * @return The new generation
+     */
+    public long beginWrite(String name) {
+        int offset = offset(name);
+        long now = System.currentTimeMillis();
+        long writers = (long) LONGS.getVolatile(table, WRITERS + offset);
+        if (writers != 0 && now - (long) LONGS.getVolatile(table, STARTED + offset) >= writeLeaseMillis) {
+            // Writers counted since the lease ran out died mid-change; a live one ending later cannot go below zero
+            LONGS.compareAndSet(table, WRITERS + offset, writers, 0L);
+        }
+        LONGS.getAndAdd(table, WRITERS + offset, 1L);
+        LONGS.setVolatile(table, STARTED + offset, now);
+        return (long) LONGS.getAndAdd(table, offset, 1L) + 1L;
+    }
+
+    /**
+     * Bumps the generation of an identifier once its change is complete and ends the write begun before
+     * @param name Identifier, including any application prefix
+     * @return The new generation
+     */
+    public long endWrite(String name) {
+        int offset = offset(name);
+        long generation = (long) LONGS.getAndAdd(table, offset, 1L) + 1L;
+        long writers;
+        do {
+            writers = (long) LONGS.getVolatile(table, WRITERS + offset);
+        } while (writers > 0 && !LONGS.compareAndSet(table, WRITERS + offset, writers, writers - 1));
+        return generation;
+    }
+
+    /**
+     * Extends the lease of a write in progress on an identifier's slot, for changes that can outlast it, such as a
+     * streamed write. Does nothing if no write is in progress.
+     * @param name Identifier, including any application prefix
+     */
+    public void renewWrite(String name) {
+        int offset = offset(name);
+        if ((long) LONGS.getVolatile(table, WRITERS + offset) > 0) {
+            LONGS.setVolatile(table, STARTED + offset, System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * Checks whether a change to an identifier's slot has begun and not yet ended. Readers validating data against
+     * a generation must check this before reading the generation again: a writer ends by bumping the generation
+     * first, so if it is no longer counted here the bump is already visible.
+     * @param name Identifier, including any application prefix
+     * @return true while a write on the slot is in progress and within its lease
+     */
+    public boolean isWriting(String name) {
+        int offset = offset(name);
+        if ((long) LONGS.getVolatile(table, WRITERS + offset) <= 0) {
+            return false;
+        }
+        return System.currentTimeMillis() - (long) LONGS.getVolatile(table, STARTED + offset) < writeLeaseMillis;
+    }
+
+    /**
+     * Copies the generation of every slot, so callers can later tell whether an identifier's slot has changed
+     * @return The current generations, indexed by {@link #slot(String)}
+     */
+    public long[] snapshot() {
+        long[] generations = new long[SLOTS];
+        for (int i = 0; i < SLOTS; i++) {
+            generations[i] = (long) LONGS.getVolatile(table, i * Long.BYTES);
+        }
+        return generations;
+    }
+
+    /**
+     * Gets the slot an identifier maps to
+     * @param name Identifier, including any application prefix
+     * @return Slot index
+     */
+    public static int slot(String name) {
+        return offset(name) / Long.BYTES;
+    }
+
+    private static int offset(String name) {
+        int hash = name.hashCode();
+        hash ^= hash >>> 16;
+        return (hash & (SLOTS - 1)) * Long.BYTES;
+    }
+
+    /**
+     * Closes the table file. The mapping itself stays valid until it is garbage collected.
+     */
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // Nothing to recover, the mapping stays usable
+        }
+    }
+}
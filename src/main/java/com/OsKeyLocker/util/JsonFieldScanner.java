@@ -0,0 +1,329 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Locates single top-level fields in serialized UTF-8 JSON without building a JSONObject.
+ * Lets readers pull one value out of a decrypted payload without materializing every other value as a String.
+ */
+public final class JsonFieldScanner {
+
+    private JsonFieldScanner() {}
+
+    /**
+     * Finds a top-level field of a JSON object
+     * @param json Buffer holding a serialized JSON object between 0 and its limit
+     * @param field Field name to look for
+     * @return A view over the raw value token (strings keep their quotes and escapes), or null if the field is absent
+     * @throws KeyLockerException if the JSON is malformed
+     */
+    public static ByteBuffer findValue(ByteBuffer json, String field) throws KeyLockerException {
+        byte[] fieldBytes = field.getBytes(StandardCharsets.UTF_8);
+        int limit = json.limit();
+        int pos = skipWhitespace(json, 0, limit);
+
+        if (pos >= limit || json.get(pos) != '{') {
+            throw new KeyLockerException("Malformed credential payload: expected a JSON object");
+        }
+        pos++;
+
+        while (true) {
+            pos = skipWhitespace(json, pos, limit);
+            if (pos >= limit) {
+                throw new KeyLockerException("Malformed credential payload: unterminated object");
+            }
+            if (json.get(pos) == '}') {
+                return null;
+            }
+            if (json.get(pos) == ',') {
+                pos = skipWhitespace(json, pos + 1, limit);
+            }
+
+            int keyEnd = skipString(json, pos, limit);
+            boolean matches = keyEquals(json, pos, keyEnd, fieldBytes);
+
+            pos = skipWhitespace(json, keyEnd, limit);
+            if (pos >= limit || json.get(pos) != ':') {
+                throw new KeyLockerException("Malformed credential payload: expected ':'");
+            }
+            pos = skipWhitespace(json, pos + 1, limit);
+
+            int valueEnd = skipValue(json, pos, limit);
+            if (matches) {
+                return json.slice(pos, valueEnd - pos);
+            }
+            pos = valueEnd;
+        }
+    }
+
+    /**
+     * Checks whether a value token returned by {@link #findValue} is a JSON string
+     * @param token The value token
+     * @return true if the token is a quoted string
+     */
+    public static boolean isString(ByteBuffer token) {
+        return token.limit() > 0 && token.get(0) == '"';
+    }
+
+    /**
+     * Copies a field value into an off-heap secret buffer. Strings are unescaped straight into
+     * the secret buffer; other values (numbers, booleans) are copied as their literal text.
+     * @param json Buffer holding a serialized JSON object
+     * @param field Field name to extract
+     * @return The value as a secret buffer, or null if the field is absent or JSON null
+     * @throws KeyLockerException if the JSON is malformed
+     */
+    public static SecretBuffer readSecret(ByteBuffer json, String field) throws KeyLockerException {
+        return secretOf(findValue(json, field));
+    }
+
+    /**
+     * Copies a value token into an off-heap secret buffer, unescaping strings straight into it
+     * @param token A value token returned by {@link #findValue}, or null
+     * @return The value as a secret buffer, or null if the token is null or JSON null
+     * @throws KeyLockerException if an escape sequence is malformed
+     */
+    public static SecretBuffer secretOf(ByteBuffer token) throws KeyLockerException {
+        if (token == null || isNull(token)) {
+            return null;
+        }
+        if (!isString(token)) {
+            return SecretBuffer.copyOf(token);
+        }
+
+        ByteBuffer target = ByteBuffer.allocateDirect(unescapedLength(token));
+        unescape(token, target);
+        target.flip();
+        return SecretBuffer.wrap(target);
+    }
+
+    /**
+     * Computes the UTF-8 length of a string token once its escapes are resolved
+     * @param token A quoted string token
+     * @return Number of bytes {@link #unescape} will write
+     * @throws KeyLockerException if an escape sequence is malformed
+     */
+    public static int unescapedLength(ByteBuffer token) throws KeyLockerException {
+        int length = 0;
+        int end = token.limit() - 1;
+        int i = 1;
+        while (i < end) {
+            byte b = token.get(i);
+            if (b != '\\') {
+                length++;
+                i++;
+            } else if (token.get(i + 1) != 'u') {
+                length++;
+                i += 2;
+            } else {
+                int codePoint = readCodePoint(token, i, end);
+                length += utf8Length(codePoint);
+                i += Character.isSupplementaryCodePoint(codePoint) ? 12 : 6;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Writes the unescaped UTF-8 content of a string token into a target buffer
+     * @param token A quoted string token
+     * @param target Buffer to write into, at its current position
+     * @throws KeyLockerException if an escape sequence is malformed
+     */
+    public static void unescape(ByteBuffer token, ByteBuffer target) throws KeyLockerException {
+        int end = token.limit() - 1;
+        int i = 1;
+        while (i < end) {
+            byte b = token.get(i);
+            if (b != '\\') {
+                target.put(b);
+                i++;
+                continue;
+            }
+
+            byte escaped = token.get(i + 1);
+            switch (escaped) {
+                case '"', '\\', '/' -> target.put(escaped);
+                case 'b' -> target.put((byte) '\b');
+                case 'f' -> target.put((byte) '\f');
+                case 'n' -> target.put((byte) '\n');
+                case 'r' -> target.put((byte) '\r');
+                case 't' -> target.put((byte) '\t');
+                case 'u' -> {
+                    int codePoint = readCodePoint(token, i, end);
+                    putUtf8(target, codePoint);
+                    i += Character.isSupplementaryCodePoint(codePoint) ? 12 : 6;
+                    continue;
+                }
+                default -> throw new KeyLockerException("Malformed credential payload: invalid escape sequence");
+            }
+            i += 2;
+        }
+    }
+
+    /**
+     * Checks whether a value token returned by {@link #findValue} is JSON null
+     * @param token The value token
+     * @return true if the token is the null literal
+     */
+    public static boolean isNull(ByteBuffer token) {
+        return token.limit() == 4 && token.get(0) == 'n';
+    }
+
+    private static boolean keyEquals(ByteBuffer json, int start, int end, byte[] fieldBytes) throws KeyLockerException {
+        ByteBuffer key = json.slice(start, end - start);
+        boolean escaped = false;
+        for (int i = 1; i < key.limit() - 1; i++) {
+            if (key.get(i) == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+
+        if (!escaped) {
+            if (key.limit() - 2 != fieldBytes.length) {
+                return false;
+            }
+            for (int i = 0; i < fieldBytes.length; i++) {
+                if (key.get(i + 1) != fieldBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        // Keys are not secret, so the rare escaped key is simply decoded on the heap
+        ByteBuffer decoded = ByteBuffer.allocate(unescapedLength(key));
+        unescape(key, decoded);
+        return decoded.flip().equals(ByteBuffer.wrap(fieldBytes));
+    }
+
+    private static int skipWhitespace(ByteBuffer json, int pos, int limit) {
+        while (pos < limit) {
+            byte b = json.get(pos);
+            if (b != ' ' && b != '\t' && b != '\n' && b != '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int skipString(ByteBuffer json, int pos, int limit) throws KeyLockerException {
+        if (pos >= limit || json.get(pos) != '"') {
+            throw new KeyLockerException("Malformed credential payload: expected a string");
+        }
+        pos++;
+        while (pos < limit) {
+            byte b = json.get(pos);
+            if (b == '\\') {
+                pos += 2;
+            } else if (b == '"') {
+                return pos + 1;
+            } else {
+                pos++;
+            }
+        }
+        throw new KeyLockerException("Malformed credential payload: unterminated string");
+    }
+
+    private static int skipValue(ByteBuffer json, int pos, int limit) throws KeyLockerException {
+        if (pos >= limit) {
+            throw new KeyLockerException("Malformed credential payload: missing value");
+        }
+
+        byte first = json.get(pos);
+        if (first == '"') {
+            return skipString(json, pos, limit);
+        }
+
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            while (pos < limit) {
+                byte b = json.get(pos);
+                if (b == '"') {
+                    pos = skipString(json, pos, limit);
+                    continue;
+                }
+                if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                    if (depth == 0) {
+                        return pos + 1;
+                    }
+                }
+                pos++;
+            }
+            throw new KeyLockerException("Malformed credential payload: unterminated value");
+        }
+
+        while (pos < limit) {
+            byte b = json.get(pos);
+            if (b == ',' || b == '}' || b == ']' || b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+                break;
+            }
+            pos++;
+        }
+        return pos;
+    }
+
+    private static int readCodePoint(ByteBuffer token, int escapeStart, int end) throws KeyLockerException {
+        char high = readHex(token, escapeStart, end);
+        if (Character.isHighSurrogate(high) && escapeStart + 12 <= end
+                && token.get(escapeStart + 6) == '\\' && token.get(escapeStart + 7) == 'u') {
+            char low = readHex(token, escapeStart + 6, end);
+            if (Character.isLowSurrogate(low)) {
+                return Character.toCodePoint(high, low);
+            }
+        }
+        return Character.isSurrogate(high) ? 0xFFFD : high;
+    }
+
+    private static char readHex(ByteBuffer token, int escapeStart, int end) throws KeyLockerException {
+        if (escapeStart + 6 > end) {
+            throw new KeyLockerException("Malformed credential payload: truncated unicode escape");
+        }
+        int value = 0;
+        for (int i = escapeStart + 2; i < escapeStart + 6; i++) {
+            int digit = Character.digit(token.get(i), 16);
+            if (digit < 0) {
+                throw new KeyLockerException("Malformed credential payload: invalid unicode escape");
+            }
+            value = (value << 4) | digit;
+        }
+        return (char) value;
+    }
+
+    private static int utf8Length(int codePoint) {
+        if (codePoint < 0x80) {
+            return 1;
+        } else if (codePoint < 0x800) {
+            return 2;
+        } else if (codePoint < 0x10000) {
+            return 3;
+        }
+        return 4;
+    }
+
+    private static void putUtf8(ByteBuffer target, int codePoint) {
+        if (codePoint < 0x80) {
+            target.put((byte) codePoint);
+        } else if (codePoint < 0x800) {
+            target.put((byte) (0xC0 | (codePoint >> 6)));
+            target.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            target.put((byte) (0xE0 | (codePoint >> 12)));
+            target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            target.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            target.put((byte) (0xF0 | (codePoint >> 18)));
+            target.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            target.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            target.put((byte) (0x80 | (codePoint & 0x3F)));
+        }
+    }
+}
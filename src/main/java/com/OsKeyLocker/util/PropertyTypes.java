@@ -0,0 +1,252 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.json.JSONObject;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Typed property values. JSON has no binary or timestamp type and no fixed integer width, so typed writes
+ * store bytes as Base64 and instants as ISO-8601 text, and record each typed property's type in a reserved
+ * {@value #TYPES_FIELD} map next to the values. Whole-credential reads use that map to hand back
+ * Long, byte[] and Instant values; typed single-property reads decode the value token directly.
+ */
+public final class PropertyTypes {
+
+    /** Reserved property holding the type of every typed property */
+    public static final String TYPES_FIELD = "__types";
+    /** Reserved property holding the expiry of a credential written with a TTL, in epoch milliseconds */
+    public static final String EXPIRES_FIELD = "__expiresAt";
+
+    public static final String LONG = "long";
+    public static final String BOOLEAN = "boolean";
+    public static final String BYTES = "bytes";
+    public static final String INSTANT = "instant";
+
+    private static final byte[] TRUE = "true".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] FALSE = "false".getBytes(StandardCharsets.US_ASCII);
+
+    /** Decodes a string property; values of other types are returned as their JSON literal */
+    public static final FieldDecoder<String> STRING_DECODER = PropertyTypes::decodeString;
+    /** Decodes an integer property, stored as a JSON number or numeric string, without going through BigDecimal */
+    public static final FieldDecoder<Long> LONG_DECODER = PropertyTypes::decodeLong;
+    /** Decodes a boolean property, stored as a JSON boolean or "true"/"false" string */
+    public static final FieldDecoder<Boolean> BOOLEAN_DECODER = PropertyTypes::decodeBoolean;
+    /** Decodes a binary property stored as Base64 text */
+    public static final FieldDecoder<byte[]> BYTES_DECODER = PropertyTypes::decodeBytes;
+    /** Decodes an instant stored as ISO-8601 text or as epoch milliseconds */
+    public static final FieldDecoder<Instant> INSTANT_DECODER = PropertyTypes::decodeInstant;
+
+    private PropertyTypes() {}
+
+    /**
+     * Checks that none of the given property names is one the library reserves for itself
+     * @param names Property names to store
+     * @throws KeyLockerException if a name is reserved
+     */
+    public static void checkNames(Collection<String> names) throws KeyLockerException {
+        for (String reserved : new String[]{TYPES_FIELD, EXPIRES_FIELD}) {
+            if (names.contains(reserved)) {
+                throw new KeyLockerException("Property name is reserved: " + reserved);
+            }
+        }
+    }
+
+    /**
+     * Encodes binary data for storage
+     * @param value Binary value
+     * @return Base64 text
+     */
+    public static String encodeBytes(byte[] value) {
+        return Base64.getEncoder().encodeToString(value);
+    }
+
+    /**
+     * Encodes an instant for storage
+     * @param value Instant value
+     * @return ISO-8601 text
+     */
+    public static String encodeInstant(Instant value) {
+        return value.toString();
+    }
+
+    /**
+     * Converts stored properties to their Java types using the recorded types, and drops the reserved properties
+     * @param stored Properties as read from storage
+     * @return A new map of typed properties
+     * @throws KeyLockerException if a typed property does not hold a value of its recorded type
+     */
+    public static Map<String, Object> decode(Map<String, Object> stored) throws KeyLockerException {
+        Map<String, Object> types = typesOf(stored);
+        Map<String, Object> result = new HashMap<>(stored);
+        result.remove(TYPES_FIELD);
+        result.remove(EXPIRES_FIELD);
+
+        for (Map.Entry<String, Object> type : types.entrySet()) {
+            Object value = result.get(type.getKey());
+            if (value == null || value == JSONObject.NULL) {
+                continue;
+            }
+
+            try {
+                Object typed = switch (String.valueOf(type.getValue())) {
+                    case LONG -> value instanceof Number number ? number.longValue() : Long.parseLong(value.toString());
+                    case BOOLEAN -> value instanceof Boolean ? value : Boolean.parseBoolean(value.toString());
+                    case BYTES -> Base64.getDecoder().decode(value.toString());
+                    case INSTANT -> Instant.parse(value.toString());
+                    default -> value;
+                };
+                result.put(type.getKey(), typed);
+            } catch (IllegalArgumentException | DateTimeException e) {
+                throw new KeyLockerException("Property " + type.getKey() + " is not a valid " + type.getValue(), e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Merges properties into pending properties, keeping the recorded types consistent:
+     * a property overwritten by an untyped value loses its recorded type, and the latest write's expiry applies
+     * @param target Properties to merge into
+     * @param source Properties to merge
+     */
+    public static void merge(Map<String, Object> target, Map<String, Object> source) {
+        Map<String, Object> types = typesOf(target);
+        types.keySet().removeAll(source.keySet());
+        types.putAll(typesOf(source));
+
+        target.putAll(source);
+        if (!source.containsKey(EXPIRES_FIELD)) {
+            target.remove(EXPIRES_FIELD);
+        }
+        if (types.isEmpty()) {
+            target.remove(TYPES_FIELD);
+        } else {
+            target.put(TYPES_FIELD, types);
+        }
+    }
+
+    private static Map<String, Object> typesOf(Map<String, Object> properties) {
+        Object types = properties.get(TYPES_FIELD);
+        if (types instanceof JSONObject json) {
+            return json.toMap();
+        }
+        if (types instanceof Map<?, ?> map) {
+            Map<String, Object> copy = new HashMap<>();
+            map.forEach((key, value) -> copy.put(String.valueOf(key), value));
+            return copy;
+        }
+        return new HashMap<>();
+    }
+
+    private static String decodeString(ByteBuffer token) throws KeyLockerException {
+        if (isAbsent(token)) {
+            return null;
+        }
+        if (!JsonFieldScanner.isString(token)) {
+            return StandardCharsets.UTF_8.decode(token.duplicate()).toString();
+        }
+
+        ByteBuffer text = ByteBuffer.allocate(JsonFieldScanner.unescapedLength(token));
+        JsonFieldScanner.unescape(token, text);
+        return new String(text.array(), StandardCharsets.UTF_8);
+    }
+
+    private static Long decodeLong(ByteBuffer token) throws KeyLockerException {
+        if (isAbsent(token)) {
+            return null;
+        }
+
+        int start = 0;
+        int end = token.limit();
+        if (JsonFieldScanner.isString(token)) {
+            start++;
+            end--;
+        }
+        boolean negative = start < end && token.get(start) == '-';
+        if (negative) {
+            start++;
+        }
+        if (start >= end) {
+            throw new KeyLockerException("Property is not an integer");
+        }
+
+        // Accumulated as a negative number so Long.MIN_VALUE parses without overflow
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = token.get(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new KeyLockerException("Property is not an integer");
+            }
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw new KeyLockerException("Property is out of range for a long");
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative && value == Long.MIN_VALUE) {
+            throw new KeyLockerException("Property is out of range for a long");
+        }
+        return negative ? value : -value;
+    }
+
+    private static Boolean decodeBoolean(ByteBuffer token) throws KeyLockerException {
+        if (isAbsent(token)) {
+            return null;
+        }
+
+        ByteBuffer literal = JsonFieldScanner.isString(token) ? token.slice(1, token.limit() - 2) : token;
+        if (literal.equals(ByteBuffer.wrap(TRUE))) {
+            return Boolean.TRUE;
+        }
+        if (literal.equals(ByteBuffer.wrap(FALSE))) {
+            return Boolean.FALSE;
+        }
+        throw new KeyLockerException("Property is not a boolean");
+    }
+
+    private static byte[] decodeBytes(ByteBuffer token) throws KeyLockerException {
+        if (isAbsent(token)) {
+            return null;
+        }
+        if (!JsonFieldScanner.isString(token)) {
+            throw new KeyLockerException("Property is not binary data");
+        }
+
+        byte[] text = new byte[JsonFieldScanner.unescapedLength(token)];
+        try {
+            JsonFieldScanner.unescape(token, ByteBuffer.wrap(text));
+            return Base64.getDecoder().decode(text);
+        } catch (IllegalArgumentException e) {
+            throw new KeyLockerException("Property is not valid Base64", e);
+        } finally {
+            Arrays.fill(text, (byte) 0);
+        }
+    }
+
+    private static Instant decodeInstant(ByteBuffer token) throws KeyLockerException {
+        if (isAbsent(token)) {
+            return null;
+        }
+        if (!JsonFieldScanner.isString(token)) {
+            return Instant.ofEpochMilli(decodeLong(token));
+        }
+
+        try {
+            return Instant.parse(decodeString(token));
+        } catch (DateTimeException e) {
+            throw new KeyLockerException("Property is not an ISO-8601 instant", e);
+        }
+    }
+
+    private static boolean isAbsent(ByteBuffer token) {
+        return token == null || JsonFieldScanner.isNull(token);
+    }
+}
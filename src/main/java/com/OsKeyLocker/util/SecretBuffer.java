@@ -0,0 +1,168 @@
+package com.OsKeyLocker.util;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Off-heap holder for a single decrypted secret value.
+ * The bytes live in a direct buffer outside the Java heap and are overwritten with zeros
+ * when the buffer is closed, instead of lingering as immutable Strings until the next GC.
+ */
+public final class SecretBuffer implements AutoCloseable {
+
+    private static final byte[] ZEROS = new byte[512];
+
+    private final ByteBuffer buffer;
+    private volatile boolean closed = false;
+
+    private SecretBuffer(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Copies the remaining bytes of the given buffer into a new off-heap secret buffer.
+     * The source buffer is left untouched; callers are expected to wipe it themselves.
+     * @param source Buffer holding the secret bytes between its position and limit
+     * @return A new secret buffer holding a copy of the bytes
+     */
+    public static SecretBuffer copyOf(ByteBuffer source) {
+        ByteBuffer target = ByteBuffer.allocateDirect(source.remaining());
+        target.put(source.duplicate());
+        target.flip();
+        return new SecretBuffer(target);
+    }
+
+    /**
+     * Takes ownership of an already filled direct buffer
+     * @param direct Direct buffer holding the secret between 0 and its limit
+     * @return A secret buffer wrapping the given buffer
+     */
+    static SecretBuffer wrap(ByteBuffer direct) {
+        return new SecretBuffer(direct);
+    }
+
+    /**
+     * Gets the length of the secret in bytes
+     * @return Number of bytes held by this buffer
+     */
+    public int length() {
+        ensureOpen();
+        return buffer.limit();
+    }
+
+    /**
+     * Reads a single byte of the secret
+     * @param index Byte index, from 0 to length() - 1
+     * @return The byte at the given index
+     */
+    public byte byteAt(int index) {
+        ensureOpen();
+        return buffer.get(index);
+    }
+
+    /**
+     * Copies part of the secret into a caller-owned array
+     * @param srcOffset Offset in the secret to start copying from
+     * @param dst Destination array
+     * @param dstOffset Offset in the destination array
+     * @param length Number of bytes to copy
+     */
+    public void copyTo(int srcOffset, byte[] dst, int dstOffset, int length) {
+        ensureOpen();
+        buffer.get(srcOffset, dst, dstOffset, length);
+    }
+
+    /**
+     * Copies the secret into a new heap array. The caller owns the copy and should wipe it after use.
+     * @return The secret bytes
+     */
+    public byte[] toByteArray() {
+        byte[] copy = new byte[length()];
+        copyTo(0, copy, 0, copy.length);
+        return copy;
+    }
+
+    /**
+     * Decodes the secret as UTF-8 into a new char array. The caller owns the copy and should wipe it after use.
+     * @return The secret characters
+     */
+    public char[] toCharArray() {
+        ensureOpen();
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer chars = CharBuffer.allocate(buffer.limit());
+        decoder.decode(buffer.duplicate(), chars, true);
+        decoder.flush(chars);
+
+        char[] result = new char[chars.position()];
+        chars.flip().get(result);
+        chars.clear();
+        while (chars.hasRemaining()) {
+            chars.put('\0');
+        }
+        return result;
+    }
+
+    /**
+     * Gets a read-only view of the secret, valid until this buffer is closed
+     * @return Read-only buffer over the secret bytes
+     */
+    public ByteBuffer asReadOnlyBuffer() {
+        ensureOpen();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Overwrites the secret with zeros. The buffer cannot be read afterwards.
+     */
+    public void wipe() {
+        if (!closed) {
+            closed = true;
+            zeroize(buffer, 0, buffer.capacity());
+        }
+    }
+
+    /**
+     * Wipes the secret, same as {@link #wipe()}
+     */
+    @Override
+    public void close() {
+        wipe();
+    }
+
+    /**
+     * Checks whether this buffer has been wiped
+     * @return true if the secret is no longer readable
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Overwrites a region of a buffer with zeros, without touching its position or limit
+     * @param target Buffer to clear
+     * @param from Start index, inclusive
+     * @param to End index, exclusive
+     */
+    public static void zeroize(ByteBuffer target, int from, int to) {
+        ByteBuffer view = target.duplicate().clear();
+        for (int i = from; i < to; i += ZEROS.length) {
+            view.put(i, ZEROS, 0, Math.min(ZEROS.length, to - i));
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Secret buffer has been wiped");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SecretBuffer[" + (closed ? "wiped" : buffer.limit() + " bytes") + "]";
+    }
+}
@@ -0,0 +1,63 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.platform.ChunkedKeyLockerStorage;
+import com.OsKeyLocker.platform.memory.MemoryCredentialManager;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialReaperTest {
+
+    @Test
+    void expiredCredentialIsDeletedWithItsChunks() throws Exception {
+        SmallEntryCredentialManager manager = new SmallEntryCredentialManager();
+        ChunkedKeyLockerStorage storage = new ChunkedKeyLockerStorage(manager, "Test") {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+        };
+        storage.initialize("reaper-test", "reaper-test-key");
+
+        JSONObject credential = new JSONObject().put("certificate", "x".repeat(5000));
+        storage.storeJsonCredential("live", credential, System.currentTimeMillis() + 60_000);
+        List<String> live = manager.rawNames();
+        storage.storeJsonCredential("expired", credential, System.currentTimeMillis() - 1);
+        assertTrue(manager.rawNames().size() > live.size() + 2, manager.rawNames().toString());
+
+        // The first sweep starts right away; the interval only spaces later ones
+        CredentialReaper reaper = new CredentialReaper(storage, 60_000);
+        try {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!manager.rawNames().equals(live) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        } finally {
+            reaper.close();
+        }
+
+        assertEquals(live, manager.rawNames());
+        assertFalse(storage.credentialExists("expired"));
+        assertTrue(storage.retrieveJsonCredential("live").isPresent());
+    }
+
+    /**
+     * In-memory credential manager with small raw entries, so a credential spans several chunks
+     */
+    private static final class SmallEntryCredentialManager extends MemoryCredentialManager {
+
+        @Override
+        protected int getMaxCredentialSize() {
+            return 1024;
+        }
+
+        List<String> rawNames() {
+            return listRawCredentials("OsKeyLocker.reaper-test.").stream().sorted().toList();
+        }
+    }
+}
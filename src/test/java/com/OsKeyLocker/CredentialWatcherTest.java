@@ -0,0 +1,84 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.platform.KeyLocker;
+import com.OsKeyLocker.platform.file.FileSecureStorage;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialWatcherTest {
+
+    private static final long INTERVAL_MILLIS = 60_000;
+
+    @Test
+    void listenerErrorDoesNotStopTheWatch() throws Exception {
+        String storageKey = "watched-" + UUID.randomUUID();
+        LinkedBlockingQueue<Boolean> changes = new LinkedBlockingQueue<>();
+
+        KeyLocker.Watch watch = KeyLockerStore.watch(storageKey, (identifier, exists) -> {
+            changes.add(exists);
+            throw new AssertionError("Listener failure");
+        }, INTERVAL_MILLIS);
+        try {
+            store(storageKey, "first");
+            assertEquals(Boolean.TRUE, changes.poll(5, TimeUnit.SECONDS));
+
+            new KeyLockerStore().setStorageKey(storageKey).remove();
+            assertEquals(Boolean.FALSE, changes.poll(5, TimeUnit.SECONDS));
+        } finally {
+            watch.close();
+        }
+    }
+
+    @Test
+    void closedWatchIsNotNotified() throws Exception {
+        String storageKey = "closed-" + UUID.randomUUID();
+        LinkedBlockingQueue<Boolean> changes = new LinkedBlockingQueue<>();
+
+        KeyLockerStore.watch(storageKey, (identifier, exists) -> changes.add(exists), INTERVAL_MILLIS).close();
+        store(storageKey, "value");
+
+        assertNull(changes.poll(500, TimeUnit.MILLISECONDS));
+        new KeyLockerStore().setStorageKey(storageKey).remove();
+    }
+
+    @Test
+    void fileVaultChangeByAnotherProcessIsSeenBeforeNextPoll() throws Exception {
+        String storageKey = "external-" + UUID.randomUUID();
+        store(storageKey, "value");
+        LinkedBlockingQueue<Boolean> changes = new LinkedBlockingQueue<>();
+
+        KeyLocker.Watch watch = KeyLockerStore.watch(storageKey, (identifier, exists) -> changes.add(exists),
+                INTERVAL_MILLIS);
+        try {
+            // Another process removes the entry's files; nothing in this process signals the change
+            Path vault = Path.of(System.getProperty(FileSecureStorage.DIRECTORY_PROPERTY));
+            int removed = 0;
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(vault, "*" + storageKey + "*")) {
+                for (Path file : files) {
+                    Files.delete(file);
+                    removed++;
+                }
+            }
+            assertTrue(removed > 0, "no vault files for " + storageKey);
+
+            assertEquals(Boolean.FALSE, changes.poll(5, TimeUnit.SECONDS));
+        } finally {
+            watch.close();
+        }
+    }
+
+    private static void store(String storageKey, String value) throws Exception {
+        new KeyLockerStore().setStorageKey(storageKey).setProperties(Map.of("value", value)).store();
+    }
+}
@@ -0,0 +1,178 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.GenerationTable;
+import com.OsKeyLocker.util.SecretBuffer;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyLockerStoreTest {
+
+    @Test
+    void operationsUnderDifferentKeysRunConcurrently() throws Exception {
+        String run = UUID.randomUUID().toString();
+        int threads = 8;
+
+        List<Callable<Void>> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String encryptionKey = "key-" + t + "-" + run;
+            String storageKey = "concurrent-" + t + "-" + run;
+            workers.add(() -> {
+                for (int i = 0; i < 50; i++) {
+                    new KeyLockerStore().setEncryptionKey(encryptionKey).setStorageKey(storageKey)
+                            .setProperties(Map.of("value", encryptionKey + "/" + i)).store();
+                    Map<String, Object> read = new KeyLockerStore().setEncryptionKey(encryptionKey)
+                            .setStorageKey(storageKey).find().orElseThrow();
+                    assertEquals(encryptionKey + "/" + i, read.get("value"));
+                }
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> result : executor.invokeAll(workers)) {
+                result.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        // Each credential is only readable under the key it was written with
+        String otherKey = "key-1-" + run;
+        KeyLockerStore wrongKey = new KeyLockerStore().setEncryptionKey(otherKey).setStorageKey("concurrent-0-" + run);
+        assertThrows(Exception.class, wrongKey::find);
+        for (int t = 0; t < threads; t++) {
+            new KeyLockerStore().setEncryptionKey("key-" + t + "-" + run).setStorageKey("concurrent-" + t + "-" + run)
+                    .remove();
+        }
+    }
+
+    @Test
+    void findTellsMissingFromEmptyWithoutThrowing() throws Exception {
+        String run = UUID.randomUUID().toString();
+        String key = "find-key-" + run;
+        KeyLockerStore missing = new KeyLockerStore().setEncryptionKey(key).setStorageKey("find-missing-" + run);
+        KeyLockerStore empty = new KeyLockerStore().setEncryptionKey(key).setStorageKey("find-empty-" + run);
+        // store() refuses an empty credential, but one can reach storage directly, e.g. through replication
+        KeyLockerStore.persist(key, "find-empty-" + run, Map.of());
+        try {
+            assertEquals(Optional.empty(), missing.find());
+            assertEquals(Optional.of(Map.of()), empty.find());
+
+            Queue<String> throwing = new ConcurrentLinkedQueue<>();
+            try (RecordingStream recording = new RecordingStream()) {
+                recording.enable("jdk.JavaExceptionThrow");
+                recording.onEvent("jdk.JavaExceptionThrow", event -> throwing.add(event.getThread().getJavaName()
+                        + ": " + event.getClass("thrownClass").getName()));
+                recording.startAsync();
+
+                // The recording must see exceptions: one created on a thread of its own
+                Thread control = Thread.ofPlatform().name("exception-control")
+                        .start(() -> new IllegalStateException("control"));
+                control.join();
+
+                Thread misses = Thread.ofPlatform().name("missing-reader").start(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        try {
+                            assertTrue(missing.find().isEmpty());
+                            assertFalse(missing.exists());
+                        } catch (KeyLockerException e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+                misses.join();
+                recording.stop();
+            }
+
+            assertTrue(throwing.stream().anyMatch(event -> event.startsWith("exception-control:")),
+                    "exceptions were not recorded: " + throwing);
+            List<String> onMiss = throwing.stream().filter(event -> event.startsWith("missing-reader:")).toList();
+            assertTrue(onMiss.isEmpty(), onMiss.size() + " exceptions created on a miss, e.g. "
+                    + onMiss.stream().limit(5).toList());
+        } finally {
+            empty.remove();
+        }
+    }
+
+    @Test
+    void snapshotWaitsForWritesInProgress() throws Exception {
+        String run = UUID.randomUUID().toString();
+        String key = "snapshot-key-" + run;
+        String secret = "snapshot-secret-" + run;
+        String token = "snapshot-token-" + run;
+        KeyLockerStore.persist(key, secret, Map.of("version", 1));
+        KeyLockerStore.persist(key, token, Map.of("version", 1));
+
+        // Another process updating both identifiers together, halfway through
+        try (GenerationTable table = GenerationTable.openShared()) {
+            table.beginWrite(KeyLockerStore.generationName(secret));
+            table.beginWrite(KeyLockerStore.generationName(token));
+            try {
+                KeyLockerStore.persist(key, secret, Map.of("version", 2));
+                assertThrows(KeyLockerException.class, () -> KeyLockerStore.readSnapshot(key, List.of(secret, token)));
+                KeyLockerStore.persist(key, token, Map.of("version", 2));
+            } finally {
+                table.endWrite(KeyLockerStore.generationName(secret));
+                table.endWrite(KeyLockerStore.generationName(token));
+            }
+        }
+
+        Map<String, Map<String, Object>> snapshot = KeyLockerStore.readSnapshot(key, List.of(secret, token));
+        assertEquals(2, snapshot.get(secret).get("version"));
+        assertEquals(2, snapshot.get(token).get("version"));
+        new KeyLockerStore().setEncryptionKey(key).setStorageKey(secret).remove();
+        new KeyLockerStore().setEncryptionKey(key).setStorageKey(token).remove();
+    }
+
+    @Test
+    void secretOfPendingWriteIsReadFromStorage() throws Exception {
+        String storageKey = "pending-secret-" + UUID.randomUUID();
+        KeyLockerStore.enableWriteCoalescing(60_000);
+        try (GenerationTable table = GenerationTable.openShared()) {
+            KeyLockerStore store = new KeyLockerStore().setEncryptionKey("pending-key").setStorageKey(storageKey)
+                    .setProperties(Map.of("password", "pending")).store();
+            long pending = table.get(KeyLockerStore.generationName(storageKey));
+
+            try (SecretBuffer secret = store.retrieveSecret("password")) {
+                assertEquals("pending", new String(secret.toByteArray(), StandardCharsets.UTF_8));
+            }
+            // The pending write was stored first, rather than the value being taken from it
+            assertTrue(table.get(KeyLockerStore.generationName(storageKey)) > pending);
+            store.remove();
+        } finally {
+            KeyLockerStore.disableWriteCoalescing();
+        }
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void staticRetrieveReadsTheLastConfiguredKeys() throws Exception {
+        String storageKey = "static-retrieve-" + UUID.randomUUID();
+        KeyLockerStore store = new KeyLockerStore().setEncryptionKey("static-key").setStorageKey(storageKey)
+                .setProperties(Map.of("name", "value")).store();
+
+        Map<String, Object> read = KeyLockerStore.retrieve();
+        assertTrue(read != null && "value".equals(read.get("name")), String.valueOf(read));
+        store.remove();
+    }
+}
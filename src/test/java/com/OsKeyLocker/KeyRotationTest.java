@@ -0,0 +1,76 @@
+package com.OsKeyLocker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyRotationTest {
+
+    private String oldKey;
+    private String newKey;
+    private String first;
+    private String second;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String run = UUID.randomUUID().toString();
+        oldKey = "rotation-old-" + run;
+        newKey = "rotation-new-" + run;
+        first = "rotated-first-" + run;
+        second = "rotated-second-" + run;
+        KeyLockerStore.persist(oldKey, first, Map.of("value", "first"));
+        KeyLockerStore.persist(oldKey, second, Map.of("value", "second"));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (String key : new String[]{oldKey, newKey}) {
+            for (String storageKey : new String[]{first, second}) {
+                try {
+                    new KeyLockerStore().setEncryptionKey(key).setStorageKey(storageKey).remove();
+                } catch (Exception ignored) {
+                    // Not under this key
+                }
+            }
+        }
+    }
+
+    @Test
+    void resumesFromCheckpoint() throws Exception {
+        // An interrupted run recorded the second credential as done at its current version
+        KeyLockerStore.persist(newKey, KeyRotation.CHECKPOINT_KEY,
+                Map.of("completed", Map.of(second, KeyLockerStore.changeStamp(second))));
+
+        assertEquals(1, KeyLockerStore.rotateKey(oldKey, newKey, 2));
+
+        assertEquals("first", read(newKey, first).get("value"));
+        // Skipped on the checkpoint's word, so still under the old key
+        assertEquals("second", read(oldKey, second).get("value"));
+        assertFalse(new KeyLockerStore().setEncryptionKey(newKey).setStorageKey(KeyRotation.CHECKPOINT_KEY)
+                .exists());
+    }
+
+    @Test
+    void discardsCheckpointOfAnotherRotation() throws Exception {
+        String otherKey = "rotation-other-" + UUID.randomUUID();
+        KeyLockerStore.persist(otherKey, KeyRotation.CHECKPOINT_KEY,
+                Map.of("completed", Map.of(second, KeyLockerStore.changeStamp(second))));
+
+        assertEquals(2, KeyLockerStore.rotateKey(oldKey, newKey, 2));
+
+        assertEquals("first", read(newKey, first).get("value"));
+        assertEquals("second", read(newKey, second).get("value"));
+        assertThrows(Exception.class, () -> read(oldKey, second));
+    }
+
+    private static Map<String, Object> read(String encryptionKey, String storageKey) throws Exception {
+        return new KeyLockerStore().setEncryptionKey(encryptionKey).setStorageKey(storageKey).find().orElseThrow();
+    }
+}
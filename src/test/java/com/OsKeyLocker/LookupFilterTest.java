@@ -0,0 +1,158 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.memory.MemorySecureStorage;
+import com.OsKeyLocker.util.GenerationTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LookupFilterTest {
+
+    private static final String NAMESPACE = "filter-test/";
+    // More stale lookups than the filter tolerates before rebuilding
+    private static final int STALE_LOOKUPS = 300;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void missingIdentifierIsDefiniteMissWithoutListingAgain() throws Exception {
+        ListedStorage storage = new ListedStorage(List.of("stored-1", "stored-2"));
+        try (GenerationTable generations = open()) {
+            LookupFilter filter = new LookupFilter(generations, NAMESPACE, storage);
+
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(filter.isKnownAbsent("missing-" + i));
+            }
+            assertFalse(filter.isKnownAbsent("stored-1"));
+            assertFalse(filter.isKnownAbsent("stored-2"));
+            assertEquals(1, storage.listings.get());
+        }
+    }
+
+    @Test
+    void storeByAnotherProcessEndsDefiniteMiss() throws Exception {
+        ListedStorage storage = new ListedStorage(List.of("stored"));
+        try (GenerationTable generations = open()) {
+            LookupFilter filter = new LookupFilter(generations, NAMESPACE, storage);
+            assertTrue(filter.isKnownAbsent("added-elsewhere"));
+
+            // Another process stores the identifier; it only bumps the shared generation
+            generations.bump(NAMESPACE + "added-elsewhere");
+            assertFalse(filter.isKnownAbsent("added-elsewhere"));
+
+            // A miss recorded under an earlier generation is dropped too
+            long generation = filter.generation("removed-elsewhere");
+            filter.recordMiss("removed-elsewhere", generation);
+            generations.bump(NAMESPACE + "removed-elsewhere");
+            assertFalse(filter.isKnownAbsent("removed-elsewhere"));
+        }
+    }
+
+    @Test
+    void lookupsDoNotWaitForRebuild() throws Exception {
+        ListedStorage storage = new ListedStorage(List.of("stored"));
+        try (GenerationTable generations = open()) {
+            LookupFilter filter = new LookupFilter(generations, NAMESPACE, storage);
+            CountDownLatch release = storage.block();
+            try {
+                generations.bump(NAMESPACE + "stale");
+                CompletableFuture<Void> lookups = CompletableFuture.runAsync(() -> {
+                    for (int i = 0; i < STALE_LOOKUPS; i++) {
+                        filter.isKnownAbsent("stale");
+                    }
+                    filter.isKnownAbsent("missing");
+                });
+                lookups.get(5, TimeUnit.SECONDS);
+                // The filter from before the rebuild still answers
+                assertTrue(filter.isKnownAbsent("missing"));
+            } finally {
+                release.countDown();
+            }
+            awaitListings(storage, 2);
+        }
+    }
+
+    @Test
+    void failedRebuildIsNotRetriedImmediately() throws Exception {
+        ListedStorage storage = new ListedStorage(List.of("stored"));
+        try (GenerationTable generations = open()) {
+            LookupFilter filter = new LookupFilter(generations, NAMESPACE, storage);
+            storage.failing.set(true);
+
+            generations.bump(NAMESPACE + "stale");
+            for (int i = 0; i < STALE_LOOKUPS; i++) {
+                filter.isKnownAbsent("stale");
+            }
+            awaitListings(storage, 2);
+            Thread.sleep(50);
+
+            for (int i = 0; i < 10 * STALE_LOOKUPS; i++) {
+                filter.isKnownAbsent("stale");
+            }
+            Thread.sleep(50);
+            assertEquals(2, storage.listings.get());
+            assertTrue(filter.isKnownAbsent("missing"));
+        }
+    }
+
+    private GenerationTable open() throws KeyLockerException {
+        return GenerationTable.open(temp.resolve("private").resolve("generations"));
+    }
+
+    private static void awaitListings(ListedStorage storage, int listings) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (storage.listings.get() < listings && System.nanoTime() - deadline < 0) {
+            Thread.sleep(10);
+        }
+        assertEquals(listings, storage.listings.get());
+    }
+
+    /**
+     * Storage whose listing is counted and can be made to block or fail
+     */
+    private static final class ListedStorage extends MemorySecureStorage {
+        private final List<String> storageKeys;
+        private final AtomicInteger listings = new AtomicInteger();
+        private final AtomicBoolean failing = new AtomicBoolean();
+        private volatile CountDownLatch blocked;
+
+        ListedStorage(List<String> storageKeys) {
+            this.storageKeys = storageKeys;
+        }
+
+        CountDownLatch block() {
+            blocked = new CountDownLatch(1);
+            return blocked;
+        }
+
+        @Override
+        public List<String> listCredentials() throws KeyLockerException {
+            listings.incrementAndGet();
+            CountDownLatch latch = blocked;
+            if (latch != null) {
+                try {
+                    latch.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (failing.get()) {
+                throw new KeyLockerException("Vault unavailable");
+            }
+            return storageKeys;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.util.GenerationTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ReadCoalescerTest {
+
+    private static final int READERS = 16;
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void concurrentReadsShareOneLoad() throws Exception {
+        try (GenerationTable generations = GenerationTable.open(temp.resolve("private").resolve("generations"))) {
+            ReadCoalescer coalescer = new ReadCoalescer(generations, "test/", 5_000);
+            ExecutorService executor = Executors.newFixedThreadPool(READERS);
+            try {
+                // Several rounds, since readers only race to register when they start together
+                for (int round = 0; round < 10; round++) {
+                    String storageKey = "shared-" + round;
+                    AtomicInteger loads = new AtomicInteger();
+                    CyclicBarrier start = new CyclicBarrier(READERS);
+                    CountDownLatch reading = new CountDownLatch(READERS);
+                    List<Future<Optional<Map<String, Object>>>> reads = new ArrayList<>();
+                    for (int i = 0; i < READERS; i++) {
+                        reads.add(executor.submit(() -> {
+                            start.await();
+                            reading.countDown();
+                            return coalescer.read("key", storageKey, () -> {
+                                loads.incrementAndGet();
+                                // The load outlasts the arrival of every reader
+                                awaitQuietly(reading);
+                                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                                return Optional.of(Map.of("value", "loaded"));
+                            });
+                        }));
+                    }
+
+                    for (Future<Optional<Map<String, Object>>> read : reads) {
+                        assertEquals(Map.of("value", "loaded"), read.get().orElseThrow());
+                    }
+                    assertEquals(1, loads.get(), "backend reads in round " + round);
+                }
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    @Test
+    void readAfterChangeDoesNotJoinEarlierLoad() throws Exception {
+        try (GenerationTable generations = GenerationTable.open(temp.resolve("private").resolve("generations"))) {
+            ReadCoalescer coalescer = new ReadCoalescer(generations, "test/", 5_000);
+            CountDownLatch loading = new CountDownLatch(1);
+            CountDownLatch release = new CountDownLatch(1);
+            ExecutorService executor = Executors.newSingleThreadExecutor();
+            try {
+                Future<Optional<Map<String, Object>>> first = executor.submit(() ->
+                        coalescer.read("key", "changed", () -> {
+                            loading.countDown();
+                            awaitQuietly(release);
+                            return Optional.of(Map.of("value", "old"));
+                        }));
+                assertTrue(loading.await(5, TimeUnit.SECONDS));
+
+                generations.bump("test/changed");
+                Optional<Map<String, Object>> second = coalescer.read("key", "changed",
+                        () -> Optional.of(Map.of("value", "new")));
+                release.countDown();
+
+                assertEquals(Map.of("value", "new"), second.orElseThrow());
+                assertEquals(Map.of("value", "old"), first.get().orElseThrow());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
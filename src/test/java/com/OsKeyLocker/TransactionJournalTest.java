@@ -0,0 +1,107 @@
+package com.OsKeyLocker;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class TransactionJournalTest {
+
+    private String key;
+    private String target;
+    private String removed;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        String run = UUID.randomUUID().toString();
+        key = "journal-key-" + run;
+        target = "journal-target-" + run;
+        removed = "journal-removed-" + run;
+        KeyLockerStore.persist(key, removed, Map.of("value", "old"));
+    }
+
+    @Test
+    void replaysJournalOfExitedProcess() throws Exception {
+        Process exited = new ProcessBuilder("true").start();
+        exited.waitFor();
+        String journalKey = journal(1, "replayed", exited.toHandle(), System.currentTimeMillis());
+
+        assertEquals(1, KeyLockerStore.recoverTransactions(key));
+
+        assertEquals("replayed", read(target).get("value"));
+        assertFalse(exists(removed));
+        assertFalse(exists(journalKey));
+        remove(target);
+    }
+
+    @Test
+    void leavesJournalOfLiveProcessUntilItsLeaseExpires() throws Exception {
+        Process owner = new ProcessBuilder("sleep", "60").start();
+        try {
+            String journalKey = journal(1, "replayed", owner.toHandle(), System.currentTimeMillis());
+
+            assertEquals(0, KeyLockerStore.recoverTransactions(key));
+            assertFalse(exists(target));
+            assertEquals("old", read(removed).get("value"));
+
+            // The owner stopped refreshing its heartbeat, e.g. because applying failed
+            journal(1, "replayed", journalKey, owner.toHandle(),
+                    System.currentTimeMillis() - TransactionJournal.LEASE_MILLIS - 1);
+            assertEquals(1, KeyLockerStore.recoverTransactions(key));
+            assertEquals("replayed", read(target).get("value"));
+            assertFalse(exists(journalKey));
+            remove(target);
+        } finally {
+            owner.destroy();
+        }
+    }
+
+    @Test
+    void replaysInCommitOrder() throws Exception {
+        Process exited = new ProcessBuilder("true").start();
+        exited.waitFor();
+        journal(2, "second", exited.toHandle(), 0);
+        journal(1, "first", exited.toHandle(), 0);
+
+        assertEquals(2, KeyLockerStore.recoverTransactions(key));
+
+        assertEquals("second", read(target).get("value"));
+        remove(target);
+    }
+
+    private String journal(long sequence, String value, ProcessHandle owner, long heartbeat) throws Exception {
+        return journal(sequence, value, TransactionJournal.JOURNAL_PREFIX + UUID.randomUUID(), owner, heartbeat);
+    }
+
+    private String journal(long sequence, String value, String journalKey, ProcessHandle owner, long heartbeat)
+            throws Exception {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("sequence", sequence);
+        properties.put("writes", Map.of(target, Map.of("value", value)));
+        properties.put("deletes", List.of(removed));
+        properties.put("owner", owner.pid());
+        properties.put("ownerStart", owner.info().startInstant().map(Instant::toEpochMilli).orElse(0L));
+        properties.put("heartbeat", heartbeat);
+        KeyLockerStore.persist(key, journalKey, properties);
+        return journalKey;
+    }
+
+    private Map<String, Object> read(String storageKey) throws Exception {
+        return new KeyLockerStore().setEncryptionKey(key).setStorageKey(storageKey).find().orElseThrow();
+    }
+
+    private boolean exists(String storageKey) throws Exception {
+        return new KeyLockerStore().setEncryptionKey(key).setStorageKey(storageKey).exists();
+    }
+
+    private void remove(String storageKey) throws Exception {
+        new KeyLockerStore().setEncryptionKey(key).setStorageKey(storageKey).remove();
+    }
+}
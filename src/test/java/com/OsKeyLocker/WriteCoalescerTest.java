@@ -0,0 +1,57 @@
+package com.OsKeyLocker;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteCoalescerTest {
+
+    @Test
+    void failedBackgroundFlushIsRetried() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        Map<String, Map<String, Object>> stored = new ConcurrentHashMap<>();
+        CountDownLatch persisted = new CountDownLatch(1);
+
+        WriteCoalescer coalescer = new WriteCoalescer(10, (encryptionKey, storageKey, properties) -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new KeyLockerException("Vault unavailable");
+            }
+            stored.put(storageKey, Map.copyOf(properties));
+            persisted.countDown();
+        });
+        try {
+            coalescer.write("key", "retried", Map.of("value", "kept"));
+
+            // Stored by the scheduler alone, without an explicit flush
+            assertTrue(persisted.await(5, TimeUnit.SECONDS));
+            assertEquals(3, attempts.get());
+            assertEquals(Map.of("value", "kept"), stored.get("retried"));
+        } finally {
+            coalescer.close();
+        }
+    }
+
+    @Test
+    void writeThatKeepsFailingIsReportedOnClose() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        WriteCoalescer coalescer = new WriteCoalescer(10, (encryptionKey, storageKey, properties) -> {
+            attempts.incrementAndGet();
+            throw new KeyLockerException("Vault unavailable");
+        });
+        coalescer.write("key", "failing", Map.of("value", "lost"));
+
+        while (attempts.get() < 2) {
+            Thread.sleep(10);
+        }
+        assertThrows(KeyLockerException.class, coalescer::close);
+    }
+}
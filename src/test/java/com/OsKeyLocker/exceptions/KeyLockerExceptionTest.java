@@ -0,0 +1,37 @@
+package com.OsKeyLocker.exceptions;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+class KeyLockerExceptionTest {
+
+    @Test
+    void survivesSerialization() throws Exception {
+        KeyLockerException failure = new KeyLockerException("Failed to store credential: vault locked",
+                new PlatformNotSupportedException("Unsupported platform"));
+
+        KeyLockerException copy = roundTrip(failure);
+
+        assertEquals(failure.getMessage(), copy.getMessage());
+        assertInstanceOf(PlatformNotSupportedException.class, copy.getCause());
+        assertEquals("Unsupported platform", copy.getCause().getMessage());
+        assertEquals("Credential chunk not found", roundTrip(CredentialNotFoundException.MISSING_CHUNK).getMessage());
+    }
+
+    private static KeyLockerException roundTrip(KeyLockerException exception) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(exception);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (KeyLockerException) in.readObject();
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.util.EncryptionUtil;
+import com.OsKeyLocker.util.SecretBuffer;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedCredentialManagerTest {
+
+    private static final String KEY = "json";
+
+    private TestCredentialManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        manager = new TestCredentialManager(1024, "chunked-test-key");
+    }
+
+    @Test
+    void failedLargeWriteLeavesPreviousValue() throws Exception {
+        JSONObject first = credential(3000, "first");
+        manager.addCredential(KEY, first);
+        List<String> before = manager.rawNames();
+
+        manager.failAfter(2);
+        assertThrows(RuntimeException.class, () -> manager.addCredential(KEY, credential(6000, "second")));
+
+        assertEquals(first.toString(), manager.getCredential(KEY).toString());
+        assertEquals(before, manager.rawNames());
+    }
+
+    @Test
+    void largeReplacementIsAtomicForReaders() throws Exception {
+        JSONObject first = credential(4000, "first");
+        JSONObject second = credential(5000, "second");
+        manager.addCredential(KEY, first);
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> failures = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    String value = manager.getCredential(KEY).getString("owner");
+                    assertTrue(value.equals("first") || value.equals("second"), value);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) {
+            manager.addCredential(KEY, i % 2 == 0 ? second : first);
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(List.of(), failures);
+    }
+
+    @Test
+    void failedSingleEntryWriteLeavesPreviousValue() throws Exception {
+        JSONObject first = credential(100, "first");
+        manager.addCredential(KEY, first);
+        List<String> before = manager.rawNames();
+
+        // Fails the payload write, then the metadata write that would commit it
+        for (int writes = 0; writes < 2; writes++) {
+            manager.failAfter(writes);
+            assertThrows(RuntimeException.class, () -> manager.addCredential(KEY, credential(200, "second")));
+
+            assertEquals(first.toString(), manager.getCredential(KEY).toString());
+            assertEquals(before, manager.rawNames());
+        }
+    }
+
+    @Test
+    void singleEntryReplacementIsAtomicForReaders() throws Exception {
+        JSONObject first = credential(100, "first");
+        JSONObject second = credential(200, "second");
+        manager.addCredential(KEY, first);
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> failures = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    String value = manager.getCredential(KEY).getString("owner");
+                    assertTrue(value.equals("first") || value.equals("second"), value);
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 500; i++) {
+            manager.addCredential(KEY, i % 2 == 0 ? second : first);
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(List.of(), failures);
+        assertEquals(2, manager.rawNames().size());
+    }
+
+    @Test
+    void secretIsReadFromSingleEntryAndSegmentedCredentials() throws Exception {
+        String password = "p\u00e4ss \"word\"";
+        for (int size : new int[]{100, 5000}) {
+            JSONObject credential = credential(size, "secret").put("password", password);
+            manager.addCredential(KEY, credential);
+
+            try (SecretBuffer secret = manager.getSecret(KEY, "password").orElseThrow()) {
+                assertArrayEquals(password.getBytes(StandardCharsets.UTF_8), secret.toByteArray());
+                assertArrayEquals(password.toCharArray(), secret.toCharArray());
+            }
+            assertEquals(Optional.empty(), manager.getSecret(KEY, "missing"));
+        }
+        assertEquals(Optional.empty(), manager.getSecret("absent", "password"));
+    }
+
+    @Test
+    void wipedSecretCannotBeRead() throws Exception {
+        manager.addCredential(KEY, credential(100, "secret").put("password", "hunter2"));
+
+        SecretBuffer secret = manager.getSecret(KEY, "password").orElseThrow();
+        assertEquals(7, secret.length());
+        // A view taken before the wipe still shows the bytes
+        ByteBuffer view = secret.asReadOnlyBuffer();
+        secret.close();
+
+        assertTrue(secret.isClosed());
+        assertThrows(IllegalStateException.class, () -> secret.byteAt(0));
+        assertThrows(IllegalStateException.class, secret::toByteArray);
+        for (int i = 0; i < view.limit(); i++) {
+            assertEquals(0, view.get(i));
+        }
+        assertEquals("SecretBuffer[wiped]", secret.toString());
+    }
+
+    @Test
+    void concurrentSecretReadsShareBoundedScratchBuffers() throws Exception {
+        manager.addCredential(KEY, credential(100, "small").put("password", "small"));
+        manager.addCredential("large", credential(400 * 1024, "large").put("password", "large"));
+
+        List<Future<Boolean>> reads = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < 2000; i++) {
+                String key = i % 100 == 0 ? "large" : KEY;
+                reads.add(executor.submit(() -> {
+                    try (SecretBuffer secret = manager.getSecret(key, "password").orElseThrow()) {
+                        return new String(secret.toByteArray(), StandardCharsets.UTF_8)
+                                .equals(key.equals(KEY) ? "small" : "large");
+                    }
+                }));
+            }
+            for (Future<Boolean> read : reads) {
+                assertTrue(read.get());
+            }
+        }
+
+        int idle = ChunkedCredentialManager.SCRATCH_BUFFERS.idle();
+        assertTrue(idle > 0, "no scratch buffer was returned to the pool");
+        assertTrue(idle <= Math.max(4, 2 * Runtime.getRuntime().availableProcessors()), idle + " idle buffers");
+        assertFalse(manager.getSecret(KEY, "missing").isPresent());
+    }
+
+    @Test
+    void envelopeRotationRewritesOnlyMetadata() throws Exception {
+        for (int size : new int[]{100, 5000}) {
+            manager = new TestCredentialManager(1024, "chunked-test-key");
+            JSONObject credential = credential(size, "rotated");
+            manager.addCredential(KEY, credential);
+            Map<String, String> before = manager.rawEntries();
+            assertTrue(before.size() > (size > 1024 ? 2 : 1), before.keySet().toString());
+
+            assertTrue(manager.reencryptCredential(KEY, new EncryptionUtil("chunked-test-key"),
+                    new EncryptionUtil("rotated-test-key")));
+
+            // The data key moves to the new key inside the metadata; the encrypted payload is left as it was
+            Map<String, String> after = manager.rawEntries();
+            String metadataName = manager.buildMetadataName(KEY);
+            assertEquals(before.keySet(), after.keySet());
+            assertFalse(before.get(metadataName).equals(after.get(metadataName)));
+            for (String name : before.keySet()) {
+                if (!name.equals(metadataName)) {
+                    assertEquals(before.get(name), after.get(name), name);
+                }
+            }
+
+            assertThrows(KeyLockerException.class, () -> manager.getCredential(KEY));
+            manager.setEncryptionKey("rotated-test-key");
+            assertEquals(credential.toString(), manager.getCredential(KEY).toString());
+        }
+    }
+
+    @Test
+    void expiredCredentialIsHiddenWithoutDecryptionAndDeletedWithItsChunks() throws Exception {
+        manager.addCredential("live", credential(3000, "live"), System.currentTimeMillis() + 60_000);
+        List<String> live = manager.rawNames();
+        manager.addCredential(KEY, credential(3000, "expired"), System.currentTimeMillis() - 1);
+
+        // Expiry is read from the plaintext header: under a key that decrypts nothing, the expired credential
+        // is simply absent, while the live one is still decrypted and fails
+        manager.setEncryptionKey("unrelated-test-key");
+        assertEquals(Optional.empty(), manager.findCredential(KEY));
+        assertThrows(KeyLockerException.class, () -> manager.findCredential("live"));
+
+        assertFalse(manager.deleteIfExpired("live"));
+        assertTrue(manager.deleteIfExpired(KEY));
+        assertEquals(live, manager.rawNames());
+        assertFalse(manager.deleteIfExpired(KEY));
+    }
+
+    private static JSONObject credential(int size, String owner) {
+        JSONObject credential = new JSONObject();
+        credential.put("owner", owner);
+        credential.put("certificate", "x".repeat(size));
+        return credential;
+    }
+}
@@ -0,0 +1,177 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.util.EncryptionUtil;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CredentialOutputStreamTest {
+
+    private static final String KEY = "stream";
+
+    private TestCredentialManager manager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        manager = new TestCredentialManager(1024, "stream-test-key");
+    }
+
+    @Test
+    void previousValueStaysReadableUntilClose() throws Exception {
+        byte[] first = value(5000, 1);
+        byte[] second = value(7000, 2);
+        write(first);
+
+        OutputStream out = manager.openOutputStream(KEY, 0L);
+        out.write(second);
+        assertArrayEquals(first, read());
+
+        out.close();
+        assertArrayEquals(second, read());
+    }
+
+    @Test
+    void commitDeletesThePreviousPayload() throws Exception {
+        write(value(9000, 1));
+        List<String> afterFirst = manager.rawNames();
+
+        write(value(3000, 2));
+        List<String> afterSecond = manager.rawNames();
+
+        // Metadata plus the chunks of the current value only
+        int chunks = 3000 / manager.getSegmentSize() + 1;
+        assertEquals(chunks + 1, afterSecond.size(), afterSecond.toString());
+        for (String name : afterFirst) {
+            assertTrue(name.endsWith(".metadata") || !afterSecond.contains(name), name);
+        }
+    }
+
+    @Test
+    void failedStreamLeavesPreviousValueAndNoSegments() throws Exception {
+        byte[] first = value(5000, 1);
+        write(first);
+        List<String> before = manager.rawNames();
+
+        OutputStream out = manager.openOutputStream(KEY, 0L);
+        manager.failAfter(2);
+        assertThrows(RuntimeException.class, () -> out.write(value(20000, 3)));
+        assertThrows(IOException.class, out::close);
+
+        assertArrayEquals(first, read());
+        assertEquals(before, manager.rawNames());
+    }
+
+    @Test
+    void failedCommitLeavesPreviousValueAndNoSegments() throws Exception {
+        byte[] first = value(5000, 1);
+        write(first);
+        List<String> before = manager.rawNames();
+
+        OutputStream out = manager.openOutputStream(KEY, 0L);
+        out.write(value(4000, 2));
+        // The last segment goes through, the metadata write that commits the stream fails
+        manager.failAfter(1);
+        assertThrows(RuntimeException.class, out::close);
+
+        assertArrayEquals(first, read());
+        assertEquals(before, manager.rawNames());
+    }
+
+    @Test
+    void abandonedStreamLeavesPreviousValueAndOrphans() throws Exception {
+        byte[] first = value(5000, 1);
+        write(first);
+
+        OutputStream out = manager.openOutputStream(KEY, 0L);
+        out.write(value(4000, 2));
+
+        assertArrayEquals(first, read());
+        VaultReport report = manager.scanVault(new EncryptionUtil("stream-test-key"), 0, Long.MAX_VALUE);
+        assertEquals(1, report.credentials());
+        assertEquals(0, report.damaged());
+        assertTrue(report.orphans() > 0);
+    }
+
+    @Test
+    void collectorKeepsSegmentsOfOpenStream() throws Exception {
+        byte[] first = value(5000, 1);
+        byte[] second = value(5000, 2);
+        write(first);
+        EncryptionUtil encryption = new EncryptionUtil("stream-test-key");
+
+        OutputStream out = manager.openOutputStream(KEY, 0L);
+        out.write(second);
+        // Two sweeps with no grace period: the second deletes every orphan the first one saw
+        VaultReport firstSweep = manager.scanVault(encryption, 100, 0);
+        VaultReport secondSweep = manager.scanVault(encryption, 100, 0);
+        out.close();
+
+        assertTrue(firstSweep.orphans() > 0);
+        assertEquals(0, firstSweep.collected());
+        assertEquals(0, secondSweep.collected());
+        assertArrayEquals(second, read());
+        assertEquals(0, manager.scanVault(encryption, 0, Long.MAX_VALUE).damaged());
+    }
+
+    @Test
+    void readsDuringReplacementSeeOneCompleteValue() throws Exception {
+        byte[] first = value(6000, 1);
+        byte[] second = value(6000, 2);
+        write(first);
+
+        AtomicBoolean done = new AtomicBoolean();
+        List<Throwable> failures = new ArrayList<>();
+        Thread reader = new Thread(() -> {
+            try {
+                while (!done.get()) {
+                    byte[] value = manager.readRange(KEY, 0, 6000).orElseThrow();
+                    if (!Arrays.equals(value, first) && !Arrays.equals(value, second)) {
+                        throw new AssertionError("Read a mix of two values");
+                    }
+                }
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        reader.start();
+        for (int i = 0; i < 200; i++) {
+            write(i % 2 == 0 ? second : first);
+        }
+        done.set(true);
+        reader.join();
+
+        assertEquals(List.of(), failures);
+    }
+
+    private void write(byte[] data) throws Exception {
+        try (OutputStream out = manager.openOutputStream(KEY, 0L)) {
+            out.write(data);
+        }
+    }
+
+    private byte[] read() throws Exception {
+        try (InputStream in = manager.openInputStream(KEY).orElseThrow()) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static byte[] value(int length, int seed) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) (i * 31 + seed);
+        }
+        return value;
+    }
+}
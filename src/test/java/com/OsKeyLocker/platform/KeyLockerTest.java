@@ -0,0 +1,61 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class KeyLockerTest {
+
+    private static final String KEY = "key-locker-test-key";
+
+    private final String identifier = "key-locker-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        KeyLocker.delete().identifier(identifier).execute();
+    }
+
+    @Test
+    void untypedIntReadsBackAsBefore() throws Exception {
+        KeyLocker.write().withEncryption(KEY).to(identifier)
+                .property("port", 8080)
+                .longProperty("timeout", 30)
+                .booleanProperty("secure", true)
+                .execute();
+
+        Map<String, Object> properties = KeyLocker.read().withEncryption(KEY).from(identifier).getAllProperties();
+        assertEquals(8080, properties.get("port"));
+        assertEquals(30L, properties.get("timeout"));
+        assertEquals(Boolean.TRUE, properties.get("secure"));
+    }
+
+    @Test
+    void reservedNamesAreRejected() throws Exception {
+        KeyLocker.StorageWriter types = KeyLocker.write().withEncryption(KEY).to(identifier)
+                .property("__types", Map.of("port", "long"));
+        assertThrows(KeyLockerException.class, types::execute);
+
+        KeyLocker.StorageWriter expiry = KeyLocker.write().withEncryption(KEY).to(identifier)
+                .properties(Map.of("__expiresAt", 1L));
+        assertThrows(KeyLockerException.class, expiry::execute);
+
+        assertFalse(KeyLocker.read().withEncryption(KEY).from(identifier).exists());
+    }
+
+    @Test
+    void writerCanBeExecutedTwice() throws Exception {
+        KeyLocker.StorageWriter writer = KeyLocker.write().withEncryption(KEY).to(identifier)
+                .longProperty("count", 1);
+        writer.execute();
+        writer.execute();
+
+        assertEquals(1L, KeyLocker.read().withEncryption(KEY).from(identifier).getLong("count"));
+    }
+}
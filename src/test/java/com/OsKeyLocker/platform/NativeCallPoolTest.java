@@ -0,0 +1,42 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeCallPoolTest {
+
+    // Pool threads configured for tests in the surefire configuration
+    private static final int POOL_THREADS = Integer.getInteger(NativeCallPool.THREADS_PROPERTY, 1);
+
+    @Test
+    void virtualThreadCallsRunConcurrently() throws Exception {
+        // Every call waits until all of them are running, so this only finishes if the pool runs them together
+        CountDownLatch running = new CountDownLatch(POOL_THREADS);
+        List<Future<Boolean>> calls = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < POOL_THREADS; i++) {
+                calls.add(executor.submit(() -> NativeCallPool.call(() -> {
+                    running.countDown();
+                    try {
+                        return running.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new KeyLockerException("Interrupted", e);
+                    }
+                })));
+            }
+            for (Future<Boolean> call : calls) {
+                assertTrue(call.get(), "native calls did not overlap");
+            }
+        }
+    }
+}
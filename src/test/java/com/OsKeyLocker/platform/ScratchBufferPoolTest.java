@@ -0,0 +1,54 @@
+package com.OsKeyLocker.platform;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScratchBufferPoolTest {
+
+    @Test
+    void returnedBufferIsReusedByAnyThread() throws Exception {
+        ScratchBufferPool pool = new ScratchBufferPool(2, 64 * 1024);
+        ByteBuffer buffer = pool.acquire(1000);
+        assertTrue(buffer.isDirect());
+        assertTrue(buffer.capacity() >= 1000);
+        buffer.put((byte) 1);
+        pool.release(buffer);
+
+        ByteBuffer[] reused = new ByteBuffer[1];
+        Thread other = Thread.ofVirtual().start(() -> reused[0] = pool.acquire(1000));
+        other.join();
+        assertSame(buffer, reused[0]);
+        assertEquals(0, reused[0].position());
+    }
+
+    @Test
+    void poolKeepsBoundedNumberOfBuffers() {
+        ScratchBufferPool pool = new ScratchBufferPool(2, 64 * 1024);
+        ByteBuffer[] buffers = {pool.acquire(100), pool.acquire(100), pool.acquire(100)};
+        for (ByteBuffer buffer : buffers) {
+            pool.release(buffer);
+        }
+        assertEquals(2, pool.idle());
+    }
+
+    @Test
+    void largeBuffersAreNotRetained() {
+        ScratchBufferPool pool = new ScratchBufferPool(2, 64 * 1024);
+        pool.release(pool.acquire(128 * 1024));
+        assertEquals(0, pool.idle());
+
+        // A pooled buffer too small for a read is replaced rather than kept alongside the new one
+        ByteBuffer small = pool.acquire(100);
+        pool.release(small);
+        ByteBuffer larger = pool.acquire(32 * 1024);
+        assertNotSame(small, larger);
+        pool.release(larger);
+        assertEquals(1, pool.idle());
+    }
+}
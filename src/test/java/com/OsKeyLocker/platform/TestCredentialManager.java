@@ -0,0 +1,75 @@
+package com.OsKeyLocker.platform;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.memory.MemoryCredentialManager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * In-memory credential manager with small raw entries, so values span several chunks, and injectable write failures
+ */
+class TestCredentialManager extends MemoryCredentialManager {
+
+    static final String PREFIX = "test";
+
+    private final int maxCredentialSize;
+    private int writesUntilFailure = -1;
+
+    /**
+     * Creates an initialized manager
+     * @param maxCredentialSize Largest raw entry, in Base64 characters
+     * @param encryptionKey Master key
+     */
+    TestCredentialManager(int maxCredentialSize, String encryptionKey) throws KeyLockerException {
+        this.maxCredentialSize = maxCredentialSize;
+        setAppPrefix(PREFIX);
+        initialize(encryptionKey);
+    }
+
+    /**
+     * Makes a raw write fail
+     * @param writes Number of raw writes that still succeed before one fails
+     */
+    void failAfter(int writes) {
+        writesUntilFailure = writes;
+    }
+
+    /**
+     * Lists every raw entry of the manager's prefix
+     * @return Raw entry names, sorted
+     */
+    List<String> rawNames() {
+        return listRawCredentials("OsKeyLocker." + PREFIX + ".").stream().sorted().toList();
+    }
+
+    /**
+     * Reads every raw entry of the manager's prefix
+     * @return Raw values by entry name
+     */
+    Map<String, String> rawEntries() {
+        Map<String, String> entries = new TreeMap<>();
+        for (String name : rawNames()) {
+            entries.put(name, getRawCredential(name));
+        }
+        return entries;
+    }
+
+    @Override
+    protected int getMaxCredentialSize() {
+        return maxCredentialSize;
+    }
+
+    @Override
+    protected void addRawCredential(String credName, String value) {
+        if (writesUntilFailure == 0) {
+            writesUntilFailure = -1;
+            throw new IllegalStateException("Injected write failure: " + credName);
+        }
+        if (writesUntilFailure > 0) {
+            writesUntilFailure--;
+        }
+        super.addRawCredential(credName, value);
+    }
+}
@@ -0,0 +1,191 @@
+package com.OsKeyLocker.platform.agent;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.memory.MemorySecureStorage;
+import com.OsKeyLocker.util.CipherSuite;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyLockerAgentTest {
+
+    private static final String USER = System.getProperty("user.name");
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void clientStoresReadsAndRemovesThroughAgent() throws Exception {
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new, USER)) {
+            AgentKeyLockerStorage client = client(agent, CipherSuite.AES_GCM);
+
+            client.storeJsonCredential("token", new JSONObject().put("value", "secret"), 0);
+            assertEquals("secret", client.retrieveJsonCredential("token").orElseThrow().getString("value"));
+            assertTrue(client.credentialExists("token"));
+            assertTrue(client.listCredentials().contains("token"));
+            assertNotEquals(0L, client.getChangeStamp("token"));
+
+            client.removeCredential("token");
+            assertTrue(client.retrieveJsonCredential("token").isEmpty());
+            assertEquals(0L, client.getChangeStamp("token"));
+        }
+    }
+
+    @Test
+    void connectionsDoNotWaitForEachOther() throws Exception {
+        BlockingStorage storage = new BlockingStorage();
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), () -> storage, USER)) {
+            AgentKeyLockerStorage slow = client(agent, CipherSuite.AES_GCM);
+            CompletableFuture<Void> blocked = CompletableFuture.runAsync(() -> store(slow, "slow"));
+            try {
+                assertTrue(storage.entered.await(5, TimeUnit.SECONDS));
+
+                // Another JVM of the same application writes and reads while the first write is in progress
+                AgentKeyLockerStorage fast = client(agent, CipherSuite.AES_GCM);
+                CompletableFuture.runAsync(() -> store(fast, "fast")).get(5, TimeUnit.SECONDS);
+                assertEquals("fast", fast.retrieveJsonCredential("fast").orElseThrow().getString("value"));
+
+                // Reads take the suite from the credential, so a client using another suite reads too
+                AgentKeyLockerStorage other = client(agent, CipherSuite.CHACHA20_POLY1305);
+                assertEquals("fast", other.retrieveJsonCredential("fast").orElseThrow().getString("value"));
+
+                // A write under the other suite waits until writes under the current one are done
+                CompletableFuture<Void> otherWrite = CompletableFuture.runAsync(() -> store(other, "other"));
+                assertThrows(TimeoutException.class, () -> otherWrite.get(200, TimeUnit.MILLISECONDS));
+
+                storage.release.countDown();
+                blocked.get(5, TimeUnit.SECONDS);
+                otherWrite.get(5, TimeUnit.SECONDS);
+                assertEquals("other", fast.retrieveJsonCredential("other").orElseThrow().getString("value"));
+            } finally {
+                storage.release.countDown();
+            }
+        }
+    }
+
+    @Test
+    void connectionFromAnotherUserIsRefused() throws Exception {
+        // The peer credentials name this process's user, so an agent serving someone else refuses it
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new,
+                "not-" + USER)) {
+            AgentKeyLockerStorage client = client(agent, CipherSuite.AES_GCM);
+            assertThrows(KeyLockerException.class, () -> client.credentialExists("token"));
+        }
+
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new, USER)) {
+            assertFalse(client(agent, CipherSuite.AES_GCM).credentialExists("token"));
+        }
+    }
+
+    @Test
+    void requestBeforeHelloEndsConnection() throws Exception {
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new, USER);
+             AgentChannel channel = connect(agent)) {
+            AgentChannel.writeString(channel.begin(AgentChannel.GET), "token");
+            channel.send();
+            assertThrows(IOException.class, channel::receive);
+        }
+    }
+
+    @Test
+    void unsupportedVersionIsAnswered() throws Exception {
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new, USER);
+             AgentChannel channel = connect(agent)) {
+            channel.begin(AgentChannel.HELLO).writeInt(AgentChannel.VERSION + 1);
+            channel.send();
+            DataInputStream response = channel.receive();
+            assertEquals(AgentChannel.ERROR, response.readByte());
+            assertTrue(AgentChannel.readString(response).contains("Unsupported agent protocol version"));
+
+            channel.begin(AgentChannel.HELLO).writeInt(AgentChannel.VERSION);
+            channel.send();
+            assertEquals(AgentChannel.OK, channel.receive().readByte());
+        }
+    }
+
+    @Test
+    void requestWithoutContextIsAnsweredAndUnknownOperationEndsConnection() throws Exception {
+        try (KeyLockerAgent agent = KeyLockerAgent.start(temp.resolve("agent.sock"), MemorySecureStorage::new, USER);
+             AgentChannel channel = connect(agent)) {
+            channel.begin(AgentChannel.HELLO).writeInt(AgentChannel.VERSION);
+            channel.send();
+            assertEquals(AgentChannel.OK, channel.receive().readByte());
+
+            AgentChannel.writeString(channel.begin(AgentChannel.GET), "token");
+            channel.send();
+            DataInputStream response = channel.receive();
+            assertEquals(AgentChannel.ERROR, response.readByte());
+            assertTrue(AgentChannel.readString(response).contains("has not set its application"));
+
+            DataOutputStream context = channel.begin(AgentChannel.CONTEXT);
+            AgentChannel.writeString(context, "agent-test");
+            AgentChannel.writeString(context, "agent-test-key");
+            AgentChannel.writeString(context, null);
+            AgentChannel.writeString(context, CipherSuite.AES_GCM.name());
+            channel.send();
+            assertEquals(AgentChannel.OK, channel.receive().readByte());
+
+            channel.begin((byte) 99);
+            channel.send();
+            assertThrows(IOException.class, channel::receive);
+        }
+    }
+
+    private static AgentKeyLockerStorage client(KeyLockerAgent agent, CipherSuite cipherSuite)
+            throws KeyLockerException {
+        AgentKeyLockerStorage client = new AgentKeyLockerStorage(agent.getSocket());
+        client.initialize("agent-test", "agent-test-key");
+        client.setCipherSuite(cipherSuite);
+        return client;
+    }
+
+    private static AgentChannel connect(KeyLockerAgent agent) throws IOException {
+        return new AgentChannel(SocketChannel.open(UnixDomainSocketAddress.of(agent.getSocket())));
+    }
+
+    private static void store(AgentKeyLockerStorage client, String storageKey) {
+        try {
+            client.storeJsonCredential(storageKey, new JSONObject().put("value", storageKey), 0);
+        } catch (KeyLockerException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Storage whose store of "slow" waits until released
+     */
+    private static final class BlockingStorage extends MemorySecureStorage {
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public void storeJsonCredential(String key, JSONObject jsonData, long expiresAt) throws KeyLockerException {
+            if (key.equals("slow")) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            super.storeJsonCredential(key, jsonData, expiresAt);
+        }
+    }
+}
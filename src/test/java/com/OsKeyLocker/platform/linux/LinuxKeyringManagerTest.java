@@ -0,0 +1,153 @@
+package com.OsKeyLocker.platform.linux;
+
+import com.OsKeyLocker.platform.ChunkedKeyLockerStorage;
+import jdk.jfr.consumer.RecordingStream;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LinuxKeyringManagerTest {
+
+    private static final int READS = 20_000;
+
+    @Test
+    void virtualThreadReadsDoNotPinCarriers() throws Exception {
+        SimulatedKeyctl keyctl = new SimulatedKeyctl();
+        ChunkedKeyLockerStorage storage = new ChunkedKeyLockerStorage(new LinuxKeyringManager(keyctl), "Simulated") {
+            @Override
+            public boolean isSupported() {
+                return true;
+            }
+        };
+        storage.initialize("pinning-test", "pinning-key");
+        storage.storeJsonCredential("token", new JSONObject().put("value", "secret"), 0);
+
+        Queue<String> pinned = new ConcurrentLinkedQueue<>();
+        try (RecordingStream recording = new RecordingStream()) {
+            recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO);
+            recording.onEvent("jdk.VirtualThreadPinned", event -> pinned.add(event.getThread().getJavaName()));
+            recording.startAsync();
+
+            // The recording must see pinning: the simulated native call on a virtual thread of its own
+            Thread control = Thread.ofVirtual().name("pinning-control")
+                    .start(() -> keyctl.search(LinuxKeyctl.KEY_SPEC_USER_KEYRING, "none"));
+            control.join();
+
+            AtomicInteger found = new AtomicInteger();
+            try (ExecutorService executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name("reader-", 0).factory())) {
+                for (int i = 0; i < READS; i++) {
+                    executor.submit(() -> {
+                        Optional<JSONObject> value = storage.retrieveJsonCredential("token");
+                        if (value.isPresent() && "secret".equals(value.get().getString("value"))) {
+                            found.incrementAndGet();
+                        }
+                        return null;
+                    });
+                }
+            }
+            recording.stop();
+
+            assertEquals(READS, found.get());
+            assertTrue(pinned.contains("pinning-control"), "pinning was not recorded: " + pinned);
+            List<String> pinnedReaders = pinned.stream().filter(name -> name.startsWith("reader-")).toList();
+            assertTrue(pinnedReaders.isEmpty(),
+                    pinnedReaders.size() + " reads pinned their carrier, e.g. " + pinnedReaders.stream().limit(5).toList());
+            assertTrue(keyctl.maxInFlight.get() > 1, "reads did not overlap on the pool");
+        }
+    }
+
+    /**
+     * In-memory keyring whose calls block the way native calls do: a virtual thread making one pins its carrier
+     */
+    private static final class SimulatedKeyctl implements LinuxKeyctl {
+
+        private final Map<String, Integer> serials = new ConcurrentHashMap<>();
+        private final Map<Integer, String> descriptions = new ConcurrentHashMap<>();
+        private final Map<Integer, byte[]> payloads = new ConcurrentHashMap<>();
+        private final AtomicInteger nextSerial = new AtomicInteger(1);
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger maxInFlight = new AtomicInteger();
+        // A monitor per thread, so calls only pin and never wait for each other
+        private final ThreadLocal<Object> monitor = ThreadLocal.withInitial(Object::new);
+
+        @Override
+        public int addKey(String description, byte[] payload, int keyring) {
+            block();
+            int serial = serials.computeIfAbsent(description, ignored -> nextSerial.getAndIncrement());
+            descriptions.put(serial, description);
+            payloads.put(serial, payload.clone());
+            return serial;
+        }
+
+        @Override
+        public int search(int keyring, String description) {
+            block();
+            return serials.getOrDefault(description, -1);
+        }
+
+        @Override
+        public int read(int serial, ByteBuffer target) {
+            block();
+            byte[] payload;
+            if (serial == KEY_SPEC_USER_KEYRING) {
+                ByteBuffer members = ByteBuffer.allocate(descriptions.size() * Integer.BYTES)
+                        .order(ByteOrder.nativeOrder());
+                descriptions.keySet().forEach(members::putInt);
+                payload = members.array();
+            } else {
+                payload = payloads.get(serial);
+                if (payload == null) {
+                    return -1;
+                }
+            }
+            target.put(0, payload, 0, Math.min(payload.length, target.capacity()));
+            return payload.length;
+        }
+
+        @Override
+        public String describe(int serial) {
+            block();
+            String description = descriptions.get(serial);
+            return description == null ? null : "user;0;0;3f010000;" + description;
+        }
+
+        @Override
+        public void unlink(int serial, int keyring) {
+            block();
+            String description = descriptions.remove(serial);
+            if (description != null) {
+                serials.remove(description);
+                payloads.remove(serial);
+            }
+        }
+
+        // A blocking call entered through a native frame: parking inside a monitor pins a virtual thread's carrier
+        private void block() {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            try {
+                synchronized (monitor.get()) {
+                    LockSupport.parkNanos(20_000);
+                }
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+}
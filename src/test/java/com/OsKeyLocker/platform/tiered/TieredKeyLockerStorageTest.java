@@ -0,0 +1,132 @@
+package com.OsKeyLocker.platform.tiered;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import com.OsKeyLocker.platform.memory.MemorySecureStorage;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TieredKeyLockerStorageTest {
+
+    @Test
+    void writeBackTierIsFlushedOnceStarted() throws Exception {
+        MemorySecureStorage cache = new MemorySecureStorage();
+        MemorySecureStorage source = new MemorySecureStorage();
+        TieredKeyLockerStorage storage = new TieredKeyLockerStorage(List.of(
+                new TieredKeyLockerStorage.Tier("cache", cache, TieredKeyLockerStorage.WritePolicy.WRITE_BACK),
+                new TieredKeyLockerStorage.Tier("source", source, TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH)),
+                Duration.ofMillis(20));
+        try {
+            storage.initialize("tiered-test", "tiered-key");
+            storage.storeJsonCredential("token", new JSONObject().put("value", "pending"), 0);
+
+            // Constructing the storage scheduled nothing
+            Thread.sleep(200);
+            assertFalse(cache.credentialExists("token"));
+            assertTrue(source.credentialExists("token"));
+
+            storage.start();
+            long deadline = System.currentTimeMillis() + 5_000;
+            while (!cache.credentialExists("token") && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertTrue(cache.credentialExists("token"));
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    void cacheHitDoesNotWaitForSourceOfTruth() throws Exception {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MemorySecureStorage source = new MemorySecureStorage() {
+            @Override
+            public void storeJsonCredential(String key, JSONObject jsonData, long expiresAt)
+                    throws KeyLockerException {
+                if (key.equals("slow")) {
+                    // An OS credential store call that takes a while
+                    storing.countDown();
+                    awaitQuietly(release);
+                }
+                super.storeJsonCredential(key, jsonData, expiresAt);
+            }
+        };
+        TieredKeyLockerStorage storage = new TieredKeyLockerStorage(List.of(
+                new TieredKeyLockerStorage.Tier("memory", new MemorySecureStorage(),
+                        TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH),
+                new TieredKeyLockerStorage.Tier("source", source, TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH)),
+                Duration.ofSeconds(1));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            storage.initialize("tiered-test", "tiered-key");
+            storage.storeJsonCredential("fast", new JSONObject().put("value", "cached"), 0);
+
+            Future<?> slow = executor.submit(() -> {
+                storage.storeJsonCredential("slow", new JSONObject().put("value", "slow"), 0);
+                return null;
+            });
+            assertTrue(storing.await(5, TimeUnit.SECONDS));
+
+            CompletableFuture<Optional<JSONObject>> read = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return storage.retrieveJsonCredential("fast");
+                } catch (KeyLockerException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            assertEquals("cached", read.get(2, TimeUnit.SECONDS).orElseThrow().getString("value"));
+
+            release.countDown();
+            slow.get(5, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+            executor.shutdown();
+            storage.close();
+        }
+    }
+
+    @Test
+    void flushedValueIsReplacedByLaterWrite() throws Exception {
+        MemorySecureStorage cache = new MemorySecureStorage();
+        TieredKeyLockerStorage storage = new TieredKeyLockerStorage(List.of(
+                new TieredKeyLockerStorage.Tier("cache", cache, TieredKeyLockerStorage.WritePolicy.WRITE_BACK),
+                new TieredKeyLockerStorage.Tier("source", new MemorySecureStorage(),
+                        TieredKeyLockerStorage.WritePolicy.WRITE_THROUGH)),
+                Duration.ofSeconds(1));
+        try {
+            storage.initialize("tiered-test", "tiered-key");
+            storage.storeJsonCredential("token", new JSONObject().put("value", "first"), 0);
+            storage.flush();
+            assertEquals("first", cache.retrieveJsonCredential("token").orElseThrow().getString("value"));
+
+            storage.storeJsonCredential("token", new JSONObject().put("value", "second"), 0);
+            assertEquals("second", storage.retrieveJsonCredential("token").orElseThrow().getString("value"));
+            storage.flush();
+            assertEquals("second", cache.retrieveJsonCredential("token").orElseThrow().getString("value"));
+        } finally {
+            storage.close();
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.OsKeyLocker.platform.windows;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WindowsCredentialManagerTest {
+
+    @Test
+    void credentialReadFromNativeMemory() {
+        WindowsCredentialManager.CREDENTIAL written = new WindowsCredentialManager.CREDENTIAL();
+        written.Type = 1;
+        written.TargetName = "OsKeyLocker.test.name";
+        written.CredentialBlobSize = 42;
+        written.write();
+
+        WindowsCredentialManager.CREDENTIAL read = new WindowsCredentialManager.CREDENTIAL(written.getPointer());
+        assertEquals(1, read.Type);
+        assertEquals("OsKeyLocker.test.name", read.TargetName);
+        assertEquals(42, read.CredentialBlobSize);
+    }
+}
@@ -0,0 +1,99 @@
+package com.OsKeyLocker.provider;
+
+import com.OsKeyLocker.platform.KeyLocker;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.spec.SecretKeySpec;
+import java.security.Key;
+import java.security.KeyStore;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyLockerKeyStoreSpiTest {
+
+    private static final String KEY = "key-store-test-key";
+
+    private final String namespace = "key-store-" + UUID.randomUUID();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (String alias : new String[]{"aes", "hmac"}) {
+            KeyLocker.delete().identifier(namespace + "." + alias).execute();
+        }
+        KeyLocker.delete().identifier(namespace + "-other.aes").execute();
+    }
+
+    @Test
+    void entryIsReadOnFirstUseAndKeptUntilReload() throws Exception {
+        // Loaded before anything is stored: loading reads no entry
+        KeyStore reader = load(namespace);
+        KeyStore writer = load(namespace);
+
+        writer.setKeyEntry("aes", secretKey("AES", 1), null, null);
+        assertArrayEquals(secretKey("AES", 1).getEncoded(), reader.getKey("aes", null).getEncoded());
+        assertEquals("AES", reader.getKey("aes", null).getAlgorithm());
+        assertTrue(reader.isKeyEntry("aes"));
+
+        // The decoded entry is kept: a later write elsewhere is only seen after loading again
+        writer.setKeyEntry("aes", secretKey("AES", 2), null, null);
+        assertArrayEquals(secretKey("AES", 1).getEncoded(), reader.getKey("aes", null).getEncoded());
+        reader.load(new KeyLockerLoadParameter(KEY, namespace));
+        assertArrayEquals(secretKey("AES", 2).getEncoded(), reader.getKey("aes", null).getEncoded());
+
+        assertNull(reader.getKey("missing", null));
+    }
+
+    @Test
+    void aliasesAreListedFromStoredIdentifiersOfNamespace() throws Exception {
+        KeyStore writer = load(namespace);
+        writer.setKeyEntry("aes", secretKey("AES", 1), null, null);
+        writer.setKeyEntry("hmac", secretKey("HmacSHA256", 2), null, null);
+        load(namespace + "-other").setKeyEntry("aes", secretKey("AES", 3), null, null);
+
+        // Nothing has been read through this key store, so the aliases come from the identifier list
+        KeyStore reader = load(namespace);
+        assertEquals(Set.of("aes", "hmac"), new TreeSet<>(Collections.list(reader.aliases())));
+        assertEquals(2, reader.size());
+        assertTrue(reader.containsAlias("hmac"));
+        assertFalse(reader.containsAlias("missing"));
+    }
+
+    @Test
+    void deletedEntryIsGoneFromStorageAndCache() throws Exception {
+        KeyStore keyStore = load(namespace);
+        keyStore.setKeyEntry("aes", secretKey("AES", 1), null, null);
+        keyStore.setKeyEntry("hmac", secretKey("HmacSHA256", 2), null, null);
+        assertTrue(keyStore.isKeyEntry("aes"));
+
+        keyStore.deleteEntry("aes");
+
+        assertNull(keyStore.getKey("aes", null));
+        assertFalse(keyStore.containsAlias("aes"));
+        assertEquals(1, keyStore.size());
+        assertFalse(KeyLocker.read().withEncryption(KEY).from(namespace + ".aes").exists());
+        assertEquals(Set.of("hmac"), new TreeSet<>(Collections.list(load(namespace).aliases())));
+    }
+
+    private static KeyStore load(String namespace) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance(KeyLockerProvider.KEYSTORE_TYPE, new KeyLockerProvider());
+        keyStore.load(new KeyLockerLoadParameter(KEY, namespace));
+        return keyStore;
+    }
+
+    private static Key secretKey(String algorithm, int seed) {
+        byte[] encoded = new byte[32];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = (byte) (seed * 31 + i);
+        }
+        return new SecretKeySpec(encoded, algorithm);
+    }
+}
@@ -0,0 +1,74 @@
+package com.OsKeyLocker.replication;
+
+import com.OsKeyLocker.platform.KeyLocker;
+import com.OsKeyLocker.platform.file.FileSecureStorage;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class LogReplicatorTest {
+
+    private static final String LOG_KEY = "replication-log-key";
+    private static final String KEY = "replication-key";
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void replicatesToStandbyVaultAndResumes() throws Exception {
+        String run = UUID.randomUUID().toString();
+        String kept = "replicated-kept-" + run;
+        String removed = "replicated-removed-" + run;
+        Path logFile = temp.resolve("changes.log");
+        Path offsetFile = temp.resolve("standby.offset");
+
+        FileSecureStorage standby = new FileSecureStorage(temp.resolve("standby"));
+        standby.initialize();
+
+        KeyLocker.enableChangeLog(logFile, LOG_KEY);
+        try {
+            KeyLocker.write().withEncryption(KEY).to(kept).property("value", "first").execute();
+            KeyLocker.write().withEncryption(KEY).to(removed).property("value", "gone").execute();
+            KeyLocker.delete().identifier(removed).execute();
+
+            try (LogReplicator replicator = new LogReplicator(logFile, LOG_KEY, standby, offsetFile)) {
+                assertEquals(3, replicator.replicate());
+                assertEquals(0, replicator.replicate());
+            }
+            useApplicationOf(logFile, standby);
+            assertEquals("first", value(standby, kept));
+            assertFalse(standby.credentialExists(removed));
+
+            // A new replicator picks up after the saved offset
+            KeyLocker.write().withEncryption(KEY).to(kept).property("value", "second").execute();
+            try (LogReplicator replicator = new LogReplicator(logFile, LOG_KEY, standby, offsetFile)) {
+                assertEquals(1, replicator.replicate());
+                assertEquals(4, replicator.getSequence());
+            }
+            useApplicationOf(logFile, standby);
+            assertEquals("second", value(standby, kept));
+        } finally {
+            KeyLocker.disableChangeLog();
+            KeyLocker.delete().identifier(kept).execute();
+        }
+    }
+
+    // Credentials are stored under the writing application's prefix, which the records carry
+    private static void useApplicationOf(Path logFile, FileSecureStorage standby) throws Exception {
+        try (ChangeLog log = ChangeLog.open(logFile, LOG_KEY)) {
+            standby.setAppPrefix(log.read(0, 1).get(0).packageName());
+        }
+        standby.setEncryptionKey(KEY);
+    }
+
+    private static String value(FileSecureStorage standby, String storageKey) throws Exception {
+        JSONObject data = standby.retrieveJsonCredential(storageKey).orElseThrow();
+        return data.getString("value");
+    }
+}
@@ -0,0 +1,127 @@
+package com.OsKeyLocker.util;
+
+import com.OsKeyLocker.exceptions.KeyLockerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GenerationTableTest {
+
+    @TempDir
+    Path temp;
+
+    @Test
+    void opensInPrivateDirectory() throws Exception {
+        Path file = temp.resolve("private").resolve("generations");
+        try (GenerationTable table = GenerationTable.open(file)) {
+            assertEquals(1, table.bump("name"));
+            assertEquals(1, table.get("name"));
+        }
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParent())));
+    }
+
+    @Test
+    void writeIsInProgressUntilItEnds() throws Exception {
+        try (GenerationTable table = GenerationTable.open(temp.resolve("private").resolve("generations"))) {
+            assertFalse(table.isWriting("name"));
+
+            assertEquals(1, table.beginWrite("name"));
+            assertEquals(2, table.beginWrite("name"));
+            assertTrue(table.isWriting("name"));
+            assertEquals(3, table.endWrite("name"));
+            // Still in progress while the other writer is
+            assertTrue(table.isWriting("name"));
+            assertEquals(4, table.endWrite("name"));
+            assertFalse(table.isWriting("name"));
+        }
+    }
+
+    @Test
+    void writerThatNeverEndedIsReclaimedAfterItsLease() throws Exception {
+        try (GenerationTable table = GenerationTable.open(temp.resolve("private").resolve("generations"), 50)) {
+            // A writer that died mid-change
+            table.beginWrite("name");
+            Thread.sleep(100);
+
+            table.beginWrite("name");
+            assertTrue(table.isWriting("name"));
+            table.endWrite("name");
+            assertFalse(table.isWriting("name"));
+
+            // Another writer died; one ending after the reclaim does not hide the next write
+            table.beginWrite("name");
+            Thread.sleep(100);
+            table.beginWrite("name");
+            table.endWrite("name");
+            table.endWrite("name");
+            table.beginWrite("name");
+            assertTrue(table.isWriting("name"));
+            table.endWrite("name");
+        }
+    }
+
+    @Test
+    void renewedWriteOutlastsItsLease() throws Exception {
+        try (GenerationTable table = GenerationTable.open(temp.resolve("private").resolve("generations"), 200)) {
+            table.renewWrite("name");
+            assertFalse(table.isWriting("name"));
+
+            table.beginWrite("name");
+            for (int i = 0; i < 4; i++) {
+                Thread.sleep(100);
+                table.renewWrite("name");
+            }
+            assertTrue(table.isWriting("name"));
+            table.endWrite("name");
+            assertFalse(table.isWriting("name"));
+        }
+    }
+
+    @Test
+    void rejectsDirectoryOpenToOthers() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("shared"));
+        Files.setPosixFilePermissions(directory, PosixFilePermissions.fromString("rwxrwxrwx"));
+
+        assertThrows(KeyLockerException.class, () -> GenerationTable.open(directory.resolve("generations")));
+        assertFalse(Files.exists(directory.resolve("generations")));
+    }
+
+    @Test
+    void rejectsLinkedDirectory() throws Exception {
+        Path target = Files.createDirectory(temp.resolve("target"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path link = Files.createSymbolicLink(temp.resolve("link"), target);
+
+        assertThrows(KeyLockerException.class, () -> GenerationTable.open(link.resolve("generations")));
+        assertFalse(Files.exists(target.resolve("generations")));
+    }
+
+    @Test
+    void rejectsLinkedFile() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("private"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path elsewhere = Files.createFile(temp.resolve("elsewhere"));
+        Files.createSymbolicLink(directory.resolve("generations"), elsewhere);
+
+        assertThrows(KeyLockerException.class, () -> GenerationTable.open(directory.resolve("generations")));
+        assertEquals(0, Files.size(elsewhere));
+    }
+
+    @Test
+    void rejectsFileWritableByOthers() throws Exception {
+        Path directory = Files.createDirectory(temp.resolve("private"),
+                PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        Path file = Files.createFile(directory.resolve("generations"));
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-rw-rw-"));
+
+        assertThrows(KeyLockerException.class, () -> GenerationTable.open(file));
+    }
+}